@@ -1,9 +1,13 @@
 package cs437.som;
 
+import java.io.Serializable;
+
 /**
  * Grouping of x- and y-coordinates or height and width (with area).
  */
-public class Dimension {
+public class Dimension implements Serializable {
+    private static final long serialVersionUID = 1L;
+
     /**
      * The dimension value in the x direction, generally the width.
      */
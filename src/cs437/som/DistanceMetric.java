@@ -1,5 +1,7 @@
 package cs437.som;
 
+import java.io.Serializable;
+
 /**
  * Distance strategy interface for self-organizing maps.
  *
@@ -10,7 +12,7 @@ package cs437.som;
  * been handed to an SOM.
  * 
  */
-public interface DistanceMetric {
+public interface DistanceMetric extends Serializable {
 
     /**
      * Calculate the distance between 2 vectors.
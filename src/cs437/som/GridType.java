@@ -1,5 +1,7 @@
 package cs437.som;
 
+import java.io.Serializable;
+
 /**
  * Grid type strategy interface for self-organizing maps.
  *
@@ -9,7 +11,7 @@ package cs437.som;
  * be given to multiple SOMs or modified once it has been handed to an SOM.
  *
  */
-public interface GridType {
+public interface GridType extends Serializable {
 
     /**
      * Inform the GridType how many neurons exist in the map.
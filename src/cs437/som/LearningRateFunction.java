@@ -1,5 +1,7 @@
 package cs437.som;
 
+import java.io.Serializable;
+
 /**
  * Learning rate strategy for self-organizing maps.
  *
@@ -10,7 +12,7 @@ package cs437.som;
  * been handed to an SOM.
  * 
  */
-public interface LearningRateFunction {
+public interface LearningRateFunction extends Serializable {
 
     /**
      * expectedIterations is a write-only property that allows the learning
@@ -1,9 +1,11 @@
 package cs437.som;
 
+import java.io.Serializable;
+
 /**
  * Neighborhood membership strategy interface for self-organizing maps.
  */
-public interface NeighborhoodMembershipFunction {
+public interface NeighborhoodMembershipFunction extends Serializable {
 
     /**
      * Compute a neuron's membership amount in the BMU's network.
@@ -1,5 +1,7 @@
 package cs437.som;
 
+import java.io.Serializable;
+
 /**
  * Neighborhood width strategy interface for self-organizing maps.
  *
@@ -9,7 +11,7 @@ package cs437.som;
  * that object.  It should not be given to multiple SOMs or modified once it
  * has been handed to an SOM.
  */
-public interface NeighborhoodWidthFunction {
+public interface NeighborhoodWidthFunction extends Serializable {
 
     /**
      * expectedIterations is a write-only property that allows the learning
@@ -0,0 +1,253 @@
+package cs437.som;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The threads on which SOMa runs parallel work.
+ *
+ * Maps, data sources, evaluators and initializers all split their work
+ * across the worker pool of an execution context instead of creating threads
+ * of their own, so the number of threads computing at once is bounded by the
+ * context's parallelism however many maps are in use.  Every object uses
+ * the shared default context unless given another; programs running many
+ * maps in one JVM can create one bounded context and hand it to all of them,
+ * or give each group of maps its own.  A sequential context does all of its
+ * work on the calling thread.
+ *
+ * Stages that spend their time waiting on files, such as background readers
+ * and writers, are not run on the worker pool where they would hold up
+ * computation.  Each gets a thread of its own from
+ * {@link #newStage(String)}.
+ *
+ * The context also decides when work is worth splitting.  Whole-map scans
+ * are split once the number of neurons times the input length reaches the
+ * parallel threshold, and never from a thread that is already one of the
+ * pool's workers, which is splitting work of its own.
+ */
+public class SOMExecutionContext {
+    /**
+     * The default amount of work, in neurons times input length, above which
+     * whole-map scans are split across threads.
+     */
+    public static final int DEFAULT_PARALLEL_THRESHOLD = 1 << 16;
+
+    private static final SOMExecutionContext DEFAULT_CONTEXT =
+            new SOMExecutionContext(Runtime.getRuntime().availableProcessors());
+
+    private static final SOMExecutionContext SEQUENTIAL_CONTEXT =
+            new SOMExecutionContext(1);
+
+    private final int parallelism;
+    // null for a sequential context.
+    private final ForkJoinPool pool;
+    private final ExecutorService executor;
+    private volatile int parallelThreshold = DEFAULT_PARALLEL_THRESHOLD;
+
+    /**
+     * Create a context with its own worker pool.
+     *
+     * @param parallelism The number of worker threads.  A parallelism of 1
+     * creates a sequential context, which has no workers.
+     */
+    public SOMExecutionContext(int parallelism) {
+        if (parallelism < 1) {
+            throw new SOMError("Parallelism must be positive.");
+        }
+
+        this.parallelism = parallelism;
+        if (parallelism == 1) {
+            pool = null;
+            executor = new CallerRunsExecutor();
+        } else {
+            pool = new ForkJoinPool(parallelism);
+            executor = pool;
+        }
+    }
+
+    /**
+     * Get the context shared by every object not given one of its own.  It
+     * has one worker per available processor.
+     *
+     * @return The default context.
+     */
+    public static SOMExecutionContext getDefault() {
+        return DEFAULT_CONTEXT;
+    }
+
+    /**
+     * Get a context that runs all work on the calling thread.
+     *
+     * @return A sequential context.
+     */
+    public static SOMExecutionContext sequential() {
+        return SEQUENTIAL_CONTEXT;
+    }
+
+    /**
+     * Get the number of threads work is split across.
+     *
+     * @return The context's parallelism.
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Decide whether this context runs all work on the calling thread.
+     *
+     * @return true if the context has no worker pool.
+     */
+    public boolean isSequential() {
+        return pool == null;
+    }
+
+    /**
+     * Set the amount of work, in neurons times input length, above which
+     * whole-map scans are split across threads.
+     *
+     * @param threshold The new threshold.  {@code Integer.MAX_VALUE} keeps
+     * every scan on the calling thread.
+     */
+    public void setParallelThreshold(int threshold) {
+        parallelThreshold = threshold;
+    }
+
+    /**
+     * Get the amount of work above which whole-map scans are split.
+     *
+     * @return The parallel threshold.
+     */
+    public int getParallelThreshold() {
+        return parallelThreshold;
+    }
+
+    /**
+     * Decide whether work may be split from the calling thread at all.
+     *
+     * @return false for a sequential context or on one of the pool's workers.
+     */
+    public boolean canSplit() {
+        return pool != null && !ForkJoinTask.inForkJoinPool();
+    }
+
+    /**
+     * Decide whether a piece of work is large enough to split.
+     *
+     * @param work The amount of work, in neurons times input length.
+     * @return true if the work should be run with {@link #invoke(ForkJoinTask)}.
+     */
+    public boolean shouldSplit(long work) {
+        return canSplit() && work >= parallelThreshold;
+    }
+
+    /**
+     * Get the number of items a single worker handles before splitting
+     * further.
+     *
+     * @param items The number of items in the whole piece of work.
+     * @return The largest number of items handled serially.
+     */
+    public int grain(int items) {
+        return Math.max(1, items / (parallelism * 4));
+    }
+
+    /**
+     * Run a fork/join task on the worker pool and wait for its result.  Only
+     * call this once {@link #canSplit()} has returned true.
+     *
+     * @param task The task to run.
+     * @param <T> The task's result type.
+     * @return The task's result.
+     */
+    public <T> T invoke(ForkJoinTask<T> task) {
+        if (pool == null) {
+            throw new SOMError("A sequential execution context cannot fork tasks.");
+        }
+        return pool.invoke(task);
+    }
+
+    /**
+     * Get an executor for submitting independent slices of work.  Slices
+     * submitted to a sequential context run before {@code submit} returns.
+     * The executor is shared and must not be shut down.
+     *
+     * @return The context's executor.
+     */
+    public ExecutorService getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Create the single background thread for a stage that waits on I/O.
+     * The thread is a daemon, so it does not keep the program running.
+     *
+     * @param name The thread's name.
+     * @return An executor running on its own thread, to be shut down by its
+     * owner.
+     */
+    public ExecutorService newStage(final String name) {
+        return Executors.newSingleThreadExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, name);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Stop the worker pool once its queued work is done.  The default and
+     * sequential contexts cannot be shut down.
+     */
+    public void shutdown() {
+        if (this == DEFAULT_CONTEXT || this == SEQUENTIAL_CONTEXT) {
+            throw new SOMError("A shared execution context cannot be shut down.");
+        }
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "SOMExecutionContext{parallelism=" + parallelism +
+                ", parallelThreshold=" + parallelThreshold + '}';
+    }
+
+    /**
+     * The executor of a sequential context, which runs each task on the
+     * thread that submits it.
+     */
+    private static class CallerRunsExecutor extends AbstractExecutorService {
+        public void execute(Runnable command) {
+            command.run();
+        }
+
+        public void shutdown() {
+        }
+
+        public List<Runnable> shutdownNow() {
+            return Collections.emptyList();
+        }
+
+        public boolean isShutdown() {
+            return false;
+        }
+
+        public boolean isTerminated() {
+            return false;
+        }
+
+        public boolean awaitTermination(long timeout, TimeUnit unit) {
+            return false;
+        }
+    }
+}
@@ -38,6 +38,17 @@ public interface SelfOrganizingMap {
      */
     double getWeight(int neuron, int weightIndex);
 
+    /**
+     * Get one input component's weight for every neuron at once.
+     *
+     * @param weightIndex The component's index in an input vector.
+     * @param out A buffer of at least {@link #getNeuronCount()} elements to
+     * receive the weights, indexed by neuron.  If {@code null} or too short,
+     * a new array is allocated.
+     * @return The buffer holding the weights, {@code out} when it was usable.
+     */
+    double[] getWeightComponent(int weightIndex, double[] out);
+
     /**
      * Find the best matching neuron (BMU, for Best Matching Unit).  The BMU is
      * the neuron who's weights most closely match the input vector.
@@ -56,6 +67,21 @@ public interface SelfOrganizingMap {
      */
     int getBestMatchingNeuron(int[] input);
 
+    /**
+     * Find the {@code k} best matching neurons.  The neurons are reported
+     * closest first; neurons at equal distance are ordered by index.
+     *
+     * @param input The input vector to match neurons to.
+     * @param k The number of neurons to find.
+     * @param idxOut Receives the indexes of the best matching neurons.  Must
+     * hold at least {@code min(k, getNeuronCount())} elements.
+     * @param distOut Receives the distances of the best matching neurons, as
+     * {@link #distanceToInput(int, double[])} measures them.  May be
+     * {@code null} if the distances are not needed.
+     * @return The number of neurons written, {@code min(k, getNeuronCount())}.
+     */
+    int getBestMatchingNeurons(double[] input, int k, int[] idxOut, double[] distOut);
+
     /**
      * Measure the distance from a neuron (specifically, its weight vector) to
      * an input vector.
@@ -66,6 +92,20 @@ public interface SelfOrganizingMap {
      */
     double distanceToInput(int neuron, double[] input);
 
+    /**
+     * Measure the distance from every neuron to an input vector in a single
+     * pass.  The result for neuron {@code i} is stored in {@code out[i]} and
+     * is the same value {@link #distanceToInput(int, double[])} would return.
+     *
+     * @param input The input vector.
+     * @param out A buffer of at least {@link #getNeuronCount()} elements to
+     * receive the distances.  If {@code null} or too short, a new array is
+     * allocated.
+     * @return The buffer holding the distances, {@code out} when it was
+     * usable.
+     */
+    double[] distancesToInput(double[] input, double[] out);
+
     /**
      * Write the self-organizing map to a stream.
      *
@@ -27,4 +27,20 @@ public interface TrainableSelfOrganizingMap extends SelfOrganizingMap {
      * @param data The vector to train with.
      */
     void trainWith(int[] data);
+
+    /**
+     * Train the map with every vector a data source supplies.  The source is
+     * not closed.
+     *
+     * @param source The vectors to train with.
+     */
+    void train(TrainingDataSource source);
+
+    /**
+     * Take an immutable copy of the map as it is now.  The copy can be
+     * queried from other threads while this map goes on training.
+     *
+     * @return The map's current state.
+     */
+    SelfOrganizingMap snapshot();
 }
@@ -0,0 +1,35 @@
+package cs437.som;
+
+/**
+ * Interface for supplying training vectors to self-organizing maps one at a
+ * time.
+ *
+ * A data source is pulled by its consumer rather than holding every sample
+ * in memory, so it may read them from a file or generate them as they are
+ * needed.  To avoid allocating a vector per sample, a source may return the
+ * same array from successive calls to {@link #next()}, refilled each time.
+ * How many passes are made over the underlying data, and in what order, is
+ * up to the source.
+ */
+public interface TrainingDataSource {
+
+    /**
+     * Get the length of the vectors this source supplies.
+     *
+     * @return The input vector length.
+     */
+    int getInputLength();
+
+    /**
+     * Get the next training vector.  The returned array is only valid until
+     * the next call and must not be modified.
+     *
+     * @return The next vector, or {@code null} once the source is exhausted.
+     */
+    double[] next();
+
+    /**
+     * Release any files or threads held by the source.
+     */
+    void close();
+}
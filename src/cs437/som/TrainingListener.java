@@ -0,0 +1,23 @@
+package cs437.som;
+
+/**
+ * Observer interface for the training of self-organizing maps.
+ *
+ * Implementations of this interface receive live feedback from a map each
+ * time it trains with a vector.  Strategy objects given to a CustomizableSOM
+ * that also implement this interface are notified automatically.
+ */
+public interface TrainingListener {
+
+    /**
+     * Observe a single training step.  This is called after the best matching
+     * neuron has been found and before any weights are adjusted.
+     *
+     * @param iteration The SOM's current iteration.
+     * @param input The vector being trained with.  It must not be modified or
+     * retained after the call returns.
+     * @param bestMatch The index of the best matching neuron.
+     * @param distance The distance from the best matching neuron to the input.
+     */
+    void trainingStep(int iteration, double[] input, int bestMatch, double distance);
+}
@@ -0,0 +1,23 @@
+package cs437.som;
+
+/**
+ * Weight initialization strategy interface for self-organizing maps.
+ *
+ * Implementations of this interface are intended to choose the starting
+ * weights of a map's neurons before training begins.  Once an object of an
+ * implementing class is given to an SOM, that SOM assumes control of that
+ * object.  It should not be given to multiple SOMs or modified once it has
+ * been handed to an SOM.
+ */
+public interface WeightInitializer {
+
+    /**
+     * Fill in the initial weights of a map.
+     *
+     * @param weights The weight matrix to fill, one row per neuron.  Neurons
+     * are laid out across the grid row by row, so neuron {@code i} is in
+     * column {@code i % gridSize.x} of row {@code i / gridSize.x}.
+     * @param gridSize The dimensions of the map's neuron grid.
+     */
+    void initializeWeights(double[][] weights, Dimension gridSize);
+}
@@ -0,0 +1,118 @@
+package cs437.som.benchmark;
+
+import cs437.som.Dimension;
+import cs437.som.learningrate.AdaptiveLearningRateFunction;
+import cs437.som.learningrate.ConstantLearningRateFunction;
+import cs437.som.membership.LinearNeighborhoodMembershipFunction;
+import cs437.som.metrics.MapQualityEvaluator;
+import cs437.som.neighborhood.AdaptiveNeighborhoodWidthFunction;
+import cs437.som.neighborhood.LinearDecayNeighborhoodWidthFunction;
+import cs437.som.network.CustomizableSOM;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.logging.Logger;
+
+/**
+ * Compares the number of iterations a map needs to reach a target
+ * quantization error with adaptive learning rate and neighborhood width
+ * strategies against a linearly decaying neighborhood width.
+ */
+public class AdaptiveScheduleBenchmark {
+    private static final Logger logger = Logger.getLogger("AdaptiveScheduleBenchmark");
+
+    private static final int MAP_DIMENSION = 20;
+    private static final int EXPECTED_ITERATIONS = 40000;
+    private static final int MEASURE_INTERVAL = 250;
+    private static final int VALIDATION_SAMPLES = 2000;
+    private static final double TARGET_ERROR = 0.035;
+    private static final int RUNS = 3;
+
+    private final Random random = new Random(0);
+    private final List<double[]> validation = new ArrayList<double[]>(VALIDATION_SAMPLES);
+
+    /**
+     * Create the benchmark and its validation set.
+     */
+    public AdaptiveScheduleBenchmark() {
+        for (int i = 0; i < VALIDATION_SAMPLES; i++) {
+            validation.add(sample());
+        }
+    }
+
+    /**
+     * Run both configurations and log the iterations they needed.
+     */
+    public void run() {
+        for (int run = 0; run < RUNS; run++) {
+            int linear = iterationsToTarget(linearMap());
+            int adaptive = iterationsToTarget(adaptiveMap());
+            logger.info(String.format(
+                    "Run %d: linear decay %s, adaptive %s iterations to QE %.3f",
+                    run, describe(linear), describe(adaptive), TARGET_ERROR));
+        }
+    }
+
+    /**
+     * Train a map until its quantization error over the validation set
+     * reaches the target.
+     *
+     * @param som The map to train.
+     * @return The iterations needed, or -1 if the target was not reached
+     * within the expected iterations.
+     */
+    private int iterationsToTarget(CustomizableSOM som) {
+        MapQualityEvaluator evaluator = new MapQualityEvaluator(som);
+        for (int i = 1; i <= EXPECTED_ITERATIONS; i++) {
+            som.trainWith(sample());
+            if (i % MEASURE_INTERVAL == 0
+                    && evaluator.evaluate(validation).getQuantizationError() <= TARGET_ERROR) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private CustomizableSOM linearMap() {
+        CustomizableSOM som = baseMap();
+        som.setNeighborhoodWidthFunctionStrategy(
+                new LinearDecayNeighborhoodWidthFunction(MAP_DIMENSION / 2));
+        return som;
+    }
+
+    private CustomizableSOM adaptiveMap() {
+        CustomizableSOM som = baseMap();
+        som.setLearningRateFunctionStrategy(new AdaptiveLearningRateFunction(0.5, 0.02));
+        som.setNeighborhoodWidthFunctionStrategy(
+                new AdaptiveNeighborhoodWidthFunction(MAP_DIMENSION / 2, 1.0));
+        return som;
+    }
+
+    private static CustomizableSOM baseMap() {
+        CustomizableSOM som = new CustomizableSOM(
+                new Dimension(MAP_DIMENSION, MAP_DIMENSION), 2, EXPECTED_ITERATIONS);
+        som.setLearningRateFunctionStrategy(new ConstantLearningRateFunction(0.1));
+        som.setNeighborhoodMembershipFunctionStrategy(
+                new LinearNeighborhoodMembershipFunction());
+        return som;
+    }
+
+    private double[] sample() {
+        return new double[] {random.nextDouble(), random.nextDouble()};
+    }
+
+    private static String describe(int iterations) {
+        return iterations < 0 ? "never reached target in " + EXPECTED_ITERATIONS
+                : Integer.toString(iterations);
+    }
+
+    public static void main(String[] args) {
+        new AdaptiveScheduleBenchmark().run();
+    }
+
+    @Override
+    public String toString() {
+        return "AdaptiveScheduleBenchmark";
+    }
+}
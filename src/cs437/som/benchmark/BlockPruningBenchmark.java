@@ -0,0 +1,91 @@
+package cs437.som.benchmark;
+
+import cs437.som.Dimension;
+import cs437.som.network.CustomizableSOM;
+
+import java.util.Random;
+import java.util.logging.Logger;
+
+/**
+ * Measures best matching neuron searches that skip blocks of the grid by
+ * the bounds of their weights.  The map is trained on samples from a plane
+ * through a higher dimensional space until it is ordered, and then trained
+ * further and searched with and without the block bounds.
+ */
+public class BlockPruningBenchmark {
+    private static final Logger logger = Logger.getLogger("BlockPruningBenchmark");
+
+    private static final int MAP_DIMENSION = 128;
+    private static final int INPUT_LENGTH = 16;
+    private static final int ORDERING_ITERATIONS = 20000;
+    private static final int STEPS = 2000;
+    private static final int SEARCHES = 2000;
+    private static final int ROUNDS = 3;
+
+    /**
+     * Order a map, then time training steps and searches with and without
+     * block pruning, and log their rates.
+     */
+    public void run() {
+        CustomizableSOM map = new CustomizableSOM(
+                new Dimension(MAP_DIMENSION, MAP_DIMENSION), INPUT_LENGTH,
+                ORDERING_ITERATIONS + ROUNDS * 2 * STEPS);
+        map.setParallelThreshold(Integer.MAX_VALUE);
+
+        Random random = new Random(0);
+        double[][] axes = new double[2][INPUT_LENGTH];
+        for (double[] axis : axes) {
+            for (int i = 0; i < INPUT_LENGTH; i++) {
+                axis[i] = random.nextDouble();
+            }
+        }
+        for (int i = 0; i < ORDERING_ITERATIONS; i++) {
+            map.trainWith(sample(random, axes));
+        }
+
+        for (int round = 0; round < ROUNDS; round++) {
+            for (boolean prune : new boolean[]{false, true}) {
+                map.setBlockPruning(prune);
+                String mode = prune ? "Pruned" : "Full";
+
+                long start = System.nanoTime();
+                for (int i = 0; i < STEPS; i++) {
+                    map.trainWith(sample(random, axes));
+                }
+                double seconds = (System.nanoTime() - start) / 1.0e9;
+                logger.info(String.format("%s: %.0f training steps/s",
+                        mode, STEPS / seconds));
+
+                Random samples = new Random(round);
+                long checksum = 0;
+                start = System.nanoTime();
+                for (int i = 0; i < SEARCHES; i++) {
+                    checksum += map.getBestMatchingNeuron(sample(samples, axes));
+                }
+                seconds = (System.nanoTime() - start) / 1.0e9;
+                logger.info(String.format("%s: %.0f searches/s (checksum %d)",
+                        mode, SEARCHES / seconds, checksum));
+            }
+        }
+    }
+
+    private static double[] sample(Random random, double[][] axes) {
+        double u = random.nextDouble();
+        double v = random.nextDouble();
+        double[] sample = new double[INPUT_LENGTH];
+        for (int i = 0; i < INPUT_LENGTH; i++) {
+            sample[i] = u * axes[0][i] + v * axes[1][i]
+                    + 0.01 * random.nextGaussian();
+        }
+        return sample;
+    }
+
+    public static void main(String[] args) {
+        new BlockPruningBenchmark().run();
+    }
+
+    @Override
+    public String toString() {
+        return "BlockPruningBenchmark";
+    }
+}
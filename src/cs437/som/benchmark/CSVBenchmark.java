@@ -0,0 +1,92 @@
+package cs437.som.benchmark;
+
+import cs437.som.SOMError;
+import cs437.som.data.CSVDataSource;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Random;
+import java.util.logging.Logger;
+
+/**
+ * Measures the throughput of reading a large CSV file with one parsing
+ * thread and with one per processor.
+ */
+public class CSVBenchmark {
+    private static final Logger logger = Logger.getLogger("CSVBenchmark");
+
+    private static final int ROWS = 1000000;
+    private static final int COLUMNS = 16;
+    private static final int RUNS = 5;
+
+    /**
+     * Write a CSV file and read it repeatedly, logging the throughput of each
+     * read.
+     *
+     * @throws IOException if the temporary file cannot be written.
+     */
+    public void run() throws IOException {
+        File file = File.createTempFile("som", ".csv");
+        file.deleteOnExit();
+        writeFile(file);
+
+        int processors = Runtime.getRuntime().availableProcessors();
+        double megabytes = file.length() / 1.0e6;
+        for (int run = 0; run < RUNS; run++) {
+            logger.info(String.format(
+                    "Run %d: %.1f MB, %.1f MB/s with 1 thread, %.1f MB/s with %d",
+                    run, megabytes, megabytes / read(file, 1),
+                    megabytes / read(file, processors), processors));
+        }
+    }
+
+    private static void writeFile(File file) throws IOException {
+        Random random = new Random(0);
+        Writer writer = new BufferedWriter(new FileWriter(file));
+        try {
+            for (int row = 0; row < ROWS; row++) {
+                for (int column = 0; column < COLUMNS; column++) {
+                    if (column > 0) {
+                        writer.write(',');
+                    }
+                    writer.write(Double.toString(random.nextDouble()));
+                }
+                writer.write('\n');
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Read every row of the file.
+     *
+     * @return The time taken in seconds.
+     */
+    private static double read(File file, int parallelism) {
+        long start = System.nanoTime();
+        CSVDataSource source = new CSVDataSource(file);
+        source.setParallelism(parallelism);
+        int rows = 0;
+        while (source.next() != null) {
+            rows++;
+        }
+        source.close();
+        if (rows != ROWS) {
+            throw new SOMError("Read " + rows + " rows of " + ROWS);
+        }
+        return (System.nanoTime() - start) / 1.0e9;
+    }
+
+    public static void main(String[] args) throws IOException {
+        new CSVBenchmark().run();
+    }
+
+    @Override
+    public String toString() {
+        return "CSVBenchmark";
+    }
+}
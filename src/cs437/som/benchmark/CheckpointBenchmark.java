@@ -0,0 +1,87 @@
+package cs437.som.benchmark;
+
+import cs437.som.Dimension;
+import cs437.som.network.CustomizableSOM;
+import cs437.som.network.MapCheckpointer;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.logging.Logger;
+
+/**
+ * Compares training throughput with and without periodic checkpoints being
+ * written in the background.
+ */
+public class CheckpointBenchmark {
+    private static final Logger logger = Logger.getLogger("CheckpointBenchmark");
+
+    private static final int MAP_DIMENSION = 200;
+    private static final int INPUT_LENGTH = 16;
+    private static final int ITERATIONS = 2000;
+    private static final int CHECKPOINT_INTERVAL = 100;
+    private static final int RUNS = 5;
+
+    private final Random random = new Random(0);
+
+    /**
+     * Train with and without checkpoints and log the throughput of each.
+     *
+     * @throws IOException if the checkpoint file cannot be created.
+     */
+    public void run() throws IOException {
+        File file = File.createTempFile("som", ".checkpoint");
+        file.deleteOnExit();
+
+        for (int run = 0; run < RUNS; run++) {
+            CustomizableSOM plain = createMap();
+            long start = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                plain.trainWith(sample());
+            }
+            double plainRate = rate(start);
+
+            CustomizableSOM checkpointed = createMap();
+            MapCheckpointer checkpointer = new MapCheckpointer(checkpointed, file,
+                    CHECKPOINT_INTERVAL);
+            start = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                checkpointer.trainWith(sample());
+            }
+            double checkpointedRate = rate(start);
+            checkpointer.close();
+
+            logger.info(String.format(
+                    "Run %d: %.0f iterations/s plain, %.0f iterations/s with " +
+                            "%d checkpoints written (%.1f MB each)",
+                    run, plainRate, checkpointedRate,
+                    checkpointer.getCheckpointsWritten(), file.length() / 1.0e6));
+        }
+    }
+
+    private static CustomizableSOM createMap() {
+        return new CustomizableSOM(new Dimension(MAP_DIMENSION, MAP_DIMENSION),
+                INPUT_LENGTH, ITERATIONS);
+    }
+
+    private static double rate(long start) {
+        return ITERATIONS / ((System.nanoTime() - start) / 1.0e9);
+    }
+
+    private double[] sample() {
+        double[] sample = new double[INPUT_LENGTH];
+        for (int i = 0; i < INPUT_LENGTH; i++) {
+            sample[i] = random.nextDouble();
+        }
+        return sample;
+    }
+
+    public static void main(String[] args) throws IOException {
+        new CheckpointBenchmark().run();
+    }
+
+    @Override
+    public String toString() {
+        return "CheckpointBenchmark";
+    }
+}
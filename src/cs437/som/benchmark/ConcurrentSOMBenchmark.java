@@ -0,0 +1,104 @@
+package cs437.som.benchmark;
+
+import cs437.som.Dimension;
+import cs437.som.network.ConcurrentSOM;
+import cs437.som.network.CustomizableSOM;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Measures how a training thread and threads searching the live map for best
+ * matching neurons slow each other down.  Readers of a ConcurrentSOM search
+ * it optimistically; readers of a plain CustomizableSOM hold the map's lock
+ * for each search, which is what sharing it safely requires.
+ */
+public class ConcurrentSOMBenchmark {
+    private static final Logger logger = Logger.getLogger("ConcurrentSOMBenchmark");
+
+    private static final int MAP_DIMENSION = 100;
+    private static final int INPUT_LENGTH = 16;
+    private static final int ITERATIONS = 2000;
+    private static final int[] READER_COUNTS = {0, 1, 2, 4};
+
+    /**
+     * Train while a growing number of readers search the map, and log the
+     * throughput of the trainer and the readers.
+     *
+     * @throws InterruptedException if interrupted while waiting for readers.
+     */
+    public void run() throws InterruptedException {
+        for (int readers : READER_COUNTS) {
+            measure(new CustomizableSOM(new Dimension(MAP_DIMENSION, MAP_DIMENSION),
+                    INPUT_LENGTH, ITERATIONS), readers, true);
+            ConcurrentSOM concurrent = new ConcurrentSOM(
+                    new Dimension(MAP_DIMENSION, MAP_DIMENSION), INPUT_LENGTH, ITERATIONS);
+            measure(concurrent, readers, false);
+            logger.info(String.format("  %d optimistic reads retried",
+                    concurrent.getReadRetries()));
+        }
+    }
+
+    private void measure(final CustomizableSOM map, int readerCount,
+                         final boolean locked) throws InterruptedException {
+        final AtomicBoolean training = new AtomicBoolean(true);
+        final AtomicLong queries = new AtomicLong();
+        Thread[] readers = new Thread[readerCount];
+        for (int r = 0; r < readerCount; r++) {
+            final Random random = new Random(r + 1);
+            readers[r] = new Thread(new Runnable() {
+                public void run() {
+                    long count = 0;
+                    while (training.get()) {
+                        double[] query = sample(random);
+                        if (locked) {
+                            synchronized (map) {
+                                map.getBestMatchingNeuron(query);
+                            }
+                        } else {
+                            map.getBestMatchingNeuron(query);
+                        }
+                        count++;
+                    }
+                    queries.addAndGet(count);
+                }
+            }, "SOM benchmark reader " + r);
+            readers[r].start();
+        }
+
+        Random random = new Random(0);
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            map.trainWith(sample(random));
+        }
+        double seconds = (System.nanoTime() - start) / 1.0e9;
+        training.set(false);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+
+        logger.info(String.format(
+                "%s, %d readers: %.0f iterations/s, %.0f queries/s",
+                locked ? "Locked" : "Optimistic", readerCount,
+                ITERATIONS / seconds, queries.get() / seconds));
+    }
+
+    private static double[] sample(Random random) {
+        double[] sample = new double[INPUT_LENGTH];
+        for (int i = 0; i < INPUT_LENGTH; i++) {
+            sample[i] = random.nextDouble();
+        }
+        return sample;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        new ConcurrentSOMBenchmark().run();
+    }
+
+    @Override
+    public String toString() {
+        return "ConcurrentSOMBenchmark";
+    }
+}
@@ -0,0 +1,86 @@
+package cs437.som.benchmark;
+
+import cs437.som.Dimension;
+import cs437.som.network.CustomizableSOM;
+import cs437.som.network.TrainingJournal;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.logging.Logger;
+
+/**
+ * Compares training throughput with and without every step being recorded
+ * in a training journal.
+ */
+public class JournalBenchmark {
+    private static final Logger logger = Logger.getLogger("JournalBenchmark");
+
+    private static final int MAP_DIMENSION = 200;
+    private static final int INPUT_LENGTH = 16;
+    private static final int ITERATIONS = 5000;
+    private static final int RUNS = 5;
+
+    private final Random random = new Random(0);
+
+    /**
+     * Train with and without a journal and log the throughput of each.
+     *
+     * @throws IOException if the journal file cannot be created.
+     */
+    public void run() throws IOException {
+        File file = File.createTempFile("som", ".journal");
+        file.deleteOnExit();
+
+        for (int run = 0; run < RUNS; run++) {
+            CustomizableSOM plain = createMap();
+            long start = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                plain.trainWith(sample());
+            }
+            double plainRate = rate(start);
+
+            CustomizableSOM journaled = createMap();
+            file.delete();
+            TrainingJournal journal = new TrainingJournal(journaled, file);
+            start = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                journaled.trainWith(sample());
+            }
+            journal.flush();
+            double journaledRate = rate(start);
+            journal.close();
+
+            logger.info(String.format(
+                    "Run %d: %.0f iterations/s plain, %.0f iterations/s " +
+                            "journaled (%.1f MB journal)",
+                    run, plainRate, journaledRate, file.length() / 1.0e6));
+        }
+    }
+
+    private static CustomizableSOM createMap() {
+        return new CustomizableSOM(new Dimension(MAP_DIMENSION, MAP_DIMENSION),
+                INPUT_LENGTH, ITERATIONS);
+    }
+
+    private static double rate(long start) {
+        return ITERATIONS / ((System.nanoTime() - start) / 1.0e9);
+    }
+
+    private double[] sample() {
+        double[] sample = new double[INPUT_LENGTH];
+        for (int i = 0; i < INPUT_LENGTH; i++) {
+            sample[i] = random.nextDouble();
+        }
+        return sample;
+    }
+
+    public static void main(String[] args) throws IOException {
+        new JournalBenchmark().run();
+    }
+
+    @Override
+    public String toString() {
+        return "JournalBenchmark";
+    }
+}
@@ -0,0 +1,116 @@
+package cs437.som.benchmark;
+
+import cs437.som.Dimension;
+import cs437.som.DistanceMetric;
+import cs437.som.distancemetrics.ChebyshevDistanceMetric;
+import cs437.som.distancemetrics.EuclideanDistanceMetric;
+import cs437.som.distancemetrics.ManhattanDistanceMetric;
+import cs437.som.network.CustomizableSOM;
+
+import java.util.Random;
+import java.util.logging.Logger;
+
+/**
+ * Measures best matching neuron searches when maps using different distance
+ * metrics run in one JVM.  Maps search with kernels generated for their
+ * configuration; the comparison searches the same weights through a single
+ * loop calling whichever metric each map uses, as maps did before kernels.
+ */
+public class KernelBenchmark {
+    private static final Logger logger = Logger.getLogger("KernelBenchmark");
+
+    private static final int MAP_DIMENSION = 40;
+    private static final int[] INPUT_LENGTHS = {3, 9};
+    private static final int SEARCHES = 20000;
+    private static final int ROUNDS = 3;
+
+    /**
+     * Search maps of every combination of input length and metric in turn,
+     * first through their kernels and then through the shared loop, and log
+     * the search rate of each.
+     */
+    public void run() {
+        DistanceMetric[] metrics = {new EuclideanDistanceMetric(),
+                new ManhattanDistanceMetric(), new ChebyshevDistanceMetric()};
+
+        int configurations = INPUT_LENGTHS.length * metrics.length;
+        CustomizableSOM[] maps = new CustomizableSOM[configurations];
+        double[][][] weights = new double[configurations][][];
+        for (int l = 0; l < INPUT_LENGTHS.length; l++) {
+            for (int m = 0; m < metrics.length; m++) {
+                CustomizableSOM map = new CustomizableSOM(
+                        new Dimension(MAP_DIMENSION, MAP_DIMENSION),
+                        INPUT_LENGTHS[l], SEARCHES);
+                map.setDistanceMetricStrategy(metrics[m]);
+                maps[l * metrics.length + m] = map;
+                weights[l * metrics.length + m] = copyWeights(map);
+            }
+        }
+
+        for (int round = 0; round < ROUNDS; round++) {
+            Random random = new Random(round);
+            long checksum = 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < SEARCHES; i++) {
+                CustomizableSOM map = maps[i % configurations];
+                checksum += map.getBestMatchingNeuron(sample(random, map.getInputLength()));
+            }
+            double kernelSeconds = (System.nanoTime() - start) / 1.0e9;
+
+            random = new Random(round);
+            start = System.nanoTime();
+            for (int i = 0; i < SEARCHES; i++) {
+                int c = i % configurations;
+                checksum -= search(weights[c], metrics[c % metrics.length],
+                        sample(random, maps[c].getInputLength()));
+            }
+            double sharedSeconds = (System.nanoTime() - start) / 1.0e9;
+
+            logger.info(String.format(
+                    "Round %d: kernels %.0f searches/s, shared loop %.0f searches/s%s",
+                    round + 1, SEARCHES / kernelSeconds, SEARCHES / sharedSeconds,
+                    checksum == 0 ? "" : " (results differ)"));
+        }
+    }
+
+    private static int search(double[][] weights, DistanceMetric metric,
+                              double[] input) {
+        int bestMatch = 0;
+        double lowestDistance = metric.distance(weights[0], input);
+        for (int i = 1; i < weights.length; i++) {
+            double distance = metric.distance(weights[i], input);
+            if (distance < lowestDistance) {
+                lowestDistance = distance;
+                bestMatch = i;
+            }
+        }
+        return bestMatch;
+    }
+
+    private static double[][] copyWeights(CustomizableSOM map) {
+        double[][] weights = new double[map.getNeuronCount()][map.getInputLength()];
+        for (int n = 0; n < weights.length; n++) {
+            for (int i = 0; i < weights[n].length; i++) {
+                weights[n][i] = map.getWeight(n, i);
+            }
+        }
+        return weights;
+    }
+
+    private static double[] sample(Random random, int length) {
+        double[] sample = new double[length];
+        for (int i = 0; i < length; i++) {
+            sample[i] = random.nextDouble();
+        }
+        return sample;
+    }
+
+    public static void main(String[] args) {
+        new KernelBenchmark().run();
+    }
+
+    @Override
+    public String toString() {
+        return "KernelBenchmark";
+    }
+}
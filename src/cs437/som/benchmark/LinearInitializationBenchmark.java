@@ -0,0 +1,144 @@
+package cs437.som.benchmark;
+
+import cs437.som.Dimension;
+import cs437.som.initialization.LinearWeightInitializer;
+import cs437.som.learningrate.ConstantLearningRateFunction;
+import cs437.som.membership.LinearNeighborhoodMembershipFunction;
+import cs437.som.metrics.MapQualityEvaluator;
+import cs437.som.neighborhood.LinearDecayNeighborhoodWidthFunction;
+import cs437.som.network.CustomizableSOM;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.logging.Logger;
+
+/**
+ * Compares the number of iterations a map needs to reach a target
+ * quantization error when its weights are initialized randomly against
+ * initializing them across the principal components of the data.
+ *
+ * A randomly initialized map must first be ordered by a wide neighborhood.
+ * A linearly initialized map is ordered from the start, so it is trained
+ * with a neighborhood that is narrow from the first iteration.
+ */
+public class LinearInitializationBenchmark {
+    private static final Logger logger = Logger.getLogger("LinearInitializationBenchmark");
+
+    private static final int MAP_DIMENSION = 20;
+    private static final int EXPECTED_ITERATIONS = 40000;
+    private static final int MEASURE_INTERVAL = 250;
+    private static final int VALIDATION_SAMPLES = 2000;
+    private static final int INITIALIZATION_SAMPLES = 10000;
+    private static final double TARGET_ERROR = 0.02;
+    private static final double REFINEMENT_WIDTH = 2.0;
+    private static final int RUNS = 3;
+
+    private final Random random = new Random(0);
+    private final List<double[]> validation = new ArrayList<double[]>(VALIDATION_SAMPLES);
+
+    /**
+     * Create the benchmark and its validation set.
+     */
+    public LinearInitializationBenchmark() {
+        for (int i = 0; i < VALIDATION_SAMPLES; i++) {
+            validation.add(sample());
+        }
+    }
+
+    /**
+     * Run both configurations and log the iterations they needed.
+     */
+    public void run() {
+        for (int run = 0; run < RUNS; run++) {
+            int randomized = iterationsToTarget(randomMap());
+            long start = System.nanoTime();
+            CustomizableSOM som = linearMap();
+            double seconds = (System.nanoTime() - start) / 1.0e9;
+            int linear = iterationsToTarget(som);
+            logger.info(String.format(
+                    "Run %d: random %s, linear %s iterations to QE %.3f " +
+                            "(linear initialization took %.3f s)",
+                    run, describe(randomized), describe(linear), TARGET_ERROR,
+                    seconds));
+        }
+    }
+
+    /**
+     * Train a map until its quantization error over the validation set
+     * reaches the target.
+     *
+     * @param som The map to train.
+     * @return The iterations needed, or -1 if the target was not reached
+     * within the expected iterations.
+     */
+    private int iterationsToTarget(CustomizableSOM som) {
+        MapQualityEvaluator evaluator = new MapQualityEvaluator(som);
+        for (int i = 1; i <= EXPECTED_ITERATIONS; i++) {
+            som.trainWith(sample());
+            if (i % MEASURE_INTERVAL == 0
+                    && evaluator.evaluate(validation).getQuantizationError() <= TARGET_ERROR) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private CustomizableSOM randomMap() {
+        CustomizableSOM som = baseMap();
+        som.setNeighborhoodWidthFunctionStrategy(
+                new LinearDecayNeighborhoodWidthFunction(MAP_DIMENSION / 2));
+        return som;
+    }
+
+    private CustomizableSOM linearMap() {
+        List<double[]> initialization = new ArrayList<double[]>(INITIALIZATION_SAMPLES);
+        for (int i = 0; i < INITIALIZATION_SAMPLES; i++) {
+            initialization.add(sample());
+        }
+
+        CustomizableSOM som = baseMap();
+        som.setWeightInitializerStrategy(new LinearWeightInitializer(initialization));
+        som.setNeighborhoodWidthFunctionStrategy(
+                new LinearDecayNeighborhoodWidthFunction(REFINEMENT_WIDTH));
+        return som;
+    }
+
+    private static CustomizableSOM baseMap() {
+        CustomizableSOM som = new CustomizableSOM(
+                new Dimension(MAP_DIMENSION, MAP_DIMENSION), 3, EXPECTED_ITERATIONS);
+        som.setLearningRateFunctionStrategy(new ConstantLearningRateFunction(0.1));
+        som.setNeighborhoodMembershipFunctionStrategy(
+                new LinearNeighborhoodMembershipFunction());
+        return som;
+    }
+
+    /**
+     * Draw a training vector from a flattened box, which is longest along a
+     * direction that is not one of the input axes.
+     */
+    private double[] sample() {
+        double u = random.nextDouble();
+        double v = random.nextDouble();
+        double w = random.nextDouble();
+        return new double[] {
+                0.6 * u + 0.2 * v,
+                0.6 * u - 0.2 * v + 0.1 * w,
+                0.3 * v - 0.1 * w
+        };
+    }
+
+    private static String describe(int iterations) {
+        return iterations < 0 ? "never reached target in " + EXPECTED_ITERATIONS
+                : Integer.toString(iterations);
+    }
+
+    public static void main(String[] args) {
+        new LinearInitializationBenchmark().run();
+    }
+
+    @Override
+    public String toString() {
+        return "LinearInitializationBenchmark";
+    }
+}
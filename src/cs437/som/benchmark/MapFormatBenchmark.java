@@ -0,0 +1,77 @@
+package cs437.som.benchmark;
+
+import cs437.som.Dimension;
+import cs437.som.network.BinaryMapFile;
+import cs437.som.network.CustomizableSOM;
+import cs437.som.util.FileReader;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.util.logging.Logger;
+
+/**
+ * Compares the time taken to write and read a large map in the text format
+ * and in the binary format.
+ */
+public class MapFormatBenchmark {
+    private static final Logger logger = Logger.getLogger("MapFormatBenchmark");
+
+    private static final int MAP_DIMENSION = 300;
+    private static final int INPUT_LENGTH = 8;
+    private static final int RUNS = 3;
+
+    /**
+     * Write and read the map in both formats and log the times taken.
+     *
+     * @throws IOException if a temporary file cannot be written or read.
+     */
+    public void run() throws IOException {
+        CustomizableSOM som = new CustomizableSOM(
+                new Dimension(MAP_DIMENSION, MAP_DIMENSION), INPUT_LENGTH, 1);
+        File text = File.createTempFile("som", ".txt");
+        File binary = File.createTempFile("som", ".somb");
+        text.deleteOnExit();
+        binary.deleteOnExit();
+
+        for (int run = 0; run < RUNS; run++) {
+            long start = System.nanoTime();
+            OutputStreamWriter writer = new OutputStreamWriter(new FileOutputStream(text));
+            som.write(writer);
+            writer.close();
+            double textWrite = seconds(start);
+
+            start = System.nanoTime();
+            FileReader.read(text);
+            double textRead = seconds(start);
+
+            start = System.nanoTime();
+            BinaryMapFile.write(som, binary);
+            double binaryWrite = seconds(start);
+
+            start = System.nanoTime();
+            FileReader.read(binary);
+            double binaryRead = seconds(start);
+
+            logger.info(String.format(
+                    "Run %d: text %.3f s write, %.3f s read (%.1f MB); " +
+                            "binary %.3f s write, %.3f s read (%.1f MB)",
+                    run, textWrite, textRead, text.length() / 1.0e6,
+                    binaryWrite, binaryRead, binary.length() / 1.0e6));
+        }
+    }
+
+    private static double seconds(long start) {
+        return (System.nanoTime() - start) / 1.0e9;
+    }
+
+    public static void main(String[] args) throws IOException {
+        new MapFormatBenchmark().run();
+    }
+
+    @Override
+    public String toString() {
+        return "MapFormatBenchmark";
+    }
+}
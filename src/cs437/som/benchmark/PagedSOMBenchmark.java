@@ -0,0 +1,96 @@
+package cs437.som.benchmark;
+
+import cs437.som.Dimension;
+import cs437.som.network.PagedSOM;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.logging.Logger;
+
+/**
+ * Trains a paged map whose page cache holds an eighth of its weights, and
+ * logs how many tiles each training step and search reads from the file as
+ * the neighborhood narrows.  Samples come from a plane through the input
+ * space, so the map orders and tile summaries become selective.
+ */
+public class PagedSOMBenchmark {
+    private static final Logger logger = Logger.getLogger("PagedSOMBenchmark");
+
+    private static final int MAP_DIMENSION = 256;
+    private static final int INPUT_LENGTH = 16;
+    private static final int ITERATIONS = 8000;
+    private static final int PHASES = 4;
+    private static final int SEARCHES = 500;
+    private static final long CACHE_BYTES =
+            (long) MAP_DIMENSION * MAP_DIMENSION * INPUT_LENGTH * 8 / 8;
+
+    /**
+     * Train the map in phases, logging the training and search rates and
+     * the tiles read per step and per search in each.
+     *
+     * @throws IOException if a temporary file cannot be written.
+     */
+    public void run() throws IOException {
+        File file = File.createTempFile("som", ".somp");
+        file.deleteOnExit();
+        PagedSOM map = new PagedSOM(new Dimension(MAP_DIMENSION, MAP_DIMENSION),
+                INPUT_LENGTH, ITERATIONS, file, CACHE_BYTES);
+        try {
+            Random random = new Random(0);
+            double[][] axes = new double[2][INPUT_LENGTH];
+            for (double[] axis : axes) {
+                for (int i = 0; i < INPUT_LENGTH; i++) {
+                    axis[i] = random.nextDouble();
+                }
+            }
+
+            for (int phase = 0; phase < PHASES; phase++) {
+                long reads = map.getTileReads();
+                long start = System.nanoTime();
+                int steps = ITERATIONS / PHASES;
+                for (int i = 0; i < steps; i++) {
+                    map.trainWith(sample(random, axes));
+                }
+                double seconds = (System.nanoTime() - start) / 1.0e9;
+                logger.info(String.format(
+                        "Phase %d: %.0f training steps/s, %.1f tiles read per step",
+                        phase + 1, steps / seconds,
+                        (map.getTileReads() - reads) / (double) steps));
+
+                reads = map.getTileReads();
+                start = System.nanoTime();
+                for (int i = 0; i < SEARCHES; i++) {
+                    map.getBestMatchingNeuron(sample(random, axes));
+                }
+                seconds = (System.nanoTime() - start) / 1.0e9;
+                logger.info(String.format(
+                        "Phase %d: %.0f searches/s, %.1f tiles read per search",
+                        phase + 1, SEARCHES / seconds,
+                        (map.getTileReads() - reads) / (double) SEARCHES));
+            }
+        } finally {
+            map.close();
+        }
+    }
+
+    private static double[] sample(Random random, double[][] axes) {
+        double u = random.nextDouble();
+        double v = random.nextDouble();
+        double[] sample = new double[INPUT_LENGTH];
+        for (int i = 0; i < INPUT_LENGTH; i++) {
+            sample[i] = u * axes[0][i] + v * axes[1][i]
+                    + 0.01 * random.nextGaussian();
+        }
+        return sample;
+    }
+
+    public static void main(String[] args) throws IOException {
+        new PagedSOMBenchmark().run();
+    }
+
+    @Override
+    public String toString() {
+        return "PagedSOMBenchmark";
+    }
+}
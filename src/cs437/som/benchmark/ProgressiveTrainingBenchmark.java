@@ -0,0 +1,98 @@
+package cs437.som.benchmark;
+
+import cs437.som.Dimension;
+import cs437.som.membership.LinearNeighborhoodMembershipFunction;
+import cs437.som.metrics.MapQuality;
+import cs437.som.metrics.MapQualityEvaluator;
+import cs437.som.neighborhood.LinearDecayNeighborhoodWidthFunction;
+import cs437.som.network.CustomizableSOM;
+import cs437.som.training.ProgressiveTrainer;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.logging.Logger;
+
+/**
+ * Compares the wall time and resulting quality of training a large map
+ * directly against training it progressively from a small grid.
+ */
+public class ProgressiveTrainingBenchmark {
+    private static final Logger logger = Logger.getLogger("ProgressiveTrainingBenchmark");
+
+    private static final int MAP_DIMENSION = 128;
+    private static final int DIRECT_ITERATIONS = 4000;
+    private static final int INITIAL_ITERATIONS = 4000;
+    private static final int REFINEMENT_ITERATIONS = 1000;
+    private static final int VALIDATION_SAMPLES = 5000;
+
+    private final Random random = new Random(0);
+    private final List<double[]> validation = new ArrayList<double[]>(VALIDATION_SAMPLES);
+
+    /**
+     * Create the benchmark and its validation set.
+     */
+    public ProgressiveTrainingBenchmark() {
+        for (int i = 0; i < VALIDATION_SAMPLES; i++) {
+            validation.add(sample());
+        }
+    }
+
+    /**
+     * Train both ways and log the time taken and the quality reached.
+     */
+    public void run() {
+        Dimension size = new Dimension(MAP_DIMENSION, MAP_DIMENSION);
+
+        long start = System.nanoTime();
+        CustomizableSOM direct = new CustomizableSOM(size, 3, DIRECT_ITERATIONS);
+        direct.setNeighborhoodMembershipFunctionStrategy(
+                new LinearNeighborhoodMembershipFunction());
+        direct.setNeighborhoodWidthFunctionStrategy(
+                new LinearDecayNeighborhoodWidthFunction(MAP_DIMENSION / 2));
+        for (int i = 0; i < DIRECT_ITERATIONS; i++) {
+            direct.trainWith(sample());
+        }
+        report("Direct", start, direct);
+
+        start = System.nanoTime();
+        ProgressiveTrainer trainer = new ProgressiveTrainer(size, 3,
+                INITIAL_ITERATIONS, REFINEMENT_ITERATIONS);
+        CustomizableSOM progressive = trainer.train(new Iterator<double[]>() {
+            public boolean hasNext() {
+                return true;
+            }
+
+            public double[] next() {
+                return sample();
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        });
+        report("Progressive " + trainer.stageSizes().size() + " stages", start,
+                progressive);
+    }
+
+    private void report(String name, long start, CustomizableSOM som) {
+        double seconds = (System.nanoTime() - start) / 1.0e9;
+        MapQuality quality = new MapQualityEvaluator(som).evaluate(validation);
+        logger.info(String.format("%s: %.2f s, QE %.4f, TE %.4f", name, seconds,
+                quality.getQuantizationError(), quality.getTopographicError()));
+    }
+
+    private double[] sample() {
+        return new double[] {random.nextDouble(), random.nextDouble(), random.nextDouble()};
+    }
+
+    public static void main(String[] args) {
+        new ProgressiveTrainingBenchmark().run();
+    }
+
+    @Override
+    public String toString() {
+        return "ProgressiveTrainingBenchmark";
+    }
+}
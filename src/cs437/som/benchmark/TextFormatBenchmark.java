@@ -0,0 +1,68 @@
+package cs437.som.benchmark;
+
+import cs437.som.Dimension;
+import cs437.som.network.CustomizableSOM;
+import cs437.som.util.FileReader;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.util.logging.Logger;
+
+/**
+ * Measures the throughput of writing and reading a large map in the text
+ * format.
+ */
+public class TextFormatBenchmark {
+    private static final Logger logger = Logger.getLogger("TextFormatBenchmark");
+
+    private static final int MAP_DIMENSION = 400;
+    private static final int INPUT_LENGTH = 16;
+    private static final int RUNS = 5;
+
+    /**
+     * Write and read the map repeatedly and log the throughput of each.
+     *
+     * @throws IOException if the temporary file cannot be written or read.
+     */
+    public void run() throws IOException {
+        CustomizableSOM som = new CustomizableSOM(
+                new Dimension(MAP_DIMENSION, MAP_DIMENSION), INPUT_LENGTH, 1);
+        File file = File.createTempFile("som", ".txt");
+        file.deleteOnExit();
+
+        for (int run = 0; run < RUNS; run++) {
+            long start = System.nanoTime();
+            OutputStreamWriter writer = new OutputStreamWriter(
+                    new BufferedOutputStream(new FileOutputStream(file)));
+            som.write(writer);
+            writer.close();
+            double writeSeconds = seconds(start);
+
+            start = System.nanoTime();
+            FileReader.read(file);
+            double readSeconds = seconds(start);
+
+            double megabytes = file.length() / 1.0e6;
+            logger.info(String.format(
+                    "Run %d: %.1f MB, write %.1f MB/s, read %.1f MB/s",
+                    run, megabytes, megabytes / writeSeconds,
+                    megabytes / readSeconds));
+        }
+    }
+
+    private static double seconds(long start) {
+        return (System.nanoTime() - start) / 1.0e9;
+    }
+
+    public static void main(String[] args) throws IOException {
+        new TextFormatBenchmark().run();
+    }
+
+    @Override
+    public String toString() {
+        return "TextFormatBenchmark";
+    }
+}
@@ -0,0 +1,6 @@
+/**
+ * The {@code benchmark} package contains runnable comparisons of SOMa's
+ * training and search strategies.  Each class has a {@code main} method and
+ * logs its results.
+ */
+package cs437.som.benchmark;
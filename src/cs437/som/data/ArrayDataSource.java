@@ -0,0 +1,85 @@
+package cs437.som.data;
+
+import cs437.som.SOMError;
+
+import java.util.Random;
+
+/**
+ * A data source over samples already held in memory.
+ *
+ * An integer sample set is converted into the reusable vector one sample at
+ * a time rather than copied into a second array of doubles.
+ */
+public class ArrayDataSource extends IndexedDataSource {
+    private final double[][] samples;
+    private final int[][] intSamples;
+
+    /**
+     * Create a source that passes over its samples once, in order.
+     *
+     * @param samples The samples, all of the same length.
+     */
+    public ArrayDataSource(double[][] samples) {
+        this(samples, 1, null);
+    }
+
+    /**
+     * Create a source that makes a number of passes over its samples.
+     *
+     * @param samples The samples, all of the same length.
+     * @param epochs The number of passes over the samples.
+     * @param shuffle The generator used to reorder the samples in each pass,
+     * or {@code null} to visit them in order.
+     */
+    public ArrayDataSource(double[][] samples, int epochs, Random shuffle) {
+        super(sampleLength(samples.length, samples.length == 0 ? 0 : samples[0].length),
+                epochs, shuffle);
+        this.samples = samples;
+        intSamples = null;
+    }
+
+    /**
+     * Create a source that makes a number of passes over integer samples.
+     *
+     * @param samples The samples, all of the same length.
+     * @param epochs The number of passes over the samples.
+     * @param shuffle The generator used to reorder the samples in each pass,
+     * or {@code null} to visit them in order.
+     */
+    public ArrayDataSource(int[][] samples, int epochs, Random shuffle) {
+        super(sampleLength(samples.length, samples.length == 0 ? 0 : samples[0].length),
+                epochs, shuffle);
+        this.samples = null;
+        intSamples = samples;
+    }
+
+    private static int sampleLength(int count, int length) {
+        if (count == 0) {
+            throw new SOMError("A data source needs at least one sample.");
+        }
+        return length;
+    }
+
+    @Override
+    public int getSampleCount() {
+        return samples != null ? samples.length : intSamples.length;
+    }
+
+    @Override
+    protected void fetch(int index, double[] out) {
+        if (samples != null) {
+            System.arraycopy(samples[index], 0, out, 0, out.length);
+        } else {
+            int[] sample = intSamples[index];
+            for (int i = 0; i < out.length; i++) {
+                out[i] = sample[i];
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ArrayDataSource{samples=" + getSampleCount() + ", epoch=" +
+                getEpoch() + '}';
+    }
+}
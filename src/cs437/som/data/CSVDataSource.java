@@ -0,0 +1,725 @@
+package cs437.som.data;
+
+import cs437.som.SOMError;
+import cs437.som.SOMExecutionContext;
+import cs437.som.TrainingDataSource;
+import cs437.som.util.FastDoubleParser;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A data source reading numeric rows from a CSV file.
+ *
+ * The file is read in large blocks of bytes.  Each block is cut into one
+ * byte range per worker thread, every range beginning and ending on a line
+ * boundary, and the ranges are parsed in parallel into flat arrays of
+ * doubles while the next block is read.  Parsing runs on the workers of the
+ * source's execution context, ahead of the consumer, holding at most a few blocks at a time, so files far
+ * larger than the heap can be streamed.
+ *
+ * Every column is read unless a subset is chosen by index or, for a file with
+ * a header line, by name.  Columns that are not read may hold any text.
+ * Fields may be surrounded by whitespace or double quotes; quoted fields may
+ * contain the delimiter but not line breaks.  Blank lines are skipped.  The
+ * file is read from start to end once per epoch; a data set that needs
+ * shuffling should be stored in a format that can be read in any order.
+ *
+ * Options must be set before the first vector or the input length is
+ * requested.
+ */
+public class CSVDataSource implements TrainingDataSource {
+    private static final int BLOCK_BYTES = 1 << 22;
+    private static final int BLOCKS_AHEAD = 2;
+    private static final Block END = new Block(new Slice[0]);
+
+    private final File file;
+    private char delimiter = ',';
+    private boolean header = false;
+    private int[] columnIndexes = null;
+    private String[] columnNames = null;
+    private int epochs = 1;
+    private SOMExecutionContext executionContext = SOMExecutionContext.getDefault();
+    private int parallelism = executionContext.getParallelism();
+
+    private boolean started = false;
+    private int inputLength;
+    private long dataOffset;
+    // The input position of each column, or -1 if it is not read.
+    private int[] positions;
+
+    private BlockingQueue<Block> blocks;
+    private ExecutorService reader;
+    private ExecutorService pool;
+    private volatile Throwable failure = null;
+    private double[] vector;
+    private Block current = null;
+    private int slice = 0;
+    private int row = 0;
+    private boolean finished = false;
+
+    /**
+     * Create a source reading every column of a CSV file.
+     *
+     * @param file The file to read.
+     */
+    public CSVDataSource(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Set the character separating fields.  The default is a comma.
+     *
+     * @param delimiter The field delimiter.
+     */
+    public void setDelimiter(char delimiter) {
+        checkNotStarted();
+        if (delimiter == '"' || delimiter == '\n' || delimiter == '\r') {
+            throw new SOMError("Invalid CSV delimiter.");
+        }
+        this.delimiter = delimiter;
+    }
+
+    /**
+     * Set whether the first line of the file names the columns rather than
+     * holding data.  The default is no header.
+     *
+     * @param header true if the file has a header line.
+     */
+    public void setHeader(boolean header) {
+        checkNotStarted();
+        this.header = header;
+    }
+
+    /**
+     * Read only some columns, in the given order.
+     *
+     * @param columns The 0-based indexes of the columns to read.
+     */
+    public void setColumns(int... columns) {
+        checkNotStarted();
+        if (columns.length == 0) {
+            throw new SOMError("At least one column must be read.");
+        }
+        for (int column : columns) {
+            if (column < 0) {
+                throw new SOMError("Column indexes must not be negative.");
+            }
+        }
+        columnIndexes = columns.clone();
+        columnNames = null;
+    }
+
+    /**
+     * Read only some columns, in the given order, choosing them by the names
+     * in the header line.  Implies {@code setHeader(true)}.
+     *
+     * @param columns The names of the columns to read.
+     */
+    public void setColumns(String... columns) {
+        checkNotStarted();
+        if (columns.length == 0) {
+            throw new SOMError("At least one column must be read.");
+        }
+        columnNames = columns.clone();
+        columnIndexes = null;
+        header = true;
+    }
+
+    /**
+     * Set the number of times the file is read.  The default is once.
+     *
+     * @param epochs The number of passes over the file.
+     */
+    public void setEpochs(int epochs) {
+        checkNotStarted();
+        if (epochs < 1) {
+            throw new SOMError("A data source needs at least one epoch.");
+        }
+        this.epochs = epochs;
+    }
+
+    /**
+     * Set the threads on which blocks are read and parsed.  The number of
+     * slices each block is parsed in becomes the context's parallelism.
+     *
+     * @param context The execution context to use.
+     */
+    public void setExecutionContext(SOMExecutionContext context) {
+        checkNotStarted();
+        executionContext = context;
+        parallelism = context.getParallelism();
+    }
+
+    /**
+     * Set the number of slices each block is parsed in.
+     *
+     * @param parallelism The new slice count.
+     */
+    public void setParallelism(int parallelism) {
+        checkNotStarted();
+        if (parallelism < 1) {
+            throw new SOMError("Parallelism must be positive.");
+        }
+        this.parallelism = parallelism;
+    }
+
+    private void checkNotStarted() {
+        if (started) {
+            throw new SOMError("CSV options cannot change once reading has begun.");
+        }
+    }
+
+    public int getInputLength() {
+        start();
+        return inputLength;
+    }
+
+    public double[] next() {
+        start();
+        if (finished) {
+            return null;
+        }
+
+        while (true) {
+            if (current != null) {
+                while (slice < current.slices.length
+                        && row == current.slices[slice].rows) {
+                    slice++;
+                    row = 0;
+                }
+                if (slice < current.slices.length) {
+                    break;
+                }
+            }
+
+            try {
+                current = blocks.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SOMError("Interrupted while waiting for training data.");
+            }
+            slice = 0;
+            row = 0;
+
+            if (current == END) {
+                finished = true;
+                current = null;
+                if (failure != null) {
+                    throw new SOMError("Could not read " + file + ": " + failure);
+                }
+                return null;
+            }
+        }
+
+        System.arraycopy(current.slices[slice].values, row * inputLength, vector, 0,
+                inputLength);
+        row++;
+        return vector;
+    }
+
+    /**
+     * Stop reading and release the file and threads.
+     */
+    public void close() {
+        finished = true;
+        if (started) {
+            reader.shutdownNow();
+            try {
+                reader.awaitTermination(1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Read the first lines of the file to lay out the columns, then start
+     * reading blocks in the background.
+     */
+    private void start() {
+        if (started) {
+            return;
+        }
+
+        try {
+            layOutColumns();
+        } catch (IOException e) {
+            throw new SOMError("Could not read " + file + ": " + e);
+        }
+        started = true;
+        vector = new double[inputLength];
+
+        blocks = new ArrayBlockingQueue<Block>(BLOCKS_AHEAD + 1);
+        pool = executionContext.getExecutor();
+        reader = executionContext.newStage("SOM CSV reader");
+        reader.execute(new Runnable() {
+            public void run() {
+                readEpochs();
+            }
+        });
+        reader.shutdown();
+    }
+
+    private void layOutColumns() throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            long offset = 0;
+            // Skip a UTF-8 byte order mark.
+            String first = readLine(channel, 0);
+            if (first != null && first.startsWith("\uFEFF")) {
+                offset = 3;
+                first = readLine(channel, offset);
+            }
+
+            String[] names = null;
+            if (header) {
+                if (first == null) {
+                    throw new SOMError(file + " has no header line.");
+                }
+                names = splitFields(first);
+                offset = lineEnd(channel, offset);
+            }
+            dataOffset = offset;
+
+            int[] columns = columnIndexes;
+            if (columnNames != null) {
+                columns = new int[columnNames.length];
+                for (int i = 0; i < columnNames.length; i++) {
+                    columns[i] = Arrays.asList(names).indexOf(columnNames[i]);
+                    if (columns[i] < 0) {
+                        throw new SOMError(file + " has no column named " + columnNames[i]);
+                    }
+                }
+            } else if (columns == null) {
+                String data = readLine(channel, dataOffset);
+                while (data != null && data.trim().isEmpty()) {
+                    offset = lineEnd(channel, offset);
+                    data = readLine(channel, offset);
+                }
+                int count = data != null ? splitFields(data).length
+                        : names != null ? names.length : 0;
+                if (count == 0) {
+                    throw new SOMError(file + " holds no data.");
+                }
+                columns = new int[count];
+                for (int i = 0; i < count; i++) {
+                    columns[i] = i;
+                }
+            }
+
+            int maxColumn = 0;
+            for (int column : columns) {
+                maxColumn = Math.max(maxColumn, column);
+            }
+            positions = new int[maxColumn + 1];
+            Arrays.fill(positions, -1);
+            for (int i = 0; i < columns.length; i++) {
+                if (positions[columns[i]] >= 0) {
+                    throw new SOMError("Column " + columns[i] + " is selected twice.");
+                }
+                positions[columns[i]] = i;
+            }
+            inputLength = columns.length;
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Read one line as text, for laying out the columns.
+     *
+     * @return The line without its terminator, or null at the end of the file.
+     */
+    private static String readLine(FileChannel channel, long offset) throws IOException {
+        long end = lineEnd(channel, offset);
+        if (end == offset) {
+            return null;
+        }
+        ByteBuffer line = ByteBuffer.allocate((int) (end - offset));
+        while (line.hasRemaining() && channel.read(line, offset + line.position()) >= 0) {
+            // Keep reading until the line is complete.
+        }
+        String text = new String(line.array(), 0, line.position(), "UTF-8");
+        return text.replaceAll("\r?\n$", "");
+    }
+
+    /**
+     * Find the offset just after the line starting at a given offset.
+     */
+    private static long lineEnd(FileChannel channel, long offset) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        long position = offset;
+        while (true) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                return position;
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+    }
+
+    private String[] splitFields(String line) {
+        char[] text = line.toCharArray();
+        List<String> fields = new ArrayList<String>();
+        int start = 0;
+        while (true) {
+            int end = fieldEnd(text, start, text.length, delimiter);
+            fields.add(unquote(text, start, end));
+            if (end == text.length) {
+                break;
+            }
+            start = end + 1;
+        }
+        return fields.toArray(new String[fields.size()]);
+    }
+
+    private static String unquote(char[] text, int start, int end) {
+        String field = new String(text, start, end - start).trim();
+        if (field.length() >= 2 && field.charAt(0) == '"'
+                && field.charAt(field.length() - 1) == '"') {
+            field = field.substring(1, field.length() - 1).replace("\"\"", "\"");
+        }
+        return field;
+    }
+
+    /**
+     * Find the delimiter ending a field, skipping over a quoted section.
+     *
+     * @return The delimiter's position, or {@code end} for the last field.
+     */
+    private static int fieldEnd(char[] text, int start, int end, char delimiter) {
+        boolean quoted = false;
+        for (int i = start; i < end; i++) {
+            char c = text[i];
+            if (c == '"') {
+                quoted = !quoted;
+            } else if (c == delimiter && !quoted) {
+                return i;
+            }
+        }
+        return end;
+    }
+
+    /**
+     * Read the file once per epoch, parsing each block while the next is read.
+     * Runs on the background reader thread.
+     */
+    private void readEpochs() {
+        try {
+            byte[] buffer = new byte[BLOCK_BYTES];
+            byte[] spare = new byte[BLOCK_BYTES];
+            for (int epoch = 0; epoch < epochs; epoch++) {
+                FileChannel channel = FileChannel.open(file.toPath(),
+                        StandardOpenOption.READ);
+                try {
+                    channel.position(dataOffset);
+                    int length = fill(channel, buffer, 0);
+                    while (length > 0) {
+                        boolean last = length < buffer.length;
+                        int end = last ? length : lastLineEnd(buffer, length);
+                        if (end == 0) {
+                            // A line longer than the buffer: grow it and read on.
+                            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                            spare = new byte[buffer.length];
+                            length = fill(channel, buffer, length);
+                            continue;
+                        }
+
+                        List<Future<Slice>> slices = parse(buffer, end);
+
+                        // Read the next block while this one is parsed.
+                        int carried = length - end;
+                        System.arraycopy(buffer, end, spare, 0, carried);
+                        int nextLength = last ? 0 : fill(channel, spare, carried);
+
+                        blocks.put(collect(slices));
+                        byte[] swap = buffer;
+                        buffer = spare;
+                        spare = swap;
+                        length = nextLength;
+                    }
+                } finally {
+                    channel.close();
+                }
+            }
+        } catch (InterruptedException e) {
+            // Closed by the consumer.
+            return;
+        } catch (Throwable t) {
+            failure = t;
+        }
+        try {
+            blocks.put(END);
+        } catch (InterruptedException e) {
+            // Closed by the consumer.
+        }
+    }
+
+    /**
+     * Fill a buffer from the file after any carried bytes.
+     *
+     * @return The number of bytes in the buffer.
+     */
+    private static int fill(FileChannel channel, byte[] buffer, int carried)
+            throws IOException {
+        ByteBuffer target = ByteBuffer.wrap(buffer, carried, buffer.length - carried);
+        while (target.hasRemaining() && channel.read(target) >= 0) {
+            // Keep reading until the buffer is full or the file ends.
+        }
+        return target.position();
+    }
+
+    private static int lastLineEnd(byte[] buffer, int length) {
+        for (int i = length - 1; i >= 0; i--) {
+            if (buffer[i] == '\n') {
+                return i + 1;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Cut the complete lines of a block into ranges and start parsing them.
+     */
+    private List<Future<Slice>> parse(final byte[] buffer, int end) {
+        List<Future<Slice>> slices = new ArrayList<Future<Slice>>(parallelism);
+        int from = 0;
+        for (int i = 1; i <= parallelism && from < end; i++) {
+            int to = (int) ((long) end * i / parallelism);
+            while (to < end && buffer[to - 1] != '\n') {
+                to++;
+            }
+            if (to <= from) {
+                continue;
+            }
+
+            final int sliceFrom = from;
+            final int sliceTo = to;
+            slices.add(pool.submit(new Callable<Slice>() {
+                public Slice call() {
+                    return parseRange(buffer, sliceFrom, sliceTo);
+                }
+            }));
+            from = to;
+        }
+        return slices;
+    }
+
+    private static Block collect(List<Future<Slice>> slices) throws InterruptedException {
+        Slice[] parsed = new Slice[slices.size()];
+        try {
+            for (int i = 0; i < parsed.length; i++) {
+                parsed[i] = slices.get(i).get();
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new SOMError("Failed parsing CSV: " + cause);
+        }
+        return new Block(parsed);
+    }
+
+    /**
+     * Parse the lines in a range of bytes.
+     */
+    private Slice parseRange(byte[] bytes, int from, int to) {
+        Slice slice = new Slice(Math.max(inputLength, (to - from) / 8));
+        char[] field = new char[64];
+        int position = from;
+        while (position < to) {
+            int lineEnd = position;
+            while (lineEnd < to && bytes[lineEnd] != '\n') {
+                lineEnd++;
+            }
+            int end = lineEnd;
+            if (end > position && bytes[end - 1] == '\r') {
+                end--;
+            }
+
+            if (!isBlank(bytes, position, end)) {
+                field = parseLine(bytes, position, end, slice, field);
+            }
+            position = lineEnd + 1;
+        }
+        return slice;
+    }
+
+    private static boolean isBlank(byte[] bytes, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (bytes[i] != ' ' && bytes[i] != '\t') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Parse the selected fields of one line into a new row of a slice.
+     *
+     * @return The scratch buffer, grown if a field did not fit.
+     */
+    private char[] parseLine(byte[] bytes, int start, int end, Slice slice, char[] field) {
+        double[] values = slice.addRow(inputLength);
+        int base = (slice.rows - 1) * inputLength;
+
+        int column = 0;
+        int position = start;
+        while (column < positions.length) {
+            int fieldStart = position;
+            boolean quoted = false;
+            while (position < end && (quoted || bytes[position] != delimiter)) {
+                if (bytes[position] == '"') {
+                    quoted = !quoted;
+                }
+                position++;
+            }
+
+            if (positions[column] >= 0) {
+                // Trim whitespace and quotes, then copy the field to characters.
+                int s = fieldStart;
+                int e = position;
+                while (s < e && (bytes[s] == ' ' || bytes[s] == '\t' || bytes[s] == '"')) {
+                    s++;
+                }
+                while (e > s && (bytes[e - 1] == ' ' || bytes[e - 1] == '\t'
+                        || bytes[e - 1] == '"')) {
+                    e--;
+                }
+                if (e - s > field.length) {
+                    field = new char[e - s];
+                }
+                for (int i = s; i < e; i++) {
+                    field[i - s] = (char) (bytes[i] & 0xFF);
+                }
+                values[base + positions[column]] = parseNumber(field, e - s);
+            }
+
+            column++;
+            if (position == end) {
+                break;
+            }
+            position++;
+        }
+
+        if (column < positions.length) {
+            throw new SOMError("A row of " + file + " has " + column +
+                    " columns; at least " + positions.length + " are needed.");
+        }
+        return field;
+    }
+
+    private static double parseNumber(char[] field, int length) {
+        if (isPlainNumber(field, length)) {
+            return FastDoubleParser.parse(field, 0, length);
+        }
+        String text = new String(field, 0, length);
+        try {
+            return Double.parseDouble(text);
+        } catch (NumberFormatException e) {
+            throw new SOMError("Not a number in CSV: '" + text + "'");
+        }
+    }
+
+    /**
+     * Check that a field has the form FastDoubleParser accepts.
+     */
+    private static boolean isPlainNumber(char[] field, int length) {
+        int i = 0;
+        if (i < length && (field[i] == '+' || field[i] == '-')) {
+            i++;
+        }
+        int digits = i;
+        while (i < length && field[i] >= '0' && field[i] <= '9') {
+            i++;
+        }
+        boolean whole = i > digits;
+        if (i < length && field[i] == '.') {
+            i++;
+            int fraction = i;
+            while (i < length && field[i] >= '0' && field[i] <= '9') {
+                i++;
+            }
+            if (i == fraction) {
+                return false;
+            }
+        } else if (!whole) {
+            return false;
+        }
+        if (i < length && (field[i] == 'e' || field[i] == 'E')) {
+            i++;
+            if (i < length && (field[i] == '+' || field[i] == '-')) {
+                i++;
+            }
+            int exponent = i;
+            while (i < length && field[i] >= '0' && field[i] <= '9') {
+                i++;
+            }
+            if (i == exponent) {
+                return false;
+            }
+        }
+        return i == length;
+    }
+
+    @Override
+    public String toString() {
+        return "CSVDataSource{file=" + file + ", delimiter=" + delimiter +
+                ", header=" + header + ", epochs=" + epochs + '}';
+    }
+
+    /**
+     * The rows parsed from one byte range, stored end to end.
+     */
+    private static class Slice {
+        private double[] values;
+        private int rows = 0;
+
+        Slice(int capacity) {
+            values = new double[capacity];
+        }
+
+        double[] addRow(int inputLength) {
+            int needed = (rows + 1) * inputLength;
+            if (needed > values.length) {
+                values = Arrays.copyOf(values, Math.max(needed, values.length * 2));
+            }
+            rows++;
+            return values;
+        }
+    }
+
+    /**
+     * The slices of one block, in file order.
+     */
+    private static class Block {
+        private final Slice[] slices;
+
+        Block(Slice[] slices) {
+            this.slices = slices;
+        }
+    }
+}
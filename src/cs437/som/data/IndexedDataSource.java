@@ -0,0 +1,121 @@
+package cs437.som.data;
+
+import cs437.som.SOMError;
+import cs437.som.TrainingDataSource;
+
+import java.util.Random;
+
+/**
+ * A data source over a fixed, numbered set of samples that can be fetched in
+ * any order.
+ *
+ * The samples are supplied for a given number of epochs, each a complete
+ * pass over the set.  If the source is given a random number generator, each
+ * epoch visits the samples in a new random order; otherwise they are visited
+ * in index order.  Subclasses only have to count the samples and copy one
+ * into a vector.
+ */
+public abstract class IndexedDataSource implements TrainingDataSource {
+    private final int inputLength;
+    private final int epochs;
+    private final Random shuffle;
+    private final double[] vector;
+
+    private int[] order = null;
+    private int epoch = 0;
+    private int position = 0;
+
+    /**
+     * Create a source that makes a number of passes over its samples.
+     *
+     * @param inputLength The length of every sample.
+     * @param epochs The number of passes over the samples.
+     * @param shuffle The generator used to reorder the samples in each pass,
+     * or {@code null} to visit them in index order.
+     */
+    protected IndexedDataSource(int inputLength, int epochs, Random shuffle) {
+        if (epochs < 1) {
+            throw new SOMError("A data source needs at least one epoch.");
+        }
+
+        this.inputLength = inputLength;
+        this.epochs = epochs;
+        this.shuffle = shuffle;
+        vector = new double[inputLength];
+    }
+
+    /**
+     * Get the number of samples in one epoch.
+     *
+     * @return The sample count.
+     */
+    public abstract int getSampleCount();
+
+    /**
+     * Copy a sample into a vector.
+     *
+     * @param index The sample's index, from 0 to {@code getSampleCount() - 1}.
+     * @param out The vector to fill.
+     */
+    protected abstract void fetch(int index, double[] out);
+
+    public int getInputLength() {
+        return inputLength;
+    }
+
+    /**
+     * Get the current epoch.
+     *
+     * @return The number of complete passes made over the samples.
+     */
+    public int getEpoch() {
+        return epoch;
+    }
+
+    public double[] next() {
+        int count = getSampleCount();
+        if (position == count) {
+            epoch++;
+            position = 0;
+        }
+        if (epoch >= epochs || count == 0) {
+            return null;
+        }
+
+        int index = position;
+        if (shuffle != null) {
+            if (position == 0) {
+                shuffleOrder(count);
+            }
+            index = order[position];
+        }
+        position++;
+
+        fetch(index, vector);
+        return vector;
+    }
+
+    /**
+     * Draw a new random order of the samples.
+     */
+    private void shuffleOrder(int count) {
+        if (order == null || order.length != count) {
+            order = new int[count];
+            for (int i = 0; i < count; i++) {
+                order[i] = i;
+            }
+        }
+        for (int i = count - 1; i > 0; i--) {
+            int j = shuffle.nextInt(i + 1);
+            int swap = order[i];
+            order[i] = order[j];
+            order[j] = swap;
+        }
+    }
+
+    /**
+     * Does nothing; override to release resources.
+     */
+    public void close() {
+    }
+}
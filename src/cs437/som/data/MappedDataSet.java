@@ -0,0 +1,395 @@
+package cs437.som.data;
+
+import cs437.som.SOMError;
+import cs437.som.TrainingDataSource;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A data set of numeric rows read directly from a memory-mapped file.
+ *
+ * Two formats are accepted.  The packed format is a small header followed by
+ * the rows as contiguous little-endian doubles:
+ *
+ * <pre>
+ * offset  size  field
+ *      0     4  magic number, the bytes "SOMD"
+ *      4     4  format version, currently 1
+ *      8     4  row length
+ *     12     4  reserved, 0
+ *     16     8  row count
+ *     24     8  reserved, 0
+ *     32     -  rows
+ * </pre>
+ *
+ * NumPy {@code .npy} files holding a two-dimensional array of float64 or
+ * float32 values in C order, of either byte order, are read as they are.  A
+ * one-dimensional array is read as rows of length 1.
+ *
+ * Opening a data set reads only its header.  Rows are read from the mapped
+ * file when they are requested, so data sets larger than the heap can be
+ * used and pages the operating system has already cached are not read
+ * again.  A data set can be trained with, in order or shuffled, through
+ * {@link #dataSource(int, Random)}, and iterated over, for instance to
+ * measure a map with a {@link cs437.som.metrics.MapQualityEvaluator} or to
+ * initialize one with a
+ * {@link cs437.som.initialization.LinearWeightInitializer}.  Neither copies
+ * more than the row being used into the heap.
+ *
+ * A single mapping cannot exceed 2 GB, so larger files are mapped as several
+ * segments, each holding a whole number of rows.
+ */
+public class MappedDataSet implements Iterable<double[]> {
+    /**
+     * The bytes "SOMD" read as a little-endian integer.
+     */
+    static final int MAGIC = 0x444D4F53;
+
+    /**
+     * The current packed format version.
+     */
+    static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 32;
+    private static final byte[] NPY_MAGIC = {(byte) 0x93, 'N', 'U', 'M', 'P', 'Y'};
+    private static final Pattern descrRegEx = Pattern.compile(
+            "'descr'\\s*:\\s*'([<>|=])([fi])(\\d+)'");
+    private static final Pattern fortranRegEx = Pattern.compile(
+            "'fortran_order'\\s*:\\s*(True|False)");
+    private static final Pattern shapeRegEx = Pattern.compile(
+            "'shape'\\s*:\\s*\\(\\s*(\\d+)\\s*,?\\s*(\\d+)?\\s*,?\\s*\\)");
+
+    private final File file;
+    private final long rowCount;
+    private final int inputLength;
+    private final boolean singlePrecision;
+    private final int rowsPerSegment;
+    private final ByteBuffer[] segments;
+
+    /**
+     * Map a data set file.
+     *
+     * @param file A packed data set or a NumPy {@code .npy} file.
+     * @throws IOException if the file cannot be read or mapped.
+     */
+    public MappedDataSet(File file) throws IOException {
+        this(file, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Map a data set file in segments of a given size.
+     *
+     * @param file A packed data set or a NumPy {@code .npy} file.
+     * @param maxSegmentBytes The largest mapping to create.
+     * @throws IOException if the file cannot be read or mapped.
+     */
+    MappedDataSet(File file, int maxSegmentBytes) throws IOException {
+        this.file = file;
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            ByteBuffer start = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            while (start.hasRemaining() && channel.read(start) >= 0) {
+                // Keep reading until the header is complete or the file ends.
+            }
+            start.flip();
+
+            long dataOffset;
+            ByteOrder order = ByteOrder.LITTLE_ENDIAN;
+            if (start.remaining() >= 4 && start.getInt(0) == MAGIC) {
+                if (start.remaining() < HEADER_SIZE) {
+                    throw new SOMError(file + " is truncated.");
+                }
+                int version = start.getInt(4);
+                if (version != VERSION) {
+                    throw new SOMError("Unsupported data set version " + version);
+                }
+                inputLength = start.getInt(8);
+                rowCount = start.getLong(16);
+                singlePrecision = false;
+                dataOffset = HEADER_SIZE;
+            } else if (isNpy(start)) {
+                int major = start.get(6);
+                int headerLength;
+                if (major == 1) {
+                    headerLength = start.getShort(8) & 0xFFFF;
+                    dataOffset = 10 + headerLength;
+                } else {
+                    headerLength = start.getInt(8);
+                    dataOffset = 12 + headerLength;
+                }
+                ByteBuffer header = ByteBuffer.allocate(headerLength);
+                while (header.hasRemaining()
+                        && channel.read(header, dataOffset - headerLength + header.position()) >= 0) {
+                    // Keep reading until the header is complete or the file ends.
+                }
+                String dictionary = new String(header.array(), 0, header.position(), "ISO-8859-1");
+
+                Matcher descr = descrRegEx.matcher(dictionary);
+                Matcher fortran = fortranRegEx.matcher(dictionary);
+                Matcher shape = shapeRegEx.matcher(dictionary);
+                if (!descr.find() || !shape.find()) {
+                    throw new SOMError(file + " has an unreadable NumPy header.");
+                }
+                if (!descr.group(2).equals("f")
+                        || !(descr.group(3).equals("8") || descr.group(3).equals("4"))) {
+                    throw new SOMError(file + " does not hold float64 or float32 values.");
+                }
+                if (fortran.find() && fortran.group(1).equals("True")) {
+                    throw new SOMError(file + " is stored in Fortran order.");
+                }
+                singlePrecision = descr.group(3).equals("4");
+                if (descr.group(1).equals(">")) {
+                    order = ByteOrder.BIG_ENDIAN;
+                }
+                rowCount = Long.parseLong(shape.group(1));
+                inputLength = shape.group(2) != null ? Integer.parseInt(shape.group(2)) : 1;
+            } else {
+                throw new SOMError(file + " is not a data set.");
+            }
+
+            long rowBytes = (long) inputLength * elementSize();
+            if (rowBytes == 0 || rowBytes > maxSegmentBytes) {
+                throw new SOMError("A single row does not fit in a mapped segment.");
+            }
+            if (channel.size() < dataOffset + rowCount * rowBytes) {
+                throw new SOMError(file + " is truncated.");
+            }
+            rowsPerSegment = (int) Math.min(maxSegmentBytes / rowBytes, Math.max(1, rowCount));
+
+            segments = new ByteBuffer[(int) ((rowCount + rowsPerSegment - 1) / rowsPerSegment)];
+            for (int i = 0; i < segments.length; i++) {
+                long first = (long) i * rowsPerSegment;
+                long count = Math.min(rowsPerSegment, rowCount - first);
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY,
+                        dataOffset + first * rowBytes, count * rowBytes).order(order);
+            }
+        } finally {
+            // Mappings stay valid after the channel is closed.
+            channel.close();
+        }
+    }
+
+    private static boolean isNpy(ByteBuffer start) {
+        if (start.remaining() < 12) {
+            return false;
+        }
+        for (int i = 0; i < NPY_MAGIC.length; i++) {
+            if (start.get(i) != NPY_MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int elementSize() {
+        return singlePrecision ? 4 : 8;
+    }
+
+    /**
+     * Get the number of rows.
+     *
+     * @return The row count.
+     */
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Get the length of every row.
+     *
+     * @return The row length.
+     */
+    public int getInputLength() {
+        return inputLength;
+    }
+
+    /**
+     * Copy a row into a vector.
+     *
+     * @param row The row's index.
+     * @param out The vector to fill.
+     */
+    public void getRow(long row, double[] out) {
+        ByteBuffer segment = segments[(int) (row / rowsPerSegment)];
+        int offset = (int) (row % rowsPerSegment) * inputLength * elementSize();
+        if (singlePrecision) {
+            for (int i = 0; i < inputLength; i++) {
+                out[i] = segment.getFloat(offset + i * 4);
+            }
+        } else {
+            for (int i = 0; i < inputLength; i++) {
+                out[i] = segment.getDouble(offset + i * 8);
+            }
+        }
+    }
+
+    /**
+     * Get a read-only view of a float64 row without copying it.
+     *
+     * @param row The row's index.
+     * @return The row, backed by the mapped file.
+     * @throws SOMError if the data set holds float32 values.
+     */
+    public DoubleBuffer getRowView(long row) {
+        if (singlePrecision) {
+            throw new SOMError("A float32 row cannot be viewed as doubles.");
+        }
+        ByteBuffer view = sliceRow(row);
+        return view.asDoubleBuffer().asReadOnlyBuffer();
+    }
+
+    /**
+     * Get a read-only view of a float32 row without copying it.
+     *
+     * @param row The row's index.
+     * @return The row, backed by the mapped file.
+     * @throws SOMError if the data set holds float64 values.
+     */
+    public FloatBuffer getFloatRowView(long row) {
+        if (!singlePrecision) {
+            throw new SOMError("A float64 row cannot be viewed as floats.");
+        }
+        return sliceRow(row).asFloatBuffer().asReadOnlyBuffer();
+    }
+
+    private ByteBuffer sliceRow(long row) {
+        ByteBuffer segment = segments[(int) (row / rowsPerSegment)];
+        int rowBytes = inputLength * elementSize();
+        int offset = (int) (row % rowsPerSegment) * rowBytes;
+        ByteBuffer view = segment.duplicate();
+        view.position(offset).limit(offset + rowBytes);
+        return view.slice().order(segment.order());
+    }
+
+    /**
+     * Create a source that trains with the rows of this data set.
+     *
+     * @param epochs The number of passes over the rows.
+     * @param shuffle The generator used to reorder the rows in each pass, or
+     * {@code null} to visit them in order.
+     * @return The new source.
+     */
+    public TrainingDataSource dataSource(int epochs, Random shuffle) {
+        if (rowCount > Integer.MAX_VALUE) {
+            throw new SOMError("Data sets of more than " + Integer.MAX_VALUE +
+                    " rows cannot be indexed.");
+        }
+        return new IndexedDataSource(inputLength, epochs, shuffle) {
+            @Override
+            public int getSampleCount() {
+                return (int) rowCount;
+            }
+
+            @Override
+            protected void fetch(int index, double[] out) {
+                getRow(index, out);
+            }
+        };
+    }
+
+    /**
+     * Iterate over the rows in order.  The iterator returns the same array
+     * for every row.
+     *
+     * @return An iterator over the rows.
+     */
+    public Iterator<double[]> iterator() {
+        return new Iterator<double[]>() {
+            private final double[] vector = new double[inputLength];
+            private long row = 0;
+
+            public boolean hasNext() {
+                return row < rowCount;
+            }
+
+            public double[] next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                getRow(row++, vector);
+                return vector;
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * Write the vectors of a data source to a file in the packed format.
+     *
+     * @param source The vectors to write.  The source is not closed.
+     * @param file The file to write to.  It is replaced if it exists.
+     * @return The number of rows written.
+     * @throws IOException if writing fails.
+     */
+    public static long write(TrainingDataSource source, File file) throws IOException {
+        int inputLength = source.getInputLength();
+        FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putInt(inputLength).putInt(0)
+                    .putLong(0).putLong(0);
+            header.flip();
+            writeFully(channel, header);
+
+            int rowBytes = inputLength * 8;
+            ByteBuffer chunk = ByteBuffer.allocateDirect(
+                    Math.max(1, (1 << 20) / rowBytes) * rowBytes)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            DoubleBuffer doubles = chunk.asDoubleBuffer();
+            long rows = 0;
+            for (double[] row = source.next(); row != null; row = source.next()) {
+                if (doubles.remaining() < inputLength) {
+                    chunk.clear().limit(doubles.position() * 8);
+                    writeFully(channel, chunk);
+                    doubles.clear();
+                }
+                doubles.put(row, 0, inputLength);
+                rows++;
+            }
+            chunk.clear().limit(doubles.position() * 8);
+            writeFully(channel, chunk);
+
+            // Fill in the row count now that it is known.
+            header.clear();
+            header.putLong(16, rows);
+            header.position(16).limit(24);
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+            return rows;
+        } finally {
+            channel.close();
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer)
+            throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "MappedDataSet{file=" + file + ", rows=" + rowCount +
+                ", inputLength=" + inputLength + ", float32=" + singlePrecision + '}';
+    }
+}
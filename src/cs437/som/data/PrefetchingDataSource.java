@@ -0,0 +1,205 @@
+package cs437.som.data;
+
+import cs437.som.SOMError;
+import cs437.som.SOMExecutionContext;
+import cs437.som.TrainingDataSource;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads another data source ahead of its consumer on a background thread.
+ *
+ * Vectors are copied from the wrapped source into a bounded ring of batches.
+ * The background thread fills empty batches while the consumer trains with
+ * full ones, so a source that reads from disk or computes its samples does so
+ * while the map is busy rather than between iterations.  Vectors are moved in
+ * batches to keep the cost of handing them between threads well below the
+ * cost of a training step.  When every batch is full the background thread
+ * waits, so the memory used stays fixed however large the data set is.
+ *
+ * The wrapped source is only touched by the background thread and is closed
+ * along with this source.
+ */
+public class PrefetchingDataSource implements TrainingDataSource {
+    /**
+     * The default number of batches in the ring.
+     */
+    public static final int DEFAULT_CAPACITY = 4;
+
+    private static final int BATCH_DOUBLES = 1 << 13;
+    private static final Batch END = new Batch(0, 0);
+
+    private final TrainingDataSource source;
+    private final int inputLength;
+    private final BlockingQueue<Batch> empty;
+    private final BlockingQueue<Batch> full;
+
+    private Batch current = null;
+    private int position = 0;
+    private boolean finished = false;
+    private volatile Throwable failure = null;
+
+    private final ExecutorService prefetcher;
+
+    /**
+     * Prefetch a source with the default ring size.
+     *
+     * @param source The source to read ahead.
+     */
+    public PrefetchingDataSource(TrainingDataSource source) {
+        this(source, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Prefetch a source.
+     *
+     * @param source The source to read ahead.
+     * @param capacity The number of batches in the ring.
+     */
+    public PrefetchingDataSource(TrainingDataSource source, int capacity) {
+        this(source, capacity, SOMExecutionContext.getDefault());
+    }
+
+    /**
+     * Prefetch a source on a thread from a given execution context.
+     *
+     * @param source The source to read ahead.
+     * @param capacity The number of batches in the ring.
+     * @param context The context providing the background thread.
+     */
+    public PrefetchingDataSource(TrainingDataSource source, int capacity,
+                                 SOMExecutionContext context) {
+        if (capacity < 2) {
+            throw new SOMError("A prefetch ring needs at least two batches.");
+        }
+
+        this.source = source;
+        inputLength = source.getInputLength();
+        int batchSize = Math.max(1, BATCH_DOUBLES / Math.max(1, inputLength));
+        empty = new ArrayBlockingQueue<Batch>(capacity);
+        // One extra slot so the end marker never waits for room.
+        full = new ArrayBlockingQueue<Batch>(capacity + 1);
+        for (int i = 0; i < capacity; i++) {
+            empty.add(new Batch(batchSize, inputLength));
+        }
+
+        prefetcher = context.newStage("SOM data prefetcher");
+        prefetcher.execute(new Runnable() {
+            public void run() {
+                prefetch();
+            }
+        });
+        // The thread exits once the source is exhausted.
+        prefetcher.shutdown();
+    }
+
+    /**
+     * Fill batches from the wrapped source until it is exhausted.  Runs on
+     * the background thread.
+     */
+    private void prefetch() {
+        Batch batch = null;
+        try {
+            boolean exhausted = false;
+            while (!exhausted) {
+                batch = empty.take();
+                batch.count = 0;
+                while (batch.count < batch.rows.length) {
+                    double[] vector = source.next();
+                    if (vector == null) {
+                        exhausted = true;
+                        break;
+                    }
+                    System.arraycopy(vector, 0, batch.rows[batch.count], 0, inputLength);
+                    batch.count++;
+                }
+                if (batch.count > 0) {
+                    full.put(batch);
+                }
+                batch = null;
+            }
+        } catch (InterruptedException e) {
+            // Closed by the consumer.
+            return;
+        } catch (Throwable t) {
+            // Deliver the vectors read before the failure.  Every batch and
+            // the end marker fit in the full queue, so neither waits.
+            if (batch != null && batch.count > 0) {
+                full.add(batch);
+            }
+            failure = t;
+        }
+        full.add(END);
+    }
+
+    public int getInputLength() {
+        return inputLength;
+    }
+
+    public double[] next() {
+        if (finished) {
+            return null;
+        }
+
+        if (current == null || position == current.count) {
+            if (current != null) {
+                empty.add(current);
+            }
+            try {
+                current = full.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SOMError("Interrupted while waiting for training data.");
+            }
+            position = 0;
+
+            if (current == END) {
+                finished = true;
+                current = null;
+                if (failure != null) {
+                    throw new SOMError("Could not read training data: " + failure);
+                }
+                return null;
+            }
+        }
+        return current.rows[position++];
+    }
+
+    /**
+     * Stop prefetching and close the wrapped source.
+     */
+    public void close() {
+        finished = true;
+        prefetcher.shutdownNow();
+        try {
+            // The wrapped source may be in use until the prefetcher stops.
+            while (!prefetcher.awaitTermination(1, TimeUnit.SECONDS)) {
+                prefetcher.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            source.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "PrefetchingDataSource{source=" + source + '}';
+    }
+
+    /**
+     * One slot of the ring.
+     */
+    private static class Batch {
+        private final double[][] rows;
+        private int count = 0;
+
+        Batch(int size, int inputLength) {
+            rows = new double[size][inputLength];
+        }
+    }
+}
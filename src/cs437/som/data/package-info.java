@@ -0,0 +1,7 @@
+/**
+ * The {@code data} package contains sources of training vectors for
+ * self-organizing maps.  These classes all implement
+ * {@link cs437.som.TrainingDataSource} in {@link cs437.som}, either directly
+ * or indirectly.
+ */
+package cs437.som.data;
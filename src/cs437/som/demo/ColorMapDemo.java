@@ -2,11 +2,14 @@ package cs437.som.demo;
 
 import cs437.som.Dimension;
 import cs437.som.TrainableSelfOrganizingMap;
+import cs437.som.TrainingDataSource;
+import cs437.som.data.ArrayDataSource;
 import cs437.som.distancemetrics.EuclideanDistanceMetric;
 import cs437.som.membership.GeometricNeighborhoodMembershipFunction;
 import cs437.som.neighborhood.LinearDecayNeighborhoodWidthFunction;
 import cs437.som.network.CustomizableSOM;
 import cs437.som.topology.OffsetHexagonalGrid;
+import cs437.som.training.ConvergenceMonitor;
 import cs437.som.visualization.SOMColorPlotter;
 import cs437.som.visualization.SOMHeatMap;
 
@@ -53,16 +56,23 @@ public class ColorMapDemo {
         logger.info("Before Training");
         double[] heatMapSample = {1,0,0}; // show red component in heat map
 
-        // Train the SOM on the samples, repeatedly update the visuals
-        for (int i = 0; i < iterations; i++) {
-            double[] in = samples[r.nextInt(samples.length)];
-            som.trainWith(in);
+        // Train the SOM on the samples, repeatedly update the visuals, until
+        // the map stops improving
+        ConvergenceMonitor monitor = new ConvergenceMonitor(som);
+        monitor.setFinishingIterations(iterations / 10);
+        TrainingDataSource source = new ArrayDataSource(samples,
+                (iterations + samples.length - 1) / samples.length, r);
+        for (double[] in = source.next(); in != null; in = source.next()) {
+            boolean improving = monitor.trainWith(in);
             plot.draw();
             heatMap.refresh(heatMapSample);
             heatMap.draw();
+            if (!improving) {
+                break;
+            }
         }
 
-        logger.info("After training");
+        logger.info("After training: " + monitor);
         // Iterate though component heat maps
         double[][] rgb = {{1,0,0},{0,1,0},{0,0,1}};
         while (heatMap.isEnabled()) {
@@ -141,7 +141,8 @@ public class EdgeDetectionRunner implements PropertyChangeListener {
      */
     private void createSampleSOM() {
         int iterations = Integer.parseInt(iterationCountInput.getText());
-        TrainableSelfOrganizingMap som = mapConfig.createSOM(9, iterations);
+        TrainableSelfOrganizingMap som = mapConfig.createSOM(9, iterations,
+                EdgeDetector.sample());
         ed = EdgeDetector.trainRandomlyFromMap(som, iterations);
     }
 
@@ -150,7 +151,8 @@ public class EdgeDetectionRunner implements PropertyChangeListener {
      */
     private void createExhaustiveSOM() {
         int iterations = EdgeDetector.threeRaiseNine;
-        TrainableSelfOrganizingMap som = mapConfig.createSOM(9, iterations);
+        TrainableSelfOrganizingMap som = mapConfig.createSOM(9, iterations,
+                EdgeDetector.sample());
         ed = EdgeDetector.trainExhaustivelyFromMap(som);
     }
 
@@ -206,6 +208,7 @@ public class EdgeDetectionRunner implements PropertyChangeListener {
      */
     private void createUIComponents() {
         mapConfig.addPropertyChangeListener(this);
+        mapConfig.setSampleAvailable(true);
 
         setupTrainingRadios();
 
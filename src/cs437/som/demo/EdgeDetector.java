@@ -1,6 +1,9 @@
 package cs437.som.demo;
 
 import cs437.som.TrainableSelfOrganizingMap;
+import cs437.som.TrainingDataSource;
+import cs437.som.data.IndexedDataSource;
+import cs437.som.training.ConvergenceMonitor;
 import cs437.som.util.SOMBuilder;
 
 import javax.imageio.ImageIO;
@@ -11,7 +14,9 @@ import java.io.File;
 import java.io.IOException;
 import java.security.SecureRandom;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Random;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -54,7 +59,7 @@ public class EdgeDetector {
      * @param iterations The number of iterations used in training the SOM.
      */
     private EdgeDetector(int iterations) {
-        SOMBuilder somb = new SOMBuilder(9, iterations);
+        SOMBuilder somb = new SOMBuilder(9, iterations, sample());
         somb.setVisible(true);
         som = somb.getMap();
     }
@@ -97,35 +102,33 @@ public class EdgeDetector {
      * @param n The number of sample inputs to use for training.
      */
     private void trainWithRandomPermutations(int n) {
-        int[][] matrices = generateRandomPermutations(n);
-        log.info("Training.");
-        for (int[] matrix : matrices) {
-            som.trainWith(matrix);
-        }
-        log.info("Training complete.");
+        train(randomPermutations(n));
     }
 
     /**
      * Generate a random sampling of input matrices.
      *
      * @param n The number of samples to produce.
-     * @return An array (size n) of double[9], each of which represents a 3x3
-     * matrix in row major form.
+     * @return A source of n vectors of length 9, each of which represents a
+     * 3x3 matrix in row major form.
      */
-    private int[][] generateRandomPermutations(int n) {
-        int[][] permutations = new int[n][9];
-        Random r = new SecureRandom();
-
+    private TrainingDataSource randomPermutations(final int n) {
         log.info("Generating " + n + " random matrices.");
-        for (int i = 0; i < permutations.length; i++) {
-            permutations[i] = new int[] {
-                    r.nextInt(3) - 1, r.nextInt(3) - 1, r.nextInt(3) - 1,
-                    r.nextInt(3) - 1, r.nextInt(3) - 1, r.nextInt(3) - 1,
-                    r.nextInt(3) - 1, r.nextInt(3) - 1, r.nextInt(3) - 1
-            };
-        }
+        return new IndexedDataSource(9, 1, null) {
+            private final Random r = new SecureRandom();
 
-        return permutations;
+            @Override
+            public int getSampleCount() {
+                return n;
+            }
+
+            @Override
+            protected void fetch(int index, double[] out) {
+                for (int i = 0; i < out.length; i++) {
+                    out[i] = r.nextInt(3) - 1;
+                }
+            }
+        };
     }
 
     /**
@@ -133,37 +136,90 @@ public class EdgeDetector {
      * matrix being shown to it once.
      */
     public void trainExhaustively() {
-        int[][] matrices = generateAllPermutations();
+        train(allPermutations());
+    }
+
+    /**
+     * Train the edge detector's self-organizing map with a set of input
+     * matrices, stopping early if the map converges.
+     *
+     * @param matrices The input matrices to train with.
+     */
+    private void train(TrainingDataSource matrices) {
         log.info("Training.");
-        for (int[] matrix : matrices) {
-            som.trainWith(matrix);
-        }
-        log.info("Training complete.");
+        ConvergenceMonitor monitor = new ConvergenceMonitor(som);
+        monitor.train(matrices);
+        matrices.close();
+        log.info("Training complete: " + monitor);
+    }
+
+    /**
+     * Get every possible input matrix, for a weight initializer to analyze.
+     * Random training draws uniformly from the same matrices, so this
+     * represents both kinds of training.
+     *
+     * @return The 19683 (3^9) input matrices, streamed afresh by each
+     * iterator.  An iterator may return the same array repeatedly.
+     */
+    public static Iterable<double[]> sample() {
+        return new Iterable<double[]>() {
+            public Iterator<double[]> iterator() {
+                final TrainingDataSource matrices = allPermutations();
+                return new Iterator<double[]>() {
+                    // Fetched only once the previous matrix has been used,
+                    // since the source refills the same array.
+                    private double[] pending = null;
+                    private boolean exhausted = false;
+
+                    public boolean hasNext() {
+                        if (pending == null && !exhausted) {
+                            pending = matrices.next();
+                            exhausted = pending == null;
+                        }
+                        return pending != null;
+                    }
+
+                    public double[] next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        double[] matrix = pending;
+                        pending = null;
+                        return matrix;
+                    }
+
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+        };
     }
 
     /**
      * Generate all possible input matrices.
      *
-     * @return An array (size 19683, or 3^9) of double[9], each of which
+     * @return A source of 19683 (3^9) vectors of length 9, each of which
      * represents a 3x3 matrix in row major form.
      */
-	private int[][] generateAllPermutations() {
-        int[] possibleValues  = { -1, 0, 1 };
-        int rows = threeRaiseNine;
-        int cols = 9;
-
-		int[][] permutations = new int[rows][cols];
-
-        for (int i = 0; i < rows; i++) {
-            int factor = 1;
-            for (int j = 0; j < cols; j++) {
-				permutations[i][j] = possibleValues[i / factor % possibleValues.length];
-				factor *= possibleValues.length;
-			}
-		}
-
-		return permutations;
-	}
+    private static TrainingDataSource allPermutations() {
+        final int[] possibleValues  = { -1, 0, 1 };
+        return new IndexedDataSource(9, 1, null) {
+            @Override
+            public int getSampleCount() {
+                return threeRaiseNine;
+            }
+
+            @Override
+            protected void fetch(int index, double[] out) {
+                int factor = 1;
+                for (int j = 0; j < out.length; j++) {
+                    out[j] = possibleValues[index / factor % possibleValues.length];
+                    factor *= possibleValues.length;
+                }
+            }
+        };
+    }
 
     /**
      * Detect the edges in an image.
@@ -16,6 +16,7 @@ import cs437.som.SOMError;
  * </pre>
  */
 public class ChebyshevDistanceMetric implements DistanceMetric {
+    private static final long serialVersionUID = 1L;
 
     /**
      * Calculate the Chebyshev distance between 2 vectors.
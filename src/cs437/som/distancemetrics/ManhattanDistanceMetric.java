@@ -15,6 +15,7 @@ import cs437.som.SOMError;
  * </pre>
  */
 public class ManhattanDistanceMetric implements DistanceMetric {
+    private static final long serialVersionUID = 1L;
 
     /**
      * Calculate the Manhattan distance between 2 vectors.
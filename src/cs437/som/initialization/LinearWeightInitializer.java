@@ -0,0 +1,417 @@
+package cs437.som.initialization;
+
+import cs437.som.Dimension;
+import cs437.som.SOMError;
+import cs437.som.SOMExecutionContext;
+import cs437.som.WeightInitializer;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Linear weight initialization strategy.
+ *
+ * The two principal components of a training sample are found, and the
+ * neuron grid is laid flat across the plane they span: the longer side of the
+ * grid follows the first component and the shorter side the second.  A map
+ * initialized this way is already ordered, so training can skip the long
+ * phase in which a randomly initialized map untangles itself.
+ *
+ * Along each component the grid covers the mean plus or minus
+ * {@code sqrt(3)} standard deviations, with each neuron at the center of its
+ * share of that range.  For uniformly distributed data this is exactly the
+ * range of the data.
+ *
+ * The sample is streamed in batches.  The covariance of each batch is
+ * accumulated on the workers of an execution context, each keeping its own running mean
+ * and co-moments, which are merged once the sample is exhausted.  The
+ * components are then found by power iteration.
+ */
+public class LinearWeightInitializer implements WeightInitializer {
+    /**
+     * The default number of samples read per batch.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 4096;
+
+    private static final int MAX_POWER_ITERATIONS = 1000;
+    private static final double POWER_TOLERANCE = 1.0e-12;
+    private static final double SPREAD = Math.sqrt(3.0);
+
+    private final Iterable<double[]> sample;
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private SOMExecutionContext executionContext = SOMExecutionContext.getDefault();
+    private int parallelism = executionContext.getParallelism();
+
+    /**
+     * Create a linear initializer that will analyze a training sample.  The
+     * sample is read when the weights are initialized, and may return the
+     * same array repeatedly.
+     *
+     * @param sample Training vectors representative of the data set.
+     */
+    public LinearWeightInitializer(Iterable<double[]> sample) {
+        this.sample = sample;
+    }
+
+    /**
+     * Set the number of samples read at a time.
+     *
+     * @param batchSize The new batch size.
+     */
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new SOMError("Batch size must be positive.");
+        }
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Set the threads on which the work is split.  The number of slices each
+     * batch is split into becomes the context's parallelism.
+     *
+     * @param context The execution context to use.
+     */
+    public void setExecutionContext(SOMExecutionContext context) {
+        executionContext = context;
+        parallelism = context.getParallelism();
+    }
+
+    /**
+     * Set the number of slices each batch is split into for accumulating the covariance.
+     *
+     * @param parallelism The new slice count.
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new SOMError("Parallelism must be positive.");
+        }
+        this.parallelism = parallelism;
+    }
+
+    public void initializeWeights(double[][] weights, Dimension gridSize) {
+        if (weights.length == 0) {
+            return;
+        }
+
+        int inputLength = weights[0].length;
+        Moments moments = measure(sample.iterator(), inputLength);
+        if (moments.count < 2) {
+            throw new SOMError("Linear initialization needs at least 2 samples.");
+        }
+
+        double[][] covariance = moments.covariance();
+        double[] first = new double[inputLength];
+        double firstVariance = principalComponent(covariance, first);
+        deflate(covariance, first, firstVariance);
+        double[] second = new double[inputLength];
+        double secondVariance = principalComponent(covariance, second);
+
+        scale(first, SPREAD * Math.sqrt(firstVariance));
+        scale(second, SPREAD * Math.sqrt(secondVariance));
+
+        double[] columnAxis = first;
+        double[] rowAxis = second;
+        if (gridSize.y > gridSize.x) {
+            columnAxis = second;
+            rowAxis = first;
+        }
+
+        for (int neuron = 0; neuron < weights.length; neuron++) {
+            double a = coordinate(neuron % gridSize.x, gridSize.x);
+            double b = coordinate(neuron / gridSize.x, gridSize.y);
+            for (int i = 0; i < inputLength; i++) {
+                weights[neuron][i] = moments.mean[i] +
+                        a * columnAxis[i] + b * rowAxis[i];
+            }
+        }
+    }
+
+    /**
+     * Place a neuron along one side of the grid.
+     *
+     * @param position The neuron's position along the side.
+     * @param length The length of the side.
+     * @return The center of the neuron's share of [-1, 1].
+     */
+    private static double coordinate(int position, int length) {
+        return (2.0 * position + 1.0) / length - 1.0;
+    }
+
+    /**
+     * Read the sample and accumulate its mean and co-moments.
+     *
+     * @param samples The sample.
+     * @param inputLength The expected vector length.
+     * @return The merged moments of the whole sample.
+     */
+    private Moments measure(Iterator<double[]> samples, int inputLength) {
+        double[][] current = new double[batchSize][inputLength];
+        double[][] next = new double[batchSize][inputLength];
+
+        Moments[] partials = new Moments[parallelism];
+        for (int i = 0; i < parallelism; i++) {
+            partials[i] = new Moments(inputLength);
+        }
+
+        ExecutorService pool = executionContext.getExecutor();
+        int count = fill(samples, current);
+        while (count > 0) {
+            List<Future<Void>> slices = submit(pool, partials, current, count);
+
+            // Read the next batch while the current one is accumulated.
+            int nextCount = fill(samples, next);
+            await(slices);
+
+            double[][] swap = current;
+            current = next;
+            next = swap;
+            count = nextCount;
+        }
+
+        Moments total = partials[0];
+        for (int i = 1; i < partials.length; i++) {
+            total.add(partials[i]);
+        }
+        return total;
+    }
+
+    /**
+     * Copy samples into a batch.
+     *
+     * @param samples The sample.
+     * @param batch The batch to fill.
+     * @return The number of samples copied.
+     */
+    private static int fill(Iterator<double[]> samples, double[][] batch) {
+        int count = 0;
+        while (count < batch.length && samples.hasNext()) {
+            double[] vector = samples.next();
+            if (vector.length != batch[count].length) {
+                throw new SOMError(
+                        "Sample length does not match network input size.");
+            }
+            System.arraycopy(vector, 0, batch[count], 0, vector.length);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Split a batch into one slice per partial and start accumulating them.
+     *
+     * @param pool The worker pool.
+     * @param partials The per-slice moments.
+     * @param batch The batch of samples.
+     * @param count The number of samples in the batch.
+     * @return The running slices.
+     */
+    private static List<Future<Void>> submit(ExecutorService pool, Moments[] partials,
+                                             final double[][] batch, int count) {
+        List<Future<Void>> slices = new ArrayList<Future<Void>>(partials.length);
+        for (int i = 0; i < partials.length; i++) {
+            final Moments partial = partials[i];
+            final int from = (int) ((long) count * i / partials.length);
+            final int to = (int) ((long) count * (i + 1) / partials.length);
+            if (from == to) {
+                continue;
+            }
+
+            slices.add(pool.submit(new Callable<Void>() {
+                public Void call() {
+                    for (int row = from; row < to; row++) {
+                        partial.accumulate(batch[row]);
+                    }
+                    return null;
+                }
+            }));
+        }
+        return slices;
+    }
+
+    /**
+     * Wait for all slices of a batch to finish.
+     *
+     * @param slices The running slices.
+     */
+    private static void await(List<Future<Void>> slices) {
+        try {
+            for (Future<Void> slice : slices) {
+                slice.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SOMError("Interrupted while analyzing the sample.");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new SOMError("Failed analyzing the sample: " + cause);
+        }
+    }
+
+    /**
+     * Find the dominant eigenvector of a symmetric matrix by power iteration.
+     *
+     * @param matrix The matrix.
+     * @param vector Receives the unit eigenvector.
+     * @return The eigenvalue, or 0 if the matrix has no positive eigenvalue.
+     */
+    private static double principalComponent(double[][] matrix, double[] vector) {
+        int n = vector.length;
+        // Start off every axis so the iteration cannot begin orthogonal to the
+        // component it is looking for.
+        for (int i = 0; i < n; i++) {
+            vector[i] = 1.0 + (double) i / n;
+        }
+        normalize(vector);
+
+        double[] product = new double[n];
+        double eigenvalue = 0.0;
+        for (int iteration = 0; iteration < MAX_POWER_ITERATIONS; iteration++) {
+            multiply(matrix, vector, product);
+            double norm = normalize(product);
+            if (norm == 0.0) {
+                eigenvalue = 0.0;
+                break;
+            }
+
+            double change = 0.0;
+            for (int i = 0; i < n; i++) {
+                change = Math.max(change, Math.abs(product[i] - vector[i]));
+                vector[i] = product[i];
+            }
+            eigenvalue = norm;
+            if (change < POWER_TOLERANCE) {
+                break;
+            }
+        }
+
+        if (eigenvalue <= 0.0) {
+            for (int i = 0; i < n; i++) {
+                vector[i] = 0.0;
+            }
+            return 0.0;
+        }
+        return eigenvalue;
+    }
+
+    /**
+     * Remove a component from a symmetric matrix.
+     *
+     * @param matrix The matrix to deflate in place.
+     * @param vector The component's unit eigenvector.
+     * @param eigenvalue The component's eigenvalue.
+     */
+    private static void deflate(double[][] matrix, double[] vector, double eigenvalue) {
+        for (int i = 0; i < vector.length; i++) {
+            for (int j = 0; j < vector.length; j++) {
+                matrix[i][j] -= eigenvalue * vector[i] * vector[j];
+            }
+        }
+    }
+
+    private static void multiply(double[][] matrix, double[] vector, double[] out) {
+        for (int i = 0; i < out.length; i++) {
+            double sum = 0.0;
+            double[] row = matrix[i];
+            for (int j = 0; j < vector.length; j++) {
+                sum += row[j] * vector[j];
+            }
+            out[i] = sum;
+        }
+    }
+
+    private static double normalize(double[] vector) {
+        double sum = 0.0;
+        for (double v : vector) {
+            sum += v * v;
+        }
+        double norm = Math.sqrt(sum);
+        if (norm > 0.0) {
+            scale(vector, 1.0 / norm);
+        }
+        return norm;
+    }
+
+    private static void scale(double[] vector, double factor) {
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] *= factor;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "LinearWeightInitializer";
+    }
+
+    /**
+     * The running mean and co-moments of part of a sample.  Vectors are added
+     * one at a time with Welford's update, and partial results are combined
+     * with the pairwise update of Chan, Golub and LeVeque.
+     */
+    private static class Moments {
+        private final double[] mean;
+        private final double[][] comoments;
+        private final double[] delta;
+        private long count = 0;
+
+        Moments(int inputLength) {
+            mean = new double[inputLength];
+            comoments = new double[inputLength][inputLength];
+            delta = new double[inputLength];
+        }
+
+        void accumulate(double[] vector) {
+            count++;
+            for (int i = 0; i < mean.length; i++) {
+                delta[i] = vector[i] - mean[i];
+                mean[i] += delta[i] / count;
+            }
+            for (int i = 0; i < mean.length; i++) {
+                double residual = vector[i] - mean[i];
+                double[] row = comoments[i];
+                for (int j = 0; j < mean.length; j++) {
+                    row[j] += delta[j] * residual;
+                }
+            }
+        }
+
+        void add(Moments other) {
+            if (other.count == 0) {
+                return;
+            }
+
+            long total = count + other.count;
+            double weight = (double) count * other.count / total;
+            for (int i = 0; i < mean.length; i++) {
+                delta[i] = other.mean[i] - mean[i];
+            }
+            for (int i = 0; i < mean.length; i++) {
+                for (int j = 0; j < mean.length; j++) {
+                    comoments[i][j] += other.comoments[i][j] +
+                            delta[i] * delta[j] * weight;
+                }
+                mean[i] += delta[i] * other.count / total;
+            }
+            count = total;
+        }
+
+        double[][] covariance() {
+            double[][] covariance = new double[mean.length][mean.length];
+            for (int i = 0; i < mean.length; i++) {
+                for (int j = 0; j < mean.length; j++) {
+                    covariance[i][j] = comoments[i][j] / (count - 1);
+                }
+            }
+            return covariance;
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package cs437.som.initialization;
+
+import cs437.som.Dimension;
+import cs437.som.WeightInitializer;
+
+import java.security.SecureRandom;
+import java.util.Random;
+
+/**
+ * Random weight initialization strategy.
+ *
+ * Every weight is drawn uniformly from [0, 1), which is how the maps in SOMa
+ * are initialized when no other strategy is given.
+ */
+public class RandomWeightInitializer implements WeightInitializer {
+    private final Random random = new SecureRandom();
+
+    public void initializeWeights(double[][] weights, Dimension gridSize) {
+        for (double[] weight : weights) {
+            for (int i = 0; i < weight.length; i++) {
+                weight[i] = random.nextDouble();
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "RandomWeightInitializer";
+    }
+}
@@ -0,0 +1,8 @@
+/**
+ * The {@code initialization} package contains weight initialization strategy
+ * classes to parametrize the way self-organizing maps choose their starting
+ * weights.  The classes are intended to be created by the user and given to a
+ * self-organizing map, which will assume control.  These classes all
+ * implement {@link cs437.som.WeightInitializer} in {@link cs437.som}.
+ */
+package cs437.som.initialization;
@@ -0,0 +1,79 @@
+package cs437.som.learningrate;
+
+import cs437.som.LearningRateFunction;
+import cs437.som.TrainingListener;
+
+/**
+ * Learning rate strategy driven by the map's training error rather than the
+ * iteration count.
+ *
+ * The strategy follows an exponentially smoothed average of the distance
+ * from each training vector to its best matching neuron, and scales the
+ * learning rate by how that error compares to the worst error seen so far.
+ * The rate therefore falls as fast as the map's quality improves, instead of
+ * on a schedule that has to be long enough for the slowest case.
+ *
+ * <pre>
+ * The exact behavior follows the formula:
+ *      \max(\alpha_{final}, \alpha_0 \cdot \frac{\bar{e}}{e_{max}})
+ *  where
+ *      \alpha_0       is the initial learning rate
+ *      \alpha_{final} is the smallest learning rate
+ *      \bar{e}        is the smoothed best matching distance
+ *      e_{max}        is the largest smoothed best matching distance seen
+ * </pre>
+ */
+public class AdaptiveLearningRateFunction
+        implements LearningRateFunction, TrainingListener {
+    private static final long serialVersionUID = 1L;
+
+    private static final double SMOOTHING = 0.01;
+
+    private final double initialRate;
+    private final double finalRate;
+    private double smoothedError = Double.NaN;
+    private double worstError = 0.0;
+
+    /**
+     * Create an adaptive learning rate strategy.
+     *
+     * @param initialRate The learning rate while the map's error is at its
+     * worst.
+     * @param finalRate The smallest learning rate.
+     */
+    public AdaptiveLearningRateFunction(double initialRate, double finalRate) {
+        this.initialRate = initialRate;
+        this.finalRate = finalRate;
+    }
+
+    public void setExpectedIterations(int expectedIterations) {
+    }
+
+    public void trainingStep(int iteration, double[] input, int bestMatch,
+                             double distance) {
+        if (Double.isNaN(smoothedError)) {
+            smoothedError = distance;
+        } else {
+            smoothedError += SMOOTHING * (distance - smoothedError);
+        }
+        worstError = Math.max(worstError, smoothedError);
+    }
+
+    public double learningRate(int iteration) {
+        if (worstError == 0.0) {
+            return initialRate;
+        }
+        return Math.max(finalRate, initialRate * (smoothedError / worstError));
+    }
+
+    @Override
+    public String toString() {
+        return "AdaptiveLearningRateFunction " + initialRate + ' ' + finalRate;
+    }
+
+    public AdaptiveLearningRateFunction(String parameters) {
+        String[] arguments = parameters.trim().split("\\s+", 2);
+        initialRate = Double.parseDouble(arguments[0]);
+        finalRate = Double.parseDouble(arguments[1]);
+    }
+}
@@ -6,6 +6,8 @@ import cs437.som.LearningRateFunction;
  * Constant learning rate strategy.
  */
 public class ConstantLearningRateFunction implements LearningRateFunction {
+    private static final long serialVersionUID = 1L;
+
     private final double learningRate;
 
     /**
@@ -17,6 +17,8 @@ import cs437.som.LearningRateFunction;
  * </pre>
  */
 public class ExponentialDecayLearningRateFunction implements LearningRateFunction {
+    private static final long serialVersionUID = 1L;
+
     private final double initialLearningRate;
     private double expectedIterations = 0.0;
 
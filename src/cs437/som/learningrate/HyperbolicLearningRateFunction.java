@@ -16,6 +16,8 @@ import cs437.som.LearningRateFunction;
  * </pre>
  */
 public class HyperbolicLearningRateFunction implements LearningRateFunction {
+    private static final long serialVersionUID = 1L;
+
     private final double initialRate;
     private final double finalRate;
     private double expectedIterations = 0.0;
@@ -8,6 +8,8 @@ import cs437.som.NeighborhoodMembershipFunction;
  * otherwise.
  */
 public class ConstantNeighborhoodMembershipFunction implements NeighborhoodMembershipFunction {
+    private static final long serialVersionUID = 1L;
+
     private final double value;
 
     public ConstantNeighborhoodMembershipFunction(double value) {
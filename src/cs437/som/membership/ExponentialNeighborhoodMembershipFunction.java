@@ -14,6 +14,8 @@ import cs437.som.NeighborhoodMembershipFunction;
  * </pre>
  */
 public class ExponentialNeighborhoodMembershipFunction implements NeighborhoodMembershipFunction {
+    private static final long serialVersionUID = 1L;
+
     @Override
     public double neighborhoodMembership(double distance, double width) {
         if (distance < width)
@@ -21,4 +23,9 @@ public class ExponentialNeighborhoodMembershipFunction implements NeighborhoodMe
         else
             return 0;
     }
+
+    @Override
+    public String toString() {
+        return "ExponentialNeighborhoodMembershipFunction";
+    }
 }
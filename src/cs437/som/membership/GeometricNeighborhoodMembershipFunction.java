@@ -18,6 +18,8 @@ import cs437.som.NeighborhoodMembershipFunction;
  * </pre>
  */
 public class GeometricNeighborhoodMembershipFunction implements NeighborhoodMembershipFunction {
+    private static final long serialVersionUID = 1L;
+
     private final double order;
 
     /**
@@ -7,6 +7,7 @@ import cs437.som.NeighborhoodMembershipFunction;
  * linearly proportional to distance.
  */
 public class LinearNeighborhoodMembershipFunction implements NeighborhoodMembershipFunction {
+    private static final long serialVersionUID = 1L;
 
     @Override
     public double neighborhoodMembership(double distance, double width) {
@@ -15,4 +16,9 @@ public class LinearNeighborhoodMembershipFunction implements NeighborhoodMembers
         else
             return 0;
     }
+
+    @Override
+    public String toString() {
+        return "LinearNeighborhoodMembershipFunction";
+    }
 }
@@ -12,6 +12,8 @@ import java.util.Random;
  * or 0 if it is not.
  */
 public class RandomNeighborhoodMembershipFunction implements NeighborhoodMembershipFunction {
+    private static final long serialVersionUID = 1L;
+
     private Random r = new SecureRandom();
 
     @Override
@@ -21,4 +23,9 @@ public class RandomNeighborhoodMembershipFunction implements NeighborhoodMembers
         else
             return 0;
     }
+
+    @Override
+    public String toString() {
+        return "RandomNeighborhoodMembershipFunction";
+    }
 }
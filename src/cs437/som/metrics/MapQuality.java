@@ -0,0 +1,129 @@
+package cs437.som.metrics;
+
+/**
+ * The quality of a self-organizing map as measured over a data set.
+ *
+ * The quantization error is the mean distance from each sample to its best
+ * matching neuron, measured as the map measures it: with the distance
+ * metric of a CustomizableSOM, and as the squared Euclidean distance for the
+ * basic maps, whose quantization error is therefore the mean squared
+ * quantization error.  The topographic error is the fraction of samples whose
+ * best and second best matching neurons are not adjacent in the neuron grid.
+ * Both are reported for the map as a whole, and the hit counts and mean
+ * quantization error are also broken down per neuron.
+ */
+public class MapQuality {
+    private final long sampleCount;
+    private final double quantizationError;
+    private final double topographicError;
+    private final int[] hits;
+    private final double[] meanErrors;
+
+    /**
+     * Create a quality report from accumulated totals.
+     *
+     * @param sampleCount The number of samples measured.
+     * @param errorSum The sum of the samples' distances to their BMUs.
+     * @param topographicErrors The number of samples whose two best matching
+     * neurons were not adjacent.
+     * @param hits The number of samples matched to each neuron.
+     * @param errorSums The sum of the distances of the samples matched to
+     * each neuron.
+     */
+    MapQuality(long sampleCount, double errorSum, long topographicErrors,
+               int[] hits, double[] errorSums) {
+        this.sampleCount = sampleCount;
+        this.hits = hits;
+
+        if (sampleCount == 0) {
+            quantizationError = 0.0;
+            topographicError = 0.0;
+        } else {
+            quantizationError = errorSum / sampleCount;
+            topographicError = topographicErrors / (double) sampleCount;
+        }
+
+        meanErrors = new double[hits.length];
+        for (int i = 0; i < hits.length; i++) {
+            if (hits[i] > 0) {
+                meanErrors[i] = errorSums[i] / hits[i];
+            }
+        }
+    }
+
+    /**
+     * Get the number of samples that were measured.
+     *
+     * @return The size of the data set.
+     */
+    public long getSampleCount() {
+        return sampleCount;
+    }
+
+    /**
+     * Get the mean distance from a sample to its best matching neuron, in
+     * the map's own measure of distance.  For the basic maps this is the
+     * mean of the squared Euclidean distances.
+     *
+     * @return The map's quantization error.
+     */
+    public double getQuantizationError() {
+        return quantizationError;
+    }
+
+    /**
+     * Get the fraction of samples whose best and second best matching
+     * neurons are not adjacent.
+     *
+     * @return The map's topographic error, between 0 and 1.
+     */
+    public double getTopographicError() {
+        return topographicError;
+    }
+
+    /**
+     * Get the number of samples matched to a neuron.
+     *
+     * @param neuron The neuron's index.
+     * @return The neuron's hit count.
+     */
+    public int getHits(int neuron) {
+        return hits[neuron];
+    }
+
+    /**
+     * Get the mean distance from a neuron to the samples matched to it.
+     *
+     * @param neuron The neuron's index.
+     * @return The neuron's mean quantization error, 0 if it was never the
+     * best match.
+     */
+    public double getMeanError(int neuron) {
+        return meanErrors[neuron];
+    }
+
+    /**
+     * Get the hit counts of all neurons.
+     *
+     * @return A copy of the hit counts, indexed by neuron.
+     */
+    public int[] getHitCounts() {
+        return hits.clone();
+    }
+
+    /**
+     * Get the mean quantization errors of all neurons.
+     *
+     * @return A copy of the mean errors, indexed by neuron.
+     */
+    public double[] getMeanErrors() {
+        return meanErrors.clone();
+    }
+
+    @Override
+    public String toString() {
+        return "MapQuality{sampleCount=" + sampleCount +
+                ", quantizationError=" + quantizationError +
+                ", topographicError=" + topographicError + '}';
+    }
+}
@@ -0,0 +1,338 @@
+package cs437.som.metrics;
+
+import cs437.som.GridType;
+import cs437.som.SOMError;
+import cs437.som.SOMExecutionContext;
+import cs437.som.SelfOrganizingMap;
+import cs437.som.TrainingDataSource;
+import cs437.som.network.NetworkBase;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Measures the quantization and topographic error of a self-organizing map
+ * over a data set in a single pass.  Distances are those the map reports for
+ * its best matches, so the quantization error is in the map's own measure
+ * of distance; see {@link MapQuality}.
+ *
+ * The data set is streamed: samples are copied in fixed size batches, and
+ * while one batch is being matched against the map on the workers of an
+ * execution context, the next batch is read from the source.  Only two batches are
+ * ever held in memory, so data sets far larger than the heap can be
+ * measured.  Each worker accumulates into its own totals, which are merged
+ * once the data set is exhausted.
+ *
+ * Two neurons are adjacent when their distance in the grid is no more than
+ * the adjacency distance, which is 1 by default.  For a
+ * {@link cs437.som.topology.SquareGrid} this counts only the 4 edge
+ * neighbors; an adjacency distance of {@code Math.sqrt(2)} counts diagonal
+ * neighbors as well.
+ */
+public class MapQualityEvaluator {
+    /**
+     * The default number of samples matched per batch.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 4096;
+
+    private final SelfOrganizingMap map;
+    private final GridType grid;
+    private double adjacencyDistance = 1.0;
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private SOMExecutionContext executionContext = SOMExecutionContext.getDefault();
+    private int parallelism = executionContext.getParallelism();
+
+    /**
+     * Create an evaluator for any self-organizing map.
+     *
+     * @param map The map to measure.
+     * @param grid A grid type describing the map's neuron grid.  It must
+     * already be sized to the map.
+     */
+    public MapQualityEvaluator(SelfOrganizingMap map, GridType grid) {
+        this.map = map;
+        this.grid = grid;
+    }
+
+    /**
+     * Create an evaluator for one of the maps in SOMa, measuring adjacency
+     * with the map's own grid.
+     *
+     * @param map The map to measure.
+     */
+    public MapQualityEvaluator(NetworkBase map) {
+        this(map, map.getGridType());
+        setExecutionContext(map.getExecutionContext());
+    }
+
+    /**
+     * Set the largest grid distance at which two neurons are considered
+     * adjacent.
+     *
+     * @param adjacencyDistance The new adjacency distance.
+     */
+    public void setAdjacencyDistance(double adjacencyDistance) {
+        this.adjacencyDistance = adjacencyDistance;
+    }
+
+    /**
+     * Set the number of samples read and matched at a time.
+     *
+     * @param batchSize The new batch size.
+     */
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new SOMError("Batch size must be positive.");
+        }
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Set the threads on which the work is split.  The number of slices each
+     * batch is split into becomes the context's parallelism.
+     *
+     * @param context The execution context to use.
+     */
+    public void setExecutionContext(SOMExecutionContext context) {
+        executionContext = context;
+        parallelism = context.getParallelism();
+    }
+
+    /**
+     * Set the number of slices each batch is split into for matching samples.
+     *
+     * @param parallelism The new slice count.
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new SOMError("Parallelism must be positive.");
+        }
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Measure the map over a data set.
+     *
+     * @param samples The data set.
+     * @return The map's quality over {@code samples}.
+     */
+    public MapQuality evaluate(Iterable<double[]> samples) {
+        return evaluate(samples.iterator());
+    }
+
+    /**
+     * Measure the map over a data set.  The iterator may return the same
+     * array repeatedly; each sample is copied before the next one is read.
+     *
+     * @param samples The data set.
+     * @return The map's quality over {@code samples}.
+     */
+    public MapQuality evaluate(Iterator<double[]> samples) {
+        int inputLength = map.getInputLength();
+        double[][] current = new double[batchSize][inputLength];
+        double[][] next = new double[batchSize][inputLength];
+
+        Accumulator[] accumulators = new Accumulator[parallelism];
+        for (int i = 0; i < parallelism; i++) {
+            accumulators[i] = new Accumulator(map.getNeuronCount());
+        }
+
+        ExecutorService pool = executionContext.getExecutor();
+        int count = fill(samples, current);
+        while (count > 0) {
+            List<Future<Void>> slices = submit(pool, accumulators, current, count);
+
+            // Read the next batch while the current one is matched.
+            int nextCount = fill(samples, next);
+            await(slices);
+
+            double[][] swap = current;
+            current = next;
+            next = swap;
+            count = nextCount;
+        }
+
+        return merge(accumulators);
+    }
+
+    /**
+     * Measure the map over the vectors of a data source.  The source is not
+     * closed.
+     *
+     * @param source The data set.
+     * @return The map's quality over the vectors {@code source} supplies.
+     */
+    public MapQuality evaluate(final TrainingDataSource source) {
+        return evaluate(new Iterator<double[]>() {
+            // Fetched only once the previous sample has been copied, since
+            // the source may refill the same array.
+            private double[] pending = null;
+            private boolean exhausted = false;
+
+            public boolean hasNext() {
+                if (pending == null && !exhausted) {
+                    pending = source.next();
+                    exhausted = pending == null;
+                }
+                return pending != null;
+            }
+
+            public double[] next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                double[] sample = pending;
+                pending = null;
+                return sample;
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        });
+    }
+
+    /**
+     * Copy samples into a batch.
+     *
+     * @param samples The data set.
+     * @param batch The batch to fill.
+     * @return The number of samples copied.
+     */
+    private int fill(Iterator<double[]> samples, double[][] batch) {
+        int count = 0;
+        while (count < batch.length && samples.hasNext()) {
+            double[] sample = samples.next();
+            if (sample.length != map.getInputLength()) {
+                throw new SOMError(
+                        "Sample length does not match network input size.");
+            }
+            System.arraycopy(sample, 0, batch[count], 0, sample.length);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Split a batch into one slice per accumulator and start matching them.
+     *
+     * @param pool The worker pool.
+     * @param accumulators The per-slice totals.
+     * @param batch The batch of samples.
+     * @param count The number of samples in the batch.
+     * @return The running slices.
+     */
+    private List<Future<Void>> submit(ExecutorService pool, Accumulator[] accumulators,
+                                      final double[][] batch, int count) {
+        List<Future<Void>> slices = new ArrayList<Future<Void>>(accumulators.length);
+        for (int i = 0; i < accumulators.length; i++) {
+            final Accumulator accumulator = accumulators[i];
+            final int from = (int) ((long) count * i / accumulators.length);
+            final int to = (int) ((long) count * (i + 1) / accumulators.length);
+            if (from == to) {
+                continue;
+            }
+
+            slices.add(pool.submit(new Callable<Void>() {
+                public Void call() {
+                    for (int row = from; row < to; row++) {
+                        accumulator.measure(batch[row]);
+                    }
+                    return null;
+                }
+            }));
+        }
+        return slices;
+    }
+
+    /**
+     * Wait for all slices of a batch to finish.
+     *
+     * @param slices The running slices.
+     */
+    private static void await(List<Future<Void>> slices) {
+        try {
+            for (Future<Void> slice : slices) {
+                slice.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SOMError("Interrupted while measuring map quality.");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new SOMError("Failed measuring map quality: " + cause);
+        }
+    }
+
+    /**
+     * Combine the totals of all slices.
+     *
+     * @param accumulators The per-slice totals.
+     * @return The quality report.
+     */
+    private static MapQuality merge(Accumulator[] accumulators) {
+        Accumulator total = accumulators[0];
+        for (int i = 1; i < accumulators.length; i++) {
+            total.add(accumulators[i]);
+        }
+        return new MapQuality(total.count, total.errorSum,
+                total.topographicErrors, total.hits, total.errorSums);
+    }
+
+    @Override
+    public String toString() {
+        return "MapQualityEvaluator{map=" + map + ", grid=" + grid +
+                ", adjacencyDistance=" + adjacencyDistance + '}';
+    }
+
+    /**
+     * Running totals for one slice of the data set.
+     */
+    private class Accumulator {
+        private final int[] hits;
+        private final double[] errorSums;
+        private final int[] best = new int[2];
+        private final double[] distances = new double[2];
+        private long count = 0;
+        private double errorSum = 0.0;
+        private long topographicErrors = 0;
+
+        Accumulator(int neuronCount) {
+            hits = new int[neuronCount];
+            errorSums = new double[neuronCount];
+        }
+
+        void measure(double[] sample) {
+            int found = map.getBestMatchingNeurons(sample, 2, best, distances);
+
+            hits[best[0]]++;
+            errorSums[best[0]] += distances[0];
+            errorSum += distances[0];
+            if (found > 1 && grid.gridDistance(best[0], best[1]) > adjacencyDistance) {
+                topographicErrors++;
+            }
+            count++;
+        }
+
+        void add(Accumulator other) {
+            for (int i = 0; i < hits.length; i++) {
+                hits[i] += other.hits[i];
+                errorSums[i] += other.errorSums[i];
+            }
+            count += other.count;
+            errorSum += other.errorSum;
+            topographicErrors += other.topographicErrors;
+        }
+    }
+}
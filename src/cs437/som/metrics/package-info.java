@@ -0,0 +1,5 @@
+/**
+ * The {@code metrics} package contains tools for measuring the quality of a
+ * trained self-organizing map against a data set.
+ */
+package cs437.som.metrics;
@@ -0,0 +1,103 @@
+package cs437.som.neighborhood;
+
+import cs437.som.NeighborhoodWidthFunction;
+import cs437.som.SOMError;
+import cs437.som.TrainingListener;
+
+/**
+ * Neighborhood width strategy for self-organizing maps that shrinks the width
+ * as fast as the map's training error allows.
+ *
+ * The width shrinks geometrically, fast enough to reach the final width in
+ * a quarter of the expected iterations.  Shrinking pauses whenever the map's
+ * error is rising, that is whenever a quickly smoothed average of the
+ * distance from each training vector to its best matching neuron exceeds a
+ * slowly smoothed one, and resumes once the map has absorbed the last
+ * reduction.  The width never falls below the final width.
+ *
+ * <pre>
+ * The exact behavior follows the formula:
+ *      w_{t+1} = \begin{cases}
+ *      \max(w_{final}, w_t \cdot (\frac{w_{final}}{w_i})^\frac{4}{t_{max}})
+ *          & \text{if} \: \bar{e}_{fast} \le \bar{e}_{slow} \\
+ *      w_t & \text{otherwise}
+ *      \end{cases}
+ *  where
+ *      w_i     is the initial width of the neighborhood
+ *      w_final is the smallest width of the neighborhood
+ *      t_{max} is the maximum expected iteration
+ * </pre>
+ */
+public class AdaptiveNeighborhoodWidthFunction
+        implements NeighborhoodWidthFunction, TrainingListener {
+    private static final long serialVersionUID = 1L;
+
+    private static final double FAST_SMOOTHING = 0.05;
+    private static final double SLOW_SMOOTHING = 0.005;
+    private static final double SHRINK_FRACTION = 0.25;
+
+    private final double initialNeighborhoodWidth;
+    private final double finalNeighborhoodWidth;
+    private double decay = 1.0;
+    private double width;
+    private double fastError = Double.NaN;
+    private double slowError = Double.NaN;
+
+    /**
+     * Create an adaptive neighborhood width function.
+     *
+     * @param initialWidth The initial width of the neighborhood.
+     * @param finalWidth The smallest width of the neighborhood.
+     */
+    public AdaptiveNeighborhoodWidthFunction(double initialWidth, double finalWidth) {
+        if (finalWidth <= 0.0 || finalWidth > initialWidth) {
+            throw new SOMError("The final width must be positive and no larger than the initial width.");
+        }
+        initialNeighborhoodWidth = initialWidth;
+        finalNeighborhoodWidth = finalWidth;
+        width = initialWidth;
+    }
+
+    public void setExpectedIterations(int expectedIterations) {
+        double shrinkIterations = Math.max(1.0, expectedIterations * SHRINK_FRACTION);
+        decay = Math.pow(finalNeighborhoodWidth / initialNeighborhoodWidth,
+                1.0 / shrinkIterations);
+    }
+
+    public void trainingStep(int iteration, double[] input, int bestMatch,
+                             double distance) {
+        if (Double.isNaN(fastError)) {
+            fastError = distance;
+            slowError = distance;
+        } else {
+            fastError += FAST_SMOOTHING * (distance - fastError);
+            slowError += SLOW_SMOOTHING * (distance - slowError);
+        }
+
+        if (fastError <= slowError) {
+            width = Math.max(finalNeighborhoodWidth, width * decay);
+        }
+    }
+
+    public double neighborhoodWidth(int iteration) {
+        return width;
+    }
+
+    @Override
+    public String toString() {
+        return "AdaptiveNeighborhoodWidthFunction " + initialNeighborhoodWidth
+                + ' ' + finalNeighborhoodWidth;
+    }
+
+    public AdaptiveNeighborhoodWidthFunction(String parameters) {
+        this(argument(parameters, 0), argument(parameters, 1));
+    }
+
+    private static double argument(String parameters, int index) {
+        String[] arguments = parameters.trim().split("\\s+", 2);
+        if (arguments.length < 2) {
+            throw new SOMError("An initial and a final width are needed.");
+        }
+        return Double.parseDouble(arguments[index]);
+    }
+}
@@ -30,6 +30,8 @@ import java.util.regex.Pattern;
  * not be modified by the user afterward.
  */
 public class CompoundNeighborhood implements NeighborhoodWidthFunction {
+    private static final long serialVersionUID = 1L;
+
     private int nextTransition = -1;
     private int expectedIterations = 0;
 
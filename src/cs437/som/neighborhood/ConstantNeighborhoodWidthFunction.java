@@ -6,6 +6,8 @@ import cs437.som.NeighborhoodWidthFunction;
  * Constant neighborhood strategy.
  */
 public class ConstantNeighborhoodWidthFunction implements NeighborhoodWidthFunction {
+    private static final long serialVersionUID = 1L;
+
     private final double neighborhoodWidth;
 
     /**
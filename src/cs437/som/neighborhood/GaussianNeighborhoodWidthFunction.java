@@ -18,6 +18,8 @@ import cs437.som.NeighborhoodWidthFunction;
  */
 public class GaussianNeighborhoodWidthFunction
         implements NeighborhoodWidthFunction {
+    private static final long serialVersionUID = 1L;
+
     private final double stdDeviation;
     private final double coefficient;
 
@@ -17,6 +17,8 @@ import cs437.som.NeighborhoodWidthFunction;
  */
 public class HyperbolicNeighborhoodWidthFunction
         implements NeighborhoodWidthFunction {
+    private static final long serialVersionUID = 1L;
+
     private double expectedIterations = 0.0;
     private final double initialWidth;
     private final double widthRatio;
@@ -49,7 +51,7 @@ public class HyperbolicNeighborhoodWidthFunction
     }
 
     public HyperbolicNeighborhoodWidthFunction(String parameters) {
-        String[] arguments = parameters.split("\\s*", 2);
+        String[] arguments = parameters.trim().split("\\s+", 2);
         initialWidth = Double.parseDouble(arguments[0]);
         finalWidth = Double.parseDouble(arguments[1]);
         widthRatio = finalWidth / initialWidth;
@@ -16,6 +16,8 @@ import cs437.som.NeighborhoodWidthFunction;
  * </pre>
  */
 public class LinearDecayNeighborhoodWidthFunction implements NeighborhoodWidthFunction {
+    private static final long serialVersionUID = 1L;
+
     private final double initialNeighborhoodWidth;
     private double expectedIterations = 0.0;
 
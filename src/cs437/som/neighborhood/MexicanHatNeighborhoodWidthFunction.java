@@ -20,6 +20,8 @@ import cs437.som.NeighborhoodWidthFunction;
  */
 public class MexicanHatNeighborhoodWidthFunction
         implements NeighborhoodWidthFunction {
+    private static final long serialVersionUID = 1L;
+
     private static final double oneFourth = 0.25;
     private final double standardDeviation;
     private final double coefficient;
@@ -1,11 +1,12 @@
 package cs437.som.network;
 
 import cs437.som.Dimension;
+import cs437.som.SOMExecutionContext;
 import cs437.som.util.SOMFileReader;
 
 import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.util.Arrays;
 
 /**
@@ -33,6 +34,7 @@ import java.util.Arrays;
  * </pre>
  */
 public class BasicSquareGridSOM extends NetworkBase {
+    private static final long serialVersionUID = 1L;
 
     /**
      * Create a new BasicSquareGridSOM.
@@ -69,10 +71,9 @@ public class BasicSquareGridSOM extends NetworkBase {
     }
 
     @Override
-    public void write(OutputStreamWriter destination) throws IOException {
+    protected void writeHeader(Writer destination) throws IOException {
         destination.write(String.format("Map type: BasicSquareGridSOM%n"));
-        super.write(destination);
-        destination.flush();
+        super.writeHeader(destination);
     }
 
     /**
@@ -85,12 +86,30 @@ public class BasicSquareGridSOM extends NetworkBase {
      * @throws IOException if something fails while reading the stream.
      */
     public static BasicSquareGridSOM read(BufferedReader input) throws IOException {
+        return read(input, SOMExecutionContext.getDefault());
+    }
+
+    /**
+     * Read a BasicSquareGridSOM from an input stream, parsing its weights on
+     * the threads of an execution context, which the map then uses.
+     *
+     * @param input The stream to read from.  This stream should be passed in
+     * as soon as it is known to represent a BasicSquareGridSOM.
+     * @param context The execution context to use.
+     * @return A BasicSquareGridSOM as represented by the contents of
+     * {@code input}.
+     * @throws IOException if something fails while reading the stream.
+     */
+    public static BasicSquareGridSOM read(BufferedReader input, SOMExecutionContext context)
+            throws IOException {
         SOMFileReader sfr = new SOMFileReader();
-                sfr.parse(input);
+        sfr.setExecutionContext(context);
+        sfr.parse(input);
 
         BasicSquareGridSOM bsgsom = new BasicSquareGridSOM(
                 sfr.getDimension(), sfr.getInputVectorSize(), sfr.getIterations());
         bsgsom.weightMatrix = sfr.getWeights();
+        bsgsom.setExecutionContext(context);
         return bsgsom;
     }
 }
@@ -0,0 +1,75 @@
+package cs437.som.network;
+
+import cs437.som.SelfOrganizingMap;
+
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Fork/join task collecting the closest neurons to an input from a range of
+ * neurons.  Each leaf scans its range into a bounded heap and the heaps are
+ * merged on the way back up.
+ */
+class BestMatchesTask extends RecursiveTask<NeuronHeap> {
+    private static final long serialVersionUID = 0L;
+
+    private final SelfOrganizingMap map;
+    private final double[] input;
+    private final int k;
+    private final int from;
+    private final int to;
+    private final int grain;
+
+    /**
+     * Create a task for the neurons in [{@code from}, {@code to}).
+     *
+     * @param map The map whose neurons will be searched.
+     * @param input The input vector.
+     * @param k The number of neurons to collect.
+     * @param from The first neuron index, inclusive.
+     * @param to The last neuron index, exclusive.
+     * @param grain The largest range that is scanned without splitting.
+     */
+    BestMatchesTask(SelfOrganizingMap map, double[] input, int k,
+                    int from, int to, int grain) {
+        this.map = map;
+        this.input = input;
+        this.k = k;
+        this.from = from;
+        this.to = to;
+        this.grain = grain;
+    }
+
+    @Override
+    protected NeuronHeap compute() {
+        if (to - from <= grain) {
+            return scan(map, input, k, from, to);
+        }
+
+        int middle = (from + to) >>> 1;
+        BestMatchesTask low = new BestMatchesTask(map, input, k, from, middle, grain);
+        BestMatchesTask high = new BestMatchesTask(map, input, k, middle, to, grain);
+        high.fork();
+        NeuronHeap heap = low.compute();
+        heap.merge(high.join());
+        return heap;
+    }
+
+    /**
+     * Collect the closest neurons in a range on the calling thread.
+     *
+     * @param map The map whose neurons will be searched.
+     * @param input The input vector.
+     * @param k The number of neurons to collect.
+     * @param from The first neuron index, inclusive.
+     * @param to The last neuron index, exclusive.
+     * @return A heap of the closest neurons in the range.
+     */
+    static NeuronHeap scan(SelfOrganizingMap map, double[] input, int k,
+                           int from, int to) {
+        NeuronHeap heap = new NeuronHeap(k);
+        for (int neuron = from; neuron < to; neuron++) {
+            heap.offer(neuron, map.distanceToInput(neuron, input));
+        }
+        return heap;
+    }
+}
@@ -0,0 +1,337 @@
+package cs437.som.network;
+
+import cs437.som.SOMError;
+import cs437.som.util.FileReader;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads and writes self-organizing maps in a compact binary format.
+ *
+ * The text format stores every weight as a decimal string, which is slow to
+ * write and slower to parse for large maps.  The binary format stores the
+ * weights as raw little-endian doubles that are moved to and from the file in
+ * bulk.  All fields are little-endian:
+ *
+ * <pre>
+ * offset  size  field
+ *      0     4  magic number, the bytes "SOMB"
+ *      4     4  format version, currently 1
+ *      8     4  grid width
+ *     12     4  grid height
+ *     16     4  input vector length
+ *     20     4  current iteration
+ *     24     4  expected iterations
+ *     28     4  descriptor length in bytes
+ *     32     8  offset of the weights from the start of the file
+ *     40     -  descriptor, UTF-8 text
+ *      -     -  weights, neuron by neuron, 8-byte aligned
+ * </pre>
+ *
+ * The descriptor is the header of the map's text format: the map type line
+ * and, for a CustomizableSOM, the strategy lines.  It is read back with the
+ * same parsers as the text format, so every strategy that can be stored as
+ * text can be stored in binary.
+ */
+public final class BinaryMapFile {
+    /**
+     * The bytes "SOMB" read as a little-endian integer.
+     */
+    static final int MAGIC = 0x424D4F53;
+
+    /**
+     * The current format version.
+     */
+    static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 40;
+    private static final int CHUNK_BYTES = 1 << 20;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private BinaryMapFile() {
+    }
+
+    /**
+     * Write a map to a file in the binary format.
+     *
+     * @param map The map to write.
+     * @param file The file to write to.  It is replaced if it exists.
+     * @throws IOException if writing fails.
+     */
+    public static void write(NetworkBase map, File file) throws IOException {
+        StringWriter descriptor = new StringWriter();
+        map.writeHeader(descriptor);
+
+        FileChannel channel = create(file, descriptor.toString(), map.gridSize.x,
+                map.gridSize.y, map.inputVectorSize, map.time, map.expectedIterations);
+        try {
+            ByteBuffer chunk = ByteBuffer.allocateDirect(chunkBytes(map.inputVectorSize))
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            DoubleBuffer doubles = chunk.asDoubleBuffer();
+            for (double[] weights : map.weightMatrix) {
+                if (doubles.remaining() < weights.length) {
+                    flush(channel, chunk, doubles);
+                }
+                doubles.put(weights);
+            }
+            flush(channel, chunk, doubles);
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Write a paged map to a file in the binary format, reading its weights
+     * through its page cache.
+     *
+     * @param map The map to write.
+     * @param file The file to write to.  It is replaced if it exists.
+     * @throws IOException if writing fails.
+     */
+    static void write(PagedSOM map, File file) throws IOException {
+        int inputLength = map.getInputLength();
+        FileChannel channel = create(file, map.descriptor(), map.getGridSize().x,
+                map.getGridSize().y, inputLength, map.getTime(),
+                map.getExpectedIterations());
+        try {
+            ByteBuffer chunk = ByteBuffer.allocateDirect(chunkBytes(inputLength))
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            DoubleBuffer doubles = chunk.asDoubleBuffer();
+            double[] weights = new double[inputLength];
+            for (int neuron = 0; neuron < map.getNeuronCount(); neuron++) {
+                if (doubles.remaining() < inputLength) {
+                    flush(channel, chunk, doubles);
+                }
+                map.copyWeights(neuron, weights);
+                doubles.put(weights);
+            }
+            flush(channel, chunk, doubles);
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Create a binary map file and write its header.
+     *
+     * @return The file, positioned at the start of the weights.
+     */
+    private static FileChannel create(File file, String descriptorText, int width,
+                                      int height, int inputLength, int time,
+                                      int expectedIterations) throws IOException {
+        byte[] descriptor = descriptorText.getBytes(UTF8);
+        long weightsOffset = align(HEADER_SIZE + descriptor.length);
+
+        FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            ByteBuffer header = ByteBuffer.allocate((int) weightsOffset)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION)
+                    .putInt(width).putInt(height)
+                    .putInt(inputLength).putInt(time)
+                    .putInt(expectedIterations).putInt(descriptor.length)
+                    .putLong(weightsOffset).put(descriptor);
+            header.clear();
+            writeFully(channel, header);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return channel;
+    }
+
+    /**
+     * Read a map written in the binary format.
+     *
+     * @param file The file to read.
+     * @return The map stored in {@code file}.
+     * @throws IOException if reading fails.
+     */
+    public static NetworkBase read(File file) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            Header header = Header.read(channel);
+
+            // The descriptor is the text format's header; finishing it with an
+            // empty weight section lets the text parsers build the map.
+            String text = header.descriptor + String.format("Weights:%nend weights%n");
+            NetworkBase map = (NetworkBase) FileReader.read(
+                    new BufferedReader(new StringReader(text)));
+            if (map.gridSize.x != header.width || map.gridSize.y != header.height
+                    || map.inputVectorSize != header.inputLength) {
+                throw new SOMError("Binary map descriptor does not match its header.");
+            }
+            map.time = header.time;
+
+            double[][] weightMatrix = new double[map.neuronCount][header.inputLength];
+            channel.position(header.weightsOffset);
+            ByteBuffer chunk = ByteBuffer.allocateDirect(chunkBytes(header.inputLength))
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            DoubleBuffer doubles = chunk.asDoubleBuffer();
+            doubles.limit(0);
+            for (double[] weights : weightMatrix) {
+                if (doubles.remaining() < weights.length) {
+                    fill(channel, chunk, doubles);
+                }
+                doubles.get(weights);
+            }
+            map.weightMatrix = weightMatrix;
+            return map;
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Determine whether a file is in the binary format.
+     *
+     * @param file The file to examine.
+     * @return true if {@code file} begins with the binary format's magic
+     * number.
+     * @throws IOException if the file cannot be read.
+     */
+    public static boolean isBinaryMapFile(File file) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            ByteBuffer magic = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+            while (magic.hasRemaining()) {
+                if (channel.read(magic) < 0) {
+                    return false;
+                }
+            }
+            magic.flip();
+            return magic.getInt() == MAGIC;
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Size a transfer buffer to hold a whole number of neurons.
+     *
+     * @param inputLength The number of weights per neuron.
+     * @return The buffer size in bytes.
+     */
+    private static int chunkBytes(int inputLength) {
+        int neuronBytes = inputLength * 8;
+        return Math.max(1, CHUNK_BYTES / neuronBytes) * neuronBytes;
+    }
+
+    private static long align(long offset) {
+        return (offset + 7) & ~7L;
+    }
+
+    /**
+     * Write the doubles gathered in a chunk and empty it.
+     */
+    private static void flush(FileChannel channel, ByteBuffer chunk,
+                              DoubleBuffer doubles) throws IOException {
+        chunk.clear().limit(doubles.position() * 8);
+        writeFully(channel, chunk);
+        doubles.clear();
+    }
+
+    /**
+     * Refill a chunk with whole neurons from the file.
+     */
+    private static void fill(FileChannel channel, ByteBuffer chunk,
+                             DoubleBuffer doubles) throws IOException {
+        // Keep any unread doubles by moving them to the front of the chunk.
+        int carried = doubles.remaining();
+        doubles.compact();
+        chunk.clear().position(carried * 8);
+        long left = channel.size() - channel.position();
+        chunk.limit((int) Math.min(chunk.capacity(), carried * 8 + left));
+        while (chunk.hasRemaining()) {
+            if (channel.read(chunk) < 0) {
+                break;
+            }
+        }
+        doubles.clear().limit(chunk.position() / 8);
+        if (doubles.limit() == carried) {
+            throw new SOMError("Binary map file is truncated.");
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer)
+            throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * The fixed fields and descriptor of a binary map file.
+     */
+    static class Header {
+        int width;
+        int height;
+        int inputLength;
+        int time;
+        int expectedIterations;
+        String descriptor;
+        long weightsOffset;
+
+        /**
+         * Read and check the header at the start of a file.
+         *
+         * @param channel The file, positioned at its start.
+         * @return The header.
+         * @throws IOException if reading fails.
+         */
+        static Header read(FileChannel channel) throws IOException {
+            ByteBuffer fixed = ByteBuffer.allocate(HEADER_SIZE)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            readFully(channel, fixed);
+            fixed.flip();
+            if (fixed.getInt() != MAGIC) {
+                throw new SOMError("Not a binary map file.");
+            }
+            int version = fixed.getInt();
+            if (version != VERSION) {
+                throw new SOMError("Unsupported binary map version " + version);
+            }
+
+            Header header = new Header();
+            header.width = fixed.getInt();
+            header.height = fixed.getInt();
+            header.inputLength = fixed.getInt();
+            header.time = fixed.getInt();
+            header.expectedIterations = fixed.getInt();
+            int descriptorLength = fixed.getInt();
+            header.weightsOffset = fixed.getLong();
+
+            ByteBuffer descriptor = ByteBuffer.allocate(descriptorLength);
+            readFully(channel, descriptor);
+            header.descriptor = new String(descriptor.array(), UTF8);
+
+            long expectedSize = header.weightsOffset +
+                    (long) header.width * header.height * header.inputLength * 8;
+            if (channel.size() < expectedSize) {
+                throw new SOMError("Binary map file is truncated.");
+            }
+            return header;
+        }
+
+        private static void readFully(FileChannel channel, ByteBuffer buffer)
+                throws IOException {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    throw new SOMError("Binary map file is truncated.");
+                }
+            }
+        }
+    }
+}
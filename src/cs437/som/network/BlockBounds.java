@@ -0,0 +1,321 @@
+package cs437.som.network;
+
+import cs437.som.Dimension;
+
+/**
+ * The range of every weight within each square block of a map's grid.
+ *
+ * A trained map is topologically ordered: neighboring neurons have similar
+ * weights, so the weights of a small square of neurons lie in a small box
+ * of input space.  The distance from an input vector to that box is a lower
+ * bound on its distance to any neuron in the block, and a search that has
+ * already found a closer neuron can skip the block without measuring it.
+ *
+ * The map marks each block whose neurons it hands out for writing as stale,
+ * and stale blocks are measured again before the next search, so the
+ * bounds always hold the weights as they are.  A training step moves only
+ * the neighborhood of its best match, so only the blocks it touched are
+ * measured again.  Blocks are marked and measured only while the map's lock
+ * is held, so a block marked by one step is never cleared by a measurement
+ * made before the step finished writing it.
+ *
+ * Bounds are measured with the same floating point operations, in the same
+ * order, as the distances themselves.  Rounding is monotonic, so a bound
+ * never exceeds the distance computed for any neuron in its block.
+ */
+class BlockBounds {
+    private final Dimension gridSize;
+    private final int inputLength;
+    private final int side;
+    private final int blocksAcross;
+    private final int blockCount;
+
+    // The lowest and highest value of each weight in each block, indexed by
+    // block * inputLength + weight.
+    private final double[] lower;
+    private final double[] upper;
+    private final boolean[] stale;
+    private boolean anyStale = false;
+
+    // The rows last measured, or null when every block must be measured.
+    private double[][] source = null;
+
+    /**
+     * Create the bounds of a map's blocks.
+     *
+     * @param gridSize The map's grid dimensions.
+     * @param inputLength The number of weights per neuron.
+     * @param side The number of grid rows and columns in each block.
+     */
+    BlockBounds(Dimension gridSize, int inputLength, int side) {
+        this.gridSize = gridSize;
+        this.inputLength = inputLength;
+        this.side = side;
+        blocksAcross = (gridSize.x + side - 1) / side;
+        blockCount = blocksAcross * ((gridSize.y + side - 1) / side);
+        lower = new double[blockCount * inputLength];
+        upper = new double[blockCount * inputLength];
+        stale = new boolean[blockCount];
+    }
+
+    /**
+     * Get the number of grid rows and columns in each block.
+     *
+     * @return The side of a block.
+     */
+    int getSide() {
+        return side;
+    }
+
+    /**
+     * Get the number of blocks across a grid row.
+     *
+     * @return The number of block columns.
+     */
+    int getBlocksAcross() {
+        return blocksAcross;
+    }
+
+    /**
+     * Get the number of blocks.
+     *
+     * @return The number of blocks covering the grid.
+     */
+    int getBlockCount() {
+        return blockCount;
+    }
+
+    /**
+     * Record that a neuron's weights are about to change.  Neurons may be
+     * marked from several threads at once, all working for the training
+     * step holding the map's lock.
+     *
+     * @param neuron The neuron's index.
+     */
+    void markStale(int neuron) {
+        stale[(neuron / gridSize.x / side) * blocksAcross
+                + neuron % gridSize.x / side] = true;
+        anyStale = true;
+    }
+
+    /**
+     * Record that any of the weights may have changed.
+     */
+    synchronized void invalidate() {
+        source = null;
+    }
+
+    /**
+     * Bring the bounds up to date with the map's rows.
+     *
+     * @param rows The map's weight matrix.
+     */
+    synchronized void update(double[][] rows) {
+        if (rows != source) {
+            for (int block = 0; block < blockCount; block++) {
+                measure(rows, block);
+                stale[block] = false;
+            }
+            source = rows;
+        } else if (anyStale) {
+            for (int block = 0; block < blockCount; block++) {
+                if (stale[block]) {
+                    measure(rows, block);
+                    stale[block] = false;
+                }
+            }
+        }
+        anyStale = false;
+    }
+
+    private void measure(double[][] rows, int block) {
+        int firstRow = block / blocksAcross * side;
+        int firstCol = block % blocksAcross * side;
+        int lastRow = Math.min(gridSize.y, firstRow + side);
+        int lastCol = Math.min(gridSize.x, firstCol + side);
+        int base = block * inputLength;
+
+        double[] first = rows[firstRow * gridSize.x + firstCol];
+        System.arraycopy(first, 0, lower, base, inputLength);
+        System.arraycopy(first, 0, upper, base, inputLength);
+        for (int row = firstRow; row < lastRow; row++) {
+            for (int col = firstCol; col < lastCol; col++) {
+                double[] weights = rows[row * gridSize.x + col];
+                for (int i = 0; i < inputLength; i++) {
+                    // A NaN weight leaves its component's bounds NaN, which
+                    // bound the distance by nothing in that component.
+                    lower[base + i] = Math.min(lower[base + i], weights[i]);
+                    upper[base + i] = Math.max(upper[base + i], weights[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Measure the distance from an input vector to every block's box.
+     *
+     * @param measure The distance to measure.
+     * @param input The input vector.
+     * @param out A buffer of at least getBlockCount() elements to receive
+     * the distances, indexed by block.
+     */
+    void lowerBounds(ComponentMajorWeights.Measure measure, double[] input,
+                     double[] out) {
+        for (int block = 0; block < blockCount; block++) {
+            int base = block * inputLength;
+            double bound = 0.0;
+            for (int i = 0; i < inputLength; i++) {
+                double x = input[i];
+                double gap;
+                if (x < lower[base + i]) {
+                    gap = lower[base + i] - x;
+                } else if (x > upper[base + i]) {
+                    gap = x - upper[base + i];
+                } else if (x == x) {
+                    gap = 0.0;
+                } else {
+                    gap = Double.NaN;
+                }
+
+                switch (measure) {
+                case SQUARED_EUCLIDEAN:
+                case EUCLIDEAN:
+                    bound += gap * gap;
+                    break;
+                case MANHATTAN:
+                    bound += Math.abs(gap);
+                    break;
+                case CHEBYSHEV:
+                    if (Math.abs(gap) > bound) {
+                        bound = Math.abs(gap);
+                    }
+                    break;
+                }
+            }
+            out[block] = measure == ComponentMajorWeights.Measure.EUCLIDEAN
+                    ? Math.sqrt(bound) : bound;
+        }
+    }
+
+    /**
+     * Find the neuron closest to an input vector, skipping blocks that
+     * cannot hold it.  Ties go to the lowest neuron index, as a search of
+     * every neuron would.
+     *
+     * The neurons of the block nearest the input are measured first, and
+     * the closest of them bounds the distance of the best match, so that
+     * the search skips blocks from the start rather than only once it has
+     * come across a close neuron.
+     *
+     * @param measure The distance the kernel measures.
+     * @param kernel The kernel measuring distances.
+     * @param rows The map's weight matrix, as last passed to update.
+     * @param input The input vector.
+     * @param bounds A buffer of at least getBlockCount() elements for the
+     * distance to each block.
+     * @return The index of the best matching neuron.
+     */
+    int bestMatch(ComponentMajorWeights.Measure measure, SOMKernel kernel,
+                  double[][] rows, double[] input, double[] bounds) {
+        double lowest = kernel.distance(rows[0], input);
+        if (lowest != lowest) {
+            // No distance is lower than NaN, so the first neuron wins.
+            return 0;
+        }
+        lowerBounds(measure, input, bounds);
+
+        int nearest = 0;
+        for (int block = 1; block < blockCount; block++) {
+            if (bounds[block] < bounds[nearest]) {
+                nearest = block;
+            }
+        }
+        double ceiling = lowest;
+        int firstRow = nearest / blocksAcross * side;
+        int firstCol = nearest % blocksAcross * side;
+        for (int row = firstRow; row < Math.min(gridSize.y, firstRow + side); row++) {
+            for (int col = firstCol; col < Math.min(gridSize.x, firstCol + side); col++) {
+                double distance = kernel.distance(rows[row * gridSize.x + col], input);
+                if (distance < ceiling) {
+                    ceiling = distance;
+                }
+            }
+        }
+
+        int best = 0;
+        for (int row = 0; row < gridSize.y; row++) {
+            int blockRow = row / side * blocksAcross;
+            for (int col = 0; col < gridSize.x; col += side) {
+                double bound = bounds[blockRow + col / side];
+                if (bound > ceiling || bound >= lowest) {
+                    continue;
+                }
+                int first = Math.max(1, row * gridSize.x + col);
+                int last = row * gridSize.x + Math.min(gridSize.x, col + side);
+                for (int neuron = first; neuron < last; neuron++) {
+                    double distance = kernel.distance(rows[neuron], input);
+                    if (distance < lowest) {
+                        lowest = distance;
+                        best = neuron;
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Measure the distance from an input vector to every neuron that could
+     * be among the best matches chosen during training, leaving positive
+     * infinity for the rest.  Neurons are considered in index order, as
+     * {@link NetworkBase#chooseBestMatch(double[])} considers them, and a
+     * block is skipped when it is further than the tie tolerance beyond
+     * the lowest distance so far, where it could neither lower it nor tie
+     * with it.  Choosing from the distances therefore gives the same result
+     * as choosing from the distances of every neuron.
+     *
+     * @param measure The distance the kernel measures.
+     * @param kernel The kernel measuring distances.
+     * @param rows The map's weight matrix, as last passed to update.
+     * @param input The input vector.
+     * @param out A buffer with room for every neuron to receive the
+     * distances.
+     * @param bounds A buffer of at least getBlockCount() elements for the
+     * distance to each block.
+     */
+    void trainingDistances(ComponentMajorWeights.Measure measure,
+                           SOMKernel kernel, double[][] rows, double[] input,
+                           double[] out, double[] bounds) {
+        double lowest = kernel.distance(rows[0], input);
+        out[0] = lowest;
+        lowerBounds(measure, input, bounds);
+
+        for (int row = 0; row < gridSize.y; row++) {
+            int blockRow = row / side * blocksAcross;
+            for (int col = 0; col < gridSize.x; col += side) {
+                int first = Math.max(1, row * gridSize.x + col);
+                int last = row * gridSize.x + Math.min(gridSize.x, col + side);
+                if (bounds[blockRow + col / side] - lowest
+                        >= NetworkBase.TIE_TOLERANCE) {
+                    for (int neuron = first; neuron < last; neuron++) {
+                        out[neuron] = Double.POSITIVE_INFINITY;
+                    }
+                    continue;
+                }
+                for (int neuron = first; neuron < last; neuron++) {
+                    double distance = kernel.distance(rows[neuron], input);
+                    out[neuron] = distance;
+                    if (!(Math.abs(distance - lowest) < NetworkBase.TIE_TOLERANCE)
+                            && distance < lowest) {
+                        lowest = distance;
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "BlockBounds{gridSize=" + gridSize + ", side=" + side + '}';
+    }
+}
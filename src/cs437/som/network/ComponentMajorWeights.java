@@ -0,0 +1,295 @@
+package cs437.som.network;
+
+import cs437.som.DistanceMetric;
+import cs437.som.distancemetrics.ChebyshevDistanceMetric;
+import cs437.som.distancemetrics.EuclideanDistanceMetric;
+import cs437.som.distancemetrics.ManhattanDistanceMetric;
+
+/**
+ * A copy of a map's weights laid out one component at a time: the first
+ * weight of every neuron, then the second weight of every neuron, and so on.
+ *
+ * With short input vectors a row holds too few weights for the distance
+ * loop over it to be worth vectorizing.  Measured a component at a time,
+ * the inner loop runs across neurons instead, over contiguous weights, and
+ * plotters can read a whole component without visiting every row.
+ *
+ * The map's rows remain the weights it trains.  The map marks each row it
+ * hands out for writing as stale, and stale rows are copied over before the
+ * next measurement.  Rows are marked and copied only while the map's lock
+ * is held, by a training step and by a query about to measure; the
+ * measurements themselves only read the copy.  Each neuron's distance is
+ * accumulated in the same order the distance metric uses, so the results
+ * are identical.
+ */
+class ComponentMajorWeights {
+    /**
+     * The distances that can be measured a component at a time.
+     */
+    enum Measure {
+        /** The squared Euclidean distance of the basic maps. */
+        SQUARED_EUCLIDEAN,
+        /** {@link EuclideanDistanceMetric}. */
+        EUCLIDEAN,
+        /** {@link ManhattanDistanceMetric}. */
+        MANHATTAN,
+        /** {@link ChebyshevDistanceMetric}. */
+        CHEBYSHEV;
+
+        /**
+         * Find the measure computing the same distance as a metric.
+         *
+         * @param metric The distance metric.
+         * @return The matching measure, or null if the metric's distance can
+         * only be measured a row at a time.
+         */
+        static Measure of(DistanceMetric metric) {
+            Class<?> type = metric.getClass();
+            if (type == EuclideanDistanceMetric.class) {
+                return EUCLIDEAN;
+            } else if (type == ManhattanDistanceMetric.class) {
+                return MANHATTAN;
+            } else if (type == ChebyshevDistanceMetric.class) {
+                return CHEBYSHEV;
+            }
+            return null;
+        }
+    }
+
+    private final int neuronCount;
+    private final int inputLength;
+    private final double[][] components;
+    private final boolean[] stale;
+    private boolean anyStale = false;
+
+    // The rows last copied, or null when every row must be copied again.
+    private double[][] source = null;
+
+    /**
+     * Create an empty component-major layout.
+     *
+     * @param neuronCount The number of neurons.
+     * @param inputLength The number of weights per neuron.
+     */
+    ComponentMajorWeights(int neuronCount, int inputLength) {
+        this.neuronCount = neuronCount;
+        this.inputLength = inputLength;
+        components = new double[inputLength][neuronCount];
+        stale = new boolean[neuronCount];
+    }
+
+    /**
+     * Record that a neuron's row is about to change.  Neurons may be marked
+     * from several threads at once, as long as each marks different neurons.
+     *
+     * @param neuron The neuron's index.
+     */
+    void markStale(int neuron) {
+        stale[neuron] = true;
+        anyStale = true;
+    }
+
+    /**
+     * Record that any of the rows may have changed.
+     */
+    synchronized void invalidate() {
+        source = null;
+    }
+
+    /**
+     * Bring the layout up to date with the map's rows.
+     *
+     * @param rows The map's weight matrix.
+     */
+    synchronized void update(double[][] rows) {
+        if (rows != source) {
+            for (int neuron = 0; neuron < neuronCount; neuron++) {
+                copyRow(rows, neuron);
+                stale[neuron] = false;
+            }
+            source = rows;
+        } else if (anyStale) {
+            for (int neuron = 0; neuron < neuronCount; neuron++) {
+                if (stale[neuron]) {
+                    copyRow(rows, neuron);
+                    stale[neuron] = false;
+                }
+            }
+        }
+        anyStale = false;
+    }
+
+    private void copyRow(double[][] rows, int neuron) {
+        double[] row = rows[neuron];
+        for (int i = 0; i < inputLength; i++) {
+            components[i][neuron] = row[i];
+        }
+    }
+
+    /**
+     * Copy one component of every neuron's weights.
+     *
+     * @param component The component's index in an input vector.
+     * @param out A buffer of at least neuronCount elements.
+     */
+    synchronized void component(int component, double[] out) {
+        System.arraycopy(components[component], 0, out, 0, neuronCount);
+    }
+
+    /**
+     * Measure the distance from a range of neurons to an input vector.
+     *
+     * @param measure The distance to measure.
+     * @param input The input vector.
+     * @param out The buffer to receive the distances, indexed by neuron.
+     * @param from The first neuron index, inclusive.
+     * @param to The last neuron index, exclusive.
+     */
+    void distances(Measure measure, double[] input, double[] out,
+                   int from, int to) {
+        // Each metric starts from 0.0, and adding the first component's
+        // term to 0.0 leaves it unchanged, so the first pass stores it.
+        for (int i = 0; i < inputLength; i++) {
+            double[] weights = components[i];
+            boolean first = i == 0;
+            switch (measure) {
+            case SQUARED_EUCLIDEAN:
+                addSquaredDifferences(input[i], weights, out, from, to, first);
+                break;
+            case EUCLIDEAN:
+                addSquares(weights, input[i], out, from, to, first);
+                break;
+            case MANHATTAN:
+                addAbsolutes(weights, input[i], out, from, to, first);
+                break;
+            case CHEBYSHEV:
+                raiseToAbsolutes(weights, input[i], out, from, to, first);
+                break;
+            }
+        }
+
+        if (measure == Measure.EUCLIDEAN) {
+            squareRoots(out, from, to);
+        }
+    }
+
+    // Each loop below runs across neurons, indexing the weights and the
+    // distances alike, so that the JIT can vectorize it.
+
+    private static void addSquaredDifferences(double x, double[] weights,
+                                              double[] out, int from, int to,
+                                              boolean first) {
+        if (first) {
+            for (int n = from; n < to; n++) {
+                double difference = x - weights[n];
+                out[n] = difference * difference;
+            }
+        } else {
+            for (int n = from; n < to; n++) {
+                double difference = x - weights[n];
+                out[n] += difference * difference;
+            }
+        }
+    }
+
+    private static void addSquares(double[] weights, double x, double[] out,
+                                   int from, int to, boolean first) {
+        if (first) {
+            for (int n = from; n < to; n++) {
+                double difference = weights[n] - x;
+                out[n] = difference * difference;
+            }
+        } else {
+            for (int n = from; n < to; n++) {
+                double difference = weights[n] - x;
+                out[n] += difference * difference;
+            }
+        }
+    }
+
+    private static void addAbsolutes(double[] weights, double x, double[] out,
+                                     int from, int to, boolean first) {
+        if (first) {
+            for (int n = from; n < to; n++) {
+                out[n] = Math.abs(weights[n] - x);
+            }
+        } else {
+            for (int n = from; n < to; n++) {
+                out[n] += Math.abs(weights[n] - x);
+            }
+        }
+    }
+
+    private static void raiseToAbsolutes(double[] weights, double x,
+                                         double[] out, int from, int to,
+                                         boolean first) {
+        if (first) {
+            for (int n = from; n < to; n++) {
+                double difference = Math.abs(weights[n] - x);
+                out[n] = difference > 0.0 ? difference : 0.0;
+            }
+        } else {
+            for (int n = from; n < to; n++) {
+                double difference = Math.abs(weights[n] - x);
+                if (difference > out[n]) {
+                    out[n] = difference;
+                }
+            }
+        }
+    }
+
+    private static void squareRoots(double[] out, int from, int to) {
+        for (int n = from; n < to; n++) {
+            out[n] = Math.sqrt(out[n]);
+        }
+    }
+
+    /**
+     * Find the neuron closest to an input vector.  Ties go to the lowest
+     * index.
+     *
+     * @param measure The distance to measure.
+     * @param input The input vector.
+     * @param scratch A buffer of at least neuronCount elements, which is
+     * overwritten.
+     * @return The index of the closest neuron.
+     */
+    int bestMatch(Measure measure, double[] input, double[] scratch) {
+        // The square root is monotonic, so the Euclidean match is found
+        // among the squared distances and only the neurons that might tie
+        // with it once rooted are rooted.
+        boolean rooted = measure == Measure.EUCLIDEAN;
+        distances(rooted ? Measure.SQUARED_EUCLIDEAN : measure, input, scratch,
+                0, neuronCount);
+        int bestMatch = lowest(scratch);
+        if (rooted && bestMatch > 0) {
+            double lowestDistance = Math.sqrt(scratch[bestMatch]);
+            double next = Math.nextUp(lowestDistance);
+            double bound = next * next;
+            for (int n = 0; n < bestMatch; n++) {
+                if (scratch[n] < bound && Math.sqrt(scratch[n]) == lowestDistance) {
+                    return n;
+                }
+            }
+        }
+        return bestMatch;
+    }
+
+    private int lowest(double[] distances) {
+        int bestMatch = 0;
+        double lowestDistance = distances[0];
+        for (int n = 1; n < neuronCount; n++) {
+            if (distances[n] < lowestDistance) {
+                lowestDistance = distances[n];
+                bestMatch = n;
+            }
+        }
+        return bestMatch;
+    }
+
+    @Override
+    public String toString() {
+        return "ComponentMajorWeights{neuronCount=" + neuronCount +
+                ", inputLength=" + inputLength + '}';
+    }
+}
@@ -0,0 +1,384 @@
+package cs437.som.network;
+
+import cs437.som.Dimension;
+import cs437.som.SOMError;
+import cs437.som.WeightInitializer;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A CustomizableSOM that may be queried from other threads while it trains.
+ *
+ * The grid is divided into stripes of whole rows, each guarded by a sequence
+ * stamp.  A training step takes the stamps of only the stripes holding
+ * neurons it changes, making each stamp odd while its stripe is written and
+ * even again afterwards.  Queries read a stripe optimistically: they note its
+ * stamp, measure its neurons and check the stamp again, measuring the stripe
+ * again if a trainer was there in the meantime.  Readers never hold up the
+ * trainer, and a reader that keeps losing the race waits for the current
+ * training step to finish instead of retrying forever.
+ *
+ * Answers are consistent stripe by stripe, not across the whole map, so a
+ * query that overlaps a training step may see some stripes from before the
+ * step and others from after it.  Use {@link #snapshot()} where one
+ * consistent view of every neuron is needed.  Training steps themselves are
+ * still taken one at a time.
+ */
+public class ConcurrentSOM extends CustomizableSOM {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The default number of grid rows in each stripe.
+     */
+    public static final int DEFAULT_STRIPE_ROWS = 4;
+
+    // Optimistic attempts at reading a stripe before waiting for the trainer.
+    private static final int OPTIMISTIC_ATTEMPTS = 8;
+
+    // Stamps are spaced a cache line apart so that readers validating one
+    // stripe do not contend with the trainer writing its neighbour.
+    private static final int STAMP_SPACING = 8;
+
+    private final int stripeRows;
+    private final int stripeNeurons;
+    private final int stripeCount;
+
+    private transient AtomicLongArray stamps;
+    private transient AtomicLong retries;
+
+    // The thread inside trainWith.  Only ever compared with the current
+    // thread, which always sees its own writes, so it need not be volatile.
+    private transient Thread trainer = null;
+
+    // The stripe of the current step's best match, whose stamp stays odd
+    // until the step ends, or -1.
+    private transient int heldStripe;
+
+    /**
+     * Create a new ConcurrentSOM with the default stripe height.
+     *
+     * @param gridSize The neuron grid dimensions.
+     * @param inputSize The input vector size.
+     * @param expectedIterations The expected number of training iterations.
+     */
+    public ConcurrentSOM(Dimension gridSize, int inputSize, int expectedIterations) {
+        this(gridSize, inputSize, expectedIterations, DEFAULT_STRIPE_ROWS);
+    }
+
+    /**
+     * Create a new ConcurrentSOM.
+     *
+     * @param gridSize The neuron grid dimensions.
+     * @param inputSize The input vector size.
+     * @param expectedIterations The expected number of training iterations.
+     * @param stripeRows The number of grid rows guarded by each stamp.
+     */
+    public ConcurrentSOM(Dimension gridSize, int inputSize, int expectedIterations,
+                         int stripeRows) {
+        super(gridSize, inputSize, expectedIterations);
+        if (stripeRows < 1) {
+            throw new SOMError("A stripe must hold at least one grid row.");
+        }
+
+        this.stripeRows = Math.min(stripeRows, gridSize.y);
+        stripeNeurons = this.stripeRows * gridSize.x;
+        stripeCount = (neuronCount + stripeNeurons - 1) / stripeNeurons;
+        createStamps();
+        super.setComponentMajorLayout(false);
+    }
+
+    /**
+     * A ConcurrentSOM always searches its rows, which its stamps guard.
+     *
+     * @param componentMajor Must be false.
+     */
+    @Override
+    public synchronized void setComponentMajorLayout(boolean componentMajor) {
+        if (componentMajor) {
+            throw new SOMError("A ConcurrentSOM cannot use the component-major layout.");
+        }
+        super.setComponentMajorLayout(false);
+    }
+
+    private void createStamps() {
+        stamps = new AtomicLongArray(stripeCount * STAMP_SPACING);
+        retries = new AtomicLong();
+        heldStripe = -1;
+    }
+
+    /**
+     * Get the number of optimistic reads that had to be repeated because a
+     * trainer changed the stripe being read.
+     *
+     * @return The number of repeated stripe reads since the map was created.
+     */
+    public long getReadRetries() {
+        return retries.get();
+    }
+
+    /**
+     * Get the number of grid rows guarded by each stamp.
+     *
+     * @return The stripe height in rows.
+     */
+    public int getStripeRows() {
+        return stripeRows;
+    }
+
+    @Override
+    public synchronized void setWeightInitializerStrategy(WeightInitializer strategy) {
+        for (int stripe = 0; stripe < stripeCount; stripe++) {
+            beginWrite(stripe);
+        }
+        try {
+            super.setWeightInitializerStrategy(strategy);
+        } finally {
+            for (int stripe = 0; stripe < stripeCount; stripe++) {
+                endWrite(stripe);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void trainWith(double[] data) {
+        trainer = Thread.currentThread();
+        try {
+            super.trainWith(data);
+        } finally {
+            if (heldStripe >= 0) {
+                endWrite(heldStripe);
+                heldStripe = -1;
+            }
+            trainer = null;
+        }
+    }
+
+    @Override
+    protected void adjustNeuronWeights(int neuron, double[] input) {
+        int stripe = neuron / stripeNeurons;
+        if (heldStripe < 0 && trainer == Thread.currentThread()) {
+            // The best match moves before its neighbors, many of which share
+            // its stripe.  The stripe is held until the step ends so that no
+            // reader sees the best match moved and its neighbors not.
+            beginWrite(stripe);
+            heldStripe = stripe;
+            super.adjustNeuronWeights(neuron, input);
+            return;
+        }
+
+        boolean held = stripe == heldStripe;
+        if (!held) {
+            beginWrite(stripe);
+        }
+        try {
+            super.adjustNeuronWeights(neuron, input);
+        } finally {
+            if (!held) {
+                endWrite(stripe);
+            }
+        }
+    }
+
+    @Override
+    protected void adjustNeighbors(int neuron, double[] input, double width,
+                                   int from, int to) {
+        SOMKernel k = kernel();
+        double[] memberships = new double[Math.min(to - from, MEMBERSHIP_CHUNK)];
+        while (from < to) {
+            int stripe = from / stripeNeurons;
+            int stripeEnd = Math.min(to, (stripe + 1) * stripeNeurons);
+            // The best match's stripe is already held by the step.
+            boolean held = stripe == heldStripe;
+            boolean writing = held;
+            try {
+                for (int start = from; start < stripeEnd; start += memberships.length) {
+                    int end = Math.min(stripeEnd, start + memberships.length);
+                    k.memberships(neuron, width, memberships, start, end);
+                    for (int i = start; i < end; i++) {
+                        double membership = memberships[i - start];
+                        if (i != neuron && membership > 0) {
+                            if (!writing) {
+                                beginWrite(stripe);
+                                writing = true;
+                            }
+                            adjustNeuronWeights(i, input, membership);
+                        }
+                    }
+                }
+            } finally {
+                if (writing && !held) {
+                    endWrite(stripe);
+                }
+            }
+            from = stripeEnd;
+        }
+    }
+
+    @Override
+    void applyWindowGroup(TrainingWindow window, int from, int to) {
+        while (from < to) {
+            int stripe = from / stripeNeurons;
+            int stripeEnd = Math.min(to, (stripe + 1) * stripeNeurons);
+            beginWrite(stripe);
+            try {
+                super.applyWindowGroup(window, from, stripeEnd);
+            } finally {
+                endWrite(stripe);
+            }
+            from = stripeEnd;
+        }
+    }
+
+    @Override
+    protected int updateBlock() {
+        // A stripe's stamp may only be taken by one thread at a time.
+        return stripeNeurons;
+    }
+
+    @Override
+    public int getBestMatchingNeuron(double[] input) {
+        checkInput(input);
+
+        double[] distances = queryScratch(stripeNeurons);
+        int bestMatch = 0;
+        double lowestDistance2 = Double.POSITIVE_INFINITY;
+        for (int from = 0; from < neuronCount; from += stripeNeurons) {
+            int to = Math.min(neuronCount, from + stripeNeurons);
+            measure(input, distances, from, from, to);
+            for (int i = from; i < to; i++) {
+                if (distances[i - from] < lowestDistance2) {
+                    lowestDistance2 = distances[i - from];
+                    bestMatch = i;
+                }
+            }
+        }
+        return bestMatch;
+    }
+
+    @Override
+    public int getBestMatchingNeurons(double[] input, int k, int[] idxOut,
+                                      double[] distOut) {
+        checkInput(input);
+        if (k < 1) {
+            throw new SOMError("At least one best matching neuron must be requested.");
+        }
+        k = Math.min(k, neuronCount);
+
+        double[] distances = distancesToInput(input, null);
+        NeuronHeap heap = new NeuronHeap(k);
+        for (int neuron = 0; neuron < neuronCount; neuron++) {
+            heap.offer(neuron, distances[neuron]);
+        }
+        return heap.drainSorted(idxOut, distOut);
+    }
+
+    @Override
+    public double distanceToInput(int neuron, double[] input) {
+        // The trainer's own reads cannot race with its writes.
+        if (trainer == Thread.currentThread()) {
+            return super.distanceToInput(neuron, input);
+        }
+
+        int stripe = neuron / stripeNeurons;
+        for (int attempt = 0; attempt < OPTIMISTIC_ATTEMPTS; attempt++) {
+            long stamp = stamps.get(stripe * STAMP_SPACING);
+            if ((stamp & 1) == 0) {
+                double distance = super.distanceToInput(neuron, input);
+                if (validate(stripe, stamp)) {
+                    return distance;
+                }
+            }
+            retries.incrementAndGet();
+            Thread.yield();
+        }
+        synchronized (this) {
+            return super.distanceToInput(neuron, input);
+        }
+    }
+
+    @Override
+    protected void distancesToInput(double[] input, double[] out,
+                                    int from, int to) {
+        while (from < to) {
+            int stripeEnd = Math.min(to, (from / stripeNeurons + 1) * stripeNeurons);
+            measure(input, out, 0, from, stripeEnd);
+            from = stripeEnd;
+        }
+    }
+
+    /**
+     * Measure the distance from a range of neurons within one stripe to an
+     * input vector, repeating the measurement until no trainer has changed
+     * the stripe during it.
+     *
+     * @param input The input vector.
+     * @param out The buffer to receive the distances.
+     * @param offset The neuron index stored at {@code out[0]}.
+     * @param from The first neuron index, inclusive.
+     * @param to The last neuron index, exclusive.
+     */
+    private void measure(double[] input, double[] out, int offset,
+                         int from, int to) {
+        if (trainer == Thread.currentThread()) {
+            measureDirectly(input, out, offset, from, to);
+            return;
+        }
+
+        int stripe = from / stripeNeurons;
+        for (int attempt = 0; attempt < OPTIMISTIC_ATTEMPTS; attempt++) {
+            long stamp = stamps.get(stripe * STAMP_SPACING);
+            if ((stamp & 1) == 0) {
+                measureDirectly(input, out, offset, from, to);
+                if (validate(stripe, stamp)) {
+                    return;
+                }
+            }
+            retries.incrementAndGet();
+            Thread.yield();
+        }
+        synchronized (this) {
+            measureDirectly(input, out, offset, from, to);
+        }
+    }
+
+    private void measureDirectly(double[] input, double[] out, int offset,
+                                 int from, int to) {
+        kernel().distances(weightMatrix, input, out, offset, from, to);
+    }
+
+    /**
+     * Check that a stripe has not been written since its stamp was read.
+     *
+     * @param stripe The stripe that was read.
+     * @param stamp The even stamp seen before reading it.
+     * @return true if the reads made in between are consistent.
+     */
+    private boolean validate(int stripe, long stamp) {
+        // A plain volatile read would let the weight reads before it be
+        // reordered after it; an atomic update cannot be passed that way.
+        return stamps.getAndAdd(stripe * STAMP_SPACING, 0) == stamp;
+    }
+
+    private void beginWrite(int stripe) {
+        stamps.incrementAndGet(stripe * STAMP_SPACING);
+    }
+
+    private void endWrite(int stripe) {
+        stamps.incrementAndGet(stripe * STAMP_SPACING);
+    }
+
+    private void readObject(ObjectInputStream in)
+            throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        createStamps();
+    }
+
+    @Override
+    public String toString() {
+        return "ConcurrentSOM{stripeRows=" + stripeRows + ", " +
+                super.toString() + '}';
+    }
+}
@@ -10,12 +10,25 @@ import cs437.som.util.CustomSOMFileReader;
 
 import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
+import java.io.ObjectInputStream;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * A fully customizable self-organizing map.
  */
 public class CustomizableSOM extends NetworkBase {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The default neighborhood width at or above which the neighbors of a
+     * best matching neuron are updated on several threads.
+     */
+    public static final double DEFAULT_PARALLEL_UPDATE_WIDTH = 8.0;
+
+    // The number of memberships a neighborhood update computes at a time.
+    static final int MEMBERSHIP_CHUNK = 256;
 
     /**
      * The distance metric strategy being employed by the CustomizableSOM.
@@ -42,6 +55,28 @@ public class CustomizableSOM extends NetworkBase {
      */
     protected GridType gridType = null;
 
+    // Listeners belong to the running program, not to the map's state, so
+    // they are not checkpointed.
+    private transient List<TrainingListener> listeners =
+            new ArrayList<TrainingListener>();
+
+    // The schedule clock.  Strategies see the iteration
+    // scheduleOrigin + (time - scheduleBase) * scheduleRate, which is simply
+    // time until the remaining schedule is compressed.
+    private int scheduleBase = 0;
+    private double scheduleOrigin = 0.0;
+    private double scheduleRate = 1.0;
+
+    private double parallelUpdateWidth = DEFAULT_PARALLEL_UPDATE_WIDTH;
+
+    // The inner loops specialized for the current strategies.  Rebuilt when
+    // a strategy is replaced.
+    private transient SOMKernel kernel = null;
+    private transient double[] blockDistances = null;
+    // Scratch space for queries, which may run on several threads at once.
+    private transient ThreadLocal<double[]> queryScratch =
+            new ThreadLocal<double[]>();
+
     /**
      * Create a new CustomizableSOM.
      *
@@ -135,20 +170,160 @@ public class CustomizableSOM extends NetworkBase {
         }
     }
 
+    /**
+     * Provide a weight initialization strategy object to the
+     * CustomizableSOM.  The map's weights are replaced immediately.
+     * Ownership of {@code strategy} is transferred to the CustomizableSOM.
+     *
+     * @param strategy A configured WeightInitializer.
+     */
+    public synchronized void setWeightInitializerStrategy(WeightInitializer strategy) {
+        if (time == 0) {
+            detachWeights();
+            strategy.initializeWeights(weightMatrix, gridSize);
+        } else {
+            throw new SOMError("Cannot change weight initialization strategy after training has begun.");
+        }
+    }
+
+    /**
+     * Set the neighborhood width at or above which the neighbors of a best
+     * matching neuron are updated on several threads.  Narrower
+     * neighborhoods, as found late in training, touch too few neurons to be
+     * worth splitting, and maps below the parallel threshold are always
+     * updated on the training thread.
+     *
+     * @param width The new width.  {@code Double.POSITIVE_INFINITY} keeps
+     * every update on the training thread.
+     */
+    public void setParallelUpdateWidth(double width) {
+        parallelUpdateWidth = width;
+    }
+
+    /**
+     * Register a listener to be notified of every training step.  Strategy
+     * objects implementing TrainingListener do not need to be registered.
+     *
+     * @param listener The listener to add.
+     */
+    public void addTrainingListener(TrainingListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Stop a listener from being notified of training steps.
+     *
+     * @param listener The listener to remove.
+     */
+    public void removeTrainingListener(TrainingListener listener) {
+        listeners.remove(listener);
+    }
+
+    @Override
+    protected void bestMatchFound(double[] data, int best) {
+        int iteration = scheduleTime();
+        if (learningRate instanceof TrainingListener) {
+            ((TrainingListener) learningRate).trainingStep(
+                    iteration, data, best, bestMatchDistance);
+        }
+        if (neighborhoodWidth instanceof TrainingListener) {
+            ((TrainingListener) neighborhoodWidth).trainingStep(
+                    iteration, data, best, bestMatchDistance);
+        }
+        for (TrainingListener listener : listeners) {
+            listener.trainingStep(time, data, best, bestMatchDistance);
+        }
+    }
+
+    /**
+     * Compress the remainder of the learning rate and neighborhood width
+     * schedules so that they reach their final values after
+     * {@code remainingIterations} more iterations instead of at the expected
+     * iteration count.  Strategies that act on one exact iteration, such as
+     * the transitions of a CompoundNeighborhood, may be stepped over.
+     *
+     * @param remainingIterations The number of iterations in which to finish
+     * the schedules.
+     */
+    public void compressSchedule(int remainingIterations) {
+        if (remainingIterations < 1) {
+            throw new SOMError("The schedule must have at least one iteration left.");
+        }
+
+        double position = schedulePosition();
+        double remainingSchedule = expectedIterations - position;
+        if (remainingSchedule <= 0) {
+            return;
+        }
+
+        scheduleOrigin = position;
+        scheduleBase = time;
+        scheduleRate = remainingSchedule / remainingIterations;
+    }
+
+    /**
+     * Get the iteration the strategies should act on, which is the current
+     * time unless the schedule has been compressed.
+     *
+     * @return The current schedule iteration.
+     */
+    protected int scheduleTime() {
+        return (int) schedulePosition(time);
+    }
+
+    private double schedulePosition() {
+        return schedulePosition(time);
+    }
+
+    private double schedulePosition(int iteration) {
+        return scheduleOrigin + (iteration - scheduleBase) * scheduleRate;
+    }
+
+    /**
+     * Get the kernel running the map's inner loops, creating a new one if the
+     * strategies have changed since the last was made.
+     *
+     * @return A kernel bound to the current strategies.
+     */
+    SOMKernel kernel() {
+        SOMKernel k = kernel;
+        if (k == null || k.distanceMetric != distanceMetric
+                || k.neighborhoodMembership != neighborhoodMembership
+                || k.gridType != gridType) {
+            k = SOMKernel.create(this);
+            kernel = k;
+        }
+        return k;
+    }
+
+    private void readObject(ObjectInputStream in)
+            throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        listeners = new ArrayList<TrainingListener>();
+        queryScratch = new ThreadLocal<double[]>();
+    }
+
+    @Override
+    public GridType getGridType() {
+        return gridType;
+    }
+
     @Override
     public int getBestMatchingNeuron(double[] input) {
         checkInput(input);
 
-        int bestMatch = 0;
-        double lowestDistance2 = distanceMetric.distance(weightMatrix[0], input);
-        for (int i = 1; i < neuronCount; i++) {
-            double distance2temp = distanceMetric.distance(weightMatrix[i], input);
-            if (distance2temp < lowestDistance2) {
-                lowestDistance2 = distance2temp;
-                bestMatch = i;
-            }
+        ComponentMajorWeights components = refreshComponentMajorWeights();
+        ComponentMajorWeights.Measure measure = measure(components);
+        if (measure != null) {
+            return components.bestMatch(measure, input, queryScratch(neuronCount));
+        }
+        BlockBounds bounds = refreshBlockBounds();
+        measure = ComponentMajorWeights.Measure.of(distanceMetric);
+        if (bounds != null && measure != null) {
+            return bounds.bestMatch(measure, kernel(), weightMatrix, input,
+                    queryScratch(bounds.getBlockCount()));
         }
-        return bestMatch;
+        return kernel().bestMatch(weightMatrix, input, 0, neuronCount);
     }
 
     /**
@@ -159,25 +334,157 @@ public class CustomizableSOM extends NetworkBase {
      * @param membership The neuron's membership in the BMU's neighborhood.
      */
     protected void adjustNeuronWeights(int neuron, double[] input, double membership) {
-        for (int i = 0; i < weightMatrix[neuron].length; i++) {
-            double delta = input[i] - weightMatrix[neuron][i];
-            delta *= learningRate.learningRate(time);
-            delta *= membership;
-
-            weightMatrix[neuron][i] += delta;
-        }
+        kernel().move(writableWeights(neuron), input,
+                learningRate.learningRate(scheduleTime()), membership);
     }
 
     @Override
     protected void adjustNeighborsOf(int neuron, double[] input) {
-        for (int i = 0; i < neuronCount; i++) {
-            double membership = neighborhoodMembership.neighborhoodMembership(
-                    gridType.gridDistance(neuron, i), neighborhoodWidth.neighborhoodWidth(time));
+        double width = neighborhoodWidth.neighborhoodWidth(scheduleTime());
+        if (width >= parallelUpdateWidth && isParallelScan()) {
+            // Each neuron's update depends only on its own weights, so the
+            // pieces need no coordination.
+            int block = updateBlock();
+            int blocks = (neuronCount + block - 1) / block;
+            getExecutionContext().invoke(new NeighborUpdateTask(this, neuron, input, width,
+                    block, 0, blocks, Math.max(1, scanGrain() / block)));
+        } else {
+            adjustNeighbors(neuron, input, width, 0, neuronCount);
+        }
+    }
 
-            if (i != neuron && membership > 0) {
-                adjustNeuronWeights(i, input, membership);
+    /**
+     * Adjust the weights of the neurons in a range that are in the
+     * neighborhood of a given neuron.
+     *
+     * @param neuron The index of the neuron who's neighborhood will be examined.
+     * @param input The input vector to adjust towards.
+     * @param width The current neighborhood width.
+     * @param from The first neuron index, inclusive.
+     * @param to The last neuron index, exclusive.
+     */
+    protected void adjustNeighbors(int neuron, double[] input, double width,
+                                   int from, int to) {
+        SOMKernel k = kernel();
+        double[] memberships = new double[Math.min(to - from, MEMBERSHIP_CHUNK)];
+        for (int start = from; start < to; start += memberships.length) {
+            int end = Math.min(to, start + memberships.length);
+            k.memberships(neuron, width, memberships, start, end);
+            for (int i = start; i < end; i++) {
+                double membership = memberships[i - start];
+                if (i != neuron && membership > 0) {
+                    adjustNeuronWeights(i, input, membership);
+                }
+            }
+        }
+    }
+
+    /**
+     * The number of consecutive neurons a parallel neighborhood update keeps
+     * together on one thread.  Ranges passed to
+     * {@link #adjustNeighbors(int, double[], double, int, int)} start on a
+     * multiple of this size.
+     *
+     * @return The size of the blocks neighborhood updates are split into.
+     */
+    protected int updateBlock() {
+        return 1;
+    }
+
+    /**
+     * Train the map with a window of samples, with the same effect as calling
+     * trainWith with each in turn except as described here.
+     *
+     * While the neighborhood is narrower than the parallel update width, the
+     * best matching neurons of the whole window are found in parallel
+     * against the weights as they stand, and the samples are gathered into
+     * groups whose neighborhoods do not overlap on the grid.  A sample joins
+     * the first group after every earlier sample it overlaps, so overlapping
+     * updates are still made in sample order, and the updates of each group
+     * are made in parallel.  A sample's best match therefore does not see
+     * the updates of earlier samples in the same window, ties between
+     * equally good matches go to the lowest neuron index, and training
+     * listeners hear of every step of the window before its updates are
+     * made.  Wider neighborhoods overlap too much to be grouped, so such
+     * windows are trained one sample at a time.
+     *
+     * @param samples The input vectors.
+     * @param count The number of vectors in {@code samples} to train with.
+     */
+    public synchronized void trainWithWindow(double[][] samples, int count) {
+        for (int k = 0; k < count; k++) {
+            checkInput(samples[k]);
+        }
+
+        double[] widths = new double[count];
+        for (int k = 0; k < count; k++) {
+            widths[k] = neighborhoodWidth.neighborhoodWidth(
+                    (int) schedulePosition(time + k));
+        }
+        if (count < 2 || widths[0] >= parallelUpdateWidth) {
+            for (int k = 0; k < count; k++) {
+                trainWith(samples[k]);
+            }
+            return;
+        }
+
+        TrainingWindow window = new TrainingWindow(this, samples, count, widths);
+        window.locate();
+
+        int start = time;
+        for (int k = 0; k < count; k++) {
+            time = start + k;
+            bestMatchDistance = window.getDistance(k);
+            bestMatchFound(samples[k], window.getBestMatch(k));
+            window.schedule(k, learningRate(),
+                    learningRate.learningRate(scheduleTime()));
+        }
+        time = start + count;
+
+        window.apply();
+    }
+
+    /**
+     * Train the map with every vector from a data source, a window of
+     * vectors at a time.
+     *
+     * @param source The source of training vectors.
+     * @param windowSize The number of vectors trained together.
+     * @see #trainWithWindow(double[][], int)
+     */
+    public void train(TrainingDataSource source, int windowSize) {
+        if (source.getInputLength() != inputVectorSize) {
+            throw new SOMError(
+                    "Data source vector length does not match network input size.");
+        }
+        if (windowSize < 1) {
+            throw new SOMError("A training window must hold at least one vector.");
+        }
+
+        double[][] window = new double[windowSize][inputVectorSize];
+        int count = 0;
+        for (double[] data = source.next(); data != null; data = source.next()) {
+            System.arraycopy(data, 0, window[count++], 0, inputVectorSize);
+            if (count == windowSize) {
+                trainWithWindow(window, count);
+                count = 0;
             }
         }
+        if (count > 0) {
+            trainWithWindow(window, count);
+        }
+    }
+
+    /**
+     * Apply the current group of a training window to a range of neurons.
+     * Ranges start on a multiple of {@link #updateBlock()}.
+     *
+     * @param window The window being trained.
+     * @param from The first neuron index, inclusive.
+     * @param to The last neuron index, exclusive.
+     */
+    void applyWindowGroup(TrainingWindow window, int from, int to) {
+        window.apply(from, to);
     }
 
     @Override
@@ -186,9 +493,83 @@ public class CustomizableSOM extends NetworkBase {
                 "neuronDistance not used in CustomizableSOM");
     }
 
+    @Override
+    protected int getBMUDuringTraining(double[] input) {
+        // Training moves too many neurons per step for the component-major
+        // weights to be worth keeping up to date, so it searches the rows,
+        // skipping distant blocks when the map keeps their bounds.
+        double[] distances = trainingDistances();
+        BlockBounds bounds = refreshBlockBounds();
+        ComponentMajorWeights.Measure measure =
+                ComponentMajorWeights.Measure.of(distanceMetric);
+        if (bounds != null && measure != null) {
+            bounds.trainingDistances(measure, kernel(), weightMatrix, input,
+                    distances, blockDistances(bounds));
+        } else {
+            kernel().distances(weightMatrix, input, distances, 0, 0, neuronCount);
+        }
+        return chooseBestMatch(distances);
+    }
+
+    /**
+     * Get the buffer training measures the distance to each block into.  It
+     * is only used while holding the map's lock.
+     *
+     * @param bounds The map's block bounds.
+     * @return A buffer with room for every block.
+     */
+    private double[] blockDistances(BlockBounds bounds) {
+        if (blockDistances == null
+                || blockDistances.length < bounds.getBlockCount()) {
+            blockDistances = new double[bounds.getBlockCount()];
+        }
+        return blockDistances;
+    }
+
+    /**
+     * Get the calling thread's scratch buffer for queries, which is kept
+     * between queries so that they create no garbage in proportion to the
+     * map's size.
+     *
+     * @param length The number of elements needed.
+     * @return A buffer of at least {@code length} elements.
+     */
+    double[] queryScratch(int length) {
+        double[] scratch = queryScratch.get();
+        if (scratch == null || scratch.length < length) {
+            scratch = new double[length];
+            queryScratch.set(scratch);
+        }
+        return scratch;
+    }
+
     @Override
     public double distanceToInput(int neuron, double[] input) {
-        return distanceMetric.distance(weightMatrix[neuron], input);
+        return kernel().distance(weightMatrix[neuron], input);
+    }
+
+    @Override
+    protected void distancesToInput(double[] input, double[] out,
+                                    int from, int to) {
+        ComponentMajorWeights components = componentMajorWeights();
+        ComponentMajorWeights.Measure measure = measure(components);
+        if (measure != null) {
+            components.distances(measure, input, out, from, to);
+        } else {
+            kernel().distances(weightMatrix, input, out, 0, from, to);
+        }
+    }
+
+    /**
+     * Find how the component-major weights measure the map's distance
+     * metric.
+     *
+     * @param components The component-major weights, or null.
+     * @return The measure, or null if distances must be measured by row.
+     */
+    private ComponentMajorWeights.Measure measure(ComponentMajorWeights components) {
+        return components == null ? null
+                : ComponentMajorWeights.Measure.of(distanceMetric);
     }
 
     @Override
@@ -207,7 +588,7 @@ public class CustomizableSOM extends NetworkBase {
     }
 
     @Override
-    public void write(OutputStreamWriter destination) throws IOException {
+    protected void writeHeader(Writer destination) throws IOException {
         destination.write(String.format("Map type: CustomizableSOM%n"));
 
         destination.write(String.format("Distance metric: %s%n",
@@ -224,8 +605,7 @@ public class CustomizableSOM extends NetworkBase {
         destination.write(String.format("Iterations: %d of %d%n", time,
                 expectedIterations));
 
-        super.write(destination);
-        destination.flush();
+        super.writeHeader(destination);
     }
 
     /**
@@ -238,7 +618,24 @@ public class CustomizableSOM extends NetworkBase {
      * @throws IOException if something fails while reading the stream.
      */
     public static CustomizableSOM read(BufferedReader input) throws IOException {
+        return read(input, SOMExecutionContext.getDefault());
+    }
+
+    /**
+     * Read a CustomizableSOM from an input stream, parsing its weights on
+     * the threads of an execution context, which the map then uses.
+     *
+     * @param input The stream to read from.  This stream should be passed in
+     * as soon as it is known to represent a CustomizableSOM.
+     * @param context The execution context to use.
+     * @return A CustomizableSOM as represented by the contents of
+     * {@code input}.
+     * @throws IOException if something fails while reading the stream.
+     */
+    public static CustomizableSOM read(BufferedReader input, SOMExecutionContext context)
+            throws IOException {
         CustomSOMFileReader sfr = new CustomSOMFileReader();
+        sfr.setExecutionContext(context);
         sfr.parse(input);
 
         CustomizableSOM bpsom = new CustomizableSOM(
@@ -261,6 +658,7 @@ public class CustomizableSOM extends NetworkBase {
             bpsom.neighborhoodMembership = sfr.getMembershipFunction();
 
         bpsom.time = sfr.getTime();
+        bpsom.setExecutionContext(context);
 
         return bpsom;
     }
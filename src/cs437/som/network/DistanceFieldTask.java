@@ -0,0 +1,51 @@
+package cs437.som.network;
+
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Fork/join task computing the distance from a range of neurons to a single
+ * input vector.  Ranges larger than the grain are split in half until each
+ * piece is small enough to be scanned serially by
+ * {@link NetworkBase#distancesToInput(double[], double[], int, int)}.
+ */
+class DistanceFieldTask extends RecursiveAction {
+    private static final long serialVersionUID = 0L;
+
+    private final NetworkBase map;
+    private final double[] input;
+    private final double[] out;
+    private final int from;
+    private final int to;
+    private final int grain;
+
+    /**
+     * Create a task for the neurons in [{@code from}, {@code to}).
+     *
+     * @param map The map whose neurons will be measured.
+     * @param input The input vector.
+     * @param out The buffer to receive the distances.
+     * @param from The first neuron index, inclusive.
+     * @param to The last neuron index, exclusive.
+     * @param grain The largest range that is scanned without splitting.
+     */
+    DistanceFieldTask(NetworkBase map, double[] input, double[] out,
+                      int from, int to, int grain) {
+        this.map = map;
+        this.input = input;
+        this.out = out;
+        this.from = from;
+        this.to = to;
+        this.grain = grain;
+    }
+
+    @Override
+    protected void compute() {
+        if (to - from <= grain) {
+            map.distancesToInput(input, out, from, to);
+        } else {
+            int middle = (from + to) >>> 1;
+            invokeAll(new DistanceFieldTask(map, input, out, from, middle, grain),
+                    new DistanceFieldTask(map, input, out, middle, to, grain));
+        }
+    }
+}
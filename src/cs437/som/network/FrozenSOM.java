@@ -0,0 +1,203 @@
+package cs437.som.network;
+
+import cs437.som.Dimension;
+import cs437.som.DistanceMetric;
+import cs437.som.SOMError;
+import cs437.som.SOMExecutionContext;
+import cs437.som.SelfOrganizingMap;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+
+/**
+ * An immutable copy of a map's weights at one point in its training, created
+ * by {@link NetworkBase#snapshot()}.
+ *
+ * A snapshot shares its weight rows with the map it was taken from instead
+ * of copying them.  The map copies a row before it next changes it, so the
+ * snapshot's rows never change and any number of threads may query it while
+ * the map goes on training.
+ *
+ * Distances are measured as the map measures them: with its distance metric
+ * for a CustomizableSOM, and as the squared Euclidean distance for the basic
+ * maps.
+ */
+public class FrozenSOM implements SelfOrganizingMap {
+    private final Dimension gridSize;
+    private final int inputLength;
+    private final int neuronCount;
+    private final int time;
+    private final double[][] weights;
+    private final String descriptor;
+    private final SOMExecutionContext executionContext;
+
+    // null when the map measures squared Euclidean distance.
+    private final DistanceMetric distanceMetric;
+
+    /**
+     * Capture a map's current weights.  The map must copy any shared row
+     * before changing it.
+     *
+     * @param map The map to capture.
+     */
+    FrozenSOM(NetworkBase map) {
+        gridSize = map.gridSize;
+        inputLength = map.inputVectorSize;
+        neuronCount = map.neuronCount;
+        time = map.time;
+        executionContext = map.getExecutionContext();
+        weights = map.weightMatrix.clone();
+        distanceMetric = map instanceof CustomizableSOM
+                ? ((CustomizableSOM) map).distanceMetric : null;
+
+        StringWriter header = new StringWriter();
+        try {
+            map.writeHeader(header);
+        } catch (IOException e) {
+            throw new SOMError("Could not describe the map: " + e);
+        }
+        descriptor = header.toString();
+    }
+
+    public int getInputLength() {
+        return inputLength;
+    }
+
+    public int getNeuronCount() {
+        return neuronCount;
+    }
+
+    public Dimension getGridSize() {
+        return gridSize;
+    }
+
+    /**
+     * Get the iteration at which the snapshot was taken.
+     *
+     * @return The map's training iteration when it was captured.
+     */
+    public int getTime() {
+        return time;
+    }
+
+    public double getWeight(int neuron, int weightIndex) {
+        return weights[neuron][weightIndex];
+    }
+
+    public double[] getWeightComponent(int weightIndex, double[] out) {
+        if (out == null || out.length < neuronCount) {
+            out = new double[neuronCount];
+        }
+        for (int neuron = 0; neuron < neuronCount; neuron++) {
+            out[neuron] = weights[neuron][weightIndex];
+        }
+        return out;
+    }
+
+    public int getBestMatchingNeuron(double[] input) {
+        checkInput(input);
+        if (isParallelScan()) {
+            int[] best = new int[1];
+            getBestMatchingNeurons(input, 1, best, null);
+            return best[0];
+        }
+
+        int bestMatch = 0;
+        double lowestDistance = distanceToInput(0, input);
+        for (int neuron = 1; neuron < neuronCount; neuron++) {
+            double distance = distanceToInput(neuron, input);
+            if (distance < lowestDistance) {
+                lowestDistance = distance;
+                bestMatch = neuron;
+            }
+        }
+        return bestMatch;
+    }
+
+    public int getBestMatchingNeuron(int[] input) {
+        double[] dbls = new double[input.length];
+        for (int i = 0; i < input.length; i++) {
+            dbls[i] = input[i];
+        }
+        return getBestMatchingNeuron(dbls);
+    }
+
+    public int getBestMatchingNeurons(double[] input, int k, int[] idxOut,
+                                      double[] distOut) {
+        checkInput(input);
+        if (k < 1) {
+            throw new SOMError("At least one best matching neuron must be requested.");
+        }
+        k = Math.min(k, neuronCount);
+
+        NeuronHeap heap;
+        if (isParallelScan()) {
+            heap = executionContext.invoke(new BestMatchesTask(this, input, k,
+                    0, neuronCount, executionContext.grain(neuronCount)));
+        } else {
+            heap = BestMatchesTask.scan(this, input, k, 0, neuronCount);
+        }
+        return heap.drainSorted(idxOut, distOut);
+    }
+
+    public double distanceToInput(int neuron, double[] input) {
+        if (distanceMetric != null) {
+            return distanceMetric.distance(weights[neuron], input);
+        }
+
+        double[] row = weights[neuron];
+        double sum = 0.0;
+        for (int i = 0; i < inputLength; i++) {
+            double difference = input[i] - row[i];
+            sum += difference * difference;
+        }
+        return sum;
+    }
+
+    public double[] distancesToInput(double[] input, double[] out) {
+        checkInput(input);
+        if (out == null || out.length < neuronCount) {
+            out = new double[neuronCount];
+        }
+        for (int neuron = 0; neuron < neuronCount; neuron++) {
+            out[neuron] = distanceToInput(neuron, input);
+        }
+        return out;
+    }
+
+    private boolean isParallelScan() {
+        return executionContext.shouldSplit((long) neuronCount * inputLength);
+    }
+
+    private void checkInput(double[] input) {
+        if (input.length != inputLength) {
+            throw new SOMError(
+                    "Input vector length does not match network input size.");
+        }
+    }
+
+    /**
+     * Write the snapshot in the text format of the map it was taken from.
+     *
+     * @param destination Where to write to.
+     * @throws IOException If writing throws.
+     */
+    public void write(OutputStreamWriter destination) throws IOException {
+        destination.write(descriptor);
+        destination.write(String.format("Weights:%n"));
+        WeightRowWriter rows = new WeightRowWriter(destination);
+        for (double[] row : weights) {
+            rows.write(row);
+        }
+        rows.flush();
+        destination.write(String.format("end weights%n"));
+        destination.flush();
+    }
+
+    @Override
+    public String toString() {
+        return "FrozenSOM{gridSize=" + gridSize + ", inputLength=" + inputLength +
+                ", time=" + time + ", distanceMetric=" + distanceMetric + '}';
+    }
+}
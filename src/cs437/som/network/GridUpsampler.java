@@ -0,0 +1,228 @@
+package cs437.som.network;
+
+import cs437.som.Dimension;
+import cs437.som.GridType;
+import cs437.som.SOMError;
+import cs437.som.topology.Moore;
+import cs437.som.topology.OffsetHexagonalGrid;
+import cs437.som.topology.SkewHexagonalGrid;
+import cs437.som.topology.SquareGrid;
+import cs437.som.topology.ToroidalEuclideanSquare;
+import cs437.som.topology.VonNeumann;
+
+/**
+ * Transfers the weights of a trained map onto a map with a larger grid, so
+ * that the larger map starts out already organized.
+ *
+ * Each neuron of the larger grid is placed at the same relative position in
+ * the smaller grid and takes the bilinear interpolation of the 4 surrounding
+ * neurons' weights.  Positions are related by the centers of the cells, so
+ * that doubling a grid puts two neurons on either side of each neuron of the
+ * smaller grid.  The interpolation follows the grid's topology:
+ * <ul>
+ * <li>Square grids interpolate in row and column space.  Neurons beyond the
+ * outermost centers of the smaller grid take the weights of its edge.</li>
+ * <li>Skew hexagonal grids, including that of a BasicHexGridSOM, are an
+ * affine image of a square grid, which preserves relative positions, so
+ * they are interpolated as square grids.</li>
+ * <li>Toroidal grids treat the grid as periodic, so neurons on one edge
+ * interpolate with neurons on the opposite edge.</li>
+ * <li>Offset hexagonal grids account for every other column being shifted
+ * half a cell down, interpolating within each column at its own offset.</li>
+ * </ul>
+ * Maps on any other grid are rejected.
+ */
+public class GridUpsampler {
+    /**
+     * The ways of relating positions on the supported grids.
+     */
+    private enum Layout {
+        SQUARE, TOROIDAL, OFFSET_HEXAGONAL
+    }
+
+    private GridUpsampler() {
+    }
+
+    /**
+     * Interpolate the weights of {@code source} onto {@code destination}.
+     * Both maps must use the same kind of grid.
+     *
+     * @param source The trained map.
+     * @param destination The map to receive the weights.
+     * @throws SOMError if the maps' input lengths or kinds of grid differ, or
+     * their grid is not supported.
+     */
+    public static void upsample(NetworkBase source, NetworkBase destination) {
+        if (source.inputVectorSize != destination.inputVectorSize) {
+            throw new SOMError("Cannot upsample between maps with different input lengths.");
+        }
+        Layout layout = layout(source);
+        if (layout(destination) != layout) {
+            throw new SOMError("Cannot upsample between different kinds of grid.");
+        }
+
+        Dimension from = source.gridSize;
+        Dimension to = destination.gridSize;
+        double[] scratch = new double[source.inputVectorSize];
+
+        // The whole matrix is rewritten in place, so its rows must first be
+        // unshared from any snapshot, and the destination's searches kept
+        // out until they can measure the new weights.
+        synchronized (destination) {
+            destination.detachWeights();
+            for (int row = 0; row < to.y; row++) {
+                for (int col = 0; col < to.x; col++) {
+                    double[] weights = destination.weightMatrix[row * to.x + col];
+                    switch (layout) {
+                    case TOROIDAL:
+                        periodic(source, scale(col, to.x, from.x),
+                                scale(row, to.y, from.y), weights);
+                        break;
+                    case OFFSET_HEXAGONAL:
+                        offsetHexagonal(source, to, col, row, weights, scratch);
+                        break;
+                    default:
+                        bilinear(source, scale(col, to.x, from.x),
+                                scale(row, to.y, from.y), weights, scratch);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Decide how a map's grid is interpolated.
+     *
+     * @throws SOMError if the grid is not supported.
+     */
+    private static Layout layout(NetworkBase map) {
+        if (map instanceof BasicSquareGridSOM || map instanceof BasicHexGridSOM) {
+            return Layout.SQUARE;
+        }
+
+        GridType grid = map.getGridType();
+        if (map instanceof CustomizableSOM) {
+            if (grid instanceof SquareGrid || grid instanceof VonNeumann
+                    || grid instanceof Moore || grid instanceof SkewHexagonalGrid) {
+                return Layout.SQUARE;
+            } else if (grid instanceof ToroidalEuclideanSquare) {
+                return Layout.TOROIDAL;
+            } else if (grid instanceof OffsetHexagonalGrid) {
+                return Layout.OFFSET_HEXAGONAL;
+            }
+        }
+        throw new SOMError("Cannot upsample a map on grid " + grid);
+    }
+
+    /**
+     * Map a coordinate in one grid axis to the same relative position in
+     * another, aligning the centers of the cells.
+     */
+    private static double scale(double position, int fromCells, int toCells) {
+        return (position + 0.5) * toCells / fromCells - 0.5;
+    }
+
+    /**
+     * Interpolate a non-wrapping grid at fractional column {@code x} and
+     * row {@code y}.
+     */
+    private static void bilinear(NetworkBase map, double x, double y,
+                                 double[] out, double[] scratch) {
+        Dimension size = map.gridSize;
+        x = clamp(x, size.x - 1);
+        y = clamp(y, size.y - 1);
+        int x0 = (int) x;
+        int y0 = (int) y;
+        int x1 = Math.min(x0 + 1, size.x - 1);
+        int y1 = Math.min(y0 + 1, size.y - 1);
+
+        blend(map.weightMatrix[y0 * size.x + x0], map.weightMatrix[y0 * size.x + x1],
+                x - x0, out);
+        blend(map.weightMatrix[y1 * size.x + x0], map.weightMatrix[y1 * size.x + x1],
+                x - x0, scratch);
+        blendInto(out, scratch, y - y0);
+    }
+
+    /**
+     * Interpolate a toroidal grid at fractional column {@code x} and row
+     * {@code y}, wrapping around every edge.
+     */
+    private static void periodic(NetworkBase map, double x, double y, double[] out) {
+        Dimension size = map.gridSize;
+        double fx = Math.floor(x);
+        double fy = Math.floor(y);
+        int x0 = wrap((int) fx, size.x);
+        int y0 = wrap((int) fy, size.y);
+        int x1 = wrap(x0 + 1, size.x);
+        int y1 = wrap(y0 + 1, size.y);
+        double tx = x - fx;
+        double ty = y - fy;
+
+        double[] w00 = map.weightMatrix[y0 * size.x + x0];
+        double[] w01 = map.weightMatrix[y0 * size.x + x1];
+        double[] w10 = map.weightMatrix[y1 * size.x + x0];
+        double[] w11 = map.weightMatrix[y1 * size.x + x1];
+        for (int i = 0; i < out.length; i++) {
+            double top = w00[i] + tx * (w01[i] - w00[i]);
+            double bottom = w10[i] + tx * (w11[i] - w10[i]);
+            out[i] = top + ty * (bottom - top);
+        }
+    }
+
+    /**
+     * Interpolate an offset hexagonal grid for the neuron at {@code col},
+     * {@code row} of a grid of {@code size}.  Positions are compared in
+     * physical space, where odd columns sit half a row lower.
+     */
+    private static void offsetHexagonal(NetworkBase map, Dimension size,
+                                        int col, int row, double[] out,
+                                        double[] scratch) {
+        Dimension from = map.gridSize;
+
+        // The neuron's physical row includes its column's offset.
+        double x = clamp(scale(col, size.x, from.x), from.x - 1);
+        double py = scale(row + 0.5 * (col & 1), size.y, from.y);
+
+        int x0 = (int) x;
+        int x1 = Math.min(x0 + 1, from.x - 1);
+
+        // Interpolate down each neighboring column at that column's offset,
+        // then across the columns.
+        column(map, x0, py - 0.5 * (x0 & 1), out);
+        column(map, x1, py - 0.5 * (x1 & 1), scratch);
+        blendInto(out, scratch, x - x0);
+    }
+
+    /**
+     * Interpolate a single column of a grid at fractional row {@code y}.
+     */
+    private static void column(NetworkBase map, int x, double y, double[] out) {
+        Dimension size = map.gridSize;
+        y = clamp(y, size.y - 1);
+        int y0 = (int) y;
+        int y1 = Math.min(y0 + 1, size.y - 1);
+        blend(map.weightMatrix[y0 * size.x + x], map.weightMatrix[y1 * size.x + x],
+                y - y0, out);
+    }
+
+    private static void blend(double[] a, double[] b, double t, double[] out) {
+        for (int i = 0; i < out.length; i++) {
+            out[i] = a[i] + t * (b[i] - a[i]);
+        }
+    }
+
+    private static void blendInto(double[] a, double[] b, double t) {
+        for (int i = 0; i < a.length; i++) {
+            a[i] += t * (b[i] - a[i]);
+        }
+    }
+
+    private static double clamp(double value, int max) {
+        return Math.max(0.0, Math.min(value, max));
+    }
+
+    private static int wrap(int value, int size) {
+        int wrapped = value % size;
+        return wrapped < 0 ? wrapped + size : wrapped;
+    }
+}
@@ -0,0 +1,417 @@
+package cs437.som.network;
+
+import cs437.som.DistanceMetric;
+import cs437.som.distancemetrics.ChebyshevDistanceMetric;
+import cs437.som.distancemetrics.EuclideanDistanceMetric;
+import cs437.som.distancemetrics.ManhattanDistanceMetric;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Writes the bytecode of {@link SOMKernel} subclasses.
+ *
+ * Every generated class holds its own copy of the kernel's loops, so the JIT
+ * profiles each configuration's strategy calls separately.  The distance of
+ * a metric from {@link cs437.som.distancemetrics} and the weight update are
+ * written out component by component for short inputs; other metrics are
+ * called, from a call site that only ever sees that metric.  The arithmetic
+ * is emitted in the order the strategies perform it, so the results are
+ * identical to theirs.
+ *
+ * Classes are written for class file version 49, which needs no stack map
+ * frames.  Each class is defined by a loader of its own, so it can be
+ * unloaded once no map uses it and it has been dropped from the cache.
+ */
+class KernelGenerator implements Opcodes {
+    private static final String KERNEL = "cs437/som/network/SOMKernel";
+    private static final String METRIC = "cs437/som/DistanceMetric";
+    private static final String MEMBERSHIP = "cs437/som/NeighborhoodMembershipFunction";
+    private static final String GRID = "cs437/som/GridType";
+
+    private static final String CONSTRUCTOR =
+            "(L" + METRIC + ";L" + MEMBERSHIP + ";L" + GRID + ";I)V";
+    private static final String DISTANCE = "([D[D)D";
+
+    private static final AtomicInteger serial = new AtomicInteger();
+
+    // The metrics whose distance is written out.
+    private enum Inline { NONE, EUCLIDEAN, MANHATTAN, CHEBYSHEV }
+
+    private final String name;
+    private final int inputLength;
+    private final Inline inline;
+
+    private KernelGenerator(int inputLength, Class<?> metric) {
+        name = KERNEL + "$Generated" + serial.incrementAndGet();
+        this.inputLength = inputLength;
+
+        Inline kind = Inline.NONE;
+        if (inputLength <= SOMKernel.UNROLL_LIMIT) {
+            if (metric == EuclideanDistanceMetric.class) {
+                kind = Inline.EUCLIDEAN;
+            } else if (metric == ManhattanDistanceMetric.class) {
+                kind = Inline.MANHATTAN;
+            } else if (metric == ChebyshevDistanceMetric.class) {
+                kind = Inline.CHEBYSHEV;
+            }
+        }
+        inline = kind;
+    }
+
+    /**
+     * Generate and load a new kernel class.
+     *
+     * @param inputLength The input vector length.
+     * @param metric The class of the distance metric.
+     * @return The kernel class.
+     */
+    static Class<?> generate(int inputLength, Class<? extends DistanceMetric> metric) {
+        KernelGenerator generator = new KernelGenerator(inputLength, metric);
+        byte[] bytes = generator.write();
+        return new KernelLoader().define(generator.name.replace('/', '.'), bytes);
+    }
+
+    private byte[] write() {
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        cw.visit(V1_5, ACC_PUBLIC | ACC_FINAL | ACC_SUPER, name, null, KERNEL, null);
+
+        writeConstructor(cw);
+        writeDistance(cw);
+        writeDistances(cw);
+        writeBestMatch(cw);
+        writeMemberships(cw);
+        writeMove(cw);
+
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    private void writeConstructor(ClassWriter cw) {
+        MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "<init>", CONSTRUCTOR, null, null);
+        mv.visitCode();
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitVarInsn(ALOAD, 1);
+        mv.visitVarInsn(ALOAD, 2);
+        mv.visitVarInsn(ALOAD, 3);
+        mv.visitVarInsn(ILOAD, 4);
+        mv.visitMethodInsn(INVOKESPECIAL, KERNEL, "<init>", CONSTRUCTOR);
+        mv.visitInsn(RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    /**
+     * double distance(double[] weights, double[] input)
+     */
+    private void writeDistance(ClassWriter cw) {
+        MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "distance", DISTANCE, null, null);
+        mv.visitCode();
+        Label call = new Label();
+
+        if (inline != Inline.NONE) {
+            // Inputs of the wrong length go to the metric, which rejects them.
+            mv.visitVarInsn(ALOAD, 2);
+            mv.visitInsn(ARRAYLENGTH);
+            push(mv, inputLength);
+            mv.visitJumpInsn(IF_ICMPNE, call);
+
+            // locals: 3-4 the running total, 5-6 the component difference
+            mv.visitInsn(DCONST_0);
+            mv.visitVarInsn(DSTORE, 3);
+            for (int i = 0; i < inputLength; i++) {
+                mv.visitVarInsn(ALOAD, 1);
+                push(mv, i);
+                mv.visitInsn(DALOAD);
+                mv.visitVarInsn(ALOAD, 2);
+                push(mv, i);
+                mv.visitInsn(DALOAD);
+                mv.visitInsn(DSUB);
+                switch (inline) {
+                case EUCLIDEAN:
+                    mv.visitVarInsn(DSTORE, 5);
+                    mv.visitVarInsn(DLOAD, 3);
+                    mv.visitVarInsn(DLOAD, 5);
+                    mv.visitVarInsn(DLOAD, 5);
+                    mv.visitInsn(DMUL);
+                    mv.visitInsn(DADD);
+                    mv.visitVarInsn(DSTORE, 3);
+                    break;
+                case MANHATTAN:
+                    mv.visitMethodInsn(INVOKESTATIC, "java/lang/Math", "abs", "(D)D");
+                    mv.visitVarInsn(DSTORE, 5);
+                    mv.visitVarInsn(DLOAD, 3);
+                    mv.visitVarInsn(DLOAD, 5);
+                    mv.visitInsn(DADD);
+                    mv.visitVarInsn(DSTORE, 3);
+                    break;
+                case CHEBYSHEV:
+                    Label smaller = new Label();
+                    mv.visitMethodInsn(INVOKESTATIC, "java/lang/Math", "abs", "(D)D");
+                    mv.visitVarInsn(DSTORE, 5);
+                    mv.visitVarInsn(DLOAD, 5);
+                    mv.visitVarInsn(DLOAD, 3);
+                    mv.visitInsn(DCMPL);
+                    mv.visitJumpInsn(IFLE, smaller);
+                    mv.visitVarInsn(DLOAD, 5);
+                    mv.visitVarInsn(DSTORE, 3);
+                    mv.visitLabel(smaller);
+                    break;
+                default:
+                    throw new IllegalStateException();
+                }
+            }
+            mv.visitVarInsn(DLOAD, 3);
+            if (inline == Inline.EUCLIDEAN) {
+                mv.visitMethodInsn(INVOKESTATIC, "java/lang/Math", "sqrt", "(D)D");
+            }
+            mv.visitInsn(DRETURN);
+        }
+
+        mv.visitLabel(call);
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitFieldInsn(GETFIELD, KERNEL, "distanceMetric", "L" + METRIC + ";");
+        mv.visitVarInsn(ALOAD, 1);
+        mv.visitVarInsn(ALOAD, 2);
+        mv.visitMethodInsn(INVOKEINTERFACE, METRIC, "distance", DISTANCE);
+        mv.visitInsn(DRETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    /**
+     * void distances(double[][] weights, double[] input, double[] out,
+     *                int offset, int from, int to)
+     */
+    private void writeDistances(ClassWriter cw) {
+        MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "distances",
+                "([[D[D[DIII)V", null, null);
+        mv.visitCode();
+        Label top = new Label();
+        Label end = new Label();
+
+        // local 7: the neuron
+        mv.visitVarInsn(ILOAD, 5);
+        mv.visitVarInsn(ISTORE, 7);
+        mv.visitLabel(top);
+        mv.visitVarInsn(ILOAD, 7);
+        mv.visitVarInsn(ILOAD, 6);
+        mv.visitJumpInsn(IF_ICMPGE, end);
+
+        mv.visitVarInsn(ALOAD, 3);
+        mv.visitVarInsn(ILOAD, 7);
+        mv.visitVarInsn(ILOAD, 4);
+        mv.visitInsn(ISUB);
+        callDistance(mv, 7);
+        mv.visitInsn(DASTORE);
+
+        mv.visitIincInsn(7, 1);
+        mv.visitJumpInsn(GOTO, top);
+        mv.visitLabel(end);
+        mv.visitInsn(RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    /**
+     * int bestMatch(double[][] weights, double[] input, int from, int to)
+     */
+    private void writeBestMatch(ClassWriter cw) {
+        MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "bestMatch", "([[D[DII)I",
+                null, null);
+        mv.visitCode();
+        Label top = new Label();
+        Label next = new Label();
+        Label end = new Label();
+
+        // locals: 5 the best match, 6-7 its distance, 8 the neuron,
+        // 9-10 the neuron's distance
+        mv.visitVarInsn(ILOAD, 3);
+        mv.visitVarInsn(ISTORE, 5);
+        callDistance(mv, 3);
+        mv.visitVarInsn(DSTORE, 6);
+        mv.visitVarInsn(ILOAD, 3);
+        mv.visitInsn(ICONST_1);
+        mv.visitInsn(IADD);
+        mv.visitVarInsn(ISTORE, 8);
+
+        mv.visitLabel(top);
+        mv.visitVarInsn(ILOAD, 8);
+        mv.visitVarInsn(ILOAD, 4);
+        mv.visitJumpInsn(IF_ICMPGE, end);
+        callDistance(mv, 8);
+        mv.visitVarInsn(DSTORE, 9);
+        mv.visitVarInsn(DLOAD, 9);
+        mv.visitVarInsn(DLOAD, 6);
+        mv.visitInsn(DCMPG);
+        mv.visitJumpInsn(IFGE, next);
+        mv.visitVarInsn(DLOAD, 9);
+        mv.visitVarInsn(DSTORE, 6);
+        mv.visitVarInsn(ILOAD, 8);
+        mv.visitVarInsn(ISTORE, 5);
+        mv.visitLabel(next);
+        mv.visitIincInsn(8, 1);
+        mv.visitJumpInsn(GOTO, top);
+
+        mv.visitLabel(end);
+        mv.visitVarInsn(ILOAD, 5);
+        mv.visitInsn(IRETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    /**
+     * Push {@code distance(weights[neuron], input)} for the neuron in a
+     * local variable.
+     */
+    private void callDistance(MethodVisitor mv, int neuronLocal) {
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitVarInsn(ALOAD, 1);
+        mv.visitVarInsn(ILOAD, neuronLocal);
+        mv.visitInsn(AALOAD);
+        mv.visitVarInsn(ALOAD, 2);
+        mv.visitMethodInsn(INVOKEVIRTUAL, name, "distance", DISTANCE);
+    }
+
+    /**
+     * void memberships(int neuron, double width, double[] out, int from, int to)
+     */
+    private void writeMemberships(ClassWriter cw) {
+        MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "memberships", "(ID[DII)V",
+                null, null);
+        mv.visitCode();
+        Label top = new Label();
+        Label end = new Label();
+
+        // locals: 1 neuron, 2-3 width, 4 out, 5 from, 6 to, 7 the other neuron
+        mv.visitVarInsn(ILOAD, 5);
+        mv.visitVarInsn(ISTORE, 7);
+        mv.visitLabel(top);
+        mv.visitVarInsn(ILOAD, 7);
+        mv.visitVarInsn(ILOAD, 6);
+        mv.visitJumpInsn(IF_ICMPGE, end);
+
+        mv.visitVarInsn(ALOAD, 4);
+        mv.visitVarInsn(ILOAD, 7);
+        mv.visitVarInsn(ILOAD, 5);
+        mv.visitInsn(ISUB);
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitFieldInsn(GETFIELD, KERNEL, "neighborhoodMembership", "L" + MEMBERSHIP + ";");
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitFieldInsn(GETFIELD, KERNEL, "gridType", "L" + GRID + ";");
+        mv.visitVarInsn(ILOAD, 1);
+        mv.visitVarInsn(ILOAD, 7);
+        mv.visitMethodInsn(INVOKEINTERFACE, GRID, "gridDistance", "(II)D");
+        mv.visitVarInsn(DLOAD, 2);
+        mv.visitMethodInsn(INVOKEINTERFACE, MEMBERSHIP, "neighborhoodMembership", "(DD)D");
+        mv.visitInsn(DASTORE);
+
+        mv.visitIincInsn(7, 1);
+        mv.visitJumpInsn(GOTO, top);
+        mv.visitLabel(end);
+        mv.visitInsn(RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    /**
+     * void move(double[] weights, double[] input, double rate, double membership)
+     */
+    private void writeMove(ClassWriter cw) {
+        MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "move", "([D[DDD)V", null, null);
+        mv.visitCode();
+
+        // locals: 1 weights, 2 input, 3-4 rate, 5-6 membership, 7-8 delta,
+        // 9 the component when looping
+        if (inputLength <= SOMKernel.UNROLL_LIMIT) {
+            // Rows always have the input length, so the first component past
+            // the input's end is reached only for a short input, and fails as
+            // the loop would.
+            for (int i = 0; i < inputLength; i++) {
+                moveComponent(mv, i, -1);
+            }
+        } else {
+            Label top = new Label();
+            Label end = new Label();
+            mv.visitInsn(ICONST_0);
+            mv.visitVarInsn(ISTORE, 9);
+            mv.visitLabel(top);
+            mv.visitVarInsn(ILOAD, 9);
+            mv.visitVarInsn(ALOAD, 1);
+            mv.visitInsn(ARRAYLENGTH);
+            mv.visitJumpInsn(IF_ICMPGE, end);
+            moveComponent(mv, 0, 9);
+            mv.visitIincInsn(9, 1);
+            mv.visitJumpInsn(GOTO, top);
+            mv.visitLabel(end);
+        }
+        mv.visitInsn(RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    /**
+     * Emit {@code delta = input[i] - weights[i]; delta *= rate;
+     * delta *= membership; weights[i] += delta;} for a constant component,
+     * or for the component in a local variable if {@code local} is not -1.
+     */
+    private static void moveComponent(MethodVisitor mv, int i, int local) {
+        mv.visitVarInsn(ALOAD, 2);
+        index(mv, i, local);
+        mv.visitInsn(DALOAD);
+        mv.visitVarInsn(ALOAD, 1);
+        index(mv, i, local);
+        mv.visitInsn(DALOAD);
+        mv.visitInsn(DSUB);
+        mv.visitVarInsn(DLOAD, 3);
+        mv.visitInsn(DMUL);
+        mv.visitVarInsn(DLOAD, 5);
+        mv.visitInsn(DMUL);
+        mv.visitVarInsn(DSTORE, 7);
+
+        mv.visitVarInsn(ALOAD, 1);
+        index(mv, i, local);
+        mv.visitInsn(DUP2);
+        mv.visitInsn(DALOAD);
+        mv.visitVarInsn(DLOAD, 7);
+        mv.visitInsn(DADD);
+        mv.visitInsn(DASTORE);
+    }
+
+    private static void index(MethodVisitor mv, int i, int local) {
+        if (local < 0) {
+            push(mv, i);
+        } else {
+            mv.visitVarInsn(ILOAD, local);
+        }
+    }
+
+    private static void push(MethodVisitor mv, int value) {
+        if (value >= -1 && value <= 5) {
+            mv.visitInsn(ICONST_0 + value);
+        } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+            mv.visitIntInsn(BIPUSH, value);
+        } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+            mv.visitIntInsn(SIPUSH, value);
+        } else {
+            mv.visitLdcInsn(value);
+        }
+    }
+
+    /**
+     * Defines a generated kernel.  Its parent is the loader of SOMa itself,
+     * so kernels see the same strategy interfaces as the maps using them.
+     */
+    private static class KernelLoader extends ClassLoader {
+        KernelLoader() {
+            super(SOMKernel.class.getClassLoader());
+        }
+
+        Class<?> define(String className, byte[] bytes) {
+            return defineClass(className, bytes, 0, bytes.length);
+        }
+    }
+}
@@ -0,0 +1,393 @@
+package cs437.som.network;
+
+import cs437.som.SOMError;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Periodically saves the complete training state of a map so that training
+ * can be resumed after the process is stopped.
+ *
+ * A checkpoint is taken on the training thread between iterations.  It copies
+ * the weights into one of two buffers and serializes the rest of the map:
+ * the iteration, the strategy objects with whatever state they carry (the
+ * position of a {@link cs437.som.neighborhood.CompoundNeighborhood}, the
+ * error averages of the adaptive strategies), the schedule clock and the
+ * random number generator used to break ties.  The buffer is then written to
+ * disk by a background thread, so training continues while the file is
+ * written.  A checkpoint taken while the previous one is still being written
+ * goes into the other buffer and is written next; if a newer checkpoint is
+ * taken before then, the older one is dropped.
+ *
+ * Each checkpoint replaces the file atomically, so an interrupted write
+ * leaves the previous checkpoint intact.  A map returned by
+ * {@link #resume(File)} continues training exactly as the original map
+ * would have from the same iteration, given the same training vectors.
+ *
+ * Training listeners are not part of a map's state and must be registered
+ * again on the resumed map.
+ */
+public class MapCheckpointer {
+    private static final int MAGIC = 0x534F4D43; // "SOMC"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 24;
+    private static final int CHUNK_DOUBLES = 1 << 16;
+
+    private final NetworkBase map;
+    private final Path path;
+    private final Path temporary;
+    private final int interval;
+
+    private final Snapshot[] buffers = new Snapshot[2];
+    private Snapshot writing = null;
+    private Snapshot pending = null;
+    private boolean writerActive = false;
+    private IOException failure = null;
+    private int written = 0;
+
+    private final ExecutorService writer;
+
+    /**
+     * Create a checkpointer for a map.
+     *
+     * @param map The map to checkpoint.
+     * @param file The file to keep the latest checkpoint in.
+     * @param interval The number of iterations between checkpoints.
+     */
+    public MapCheckpointer(NetworkBase map, File file, int interval) {
+        if (interval < 1) {
+            throw new SOMError("Checkpoint interval must be positive.");
+        }
+
+        this.map = map;
+        this.interval = interval;
+        writer = map.getExecutionContext().newStage("SOM checkpoint writer");
+        path = file.toPath();
+        temporary = file.toPath().resolveSibling(file.getName() + ".tmp");
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = new Snapshot(map.neuronCount * map.inputVectorSize);
+        }
+    }
+
+    /**
+     * Train the map with an input vector, taking a checkpoint when the
+     * interval is reached.
+     *
+     * @param data The training vector.
+     */
+    public void trainWith(double[] data) {
+        map.trainWith(data);
+        if (map.time % interval == 0) {
+            checkpoint();
+        }
+    }
+
+    /**
+     * Train the map with an input vector, taking a checkpoint when the
+     * interval is reached.  Integer convenience method.
+     *
+     * @param data The training vector.
+     */
+    public void trainWith(int[] data) {
+        map.trainWith(data);
+        if (map.time % interval == 0) {
+            checkpoint();
+        }
+    }
+
+    /**
+     * Capture the map's current state and start writing it.  This must be
+     * called from the thread training the map, between iterations.
+     *
+     * @throws SOMError if writing a previous checkpoint failed.
+     */
+    public void checkpoint() {
+        byte[] state = serializeState();
+
+        synchronized (this) {
+            rethrowFailure();
+
+            Snapshot snapshot = buffers[0] == writing ? buffers[1] : buffers[0];
+            snapshot.capture(map, state);
+            pending = snapshot;
+            if (!writerActive) {
+                writerActive = true;
+                writer.execute(new Runnable() {
+                    public void run() {
+                        drain();
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Wait until every checkpoint taken so far has been written.
+     *
+     * @throws SOMError if writing a checkpoint failed.
+     */
+    public synchronized void flush() {
+        try {
+            while (writerActive) {
+                wait();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SOMError("Interrupted while waiting for a checkpoint.");
+        }
+        rethrowFailure();
+    }
+
+    /**
+     * Write any outstanding checkpoint and stop the background writer.
+     *
+     * @throws SOMError if writing a checkpoint failed.
+     */
+    public void close() {
+        try {
+            flush();
+        } finally {
+            writer.shutdown();
+        }
+    }
+
+    /**
+     * Get the number of checkpoints written to disk so far.
+     *
+     * @return The written checkpoint count.
+     */
+    public synchronized int getCheckpointsWritten() {
+        return written;
+    }
+
+    /**
+     * Write pending checkpoints until none are left.  Runs on the background
+     * writer.
+     */
+    private void drain() {
+        while (true) {
+            Snapshot snapshot;
+            synchronized (this) {
+                if (pending == null) {
+                    writing = null;
+                    writerActive = false;
+                    notifyAll();
+                    return;
+                }
+                snapshot = pending;
+                pending = null;
+                writing = snapshot;
+            }
+
+            try {
+                write(snapshot);
+                synchronized (this) {
+                    written++;
+                }
+            } catch (IOException e) {
+                synchronized (this) {
+                    failure = e;
+                }
+            }
+        }
+    }
+
+    private void rethrowFailure() {
+        if (failure != null) {
+            IOException e = failure;
+            failure = null;
+            throw new SOMError("Could not write checkpoint to " + path + ": " + e);
+        }
+    }
+
+    /**
+     * Serialize everything about the map except its weights.
+     *
+     * @return The serialized map.
+     */
+    private byte[] serializeState() {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            ObjectOutputStream out = new ObjectOutputStream(bytes);
+            out.writeObject(map);
+            out.close();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new SOMError("Could not capture the map's training state: " + e);
+        }
+    }
+
+    /**
+     * Write a checkpoint to the temporary file and move it over the previous
+     * checkpoint.
+     *
+     * @param snapshot The checkpoint to write.
+     * @throws IOException if writing fails.
+     */
+    private void write(Snapshot snapshot) throws IOException {
+        FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE + snapshot.state.length)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putInt(snapshot.time)
+                    .putInt(snapshot.neuronCount).putInt(snapshot.inputLength)
+                    .putInt(snapshot.state.length).put(snapshot.state);
+            header.flip();
+            writeFully(channel, header);
+
+            ByteBuffer chunk = ByteBuffer.allocateDirect(CHUNK_DOUBLES * 8)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            DoubleBuffer doubles = chunk.asDoubleBuffer();
+            for (int offset = 0; offset < snapshot.weights.length; offset += CHUNK_DOUBLES) {
+                int count = Math.min(CHUNK_DOUBLES, snapshot.weights.length - offset);
+                doubles.clear();
+                doubles.put(snapshot.weights, offset, count);
+                chunk.clear().limit(count * 8);
+                writeFully(channel, chunk);
+            }
+            channel.force(false);
+        } finally {
+            channel.close();
+        }
+
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer)
+            throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer)
+            throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new SOMError("Checkpoint file is truncated.");
+            }
+        }
+    }
+
+    /**
+     * Load a map from a checkpoint, ready to continue training.
+     *
+     * @param file The checkpoint file.
+     * @return The map as it was when the checkpoint was taken.
+     * @throws IOException if reading the file fails.
+     */
+    public static NetworkBase resume(File file) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            readFully(channel, header);
+            header.flip();
+            if (header.getInt() != MAGIC) {
+                throw new SOMError(file + " is not a map checkpoint.");
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new SOMError("Unsupported checkpoint version " + version);
+            }
+            int time = header.getInt();
+            int neuronCount = header.getInt();
+            int inputLength = header.getInt();
+            int stateLength = header.getInt();
+
+            ByteBuffer state = ByteBuffer.allocate(stateLength);
+            readFully(channel, state);
+            NetworkBase map = deserializeState(state.array());
+            if (map.time != time || map.neuronCount != neuronCount
+                    || map.inputVectorSize != inputLength) {
+                throw new SOMError("Checkpoint header does not match its map.");
+            }
+
+            double[][] weights = new double[neuronCount][inputLength];
+            ByteBuffer chunk = ByteBuffer.allocateDirect(CHUNK_DOUBLES * 8)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            DoubleBuffer doubles = chunk.asDoubleBuffer();
+            int row = 0;
+            int column = 0;
+            long remaining = (long) neuronCount * inputLength;
+            while (remaining > 0) {
+                int count = (int) Math.min(CHUNK_DOUBLES, remaining);
+                chunk.clear().limit(count * 8);
+                readFully(channel, chunk);
+                doubles.clear();
+                for (int i = 0; i < count; i++) {
+                    weights[row][column] = doubles.get();
+                    if (++column == inputLength) {
+                        column = 0;
+                        row++;
+                    }
+                }
+                remaining -= count;
+            }
+            map.weightMatrix = weights;
+            return map;
+        } finally {
+            channel.close();
+        }
+    }
+
+    private static NetworkBase deserializeState(byte[] state) throws IOException {
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(state));
+        try {
+            return (NetworkBase) in.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new SOMError("Checkpoint refers to an unknown class: " +
+                    e.getMessage());
+        } finally {
+            in.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "MapCheckpointer{path=" + path + ", interval=" + interval +
+                ", written=" + getCheckpointsWritten() + '}';
+    }
+
+    /**
+     * One of the two checkpoint buffers.
+     */
+    private static class Snapshot {
+        private final double[] weights;
+        private byte[] state;
+        private int time;
+        private int neuronCount;
+        private int inputLength;
+
+        Snapshot(int size) {
+            weights = new double[size];
+        }
+
+        void capture(NetworkBase map, byte[] state) {
+            this.state = state;
+            time = map.time;
+            neuronCount = map.neuronCount;
+            inputLength = map.inputVectorSize;
+            for (int neuron = 0; neuron < neuronCount; neuron++) {
+                System.arraycopy(map.weightMatrix[neuron], 0, weights,
+                        neuron * inputLength, inputLength);
+            }
+        }
+    }
+}
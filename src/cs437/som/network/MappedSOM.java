@@ -0,0 +1,287 @@
+package cs437.som.network;
+
+import cs437.som.Dimension;
+import cs437.som.DistanceMetric;
+import cs437.som.SOMError;
+import cs437.som.SOMExecutionContext;
+import cs437.som.SelfOrganizingMap;
+import cs437.som.distancemetrics.EuclideanDistanceMetric;
+import cs437.som.util.Reflector;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A read-only self-organizing map backed directly by a memory-mapped
+ * {@link BinaryMapFile}.
+ *
+ * Opening a MappedSOM reads only the file's header; the weights are never
+ * copied onto the heap.  Queries read them straight from the mapped file, so
+ * the operating system loads pages on demand and every process that maps the
+ * same file shares one copy of it in the page cache.
+ *
+ * A single mapping cannot exceed 2 GB, so larger files are mapped as several
+ * segments, each holding a whole number of neurons.
+ *
+ * Distances are measured the way the stored map measured them: with its
+ * distance metric for a CustomizableSOM, and as the squared Euclidean
+ * distance for the basic maps.  Searches for the best matching neurons over
+ * large maps are split across threads like those of
+ * {@link NetworkBase}.
+ */
+public class MappedSOM implements SelfOrganizingMap {
+    private static final Pattern distanceMetricRegEx = Pattern.compile(
+            "distance\\s*(?:metric)?\\s*:\\s*(\\w*)", Pattern.CASE_INSENSITIVE);
+
+    private final Dimension gridSize;
+    private final int inputLength;
+    private final int neuronCount;
+    private final int neuronsPerSegment;
+    private final DoubleBuffer[] segments;
+    private final String descriptor;
+
+    // null when the map measures squared Euclidean distance.
+    private final DistanceMetric distanceMetric;
+    private final boolean euclidean;
+    private SOMExecutionContext executionContext = SOMExecutionContext.getDefault();
+
+    /**
+     * Map a binary map file.
+     *
+     * @param file A file written by {@link BinaryMapFile#write}.
+     * @throws IOException if the file cannot be read or mapped.
+     */
+    public MappedSOM(File file) throws IOException {
+        this(file, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Map a binary map file in segments of a given size.
+     *
+     * @param file A file written by {@link BinaryMapFile#write}.
+     * @param maxSegmentBytes The largest mapping to create.
+     * @throws IOException if the file cannot be read or mapped.
+     */
+    MappedSOM(File file, int maxSegmentBytes) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            BinaryMapFile.Header header = BinaryMapFile.Header.read(channel);
+            gridSize = new Dimension(header.width, header.height);
+            inputLength = header.inputLength;
+            neuronCount = gridSize.area;
+            descriptor = header.descriptor;
+
+            long neuronBytes = (long) inputLength * 8;
+            if (neuronBytes > maxSegmentBytes) {
+                throw new SOMError("A single neuron does not fit in a mapped segment.");
+            }
+            neuronsPerSegment = (int) (maxSegmentBytes / neuronBytes);
+
+            segments = new DoubleBuffer[(neuronCount + neuronsPerSegment - 1)
+                    / neuronsPerSegment];
+            for (int i = 0; i < segments.length; i++) {
+                int first = i * neuronsPerSegment;
+                int count = Math.min(neuronsPerSegment, neuronCount - first);
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY,
+                        header.weightsOffset + first * neuronBytes,
+                        count * neuronBytes)
+                        .order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+            }
+        } finally {
+            // Mappings stay valid after the channel is closed.
+            channel.close();
+        }
+
+        Matcher metric = distanceMetricRegEx.matcher(descriptor);
+        if (metric.find()) {
+            distanceMetric = (DistanceMetric) Reflector.instantiateClass(
+                    "cs437.som.distancemetrics", metric.group(1));
+        } else {
+            distanceMetric = null;
+        }
+        euclidean = distanceMetric instanceof EuclideanDistanceMetric;
+    }
+
+    /**
+     * Set the threads on which searches are split.
+     *
+     * @param context The execution context to use.
+     */
+    public void setExecutionContext(SOMExecutionContext context) {
+        executionContext = context;
+    }
+
+    public int getInputLength() {
+        return inputLength;
+    }
+
+    public int getNeuronCount() {
+        return neuronCount;
+    }
+
+    public Dimension getGridSize() {
+        return gridSize;
+    }
+
+    public double getWeight(int neuron, int weightIndex) {
+        return segments[neuron / neuronsPerSegment].get(
+                (neuron % neuronsPerSegment) * inputLength + weightIndex);
+    }
+
+    public double[] getWeightComponent(int weightIndex, double[] out) {
+        if (out == null || out.length < neuronCount) {
+            out = new double[neuronCount];
+        }
+        for (int neuron = 0; neuron < neuronCount; neuron++) {
+            out[neuron] = getWeight(neuron, weightIndex);
+        }
+        return out;
+    }
+
+    public int getBestMatchingNeuron(double[] input) {
+        checkInput(input);
+        if (isParallelScan()) {
+            int[] best = new int[1];
+            getBestMatchingNeurons(input, 1, best, null);
+            return best[0];
+        }
+
+        // Every supported metric except Euclidean distance is compared as is;
+        // Euclidean distance is compared squared, which orders neurons the
+        // same way without a square root per neuron.
+        boolean squared = distanceMetric == null || euclidean;
+        double[] row = squared ? null : new double[inputLength];
+        int bestMatch = 0;
+        double lowestDistance = Double.POSITIVE_INFINITY;
+        for (int s = 0; s < segments.length; s++) {
+            DoubleBuffer segment = segments[s];
+            int first = s * neuronsPerSegment;
+            int count = Math.min(neuronsPerSegment, neuronCount - first);
+            for (int n = 0; n < count; n++) {
+                double distance;
+                if (squared) {
+                    distance = squaredDistance(segment, n * inputLength, input);
+                } else {
+                    distance = metricDistance(segment, n * inputLength, input, row);
+                }
+                if (distance < lowestDistance) {
+                    lowestDistance = distance;
+                    bestMatch = first + n;
+                }
+            }
+        }
+        return bestMatch;
+    }
+
+    public int getBestMatchingNeuron(int[] input) {
+        double[] dbls = new double[input.length];
+        for (int i = 0; i < input.length; i++) {
+            dbls[i] = input[i];
+        }
+        return getBestMatchingNeuron(dbls);
+    }
+
+    public int getBestMatchingNeurons(double[] input, int k, int[] idxOut,
+                                      double[] distOut) {
+        checkInput(input);
+        if (k < 1) {
+            throw new SOMError("At least one best matching neuron must be requested.");
+        }
+        k = Math.min(k, neuronCount);
+
+        NeuronHeap heap;
+        if (isParallelScan()) {
+            heap = executionContext.invoke(new BestMatchesTask(this, input, k,
+                    0, neuronCount, executionContext.grain(neuronCount)));
+        } else {
+            heap = BestMatchesTask.scan(this, input, k, 0, neuronCount);
+        }
+        return heap.drainSorted(idxOut, distOut);
+    }
+
+    public double distanceToInput(int neuron, double[] input) {
+        DoubleBuffer segment = segments[neuron / neuronsPerSegment];
+        int offset = (neuron % neuronsPerSegment) * inputLength;
+        if (distanceMetric == null) {
+            return squaredDistance(segment, offset, input);
+        } else if (euclidean) {
+            return Math.sqrt(squaredDistance(segment, offset, input));
+        }
+        return metricDistance(segment, offset, input, new double[inputLength]);
+    }
+
+    public double[] distancesToInput(double[] input, double[] out) {
+        checkInput(input);
+        if (out == null || out.length < neuronCount) {
+            out = new double[neuronCount];
+        }
+        for (int neuron = 0; neuron < neuronCount; neuron++) {
+            out[neuron] = distanceToInput(neuron, input);
+        }
+        return out;
+    }
+
+    private double squaredDistance(DoubleBuffer segment, int offset, double[] input) {
+        double sum = 0.0;
+        for (int i = 0; i < inputLength; i++) {
+            double difference = input[i] - segment.get(offset + i);
+            sum += difference * difference;
+        }
+        return sum;
+    }
+
+    private double metricDistance(DoubleBuffer segment, int offset, double[] input,
+                                  double[] row) {
+        for (int i = 0; i < inputLength; i++) {
+            row[i] = segment.get(offset + i);
+        }
+        return distanceMetric.distance(row, input);
+    }
+
+    private boolean isParallelScan() {
+        return executionContext.shouldSplit((long) neuronCount * inputLength);
+    }
+
+    private void checkInput(double[] input) {
+        if (input.length != inputLength) {
+            throw new SOMError(
+                    "Input vector length does not match network input size.");
+        }
+    }
+
+    /**
+     * Write the map in the text format.
+     *
+     * @param destination Where to write to.
+     * @throws IOException If writing throws.
+     */
+    public void write(OutputStreamWriter destination) throws IOException {
+        destination.write(descriptor);
+        destination.write(String.format("Weights:%n"));
+        WeightRowWriter rows = new WeightRowWriter(destination);
+        double[] row = new double[inputLength];
+        for (int neuron = 0; neuron < neuronCount; neuron++) {
+            for (int i = 0; i < inputLength; i++) {
+                row[i] = getWeight(neuron, i);
+            }
+            rows.write(row);
+        }
+        rows.flush();
+        destination.write(String.format("end weights%n"));
+        destination.flush();
+    }
+
+    @Override
+    public String toString() {
+        return "MappedSOM{gridSize=" + gridSize + ", inputLength=" + inputLength +
+                ", segments=" + segments.length + ", distanceMetric=" +
+                distanceMetric + '}';
+    }
+}
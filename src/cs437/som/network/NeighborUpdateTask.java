@@ -0,0 +1,62 @@
+package cs437.som.network;
+
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Fork/join task moving the neighbors of a best matching neuron toward an
+ * input vector.  The map's neurons are divided into blocks of
+ * {@link CustomizableSOM#updateBlock()} neurons that are never split between
+ * threads, and ranges of blocks larger than the grain are split in half until
+ * each piece is small enough to be updated serially by
+ * {@link CustomizableSOM#adjustNeighbors(int, double[], double, int, int)}.
+ */
+class NeighborUpdateTask extends RecursiveAction {
+    private static final long serialVersionUID = 0L;
+
+    private final CustomizableSOM map;
+    private final int neuron;
+    private final double[] input;
+    private final double width;
+    private final int block;
+    private final int from;
+    private final int to;
+    private final int grain;
+
+    /**
+     * Create a task for the blocks in [{@code from}, {@code to}).
+     *
+     * @param map The map whose neurons will be updated.
+     * @param neuron The best matching neuron.
+     * @param input The input vector to adjust towards.
+     * @param width The current neighborhood width.
+     * @param block The number of neurons in each block.
+     * @param from The first block index, inclusive.
+     * @param to The last block index, exclusive.
+     * @param grain The largest number of blocks updated without splitting.
+     */
+    NeighborUpdateTask(CustomizableSOM map, int neuron, double[] input,
+                       double width, int block, int from, int to, int grain) {
+        this.map = map;
+        this.neuron = neuron;
+        this.input = input;
+        this.width = width;
+        this.block = block;
+        this.from = from;
+        this.to = to;
+        this.grain = grain;
+    }
+
+    @Override
+    protected void compute() {
+        if (to - from <= grain) {
+            map.adjustNeighbors(neuron, input, width, from * block,
+                    Math.min(map.neuronCount, to * block));
+        } else {
+            int middle = (from + to) >>> 1;
+            invokeAll(new NeighborUpdateTask(map, neuron, input, width, block,
+                            from, middle, grain),
+                    new NeighborUpdateTask(map, neuron, input, width, block,
+                            middle, to, grain));
+        }
+    }
+}
@@ -1,11 +1,16 @@
 package cs437.som.network;
 
 import cs437.som.Dimension;
+import cs437.som.GridType;
 import cs437.som.SOMError;
+import cs437.som.SOMExecutionContext;
 import cs437.som.TrainableSelfOrganizingMap;
+import cs437.som.TrainingDataSource;
 
 import java.io.IOException;
 import java.io.OutputStreamWriter;
+import java.io.Serializable;
+import java.io.Writer;
 import java.security.SecureRandom;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -15,12 +20,39 @@ import java.util.Random;
 /**
  * Common functionality for basic self-organizing maps.
  */
-public abstract class NetworkBase implements TrainableSelfOrganizingMap {
+public abstract class NetworkBase implements TrainableSelfOrganizingMap, Serializable {
+    private static final long serialVersionUID = 1L;
+
     /**
      * The default learning rate.
      */
     public static final double DEFAULT_LEARNING_RATE = 0.1;
 
+    /**
+     * The default amount of work, in neurons times input length, above which
+     * whole-map scans are split across threads.
+     */
+    public static final int DEFAULT_PARALLEL_THRESHOLD =
+            SOMExecutionContext.DEFAULT_PARALLEL_THRESHOLD;
+
+    /**
+     * The longest input vector for which maps keep a component-major copy
+     * of their weights unless told otherwise.
+     */
+    public static final int COMPONENT_MAJOR_LIMIT = 4;
+
+    /**
+     * The number of grid rows and columns in each block of neurons whose
+     * weight bounds let searches skip the block.
+     */
+    public static final int BOUNDING_BLOCK_SIDE = 4;
+
+    /**
+     * How close to the lowest distance a neuron must be during training to
+     * be chosen among the best matches.
+     */
+    static final double TIE_TOLERANCE = 1.0e-6;
+
     /**
      * The initial, default neighborhood width.
      */
@@ -48,15 +80,42 @@ public abstract class NetworkBase implements TrainableSelfOrganizingMap {
 
     /**
      * A matrix of the neurons input weights.  The "left" index is the neuron
-     * and the "right" index is the input weight.
+     * and the "right" index is the input weight.  The weights are not part of
+     * the serialized form; checkpoints store them separately.
      */
-    protected double[][] weightMatrix;
+    protected transient double[][] weightMatrix;
 
     /**
      * The dimensions of the map's neuron grid.
      */
     protected final Dimension gridSize;
+    /**
+     * The distance from the most recent best matching neuron found during
+     * training to its training vector.
+     */
+    protected double bestMatchDistance = 0.0;
+
     private Random random;
+    // Negative to use the execution context's threshold.
+    private int parallelThreshold = -1;
+
+    // The context belongs to the running program, not to the map's state.
+    private transient SOMExecutionContext executionContext = null;
+
+    // Copy-on-write bookkeeping for snapshots.  Each snapshot starts a new
+    // epoch; a row last copied in an earlier epoch may be shared with a
+    // snapshot and is copied again before it is written.
+    private transient int snapshotEpoch = 0;
+    private transient int[] rowEpochs = null;
+    private transient FrozenSOM latestSnapshot = null;
+
+    private transient double[] trainingDistances = null;
+
+    private boolean componentMajorLayout;
+    private transient ComponentMajorWeights componentMajorWeights = null;
+
+    private boolean blockPruning = false;
+    private transient BlockBounds blockBounds = null;
 
     /**
      * Constructs the common functionality for SOMs.
@@ -75,6 +134,7 @@ public abstract class NetworkBase implements TrainableSelfOrganizingMap {
         initialNeighborhoodWidth = Math.min(gridSize.x, gridSize.y) / 3;
 
         weightMatrix = new double[neuronCount][inputVectorSize];
+        componentMajorLayout = inputVectorSize <= COMPONENT_MAJOR_LIMIT;
         initialize();
     }
 
@@ -93,13 +153,55 @@ public abstract class NetworkBase implements TrainableSelfOrganizingMap {
         return bestMatch;
     }
 
+    public int getBestMatchingNeurons(double[] input, int k, int[] idxOut,
+                                      double[] distOut) {
+        checkInput(input);
+        if (k < 1) {
+            throw new SOMError("At least one best matching neuron must be requested.");
+        }
+        k = Math.min(k, neuronCount);
+
+        NeuronHeap heap;
+        if (isParallelScan()) {
+            heap = getExecutionContext().invoke(new BestMatchesTask(this, input, k,
+                    0, neuronCount, scanGrain()));
+        } else {
+            heap = BestMatchesTask.scan(this, input, k, 0, neuronCount);
+        }
+        return heap.drainSorted(idxOut, distOut);
+    }
+
+    /**
+     * Find the best matching neuron while training, choosing randomly among
+     * neurons that match equally well.  The winning distance is left in
+     * {@code bestMatchDistance}.
+     *
+     * @param input The training vector.
+     * @return The index of the chosen best matching neuron.
+     */
     protected int getBMUDuringTraining(double[] input) {
+        double[] distances = trainingDistances();
+        for (int i = 0; i < neuronCount; i++) {
+            distances[i] = distanceToInput(i, input);
+        }
+        return chooseBestMatch(distances);
+    }
+
+    /**
+     * Choose the best matching neuron from the distances of every neuron to a
+     * training vector, randomly among neurons that match equally well.  The
+     * winning distance is left in {@code bestMatchDistance}.
+     *
+     * @param distances The distance of each neuron, indexed by neuron.
+     * @return The index of the chosen best matching neuron.
+     */
+    protected int chooseBestMatch(double[] distances) {
         List<Integer> bmuList = new ArrayList<Integer>(10);
-        double lowestDistance2 = distanceToInput(0, input);
+        double lowestDistance2 = distances[0];
         bmuList.add(0);
         for (int i = 1; i < neuronCount; i++) {
-            double distance2temp = distanceToInput(i, input);
-            if (Math.abs(distance2temp - lowestDistance2) < /*0.1/time*/1.0e-6) {
+            double distance2temp = distances[i];
+            if (Math.abs(distance2temp - lowestDistance2) < TIE_TOLERANCE) {
                 bmuList.add(i);
             } else if (distance2temp < lowestDistance2) {
                 lowestDistance2 = distance2temp;
@@ -107,9 +209,23 @@ public abstract class NetworkBase implements TrainableSelfOrganizingMap {
                 bmuList.add(i);
             }
         }
+        bestMatchDistance = lowestDistance2;
         return bmuList.get(random.nextInt(bmuList.size()));
     }
 
+    /**
+     * Get the buffer training measures distances into.  It is only used
+     * while holding the map's lock.
+     *
+     * @return A buffer with room for every neuron.
+     */
+    protected double[] trainingDistances() {
+        if (trainingDistances == null) {
+            trainingDistances = new double[neuronCount];
+        }
+        return trainingDistances;
+    }
+
     public int getBestMatchingNeuron(int[] input) {
         double[] dbls = new double[input.length];
         for (int i = 0; i < input.length; i++) {
@@ -130,6 +246,23 @@ public abstract class NetworkBase implements TrainableSelfOrganizingMap {
         return gridSize.area;
     }
 
+    /**
+     * Get the map's neuron grid as a grid type strategy, so that grid
+     * distances can be measured from outside the map.
+     *
+     * @return A GridType measuring distances as the map does during training.
+     */
+    public GridType getGridType() {
+        return new GridType() {
+            public void setNeuronCount(Dimension dimension) {
+            }
+
+            public double gridDistance(int neuron0, int neuron1) {
+                return neuronDistance(neuron0, neuron1);
+            }
+        };
+    }
+
     public int getInputLength() {
         return inputVectorSize;
     }
@@ -138,10 +271,211 @@ public abstract class NetworkBase implements TrainableSelfOrganizingMap {
         return weightMatrix[neuron][weightIndex];
     }
 
-    public void trainWith(double[] data) {
+    public double[] getWeightComponent(int weightIndex, double[] out) {
+        if (out == null || out.length < neuronCount) {
+            out = new double[neuronCount];
+        }
+
+        ComponentMajorWeights components = refreshComponentMajorWeights();
+        if (components != null) {
+            components.component(weightIndex, out);
+        } else {
+            for (int neuron = 0; neuron < neuronCount; neuron++) {
+                out[neuron] = weightMatrix[neuron][weightIndex];
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Choose whether the map keeps a second copy of its weights laid out a
+     * component at a time, which it searches and reads components from
+     * instead of its rows outside of training.  This is faster for short
+     * input vectors, and is chosen by default when the input length is at
+     * most {@link #COMPONENT_MAJOR_LIMIT}.
+     *
+     * @param componentMajor true to keep the component-major copy.
+     */
+    public synchronized void setComponentMajorLayout(boolean componentMajor) {
+        componentMajorLayout = componentMajor;
+        if (!componentMajor) {
+            componentMajorWeights = null;
+        }
+    }
+
+    /**
+     * Tell whether the map keeps a component-major copy of its weights.
+     *
+     * @return true if searches use the component-major layout.
+     */
+    public boolean isComponentMajorLayout() {
+        return componentMajorLayout;
+    }
+
+    /**
+     * Get the component-major copy of the weights as last brought up to date
+     * by {@link #refreshComponentMajorWeights()}.  Scans only read it, so
+     * parts of a scan running on other threads may share it.
+     *
+     * @return The component-major weights, or null if the map does not keep
+     * them.
+     */
+    ComponentMajorWeights componentMajorWeights() {
+        return componentMajorLayout ? componentMajorWeights : null;
+    }
+
+    /**
+     * Bring the component-major copy of the weights up to date with the
+     * rows, creating it if need be.  The copy is only changed while holding
+     * the map's lock, so no training step changes a row while it is copied
+     * and no row a step marks stale is missed.  Queries call this once
+     * before they scan, never from the parts of a scan split across threads.
+     *
+     * @return The component-major weights, or null if the map does not keep
+     * them.
+     */
+    ComponentMajorWeights refreshComponentMajorWeights() {
+        if (!componentMajorLayout) {
+            return null;
+        }
+        synchronized (this) {
+            if (!componentMajorLayout) {
+                return null;
+            }
+            ComponentMajorWeights components = componentMajorWeights;
+            if (components == null) {
+                components = new ComponentMajorWeights(neuronCount, inputVectorSize);
+                componentMajorWeights = components;
+            }
+            components.update(weightMatrix);
+            return components;
+        }
+    }
+
+    /**
+     * Choose whether the map keeps the range of the weights within each
+     * square block of {@link #BOUNDING_BLOCK_SIDE} neurons on a side, so
+     * that searches can skip blocks too far from the input vector to hold
+     * a better match.  Results are the same either way.  Skipping pays off
+     * once the map is ordered and blocks are small in input space; the
+     * blocks a training step moves are measured again before the next
+     * search.
+     *
+     * @param prune true to keep the block bounds.
+     */
+    public synchronized void setBlockPruning(boolean prune) {
+        blockPruning = prune;
+        if (!prune) {
+            blockBounds = null;
+        }
+    }
+
+    /**
+     * Tell whether the map keeps bounds on the weights of its blocks.
+     *
+     * @return true if searches may skip blocks.
+     */
+    public boolean isBlockPruning() {
+        return blockPruning;
+    }
+
+    /**
+     * Get the bounds on the weights of each block as last brought up to date
+     * by {@link #refreshBlockBounds()}.
+     *
+     * @return The block bounds, or null if the map does not keep them.
+     */
+    BlockBounds blockBounds() {
+        return blockPruning ? blockBounds : null;
+    }
+
+    /**
+     * Bring the bounds on the weights of each block up to date with the
+     * rows, creating them if need be.  Like the component-major copy, the
+     * bounds are only measured while holding the map's lock.
+     *
+     * @return The block bounds, or null if the map does not keep them.
+     */
+    BlockBounds refreshBlockBounds() {
+        if (!blockPruning) {
+            return null;
+        }
+        synchronized (this) {
+            if (!blockPruning) {
+                return null;
+            }
+            BlockBounds bounds = blockBounds;
+            if (bounds == null) {
+                bounds = new BlockBounds(gridSize, inputVectorSize,
+                        BOUNDING_BLOCK_SIDE);
+                blockBounds = bounds;
+            }
+            bounds.update(weightMatrix);
+            return bounds;
+        }
+    }
+
+    /**
+     * Set the amount of work, in neurons times input length, above which
+     * this map's whole-map scans are split across threads, overriding the
+     * threshold of its execution context.
+     *
+     * @param threshold The new threshold.  {@code Integer.MAX_VALUE} keeps
+     * every scan on the calling thread.
+     */
+    public void setParallelThreshold(int threshold) {
+        parallelThreshold = threshold;
+    }
+
+    /**
+     * Set the threads on which the map splits its work.  Maps use the
+     * default context until given another.
+     *
+     * @param context The execution context to use.
+     */
+    public void setExecutionContext(SOMExecutionContext context) {
+        executionContext = context;
+    }
+
+    /**
+     * Get the threads on which the map splits its work.
+     *
+     * @return The map's execution context.
+     */
+    public SOMExecutionContext getExecutionContext() {
+        return executionContext == null
+                ? SOMExecutionContext.getDefault() : executionContext;
+    }
+
+    /**
+     * Decide whether a whole-map scan is large enough to split across
+     * threads.
+     *
+     * @return true if scans should be run by the execution context.
+     */
+    protected boolean isParallelScan() {
+        SOMExecutionContext context = getExecutionContext();
+        long work = (long) neuronCount * inputVectorSize;
+        if (parallelThreshold < 0) {
+            return context.shouldSplit(work);
+        }
+        return context.canSplit() && work >= parallelThreshold;
+    }
+
+    /**
+     * The number of neurons a single thread scans before splitting further.
+     *
+     * @return The largest neuron range scanned serially.
+     */
+    protected int scanGrain() {
+        return getExecutionContext().grain(neuronCount);
+    }
+
+    public synchronized void trainWith(double[] data) {
         checkInput(data);
 
         int best = getBMUDuringTraining(data);
+        bestMatchFound(data, best);
         adjustNeuronWeights(best, data);
         adjustNeighborsOf(best, data);
         time++;
@@ -155,6 +489,99 @@ public abstract class NetworkBase implements TrainableSelfOrganizingMap {
         trainWith(dbls);
     }
 
+    public void train(TrainingDataSource source) {
+        if (source.getInputLength() != inputVectorSize) {
+            throw new SOMError(
+                    "Data source vector length does not match network input size.");
+        }
+
+        for (double[] data = source.next(); data != null; data = source.next()) {
+            trainWith(data);
+        }
+    }
+
+    /**
+     * Take an immutable snapshot of the map's current weights.  Training
+     * goes on unaffected; the snapshot may be queried from any thread and
+     * always sees the weights as they were between two iterations.
+     *
+     * The snapshot costs one array of references.  Its rows are shared with
+     * the map, which copies each row only when it first changes it after
+     * the snapshot is taken.  Taking a snapshot waits for the iteration in
+     * progress to finish, and repeated snapshots between two iterations
+     * return the same object.
+     *
+     * @return The map's weights as they are now.
+     */
+    public synchronized FrozenSOM snapshot() {
+        if (latestSnapshot == null || latestSnapshot.getTime() != time) {
+            if (rowEpochs == null) {
+                rowEpochs = new int[neuronCount];
+            }
+            snapshotEpoch++;
+            latestSnapshot = new FrozenSOM(this);
+        }
+        return latestSnapshot;
+    }
+
+    /**
+     * Get a neuron's weights for changing them, first copying them if they
+     * are shared with a snapshot.  Every change to the weights of a trained
+     * map must go through this method.
+     *
+     * @param neuron The neuron's index.
+     * @return The neuron's weight vector, owned by the map alone.
+     */
+    protected double[] writableWeights(int neuron) {
+        double[] weights = weightMatrix[neuron];
+        if (rowEpochs != null && rowEpochs[neuron] != snapshotEpoch) {
+            weights = weights.clone();
+            weightMatrix[neuron] = weights;
+            rowEpochs[neuron] = snapshotEpoch;
+        }
+        ComponentMajorWeights components = componentMajorWeights;
+        if (components != null) {
+            components.markStale(neuron);
+        }
+        BlockBounds bounds = blockBounds;
+        if (bounds != null) {
+            bounds.markStale(neuron);
+        }
+        return weights;
+    }
+
+    /**
+     * Make every weight row writable in place, for changes to the whole
+     * weight matrix that do not advance the iteration.  Later snapshots are
+     * taken afresh.
+     */
+    protected synchronized void detachWeights() {
+        if (rowEpochs != null) {
+            for (int neuron = 0; neuron < neuronCount; neuron++) {
+                writableWeights(neuron);
+            }
+        }
+        latestSnapshot = null;
+        if (componentMajorWeights != null) {
+            componentMajorWeights.invalidate();
+        }
+        if (blockBounds != null) {
+            blockBounds.invalidate();
+        }
+    }
+
+    /**
+     * Called during training once the best matching neuron for a training
+     * vector has been found, before any weights are adjusted.  The default
+     * behavior is doing nothing.  This method is provided for extension in
+     * subclasses.
+     *
+     * @param data The training vector.
+     * @param best The index of the best matching neuron.
+     */
+    protected void bestMatchFound(double[] data, int best) {
+    }
+
     /**
      * Create a string to display the neurons' weights.
      *
@@ -202,7 +629,9 @@ public abstract class NetworkBase implements TrainableSelfOrganizingMap {
      * Initializes the neuron's weight matrix to all random doubles.
      */
     private void initialize() {
-        random = new SecureRandom();
+        // A plain Random, rather than the SecureRandom seeding it, so that its
+        // state is captured exactly when the map is checkpointed.
+        random = new Random(new SecureRandom().nextLong());
         for (int i = 0; i < neuronCount; i++) {
             for (int j = 0; j < inputVectorSize; j++) {
                 weightMatrix[i][j] = random.nextDouble();
@@ -217,9 +646,10 @@ public abstract class NetworkBase implements TrainableSelfOrganizingMap {
      * @param input The input vector to adjust towards.
      */
     protected void adjustNeuronWeights(int neuron, double[] input) {
-        for (int i = 0; i < weightMatrix[neuron].length; i++) {
-            double delta = input[i] - weightMatrix[neuron][i];
-            weightMatrix[neuron][i] += learningRate() * delta;
+        double[] weights = writableWeights(neuron);
+        for (int i = 0; i < weights.length; i++) {
+            double delta = input[i] - weights[i];
+            weights[i] += learningRate() * delta;
         }
     }
 
@@ -293,6 +723,52 @@ public abstract class NetworkBase implements TrainableSelfOrganizingMap {
         return sum;
     }
 
+    public double[] distancesToInput(double[] input, double[] out) {
+        checkInput(input);
+        if (out == null || out.length < neuronCount) {
+            out = new double[neuronCount];
+        }
+
+        refreshComponentMajorWeights();
+        if (isParallelScan()) {
+            getExecutionContext().invoke(new DistanceFieldTask(this, input, out, 0,
+                    neuronCount, scanGrain()));
+        } else {
+            distancesToInput(input, out, 0, neuronCount);
+        }
+        return out;
+    }
+
+    /**
+     * Measure the distance from a range of neurons to an input vector.  The
+     * component-major weights, if the map keeps them, must already have been
+     * brought up to date.
+     *
+     * @param input The input vector.
+     * @param out The buffer to receive the distances, indexed by neuron.
+     * @param from The first neuron index, inclusive.
+     * @param to The last neuron index, exclusive.
+     */
+    protected void distancesToInput(double[] input, double[] out,
+                                    int from, int to) {
+        ComponentMajorWeights components = componentMajorWeights();
+        if (components != null) {
+            components.distances(ComponentMajorWeights.Measure.SQUARED_EUCLIDEAN,
+                    input, out, from, to);
+            return;
+        }
+
+        for (int neuron = from; neuron < to; neuron++) {
+            double[] weights = weightMatrix[neuron];
+            double sum = 0.0;
+            for (int i = 0; i < inputVectorSize; i++) {
+                double difference = input[i] - weights[i];
+                sum += difference * difference;
+            }
+            out[neuron] = sum;
+        }
+    }
+
     @Override
     public String toString() {
         return "NetworkBase{" +
@@ -305,14 +781,29 @@ public abstract class NetworkBase implements TrainableSelfOrganizingMap {
     }
 
     public void write(OutputStreamWriter destination) throws IOException {
-        destination.write(String.format("Grid dimensions: %d, %d%n",
-                gridSize.x, gridSize.y));
-        destination.write(String.format("Input length: %d%n", inputVectorSize));
+        writeHeader(destination);
         destination.write(String.format("Weights:%n"));
+        WeightRowWriter rows = new WeightRowWriter(destination);
         for (double[] doubles : weightMatrix) {
-            destination.write(String.format("\t%s%n", Arrays.toString(doubles)));
+            rows.write(doubles);
         }
+        rows.flush();
         destination.write(String.format("end weights%n"));
+        destination.flush();
+    }
+
+    /**
+     * Write the description of the map that precedes its weights: the map
+     * type, its configuration and its dimensions.  Subclasses write their own
+     * lines first and then call this method.
+     *
+     * @param destination Where to write to.
+     * @throws IOException If writing throws.
+     */
+    protected void writeHeader(Writer destination) throws IOException {
+        destination.write(String.format("Grid dimensions: %d, %d%n",
+                gridSize.x, gridSize.y));
+        destination.write(String.format("Input length: %d%n", inputVectorSize));
     }
 
 }
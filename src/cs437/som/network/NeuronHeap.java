@@ -0,0 +1,144 @@
+package cs437.som.network;
+
+/**
+ * A bounded max-heap of neuron indexes keyed by their distance to an input.
+ * The heap keeps the {@code capacity} closest neurons offered to it, with the
+ * farthest of those at the root so it can be evicted in constant time.  Ties
+ * in distance are broken by the neuron index, so the lower index wins
+ * regardless of the order neurons are offered in.
+ */
+class NeuronHeap {
+    private final int[] neurons;
+    private final double[] distances;
+    private int size = 0;
+
+    /**
+     * Create an empty heap.
+     *
+     * @param capacity The number of neurons to keep.
+     */
+    NeuronHeap(int capacity) {
+        neurons = new int[capacity];
+        distances = new double[capacity];
+    }
+
+    /**
+     * Offer a neuron to the heap.  The neuron is kept if the heap is not yet
+     * full or if it is closer than the farthest neuron currently kept.
+     *
+     * @param neuron The neuron's index.
+     * @param distance The neuron's distance to the input.
+     */
+    void offer(int neuron, double distance) {
+        if (size < neurons.length) {
+            neurons[size] = neuron;
+            distances[size] = distance;
+            siftUp(size++);
+        } else if (size > 0 && before(distance, neuron, distances[0], neurons[0])) {
+            neurons[0] = neuron;
+            distances[0] = distance;
+            siftDown(0, size);
+        }
+    }
+
+    /**
+     * Tell whether the heap holds as many neurons as it keeps, so that only
+     * neurons closer than {@link #farthest()} can still enter it.
+     *
+     * @return true if the heap is full.
+     */
+    boolean isFull() {
+        return size == neurons.length;
+    }
+
+    /**
+     * Get the distance of the farthest neuron kept.
+     *
+     * @return The largest distance in the heap, or positive infinity if it
+     * is empty.
+     */
+    double farthest() {
+        return size == 0 ? Double.POSITIVE_INFINITY : distances[0];
+    }
+
+    /**
+     * Offer every neuron held by another heap to this one.
+     *
+     * @param other The heap to merge in.
+     */
+    void merge(NeuronHeap other) {
+        for (int i = 0; i < other.size; i++) {
+            offer(other.neurons[i], other.distances[i]);
+        }
+    }
+
+    /**
+     * Empty the heap into output arrays, closest neuron first.
+     *
+     * @param neuronsOut Receives the neuron indexes.
+     * @param distancesOut Receives the distances, may be {@code null}.
+     * @return The number of neurons written.
+     */
+    int drainSorted(int[] neuronsOut, double[] distancesOut) {
+        int count = size;
+        for (int end = size - 1; end > 0; end--) {
+            swap(0, end);
+            siftDown(0, end);
+        }
+        for (int i = 0; i < count; i++) {
+            neuronsOut[i] = neurons[i];
+            if (distancesOut != null) {
+                distancesOut[i] = distances[i];
+            }
+        }
+        size = 0;
+        return count;
+    }
+
+    private void siftUp(int child) {
+        while (child > 0) {
+            int parent = (child - 1) >>> 1;
+            if (!before(distances[parent], neurons[parent],
+                    distances[child], neurons[child])) {
+                return;
+            }
+            swap(parent, child);
+            child = parent;
+        }
+    }
+
+    private void siftDown(int parent, int end) {
+        int child = 2 * parent + 1;
+        while (child < end) {
+            if (child + 1 < end && before(distances[child], neurons[child],
+                    distances[child + 1], neurons[child + 1])) {
+                child++;
+            }
+            if (!before(distances[parent], neurons[parent],
+                    distances[child], neurons[child])) {
+                return;
+            }
+            swap(parent, child);
+            parent = child;
+            child = 2 * parent + 1;
+        }
+    }
+
+    private void swap(int i, int j) {
+        int neuron = neurons[i];
+        neurons[i] = neurons[j];
+        neurons[j] = neuron;
+        double distance = distances[i];
+        distances[i] = distances[j];
+        distances[j] = distance;
+    }
+
+    /**
+     * Order two entries, closest first and lowest index first among equals.
+     */
+    private static boolean before(double distance0, int neuron0,
+                                  double distance1, int neuron1) {
+        return distance0 < distance1
+                || (distance0 == distance1 && neuron0 < neuron1);
+    }
+}
@@ -0,0 +1,725 @@
+package cs437.som.network;
+
+import cs437.som.Dimension;
+import cs437.som.SOMError;
+import cs437.som.SOMExecutionContext;
+import cs437.som.SelfOrganizingMap;
+import cs437.som.TrainableSelfOrganizingMap;
+import cs437.som.TrainingDataSource;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+
+/**
+ * A square grid map whose weights live in a file rather than on the heap,
+ * for maps too large to fit in memory.
+ *
+ * The grid is divided into square tiles of neurons, stored one after
+ * another in the file.  Only a budget of recently used tiles is kept in
+ * memory; changed tiles are written back by a background thread when they
+ * are evicted.  Each tile's centroid and radius (the distance from the
+ * centroid to its farthest neuron) are always kept in memory, so a search
+ * reads tiles in order of how close they could be to the input and stops
+ * once no unread tile can hold a closer neuron.  Training reads the best
+ * match's candidate tiles and the tiles under its neighborhood, and no
+ * others.
+ *
+ * Training follows {@link BasicSquareGridSOM}: squared Euclidean distance,
+ * a constant learning rate and a neighborhood shrinking linearly from a
+ * third of the grid.  Ties between equally good matches go to the lowest
+ * neuron index rather than being chosen randomly.
+ *
+ * Weights in memory are written to the file by {@link #flush()} and
+ * {@link #close()}; a map that is not closed may leave the file with some
+ * of its training missing.  {@link #open(File, long)} reopens a file to
+ * query or continue training it.  The map may be used from several threads,
+ * but its operations run one at a time.
+ *
+ * The file begins with a header, little-endian:
+ *
+ * <pre>
+ * offset  size  field
+ *      0     4  magic number, the bytes "SOMP"
+ *      4     4  format version, currently 1
+ *      8     4  grid width
+ *     12     4  grid height
+ *     16     4  input vector length
+ *     20     4  tile side, in neurons
+ *     24     4  current iteration
+ *     28     4  expected iterations
+ *   4096     -  tiles, row by row of tiles, each its neurons row by row
+ * </pre>
+ *
+ * Tiles on the right and bottom edges of the grid are stored full size.
+ */
+public class PagedSOM implements TrainableSelfOrganizingMap {
+    /**
+     * The default number of grid rows and columns in each tile.
+     */
+    public static final int DEFAULT_TILE_SIDE = 32;
+
+    private static final int MAGIC = 0x504D4F53; // "SOMP"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+    private static final long DATA_OFFSET = 4096;
+
+    // The relative error allowed for in the centroid and radius of a tile
+    // when bounding distances to its neurons.
+    private static final double BOUND_SLACK = 1.0e-9;
+
+    private final File file;
+    private final FileChannel channel;
+    private final Dimension gridSize;
+    private final int inputLength;
+    private final int neuronCount;
+    private final int expectedIterations;
+    private final double initialNeighborhoodWidth;
+    private int time;
+
+    private final int tileSide;
+    private final int tilesAcross;
+    private final int tileCount;
+    private final PagedWeightStore store;
+
+    // The centroid of each tile, indexed by tile * inputLength + weight,
+    // and the distance from it to the tile's farthest neuron.
+    private final double[] centroids;
+    private final double[] radii;
+
+    /**
+     * Create a map with random weights in a new file, with tiles of the
+     * default size.
+     *
+     * @param gridSize The neuron grid dimensions.
+     * @param inputLength The length of expected input vectors.
+     * @param expectedIterations The expected count of iterations for training.
+     * @param file The file to keep the weights in.  It is replaced if it
+     * exists.
+     * @param cacheBytes The memory to give tiles held in memory.
+     * @throws IOException if the file cannot be written.
+     */
+    public PagedSOM(Dimension gridSize, int inputLength, int expectedIterations,
+                    File file, long cacheBytes) throws IOException {
+        this(gridSize, inputLength, expectedIterations, file, cacheBytes,
+                DEFAULT_TILE_SIDE);
+    }
+
+    /**
+     * Create a map with random weights in a new file.
+     *
+     * @param gridSize The neuron grid dimensions.
+     * @param inputLength The length of expected input vectors.
+     * @param expectedIterations The expected count of iterations for training.
+     * @param file The file to keep the weights in.  It is replaced if it
+     * exists.
+     * @param cacheBytes The memory to give tiles held in memory.
+     * @param tileSide The number of grid rows and columns in each tile.
+     * @throws IOException if the file cannot be written.
+     */
+    public PagedSOM(Dimension gridSize, int inputLength, int expectedIterations,
+                    File file, long cacheBytes, int tileSide) throws IOException {
+        this(file, FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING),
+                gridSize, inputLength, expectedIterations, tileSide, 0, cacheBytes);
+
+        try {
+            writeHeader();
+            initialize();
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private PagedSOM(File file, FileChannel channel, Dimension gridSize,
+                     int inputLength, int expectedIterations, int tileSide,
+                     int time, long cacheBytes) {
+        if (tileSide < 1 || (long) tileSide * tileSide * inputLength
+                > Integer.MAX_VALUE / 8) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // The tile size is the error worth reporting.
+            }
+            throw new SOMError("Tiles of " + tileSide + " neurons on a side are not supported.");
+        }
+
+        this.file = file;
+        this.channel = channel;
+        this.gridSize = gridSize;
+        this.inputLength = inputLength;
+        this.neuronCount = gridSize.area;
+        this.expectedIterations = expectedIterations;
+        this.tileSide = tileSide;
+        this.time = time;
+        initialNeighborhoodWidth = Math.min(gridSize.x, gridSize.y) / 3;
+
+        tilesAcross = (gridSize.x + tileSide - 1) / tileSide;
+        tileCount = tilesAcross * ((gridSize.y + tileSide - 1) / tileSide);
+        store = new PagedWeightStore(channel, DATA_OFFSET,
+                tileSide * tileSide * inputLength, cacheBytes,
+                SOMExecutionContext.getDefault());
+        centroids = new double[tileCount * inputLength];
+        radii = new double[tileCount];
+    }
+
+    /**
+     * Open a map kept in a file by an earlier PagedSOM.  Every tile is read
+     * once to summarize it.
+     *
+     * @param file The map's file.
+     * @param cacheBytes The memory to give tiles held in memory.
+     * @return The map.
+     * @throws IOException if the file cannot be read.
+     */
+    public static PagedSOM open(File file, long cacheBytes) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining()) {
+                if (channel.read(header) < 0) {
+                    throw new SOMError("Paged map file is truncated.");
+                }
+            }
+            header.flip();
+            if (header.getInt() != MAGIC) {
+                throw new SOMError("Not a paged map file.");
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new SOMError("Unsupported paged map version " + version);
+            }
+            Dimension gridSize = new Dimension(header.getInt(), header.getInt());
+            int inputLength = header.getInt();
+            int tileSide = header.getInt();
+            int time = header.getInt();
+            int expectedIterations = header.getInt();
+
+            PagedSOM map = new PagedSOM(file, channel, gridSize, inputLength,
+                    expectedIterations, tileSide, time, cacheBytes);
+            long expectedSize = DATA_OFFSET
+                    + (long) map.tileCount * tileSide * tileSide * inputLength * 8;
+            if (channel.size() < expectedSize) {
+                throw new SOMError("Paged map file is truncated.");
+            }
+            for (int tile = 0; tile < map.tileCount; tile++) {
+                map.summarize(tile, map.store.tile(tile).weights);
+            }
+            return map;
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        } catch (RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private void writeHeader() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION)
+                .putInt(gridSize.x).putInt(gridSize.y)
+                .putInt(inputLength).putInt(tileSide)
+                .putInt(time).putInt(expectedIterations);
+        header.flip();
+        long position = 0;
+        while (header.hasRemaining()) {
+            position += channel.write(header, position);
+        }
+    }
+
+    /**
+     * Write every tile with random weights, tile by tile, so the whole map
+     * is never in memory.
+     */
+    private void initialize() throws IOException {
+        Random random = new Random(new SecureRandom().nextLong());
+        double[] weights = new double[tileSide * tileSide * inputLength];
+        ByteBuffer buffer = ByteBuffer.allocateDirect(weights.length * 8)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        DoubleBuffer doubles = buffer.asDoubleBuffer();
+
+        long position = DATA_OFFSET;
+        for (int tile = 0; tile < tileCount; tile++) {
+            Arrays.fill(weights, 0.0);
+            int firstRow = tileRow(tile);
+            int firstCol = tileCol(tile);
+            for (int row = firstRow; row < Math.min(gridSize.y, firstRow + tileSide); row++) {
+                for (int col = firstCol; col < Math.min(gridSize.x, firstCol + tileSide); col++) {
+                    int offset = ((row - firstRow) * tileSide + col - firstCol) * inputLength;
+                    for (int i = 0; i < inputLength; i++) {
+                        weights[offset + i] = random.nextDouble();
+                    }
+                }
+            }
+            summarize(tile, weights);
+
+            doubles.clear();
+            doubles.put(weights);
+            buffer.clear();
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+        }
+    }
+
+    private int tileRow(int tile) {
+        return tile / tilesAcross * tileSide;
+    }
+
+    private int tileCol(int tile) {
+        return tile % tilesAcross * tileSide;
+    }
+
+    private int tileOf(int neuron) {
+        return neuron / gridSize.x / tileSide * tilesAcross
+                + neuron % gridSize.x / tileSide;
+    }
+
+    private int offsetOf(int neuron) {
+        return (neuron / gridSize.x % tileSide * tileSide
+                + neuron % gridSize.x % tileSide) * inputLength;
+    }
+
+    /**
+     * Measure the centroid and radius of a tile's neurons.
+     */
+    private void summarize(int tile, double[] weights) {
+        int firstRow = tileRow(tile);
+        int firstCol = tileCol(tile);
+        int lastRow = Math.min(gridSize.y, firstRow + tileSide);
+        int lastCol = Math.min(gridSize.x, firstCol + tileSide);
+        int base = tile * inputLength;
+
+        Arrays.fill(centroids, base, base + inputLength, 0.0);
+        for (int row = firstRow; row < lastRow; row++) {
+            for (int col = firstCol; col < lastCol; col++) {
+                int offset = ((row - firstRow) * tileSide + col - firstCol) * inputLength;
+                for (int i = 0; i < inputLength; i++) {
+                    centroids[base + i] += weights[offset + i];
+                }
+            }
+        }
+        int count = (lastRow - firstRow) * (lastCol - firstCol);
+        for (int i = 0; i < inputLength; i++) {
+            centroids[base + i] /= count;
+        }
+
+        double radius = 0.0;
+        for (int row = firstRow; row < lastRow; row++) {
+            for (int col = firstCol; col < lastCol; col++) {
+                int offset = ((row - firstRow) * tileSide + col - firstCol) * inputLength;
+                double sum = 0.0;
+                for (int i = 0; i < inputLength; i++) {
+                    double difference = weights[offset + i] - centroids[base + i];
+                    sum += difference * difference;
+                }
+                // NaN distances leave the radius NaN, so the tile is never
+                // skipped.
+                if (!(sum <= radius)) {
+                    radius = sum;
+                }
+            }
+        }
+        radii[tile] = Math.sqrt(radius);
+    }
+
+    /**
+     * Bound from below the squared distance from an input vector to any
+     * neuron in a tile.
+     */
+    private double lowerBound(int tile, double[] input) {
+        int base = tile * inputLength;
+        double sum = 0.0;
+        for (int i = 0; i < inputLength; i++) {
+            double difference = input[i] - centroids[base + i];
+            sum += difference * difference;
+        }
+        double bound = Math.sqrt(sum) * (1.0 - BOUND_SLACK)
+                - radii[tile] * (1.0 + BOUND_SLACK);
+        if (bound != bound) {
+            return Double.NaN;
+        }
+        return bound > 0.0 ? bound * bound : 0.0;
+    }
+
+    /**
+     * Get the tile side.
+     *
+     * @return The number of grid rows and columns in each tile.
+     */
+    public int getTileSide() {
+        return tileSide;
+    }
+
+    /**
+     * Get the number of tiles read from the file since the map was created
+     * or opened.
+     *
+     * @return The count of tile reads.
+     */
+    public synchronized long getTileReads() {
+        return store.getReads();
+    }
+
+    /**
+     * Get the number of tiles written back to the file since the map was
+     * created or opened.
+     *
+     * @return The count of tile writes.
+     */
+    public synchronized long getTileWrites() {
+        return store.getWrites();
+    }
+
+    /**
+     * Get the current training iteration.
+     *
+     * @return The number of training vectors seen.
+     */
+    public synchronized int getTime() {
+        return time;
+    }
+
+    public int getExpectedIterations() {
+        return expectedIterations;
+    }
+
+    public int getInputLength() {
+        return inputLength;
+    }
+
+    public int getNeuronCount() {
+        return neuronCount;
+    }
+
+    public Dimension getGridSize() {
+        return gridSize;
+    }
+
+    public synchronized double getWeight(int neuron, int weightIndex) {
+        return store.tile(tileOf(neuron)).weights[offsetOf(neuron) + weightIndex];
+    }
+
+    /**
+     * Copy a neuron's weights.
+     *
+     * @param neuron The neuron's index.
+     * @param out The buffer to receive the weights.
+     */
+    synchronized void copyWeights(int neuron, double[] out) {
+        System.arraycopy(store.tile(tileOf(neuron)).weights, offsetOf(neuron),
+                out, 0, inputLength);
+    }
+
+    public synchronized double[] getWeightComponent(int weightIndex, double[] out) {
+        if (out == null || out.length < neuronCount) {
+            out = new double[neuronCount];
+        }
+        for (int tile = 0; tile < tileCount; tile++) {
+            double[] weights = store.tile(tile).weights;
+            int firstRow = tileRow(tile);
+            int firstCol = tileCol(tile);
+            for (int row = firstRow; row < Math.min(gridSize.y, firstRow + tileSide); row++) {
+                for (int col = firstCol; col < Math.min(gridSize.x, firstCol + tileSide); col++) {
+                    out[row * gridSize.x + col] = weights[
+                            ((row - firstRow) * tileSide + col - firstCol) * inputLength
+                                    + weightIndex];
+                }
+            }
+        }
+        return out;
+    }
+
+    public int getBestMatchingNeuron(double[] input) {
+        int[] best = new int[1];
+        getBestMatchingNeurons(input, 1, best, null);
+        return best[0];
+    }
+
+    public int getBestMatchingNeuron(int[] input) {
+        double[] dbls = new double[input.length];
+        for (int i = 0; i < input.length; i++) {
+            dbls[i] = input[i];
+        }
+        return getBestMatchingNeuron(dbls);
+    }
+
+    public synchronized int getBestMatchingNeurons(double[] input, int k, int[] idxOut,
+                                                   double[] distOut) {
+        checkInput(input);
+        if (k < 1) {
+            throw new SOMError("At least one best matching neuron must be requested.");
+        }
+        k = Math.min(k, neuronCount);
+        return search(input, k).drainSorted(idxOut, distOut);
+    }
+
+    /**
+     * Find the neurons closest to an input vector, reading tiles in order of
+     * their lower bound until the rest are too far to hold any of them.
+     */
+    private NeuronHeap search(double[] input, int k) {
+        final double[] bounds = new double[tileCount];
+        Integer[] order = new Integer[tileCount];
+        for (int tile = 0; tile < tileCount; tile++) {
+            bounds[tile] = lowerBound(tile, input);
+            order[tile] = tile;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer tile0, Integer tile1) {
+                return Double.compare(bounds[tile0], bounds[tile1]);
+            }
+        });
+
+        NeuronHeap heap = new NeuronHeap(k);
+        for (int tile : order) {
+            // Once the heap is full, every later tile but those with NaN
+            // bounds, which sort last, is skipped here.
+            if (heap.isFull() && bounds[tile] > heap.farthest()) {
+                continue;
+            }
+            double[] weights = store.tile(tile).weights;
+            int firstRow = tileRow(tile);
+            int firstCol = tileCol(tile);
+            for (int row = firstRow; row < Math.min(gridSize.y, firstRow + tileSide); row++) {
+                for (int col = firstCol; col < Math.min(gridSize.x, firstCol + tileSide); col++) {
+                    heap.offer(row * gridSize.x + col, distance(weights,
+                            ((row - firstRow) * tileSide + col - firstCol) * inputLength,
+                            input));
+                }
+            }
+        }
+        return heap;
+    }
+
+    private double distance(double[] weights, int offset, double[] input) {
+        double sum = 0.0;
+        for (int i = 0; i < inputLength; i++) {
+            double difference = input[i] - weights[offset + i];
+            sum += difference * difference;
+        }
+        return sum;
+    }
+
+    public synchronized double distanceToInput(int neuron, double[] input) {
+        return distance(store.tile(tileOf(neuron)).weights, offsetOf(neuron), input);
+    }
+
+    public synchronized double[] distancesToInput(double[] input, double[] out) {
+        checkInput(input);
+        if (out == null || out.length < neuronCount) {
+            out = new double[neuronCount];
+        }
+        for (int tile = 0; tile < tileCount; tile++) {
+            double[] weights = store.tile(tile).weights;
+            int firstRow = tileRow(tile);
+            int firstCol = tileCol(tile);
+            for (int row = firstRow; row < Math.min(gridSize.y, firstRow + tileSide); row++) {
+                for (int col = firstCol; col < Math.min(gridSize.x, firstCol + tileSide); col++) {
+                    out[row * gridSize.x + col] = distance(weights,
+                            ((row - firstRow) * tileSide + col - firstCol) * inputLength,
+                            input);
+                }
+            }
+        }
+        return out;
+    }
+
+    public synchronized void trainWith(double[] data) {
+        checkInput(data);
+
+        int[] best = new int[1];
+        search(data, 1).drainSorted(best, null);
+        adjustNeighborhoodOf(best[0], data);
+        time++;
+    }
+
+    public void trainWith(int[] data) {
+        double[] dbls = new double[data.length];
+        for (int i = 0; i < data.length; i++) {
+            dbls[i] = data[i];
+        }
+        trainWith(dbls);
+    }
+
+    public void train(TrainingDataSource source) {
+        if (source.getInputLength() != inputLength) {
+            throw new SOMError(
+                    "Data source vector length does not match network input size.");
+        }
+
+        for (double[] data = source.next(); data != null; data = source.next()) {
+            trainWith(data);
+        }
+    }
+
+    /**
+     * Move the best matching neuron and every neuron in its neighborhood
+     * towards a training vector, reading only the tiles the neighborhood
+     * covers, and summarize each tile again.
+     */
+    private void adjustNeighborhoodOf(int best, double[] data) {
+        double width = initialNeighborhoodWidth
+                * (1.0 - (time / (double) expectedIterations));
+        int bestRow = best / gridSize.x;
+        int bestCol = best % gridSize.x;
+        int reach = width > 0.0 ? (int) Math.min(Math.floor(width),
+                Math.max(gridSize.x, gridSize.y)) : 0;
+
+        int top = Math.max(0, bestRow - reach) / tileSide;
+        int bottom = Math.min(gridSize.y - 1, bestRow + reach) / tileSide;
+        int left = Math.max(0, bestCol - reach) / tileSide;
+        int right = Math.min(gridSize.x - 1, bestCol + reach) / tileSide;
+        for (int tileRow = top; tileRow <= bottom; tileRow++) {
+            for (int tileCol = left; tileCol <= right; tileCol++) {
+                int tile = tileRow * tilesAcross + tileCol;
+                PagedWeightStore.Tile paged = store.tile(tile);
+                if (adjustTile(tile, paged.weights, best, bestRow, bestCol,
+                        width, data)) {
+                    paged.dirty = true;
+                    summarize(tile, paged.weights);
+                }
+            }
+        }
+    }
+
+    private boolean adjustTile(int tile, double[] weights, int best, int bestRow,
+                               int bestCol, double width, double[] data) {
+        boolean moved = false;
+        int firstRow = tileRow(tile);
+        int firstCol = tileCol(tile);
+        for (int row = firstRow; row < Math.min(gridSize.y, firstRow + tileSide); row++) {
+            for (int col = firstCol; col < Math.min(gridSize.x, firstCol + tileSide); col++) {
+                int dr = row - bestRow;
+                int dc = col - bestCol;
+                if (row * gridSize.x + col != best
+                        && !(Math.sqrt((dr * dr) + (dc * dc)) < width)) {
+                    continue;
+                }
+                int offset = ((row - firstRow) * tileSide + col - firstCol) * inputLength;
+                for (int i = 0; i < inputLength; i++) {
+                    double delta = data[i] - weights[offset + i];
+                    weights[offset + i] += NetworkBase.DEFAULT_LEARNING_RATE * delta;
+                }
+                moved = true;
+            }
+        }
+        return moved;
+    }
+
+    private void checkInput(double[] input) {
+        if (input.length != inputLength) {
+            throw new SOMError(
+                    "Input vector length does not match network input size.");
+        }
+    }
+
+    /**
+     * Write every changed tile and the current iteration to the file, and
+     * wait until they are on the disk.
+     *
+     * @throws SOMError if writing fails.
+     */
+    public synchronized void flush() {
+        try {
+            writeHeader();
+        } catch (IOException e) {
+            throw new SOMError("Cannot write paged map header: " + e.getMessage());
+        }
+        store.flush();
+    }
+
+    /**
+     * Write every changed tile and close the file.  The map cannot be used
+     * afterwards.
+     *
+     * @throws SOMError if writing fails.
+     */
+    public synchronized void close() {
+        try {
+            writeHeader();
+        } catch (IOException e) {
+            throw new SOMError("Cannot write paged map header: " + e.getMessage());
+        } finally {
+            store.close();
+        }
+    }
+
+    /**
+     * Write the map to a binary map file beside its own and map it.  Each
+     * snapshot replaces the file of the last; maps already returned keep
+     * the weights they were taken with.
+     *
+     * @return A read-only map of the current weights.
+     * @throws SOMError if the snapshot cannot be written.
+     */
+    public synchronized SelfOrganizingMap snapshot() {
+        Path path = file.toPath().resolveSibling(file.getName() + ".snapshot");
+        Path temporary = file.toPath().resolveSibling(file.getName() + ".snapshot.tmp");
+        try {
+            BinaryMapFile.write(this, temporary.toFile());
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            return new MappedSOM(path.toFile());
+        } catch (IOException e) {
+            throw new SOMError("Cannot write map snapshot: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Get the description of the map the binary and text formats store
+     * before its weights.  The map is read back as a BasicSquareGridSOM.
+     *
+     * @return The map's header in the text format.
+     */
+    String descriptor() {
+        return String.format("Map type: BasicSquareGridSOM%n")
+                + String.format("Grid dimensions: %d, %d%n", gridSize.x, gridSize.y)
+                + String.format("Input length: %d%n", inputLength);
+    }
+
+    /**
+     * Write the map in the text format, as a BasicSquareGridSOM.  Neurons
+     * are written row by row, so the cache should hold a row of tiles.
+     *
+     * @param destination Where to write to.
+     * @throws IOException If writing throws.
+     */
+    public synchronized void write(OutputStreamWriter destination) throws IOException {
+        destination.write(descriptor());
+        destination.write(String.format("Weights:%n"));
+        WeightRowWriter rows = new WeightRowWriter(destination);
+        double[] row = new double[inputLength];
+        for (int neuron = 0; neuron < neuronCount; neuron++) {
+            copyWeights(neuron, row);
+            rows.write(row);
+        }
+        rows.flush();
+        destination.write(String.format("end weights%n"));
+        destination.flush();
+    }
+
+    @Override
+    public String toString() {
+        return "PagedSOM{gridSize=" + gridSize + ", inputLength=" + inputLength +
+                ", tileSide=" + tileSide + ", time=" + time + ", store=" + store + '}';
+    }
+}
@@ -0,0 +1,291 @@
+package cs437.som.network;
+
+import cs437.som.SOMError;
+import cs437.som.SOMExecutionContext;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * The weights of a map kept in a file as equal sized tiles, with the most
+ * recently used tiles held in memory.
+ *
+ * At most a fixed number of tiles are resident.  Fetching a tile that is not
+ * resident reads it from the file and evicts the least recently used tile.
+ * An evicted tile that was changed is handed to a background writer, so the
+ * caller does not wait for the disk; a tile fetched again before its write
+ * finishes is copied from the write queue rather than read from the file.
+ * If the writer falls far behind, evicting waits for it to catch up, which
+ * bounds the memory held by the queue to a quarter of the cache.
+ *
+ * The store is not safe for use by several threads; its owner serializes
+ * access to it.  Only the background writer runs concurrently.
+ */
+class PagedWeightStore {
+    private final FileChannel channel;
+    private final long dataOffset;
+    private final int tileDoubles;
+    private final int capacity;
+    private final int maxPending;
+
+    private final LinkedHashMap<Integer, Tile> resident;
+    private final ByteBuffer readBuffer;
+    // Used only by the writer thread.
+    private final ByteBuffer writeBuffer;
+
+    // Evicted tiles waiting to be written, by tile index, guarded by this.
+    private final Map<Integer, double[]> pending = new HashMap<Integer, double[]>();
+    private IOException failure = null;
+    private final ExecutorService writer;
+
+    private long reads = 0;
+    private long writes = 0;
+
+    /**
+     * A tile held in memory.
+     */
+    static final class Tile {
+        final int index;
+        final double[] weights;
+        boolean dirty = false;
+
+        private Tile(int index, double[] weights) {
+            this.index = index;
+            this.weights = weights;
+        }
+    }
+
+    /**
+     * Create a store over tiles in a file.
+     *
+     * @param channel The file, open for reading and writing.
+     * @param dataOffset The position of the first tile in the file.
+     * @param tileDoubles The number of weights in each tile.
+     * @param cacheBytes The memory to give resident tiles.  At least two
+     * tiles are kept however small it is.
+     * @param context The execution context providing the writer thread.
+     */
+    PagedWeightStore(FileChannel channel, long dataOffset, int tileDoubles,
+                     long cacheBytes, SOMExecutionContext context) {
+        this.channel = channel;
+        this.dataOffset = dataOffset;
+        this.tileDoubles = tileDoubles;
+        capacity = (int) Math.max(2, Math.min(Integer.MAX_VALUE,
+                cacheBytes / ((long) tileDoubles * 8)));
+        maxPending = capacity / 4 + 1;
+        readBuffer = ByteBuffer.allocateDirect(tileDoubles * 8)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        writeBuffer = ByteBuffer.allocateDirect(tileDoubles * 8)
+                .order(ByteOrder.LITTLE_ENDIAN);
+
+        resident = new LinkedHashMap<Integer, Tile>(16, 0.75f, true);
+        writer = context.newStage("SOM tile writer");
+    }
+
+    /**
+     * Get the number of tiles kept in memory.
+     *
+     * @return The cache's capacity in tiles.
+     */
+    int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Get the number of tiles read from the file so far.
+     *
+     * @return The count of tile reads.
+     */
+    long getReads() {
+        return reads;
+    }
+
+    /**
+     * Get the number of tiles handed to the writer so far.
+     *
+     * @return The count of tile writes.
+     */
+    long getWrites() {
+        return writes;
+    }
+
+    /**
+     * Get a tile, reading it in if it is not resident.  Callers that change
+     * its weights must mark it dirty.
+     *
+     * @param index The tile's index.
+     * @return The resident tile.
+     * @throws SOMError if reading the tile or writing an earlier one failed.
+     */
+    Tile tile(int index) {
+        Tile tile = resident.get(index);
+        if (tile != null) {
+            return tile;
+        }
+
+        double[] weights = new double[tileDoubles];
+        boolean queued;
+        synchronized (this) {
+            rethrowFailure();
+            double[] written = pending.get(index);
+            queued = written != null;
+            if (queued) {
+                System.arraycopy(written, 0, weights, 0, tileDoubles);
+            }
+        }
+        if (!queued) {
+            read(index, weights);
+        }
+
+        // A tile copied from the write queue is clean: the queued copy will
+        // be written whether or not the tile is evicted again.
+        tile = new Tile(index, weights);
+        resident.put(index, tile);
+        if (resident.size() > capacity) {
+            Tile eldest = resident.values().iterator().next();
+            resident.remove(eldest.index);
+            if (eldest.dirty) {
+                writeBack(eldest.index, eldest.weights);
+            }
+        }
+        return tile;
+    }
+
+    /**
+     * Hand every changed resident tile to the writer and wait until all
+     * tiles have been written and forced to the disk.
+     *
+     * @throws SOMError if writing failed.
+     */
+    void flush() {
+        for (Tile tile : resident.values()) {
+            if (tile.dirty) {
+                writeBack(tile.index, tile.weights.clone());
+                tile.dirty = false;
+            }
+        }
+        synchronized (this) {
+            try {
+                while (!pending.isEmpty() && failure == null) {
+                    wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SOMError("Interrupted while writing map tiles.");
+            }
+            rethrowFailure();
+        }
+        try {
+            channel.force(false);
+        } catch (IOException e) {
+            throw new SOMError("Cannot write map tiles: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Write every changed tile, stop the writer and close the file.
+     *
+     * @throws SOMError if writing failed.
+     */
+    void close() {
+        try {
+            flush();
+        } finally {
+            writer.shutdown();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                throw new SOMError("Cannot close map tiles: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Queue a tile's weights to be written, waiting if too many are queued.
+     * The weights must not be changed afterwards.
+     */
+    private void writeBack(final int index, final double[] weights) {
+        synchronized (this) {
+            try {
+                while (pending.size() >= maxPending && failure == null) {
+                    wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SOMError("Interrupted while writing map tiles.");
+            }
+            rethrowFailure();
+            // A newer copy replaces any older one still queued; the single
+            // writer thread writes them in order, so the newest lands last.
+            pending.put(index, weights);
+        }
+        writes++;
+
+        writer.execute(new Runnable() {
+            public void run() {
+                IOException error = null;
+                try {
+                    writeBuffer.clear();
+                    writeBuffer.asDoubleBuffer().put(weights);
+                    long position = position(index);
+                    while (writeBuffer.hasRemaining()) {
+                        position += channel.write(writeBuffer, position);
+                    }
+                } catch (IOException e) {
+                    error = e;
+                }
+
+                synchronized (PagedWeightStore.this) {
+                    if (error != null && failure == null) {
+                        failure = error;
+                    }
+                    if (pending.get(index) == weights) {
+                        pending.remove(index);
+                    }
+                    PagedWeightStore.this.notifyAll();
+                }
+            }
+        });
+    }
+
+    private void read(int index, double[] weights) {
+        readBuffer.clear();
+        try {
+            long position = position(index);
+            while (readBuffer.hasRemaining()) {
+                int count = channel.read(readBuffer, position);
+                if (count < 0) {
+                    throw new SOMError("Paged map file is truncated.");
+                }
+                position += count;
+            }
+        } catch (IOException e) {
+            throw new SOMError("Cannot read map tile " + index + ": " + e.getMessage());
+        }
+        readBuffer.flip();
+        readBuffer.asDoubleBuffer().get(weights);
+        reads++;
+    }
+
+    private long position(int index) {
+        return dataOffset + (long) index * tileDoubles * 8;
+    }
+
+    private void rethrowFailure() {
+        if (failure != null) {
+            throw new SOMError("Cannot write map tiles: " + failure.getMessage());
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "PagedWeightStore{tileDoubles=" + tileDoubles +
+                ", capacity=" + capacity + ", resident=" + resident.size() + '}';
+    }
+}
@@ -0,0 +1,259 @@
+package cs437.som.network;
+
+import cs437.som.DistanceMetric;
+import cs437.som.GridType;
+import cs437.som.NeighborhoodMembershipFunction;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * The inner loops of a CustomizableSOM, specialized for one input length and
+ * one combination of distance metric, neighborhood membership and grid type.
+ *
+ * A CustomizableSOM calls its strategies through interfaces several times
+ * per neuron per step.  When maps with different strategies run in one JVM,
+ * those call sites see several implementations and the JIT stops inlining
+ * them.  A kernel moves the loops into a class generated for one
+ * configuration, so each of its call sites only ever sees one strategy
+ * class.  The distance loops of the metrics in
+ * {@link cs437.som.distancemetrics} and the weight update are written out in
+ * full for inputs of up to {@link #UNROLL_LIMIT} components.  Generated code
+ * computes exactly what the strategies themselves would.
+ *
+ * Kernels are generated with ASM.  If it cannot be loaded, an unspecialized
+ * kernel running the same loops is used instead.  Generated classes are
+ * cached by their strategy classes, which are held weakly, so caching a
+ * kernel for a strategy defined by another class loader does not keep that
+ * loader alive.
+ *
+ * This class is public only so that generated kernels, which are defined by
+ * their own class loader, may extend it.
+ */
+public abstract class SOMKernel {
+    /**
+     * The longest input vector whose loops are written out in full.
+     */
+    public static final int UNROLL_LIMIT = 16;
+
+    // Kernel classes by metric, membership and grid class, then by input
+    // length, guarded by itself.
+    private static final Map<Class<?>, Map<Class<?>, Map<Class<?>,
+            Map<Integer, Class<?>>>>> generated = new WeakHashMap<Class<?>,
+            Map<Class<?>, Map<Class<?>, Map<Integer, Class<?>>>>>();
+    private static volatile boolean generationFailed = false;
+
+    /**
+     * The distance metric strategy of the map.
+     */
+    protected final DistanceMetric distanceMetric;
+
+    /**
+     * The neighborhood membership strategy of the map.
+     */
+    protected final NeighborhoodMembershipFunction neighborhoodMembership;
+
+    /**
+     * The grid type strategy of the map.
+     */
+    protected final GridType gridType;
+
+    /**
+     * The map's input vector length.
+     */
+    protected final int inputLength;
+
+    /**
+     * Create a kernel for a map's strategies.
+     *
+     * @param distanceMetric The distance metric.
+     * @param neighborhoodMembership The neighborhood membership function.
+     * @param gridType The grid type.
+     * @param inputLength The input vector length.
+     */
+    protected SOMKernel(DistanceMetric distanceMetric,
+                        NeighborhoodMembershipFunction neighborhoodMembership,
+                        GridType gridType, int inputLength) {
+        this.distanceMetric = distanceMetric;
+        this.neighborhoodMembership = neighborhoodMembership;
+        this.gridType = gridType;
+        this.inputLength = inputLength;
+    }
+
+    /**
+     * Get a kernel for a map's strategies, generating its class if no map
+     * with the same input length and strategy classes has needed one yet.
+     *
+     * @param map The map.
+     * @return A kernel bound to the map's current strategies.
+     */
+    static SOMKernel create(CustomizableSOM map) {
+        if (!generationFailed) {
+            Class<? extends DistanceMetric> metric = map.distanceMetric.getClass();
+            Class<?> membership = map.neighborhoodMembership.getClass();
+            Class<?> grid = map.gridType.getClass();
+            try {
+                Class<?> kernelClass;
+                synchronized (generated) {
+                    Map<Class<?>, Map<Class<?>, Map<Integer, Class<?>>>> byMembership =
+                            generated.get(metric);
+                    if (byMembership == null) {
+                        byMembership = new WeakHashMap<Class<?>,
+                                Map<Class<?>, Map<Integer, Class<?>>>>();
+                        generated.put(metric, byMembership);
+                    }
+                    Map<Class<?>, Map<Integer, Class<?>>> byGrid =
+                            byMembership.get(membership);
+                    if (byGrid == null) {
+                        byGrid = new WeakHashMap<Class<?>, Map<Integer, Class<?>>>();
+                        byMembership.put(membership, byGrid);
+                    }
+                    Map<Integer, Class<?>> byLength = byGrid.get(grid);
+                    if (byLength == null) {
+                        byLength = new HashMap<Integer, Class<?>>();
+                        byGrid.put(grid, byLength);
+                    }
+                    kernelClass = byLength.get(map.inputVectorSize);
+                    if (kernelClass == null) {
+                        kernelClass = KernelGenerator.generate(
+                                map.inputVectorSize, metric);
+                        byLength.put(map.inputVectorSize, kernelClass);
+                    }
+                }
+                return (SOMKernel) kernelClass.getConstructor(
+                        DistanceMetric.class, NeighborhoodMembershipFunction.class,
+                        GridType.class, int.class).newInstance(
+                        map.distanceMetric, map.neighborhoodMembership,
+                        map.gridType, map.inputVectorSize);
+            } catch (LinkageError e) {
+                // ASM is not on the class path.
+                generationFailed = true;
+            } catch (ReflectiveOperationException e) {
+                generationFailed = true;
+            }
+        }
+        return new GenericKernel(map.distanceMetric, map.neighborhoodMembership,
+                map.gridType, map.inputVectorSize);
+    }
+
+    /**
+     * Measure the distance from a neuron's weights to an input vector.
+     *
+     * @param weights The neuron's weights.
+     * @param input The input vector.
+     * @return The distance, as measured by the distance metric.
+     */
+    public abstract double distance(double[] weights, double[] input);
+
+    /**
+     * Measure the distance from a range of neurons to an input vector.
+     *
+     * @param weights The weight matrix.
+     * @param input The input vector.
+     * @param out The buffer to receive the distances.
+     * @param offset The neuron index stored at {@code out[0]}.
+     * @param from The first neuron index, inclusive.
+     * @param to The last neuron index, exclusive.
+     */
+    public abstract void distances(double[][] weights, double[] input,
+                                   double[] out, int offset, int from, int to);
+
+    /**
+     * Find the neuron in a range closest to an input vector.  Ties go to the
+     * lowest index.
+     *
+     * @param weights The weight matrix.
+     * @param input The input vector.
+     * @param from The first neuron index, inclusive.
+     * @param to The last neuron index, exclusive.
+     * @return The index of the closest neuron.
+     */
+    public abstract int bestMatch(double[][] weights, double[] input,
+                                  int from, int to);
+
+    /**
+     * Measure the neighborhood membership of a range of neurons.
+     *
+     * @param neuron The neuron whose neighborhood is measured.
+     * @param width The neighborhood width.
+     * @param out The buffer to receive the memberships, starting with
+     * {@code from} at index 0.
+     * @param from The first neuron index, inclusive.
+     * @param to The last neuron index, exclusive.
+     */
+    public abstract void memberships(int neuron, double width, double[] out,
+                                     int from, int to);
+
+    /**
+     * Move a neuron's weights toward an input vector.
+     *
+     * @param weights The neuron's weights, which are changed.
+     * @param input The input vector.
+     * @param rate The learning rate.
+     * @param membership The neuron's neighborhood membership.
+     */
+    public abstract void move(double[] weights, double[] input, double rate,
+                              double membership);
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "{inputLength=" + inputLength +
+                ", distanceMetric=" + distanceMetric + '}';
+    }
+
+    /**
+     * The kernel used when none can be generated.  Its loops are shared by
+     * every map, so they call the strategies through their interfaces.
+     */
+    private static class GenericKernel extends SOMKernel {
+        GenericKernel(DistanceMetric distanceMetric,
+                      NeighborhoodMembershipFunction neighborhoodMembership,
+                      GridType gridType, int inputLength) {
+            super(distanceMetric, neighborhoodMembership, gridType, inputLength);
+        }
+
+        public double distance(double[] weights, double[] input) {
+            return distanceMetric.distance(weights, input);
+        }
+
+        public void distances(double[][] weights, double[] input, double[] out,
+                              int offset, int from, int to) {
+            for (int neuron = from; neuron < to; neuron++) {
+                out[neuron - offset] = distanceMetric.distance(weights[neuron], input);
+            }
+        }
+
+        public int bestMatch(double[][] weights, double[] input, int from, int to) {
+            int bestMatch = from;
+            double lowestDistance = distanceMetric.distance(weights[from], input);
+            for (int neuron = from + 1; neuron < to; neuron++) {
+                double distance = distanceMetric.distance(weights[neuron], input);
+                if (distance < lowestDistance) {
+                    lowestDistance = distance;
+                    bestMatch = neuron;
+                }
+            }
+            return bestMatch;
+        }
+
+        public void memberships(int neuron, double width, double[] out,
+                                int from, int to) {
+            for (int i = from; i < to; i++) {
+                out[i - from] = neighborhoodMembership.neighborhoodMembership(
+                        gridType.gridDistance(neuron, i), width);
+            }
+        }
+
+        public void move(double[] weights, double[] input, double rate,
+                         double membership) {
+            for (int i = 0; i < weights.length; i++) {
+                double delta = input[i] - weights[i];
+                delta *= rate;
+                delta *= membership;
+
+                weights[i] += delta;
+            }
+        }
+    }
+}
@@ -0,0 +1,437 @@
+package cs437.som.network;
+
+import cs437.som.SOMError;
+import cs437.som.TrainingListener;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * An append-only log of every training step of a map.
+ *
+ * A journal registers itself as a training listener of a CustomizableSOM and
+ * records each step as a fixed-size binary record: the iteration, the best
+ * matching neuron, its distance from the input and the input vector itself.
+ * Records are gathered into large batches on the training thread and written
+ * by a background thread, one batch while the next is being filled, so the
+ * training loop only copies the input into memory.  Training waits only if
+ * both batches fill before the first is on its way to disk.  All fields are
+ * little-endian:
+ *
+ * <pre>
+ * header  magic "SOMJ", version, neuron count, input length   (4 ints)
+ * record  iteration (int), best match (int), distance (double),
+ *         input (input length doubles)
+ * </pre>
+ *
+ * Records still being gathered are lost if the process dies; {@link #flush()}
+ * forces everything recorded so far to disk.  A record cut short by a crash
+ * is ignored when the journal is read.
+ *
+ * Together with a {@link MapCheckpointer}, a journal recovers every step
+ * recorded since the last checkpoint:
+ *
+ * <pre>
+ * {@code
+ * CustomizableSOM som = (CustomizableSOM) MapCheckpointer.resume(checkpoint);
+ * TrainingJournal.replay(journalFile, som);
+ * TrainingJournal journal = new TrainingJournal(som, journalFile);
+ * }
+ * </pre>
+ *
+ * Opening a journal on an existing file appends to it.  The journal can also
+ * be read without a map, for instance to count how often each neuron was the
+ * best match with {@link #hitCounts(File)}.
+ */
+public class TrainingJournal implements TrainingListener {
+    private static final int MAGIC = 0x4A4D4F53; // "SOMJ"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int RECORD_HEADER_SIZE = 16;
+    private static final int BATCH_BYTES = 1 << 20;
+
+    private final CustomizableSOM map;
+    private final File file;
+    private final FileChannel channel;
+    private final int inputLength;
+    private final int recordSize;
+
+    private final ByteBuffer[] batches = new ByteBuffer[2];
+    private ByteBuffer filling;
+    private ByteBuffer writing = null;
+    private IOException failure = null;
+    private long recorded = 0;
+
+    private final ExecutorService writer;
+
+    /**
+     * Start journaling the training of a map.  If the file already holds a
+     * journal of a map of the same size, new records are appended to it.
+     *
+     * @param map The map to journal.
+     * @param file The journal file.
+     * @throws IOException if the file cannot be opened.
+     */
+    public TrainingJournal(CustomizableSOM map, File file) throws IOException {
+        this.map = map;
+        this.file = file;
+        inputLength = map.inputVectorSize;
+        recordSize = RECORD_HEADER_SIZE + inputLength * 8;
+
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            if (channel.size() == 0) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE)
+                        .order(ByteOrder.LITTLE_ENDIAN);
+                header.putInt(MAGIC).putInt(VERSION).putInt(map.neuronCount)
+                        .putInt(inputLength);
+                header.flip();
+                writeFully(channel, header);
+            } else {
+                Header header = Header.read(channel, file);
+                if (header.neuronCount != map.neuronCount
+                        || header.inputLength != inputLength) {
+                    throw new SOMError(file + " journals a map of a different size.");
+                }
+                // Drop a record cut short by a crash.
+                channel.truncate(HEADER_SIZE +
+                        (channel.size() - HEADER_SIZE) / recordSize * recordSize);
+            }
+            channel.position(channel.size());
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        } catch (SOMError e) {
+            channel.close();
+            throw e;
+        }
+
+        int batchBytes = Math.max(1, BATCH_BYTES / recordSize) * recordSize;
+        for (int i = 0; i < batches.length; i++) {
+            batches[i] = ByteBuffer.allocateDirect(batchBytes)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+        }
+        filling = batches[0];
+        writer = map.getExecutionContext().newStage("SOM journal writer");
+        map.addTrainingListener(this);
+    }
+
+    /**
+     * Record a training step.  Called by the map.
+     */
+    public void trainingStep(int iteration, double[] input, int bestMatch,
+                             double distance) {
+        if (filling.remaining() < recordSize) {
+            submit();
+        }
+        filling.putInt(iteration).putInt(bestMatch).putDouble(distance);
+        for (double value : input) {
+            filling.putDouble(value);
+        }
+        recorded++;
+    }
+
+    /**
+     * Hand the batch being filled to the writer and continue with the other
+     * batch, waiting for it to be written first if necessary.
+     */
+    private void submit() {
+        final ByteBuffer full = filling;
+        synchronized (this) {
+            try {
+                while (writing != null) {
+                    wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SOMError("Interrupted while waiting for the journal.");
+            }
+            rethrowFailure();
+            writing = full;
+        }
+
+        full.flip();
+        filling = full == batches[0] ? batches[1] : batches[0];
+        writer.execute(new Runnable() {
+            public void run() {
+                IOException error = null;
+                try {
+                    writeFully(channel, full);
+                } catch (IOException e) {
+                    error = e;
+                }
+                full.clear();
+                synchronized (TrainingJournal.this) {
+                    if (error != null) {
+                        failure = error;
+                    }
+                    writing = null;
+                    TrainingJournal.this.notifyAll();
+                }
+            }
+        });
+    }
+
+    /**
+     * Write every step recorded so far and force it to disk.
+     *
+     * @throws SOMError if writing the journal failed.
+     */
+    public void flush() {
+        if (filling.position() > 0) {
+            submit();
+        }
+        synchronized (this) {
+            try {
+                while (writing != null) {
+                    wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SOMError("Interrupted while waiting for the journal.");
+            }
+            rethrowFailure();
+        }
+        try {
+            channel.force(false);
+        } catch (IOException e) {
+            throw new SOMError("Could not write journal " + file + ": " + e);
+        }
+    }
+
+    /**
+     * Stop journaling: write every step recorded so far, stop listening to
+     * the map and close the file.
+     *
+     * @throws SOMError if writing the journal failed.
+     */
+    public void close() {
+        map.removeTrainingListener(this);
+        try {
+            flush();
+        } finally {
+            writer.shutdown();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                throw new SOMError("Could not close journal " + file + ": " + e);
+            }
+        }
+    }
+
+    /**
+     * Get the number of steps recorded since the journal was opened.
+     *
+     * @return The recorded step count.
+     */
+    public long getStepsRecorded() {
+        return recorded;
+    }
+
+    private void rethrowFailure() {
+        if (failure != null) {
+            IOException e = failure;
+            failure = null;
+            throw new SOMError("Could not write journal " + file + ": " + e);
+        }
+    }
+
+    /**
+     * Train a map with the steps of a journal that it has not yet taken.
+     * Steps before the map's current iteration are skipped, so a map resumed
+     * from a checkpoint is brought up to the last recorded step.  Each
+     * replayed step must find the recorded best matching neuron.
+     *
+     * @param file The journal file.
+     * @param map The map to train.
+     * @return The number of steps replayed.
+     * @throws IOException if reading the journal fails.
+     * @throws SOMError if the journal is missing steps the map needs or the
+     * map does not retrace the journal.
+     */
+    public static int replay(File file, CustomizableSOM map) throws IOException {
+        Reader reader = new Reader(file);
+        final int[] bestMatch = new int[1];
+        TrainingListener retrace = new TrainingListener() {
+            public void trainingStep(int iteration, double[] input, int best,
+                                     double distance) {
+                bestMatch[0] = best;
+            }
+        };
+        map.addTrainingListener(retrace);
+        try {
+            if (reader.header.neuronCount != map.neuronCount
+                    || reader.header.inputLength != map.inputVectorSize) {
+                throw new SOMError(file + " journals a map of a different size.");
+            }
+
+            int replayed = 0;
+            while (reader.next()) {
+                if (reader.iteration < map.time) {
+                    continue;
+                }
+                if (reader.iteration > map.time) {
+                    throw new SOMError(file + " has no record of iteration " + map.time);
+                }
+                map.trainWith(reader.input);
+                if (bestMatch[0] != reader.bestMatch) {
+                    throw new SOMError("Replay diverged from " + file +
+                            " at iteration " + reader.iteration);
+                }
+                replayed++;
+            }
+            return replayed;
+        } finally {
+            map.removeTrainingListener(retrace);
+            reader.close();
+        }
+    }
+
+    /**
+     * Count how often each neuron was the best match in a journal.
+     *
+     * @param file The journal file.
+     * @return The number of steps matched to each neuron.
+     * @throws IOException if reading the journal fails.
+     */
+    public static int[] hitCounts(File file) throws IOException {
+        Reader reader = new Reader(file);
+        try {
+            int[] hits = new int[reader.header.neuronCount];
+            while (reader.next()) {
+                hits[reader.bestMatch]++;
+            }
+            return hits;
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Pass every step in a journal to a listener, in order.
+     *
+     * @param file The journal file.
+     * @param listener The listener to notify.
+     * @throws IOException if reading the journal fails.
+     */
+    public static void read(File file, TrainingListener listener) throws IOException {
+        Reader reader = new Reader(file);
+        try {
+            while (reader.next()) {
+                listener.trainingStep(reader.iteration, reader.input,
+                        reader.bestMatch, reader.distance);
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer)
+            throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "TrainingJournal{file=" + file + ", recorded=" + recorded + '}';
+    }
+
+    /**
+     * The fixed fields at the start of a journal.
+     */
+    private static class Header {
+        int neuronCount;
+        int inputLength;
+
+        static Header read(FileChannel channel, File file) throws IOException {
+            ByteBuffer fixed = ByteBuffer.allocate(HEADER_SIZE)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            while (fixed.hasRemaining()) {
+                if (channel.read(fixed, fixed.position()) < 0) {
+                    throw new SOMError(file + " is not a training journal.");
+                }
+            }
+            fixed.flip();
+            if (fixed.getInt() != MAGIC) {
+                throw new SOMError(file + " is not a training journal.");
+            }
+            int version = fixed.getInt();
+            if (version != VERSION) {
+                throw new SOMError("Unsupported journal version " + version);
+            }
+            Header header = new Header();
+            header.neuronCount = fixed.getInt();
+            header.inputLength = fixed.getInt();
+            return header;
+        }
+    }
+
+    /**
+     * Reads the records of a journal one at a time.
+     */
+    private static class Reader {
+        final Header header;
+        final double[] input;
+        int iteration;
+        int bestMatch;
+        double distance;
+
+        private final FileChannel channel;
+        private final ByteBuffer chunk;
+        private final int recordSize;
+
+        Reader(File file) throws IOException {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            try {
+                header = Header.read(channel, file);
+            } catch (SOMError e) {
+                channel.close();
+                throw e;
+            }
+            channel.position(HEADER_SIZE);
+            input = new double[header.inputLength];
+            recordSize = RECORD_HEADER_SIZE + header.inputLength * 8;
+            chunk = ByteBuffer.allocateDirect(
+                    Math.max(1, BATCH_BYTES / recordSize) * recordSize)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            chunk.limit(0);
+        }
+
+        /**
+         * Read the next complete record.
+         *
+         * @return false at the end of the journal.
+         */
+        boolean next() throws IOException {
+            if (chunk.remaining() < recordSize) {
+                chunk.compact();
+                while (chunk.hasRemaining() && channel.read(chunk) >= 0) {
+                    // Keep reading until the chunk is full or the file ends.
+                }
+                chunk.flip();
+                if (chunk.remaining() < recordSize) {
+                    return false;
+                }
+            }
+            iteration = chunk.getInt();
+            bestMatch = chunk.getInt();
+            distance = chunk.getDouble();
+            for (int i = 0; i < input.length; i++) {
+                input[i] = chunk.getDouble();
+            }
+            return true;
+        }
+
+        void close() throws IOException {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,332 @@
+package cs437.som.network;
+
+import java.util.Arrays;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The working state of {@link CustomizableSOM#trainWithWindow(double[][], int)}.
+ *
+ * A window is trained in three phases.  First the best matching neuron and
+ * neighborhood footprint of every sample are found in parallel against the
+ * weights as they stand.  Then, on the training thread and in sample order,
+ * each step is announced to the map's listeners, its learning rates are
+ * taken from the schedule and it is placed in the first group after every
+ * earlier sample whose footprint it overlaps.  Finally the groups are applied
+ * in order, each in parallel: the footprints within a group are disjoint, so
+ * every neuron is moved by at most one of its samples.  Only the blocks of
+ * neurons a group's footprints touch are visited.
+ */
+class TrainingWindow {
+    // Marks a footprint's best matching neuron, which moves at the map's
+    // own rate rather than by neighborhood membership.
+    private static final double BEST_MATCH = -1.0;
+
+    private final CustomizableSOM map;
+    private final double[][] samples;
+    private final int count;
+
+    private final double[] widths;
+    private final int[] bestMatches;
+    private final double[] distances;
+    private final int[][] footprints;
+    private final double[][] memberships;
+    private final int[] footprintSizes;
+
+    private final double[] bestMatchRates;
+    private final double[] neighborRates;
+    private final int[] groups;
+    private final int[] lastGroups;
+    private int groupCount = 0;
+
+    // The sample moving each neuron in the group being applied, or -1.
+    private int[] owners = null;
+    private double[] ownerMemberships = null;
+
+    // The blocks of neurons the group being applied touches.
+    private int[] touched = null;
+    private boolean[] blockTouched = null;
+    private int touchedCount = 0;
+
+    /**
+     * Prepare to train a map with a window of samples.
+     *
+     * @param map The map being trained.
+     * @param samples The input vectors.
+     * @param count The number of vectors in {@code samples} to train with.
+     * @param widths The neighborhood width at each sample's iteration.
+     */
+    TrainingWindow(CustomizableSOM map, double[][] samples, int count,
+                   double[] widths) {
+        this.map = map;
+        this.samples = samples;
+        this.count = count;
+        this.widths = widths;
+
+        bestMatches = new int[count];
+        distances = new double[count];
+        footprints = new int[count][];
+        memberships = new double[count][];
+        footprintSizes = new int[count];
+        bestMatchRates = new double[count];
+        neighborRates = new double[count];
+        groups = new int[count];
+        lastGroups = new int[map.neuronCount];
+        Arrays.fill(lastGroups, -1);
+    }
+
+    /**
+     * Find every sample's best matching neuron and footprint, in parallel
+     * when the map is large enough.  The caller holds the map's lock.
+     */
+    void locate() {
+        // Bring the component-major weights up to date once, here, so that
+        // the tasks below only read them.
+        map.refreshComponentMajorWeights();
+        if (map.isParallelScan()) {
+            map.getExecutionContext().invoke(new LocateTask(0, count,
+                    map.getExecutionContext().grain(count)));
+        } else {
+            locate(0, count);
+        }
+    }
+
+    private void locate(int from, int to) {
+        SOMKernel kernel = map.kernel();
+        // Once the best match is found the distances are spent, so the same
+        // buffer then receives the memberships.
+        double[] field = map.queryScratch(map.neuronCount);
+        for (int k = from; k < to; k++) {
+            map.distancesToInput(samples[k], field, 0, map.neuronCount);
+            int best = 0;
+            for (int neuron = 1; neuron < map.neuronCount; neuron++) {
+                if (field[neuron] < field[best]) {
+                    best = neuron;
+                }
+            }
+            bestMatches[k] = best;
+            distances[k] = field[best];
+
+            int[] footprint = new int[16];
+            double[] membership = new double[16];
+            int size = 0;
+            footprint[size] = best;
+            membership[size++] = BEST_MATCH;
+            kernel.memberships(best, widths[k], field, 0, map.neuronCount);
+            for (int neuron = 0; neuron < map.neuronCount; neuron++) {
+                double m = field[neuron];
+                if (neuron != best && m > 0) {
+                    if (size == footprint.length) {
+                        footprint = Arrays.copyOf(footprint, size * 2);
+                        membership = Arrays.copyOf(membership, size * 2);
+                    }
+                    footprint[size] = neuron;
+                    membership[size++] = m;
+                }
+            }
+            footprints[k] = footprint;
+            memberships[k] = membership;
+            footprintSizes[k] = size;
+        }
+    }
+
+    int getBestMatch(int sample) {
+        return bestMatches[sample];
+    }
+
+    double getDistance(int sample) {
+        return distances[sample];
+    }
+
+    /**
+     * Record a sample's learning rates and place it in a group.  Samples
+     * must be scheduled in order.
+     *
+     * @param sample The sample's index in the window.
+     * @param bestMatchRate The rate at which its best matching neuron moves.
+     * @param neighborRate The rate at which its neighbors move, before
+     * scaling by their membership.
+     */
+    void schedule(int sample, double bestMatchRate, double neighborRate) {
+        bestMatchRates[sample] = bestMatchRate;
+        neighborRates[sample] = neighborRate;
+
+        int[] footprint = footprints[sample];
+        int group = 0;
+        for (int i = 0; i < footprintSizes[sample]; i++) {
+            group = Math.max(group, lastGroups[footprint[i]] + 1);
+        }
+        for (int i = 0; i < footprintSizes[sample]; i++) {
+            lastGroups[footprint[i]] = group;
+        }
+        groups[sample] = group;
+        groupCount = Math.max(groupCount, group + 1);
+    }
+
+    /**
+     * Apply every group's updates to the map's weights, one group at a time.
+     */
+    void apply() {
+        owners = new int[map.neuronCount];
+        ownerMemberships = new double[map.neuronCount];
+        Arrays.fill(owners, -1);
+
+        int block = map.updateBlock();
+        int blocks = (map.neuronCount + block - 1) / block;
+        touched = new int[blocks];
+        blockTouched = new boolean[blocks];
+        int grain = Math.max(1, map.scanGrain() / block);
+        for (int group = 0; group < groupCount; group++) {
+            claim(group, block);
+            if (map.isParallelScan() && touchedCount > grain) {
+                map.getExecutionContext().invoke(new ApplyTask(block, 0,
+                        touchedCount, grain));
+            } else {
+                applyBlocks(block, 0, touchedCount);
+            }
+            release(group);
+        }
+    }
+
+    /**
+     * Give each neuron of a group's footprints to its sample, and list the
+     * blocks they fall in.
+     */
+    private void claim(int group, int block) {
+        touchedCount = 0;
+        for (int k = 0; k < count; k++) {
+            if (groups[k] == group) {
+                int[] footprint = footprints[k];
+                for (int i = 0; i < footprintSizes[k]; i++) {
+                    int neuron = footprint[i];
+                    owners[neuron] = k;
+                    ownerMemberships[neuron] = memberships[k][i];
+                    if (!blockTouched[neuron / block]) {
+                        blockTouched[neuron / block] = true;
+                        touched[touchedCount++] = neuron / block;
+                    }
+                }
+            }
+        }
+    }
+
+    private void release(int group) {
+        for (int k = 0; k < count; k++) {
+            if (groups[k] == group) {
+                int[] footprint = footprints[k];
+                for (int i = 0; i < footprintSizes[k]; i++) {
+                    owners[footprint[i]] = -1;
+                }
+            }
+        }
+        for (int i = 0; i < touchedCount; i++) {
+            blockTouched[touched[i]] = false;
+        }
+    }
+
+    /**
+     * Apply the current group to a range of its touched blocks.
+     *
+     * @param block The number of neurons per block.
+     * @param from The first index into the touched blocks, inclusive.
+     * @param to The last index into the touched blocks, exclusive.
+     */
+    private void applyBlocks(int block, int from, int to) {
+        for (int i = from; i < to; i++) {
+            int first = touched[i] * block;
+            map.applyWindowGroup(this, first, Math.min(map.neuronCount, first + block));
+        }
+    }
+
+    /**
+     * Move the neurons in a range that belong to the current group's
+     * footprints toward their samples.
+     *
+     * @param from The first neuron index, inclusive.
+     * @param to The last neuron index, exclusive.
+     */
+    void apply(int from, int to) {
+        for (int neuron = from; neuron < to; neuron++) {
+            int k = owners[neuron];
+            if (k < 0) {
+                continue;
+            }
+
+            double[] input = samples[k];
+            double membership = ownerMemberships[neuron];
+            double[] weights = map.writableWeights(neuron);
+            if (membership == BEST_MATCH) {
+                for (int i = 0; i < weights.length; i++) {
+                    double delta = input[i] - weights[i];
+                    weights[i] += bestMatchRates[k] * delta;
+                }
+            } else {
+                for (int i = 0; i < weights.length; i++) {
+                    double delta = input[i] - weights[i];
+                    delta *= neighborRates[k];
+                    delta *= membership;
+
+                    weights[i] += delta;
+                }
+            }
+        }
+    }
+
+    /**
+     * Fork/join task locating a range of samples.
+     */
+    private class LocateTask extends RecursiveAction {
+        private static final long serialVersionUID = 0L;
+
+        private final int from;
+        private final int to;
+        private final int grain;
+
+        LocateTask(int from, int to, int grain) {
+            this.from = from;
+            this.to = to;
+            this.grain = grain;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= grain) {
+                locate(from, to);
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new LocateTask(from, middle, grain),
+                        new LocateTask(middle, to, grain));
+            }
+        }
+    }
+
+    /**
+     * Fork/join task applying the current group to a range of the blocks of
+     * {@link CustomizableSOM#updateBlock()} neurons that it touches.
+     */
+    private class ApplyTask extends RecursiveAction {
+        private static final long serialVersionUID = 0L;
+
+        private final int block;
+        private final int from;
+        private final int to;
+        private final int grain;
+
+        ApplyTask(int block, int from, int to, int grain) {
+            this.block = block;
+            this.from = from;
+            this.to = to;
+            this.grain = grain;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= grain) {
+                applyBlocks(block, from, to);
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new ApplyTask(block, from, middle, grain),
+                        new ApplyTask(block, middle, to, grain));
+            }
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package cs437.som.network;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes weight rows in the text format.  Each row is written exactly as
+ * {@code String.format("\t%s%n", Arrays.toString(row))} would write it, but
+ * the rows are appended to one buffer that is handed to the destination in
+ * large pieces.
+ */
+class WeightRowWriter {
+    private static final int FLUSH_SIZE = 1 << 16;
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    private final Writer destination;
+    private final StringBuilder buffer = new StringBuilder(FLUSH_SIZE * 2);
+
+    /**
+     * Create a writer for weight rows.
+     *
+     * @param destination Where to write the rows.
+     */
+    WeightRowWriter(Writer destination) {
+        this.destination = destination;
+    }
+
+    /**
+     * Write one row.
+     *
+     * @param row The weights of one neuron.
+     * @throws IOException if writing throws.
+     */
+    void write(double[] row) throws IOException {
+        buffer.append('\t').append('[');
+        for (int i = 0; i < row.length; i++) {
+            if (i > 0) {
+                buffer.append(", ");
+            }
+            buffer.append(row[i]);
+        }
+        buffer.append(']').append(LINE_SEPARATOR);
+
+        if (buffer.length() >= FLUSH_SIZE) {
+            flush();
+        }
+    }
+
+    /**
+     * Hand any buffered rows to the destination.
+     *
+     * @throws IOException if writing throws.
+     */
+    void flush() throws IOException {
+        destination.append(buffer);
+        buffer.setLength(0);
+    }
+}
@@ -9,6 +9,8 @@ import cs437.som.SOMError;
  * to the Moore neighborhood.
  */
 public class Moore implements GridType {
+    private static final long serialVersionUID = 1L;
+
     private int neuronCount = 0;
     private int width = 0;
 
@@ -23,6 +23,8 @@ import cs437.som.SOMError;
  * </pre>
  */
 public class OffsetHexagonalGrid implements GridType {
+    private static final long serialVersionUID = 1L;
+
     private int neuronCount = 0;
     private int width = 0;
 
@@ -22,6 +22,8 @@ import cs437.som.SOMError;
  * </pre>
  */
 public class ToroidalEuclideanSquare implements GridType {
+    private static final long serialVersionUID = 1L;
+
     private int neuronCount = 0;
     private int width = 0;
     private int height = 0;
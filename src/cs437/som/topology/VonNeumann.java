@@ -9,6 +9,8 @@ import cs437.som.SOMError;
  * to the Von Neumann neighborhood.
  */
 public class VonNeumann implements GridType {
+    private static final long serialVersionUID = 1L;
+
     private int neuronCount = 0;
     private int width = 0;
 
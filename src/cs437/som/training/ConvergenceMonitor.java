@@ -0,0 +1,406 @@
+package cs437.som.training;
+
+import cs437.som.SOMError;
+import cs437.som.TrainableSelfOrganizingMap;
+import cs437.som.TrainingDataSource;
+import cs437.som.TrainingListener;
+import cs437.som.network.CustomizableSOM;
+
+/**
+ * Watches a map as it trains and decides when further training is no longer
+ * worthwhile.
+ *
+ * Training samples are passed through the monitor rather than directly to
+ * the map.  Every {@code sampleInterval} iterations the monitor takes the
+ * distance from the current sample to its best matching neuron, before the
+ * map trains with it, and folds it into an exponentially smoothed
+ * quantization error.  At the same points it measures how far that step
+ * moved the best matching neuron, the one neuron every step moves, and
+ * smooths that displacement the same way.  A CustomizableSOM reports its own
+ * best match to the monitor as a training listener for the measured step, so
+ * measuring costs no extra search; other maps are searched once more per
+ * measurement.
+ *
+ * A measurement counts as a stall when the smoothed error has not improved
+ * on the best smoothed error so far by at least the threshold, measured as a
+ * fraction of the first error measured.  Relating improvements to the
+ * starting error rather than the current one keeps a map whose error shrinks
+ * geometrically towards 0 from training forever.  If a displacement
+ * threshold is set, a stall also requires the weights to move less than that
+ * threshold.  After {@code patience} consecutive stalls the map is considered
+ * converged and {@link #trainWith(double[])} returns {@code false}.
+ *
+ * Since the learning rate and neighborhood width schedules are tied to the
+ * expected iteration count, stopping early leaves them part way through.  A
+ * monitor can instead be told to finish the schedules of a CustomizableSOM
+ * over a few more iterations once convergence is detected, by calling
+ * {@link #setFinishingIterations(int)}.
+ *
+ * A simple example usage:
+ *
+ * <pre>
+ * {@code
+ * ConvergenceMonitor monitor = new ConvergenceMonitor(som);
+ * for (int i = 0; i < som.getExpectedIterations(); i++) {
+ *     if (!monitor.trainWith(nextSample())) {
+ *         break;
+ *     }
+ * }
+ * }
+ * </pre>
+ */
+public class ConvergenceMonitor {
+    /**
+     * The default number of iterations between measurements.
+     */
+    public static final int DEFAULT_SAMPLE_INTERVAL = 50;
+
+    /**
+     * The default weight given to each new error measurement.
+     */
+    public static final double DEFAULT_SMOOTHING = 0.05;
+
+    /**
+     * The default improvement, as a fraction of the first error measured,
+     * below which a measurement stalls.
+     */
+    public static final double DEFAULT_THRESHOLD = 0.01;
+
+    /**
+     * The default number of consecutive stalls that signal convergence.
+     */
+    public static final int DEFAULT_PATIENCE = 20;
+
+    private final TrainableSelfOrganizingMap map;
+    private final int sampleInterval;
+    private double smoothing = DEFAULT_SMOOTHING;
+    private double threshold = DEFAULT_THRESHOLD;
+    private double displacementThreshold = 0.0;
+    private int patience = DEFAULT_PATIENCE;
+    private int finishingIterations = 0;
+
+    private long iterations = 0;
+    private double smoothedError = Double.NaN;
+    private double initialError = Double.NaN;
+    private double bestError = Double.POSITIVE_INFINITY;
+    private double meanDisplacement = Double.NaN;
+    private int stalls = 0;
+    private long stopAt = -1;
+    private boolean converged = false;
+
+    // The measured step's best match and its weights before the step.
+    private final TrainingListener stepListener;
+    private int stepMatch = -1;
+    private double stepError = Double.NaN;
+    private final double[] stepWeights;
+
+    /**
+     * Create a monitor measuring every {@link #DEFAULT_SAMPLE_INTERVAL}
+     * iterations.
+     *
+     * @param map The map to train and watch.
+     */
+    public ConvergenceMonitor(TrainableSelfOrganizingMap map) {
+        this(map, DEFAULT_SAMPLE_INTERVAL);
+    }
+
+    /**
+     * Create a monitor.
+     *
+     * @param map The map to train and watch.
+     * @param sampleInterval The number of iterations between measurements.
+     */
+    public ConvergenceMonitor(TrainableSelfOrganizingMap map, int sampleInterval) {
+        if (sampleInterval < 1) {
+            throw new SOMError("Sample interval must be positive.");
+        }
+        this.map = map;
+        this.sampleInterval = sampleInterval;
+        stepWeights = new double[map.getInputLength()];
+
+        if (map instanceof CustomizableSOM) {
+            stepListener = new TrainingListener() {
+                public void trainingStep(int iteration, double[] input,
+                                         int bestMatch, double distance) {
+                    recordMatch(bestMatch, distance);
+                }
+            };
+        } else {
+            stepListener = null;
+        }
+    }
+
+    /**
+     * Set the weight given to each new error measurement in the smoothed
+     * error.
+     *
+     * @param smoothing A value in (0, 1].  Larger values follow the latest
+     * measurements more closely.
+     */
+    public void setSmoothing(double smoothing) {
+        if (smoothing <= 0.0 || smoothing > 1.0) {
+            throw new SOMError("Smoothing must be in (0, 1].");
+        }
+        this.smoothing = smoothing;
+    }
+
+    /**
+     * Set the improvement of the smoothed error below which a measurement is
+     * a stall.
+     *
+     * @param threshold The new threshold, as a fraction of the first error
+     * measured.
+     */
+    public void setThreshold(double threshold) {
+        this.threshold = threshold;
+    }
+
+    /**
+     * Set the smoothed distance a measured step moves its best matching
+     * neuron below which the weights are considered settled.  A measurement only stalls while the
+     * weights are settled.  The default of 0 ignores displacement.
+     *
+     * @param displacementThreshold The new displacement threshold.
+     */
+    public void setDisplacementThreshold(double displacementThreshold) {
+        this.displacementThreshold = displacementThreshold;
+    }
+
+    /**
+     * Set the number of consecutive stalls that signal convergence.
+     *
+     * @param patience The new stall count.
+     */
+    public void setPatience(int patience) {
+        this.patience = patience;
+    }
+
+    /**
+     * Finish the learning rate and neighborhood width schedules over a number
+     * of further iterations once convergence is detected, instead of
+     * stopping immediately.  Only a CustomizableSOM's schedules can be
+     * compressed; other maps stop immediately.
+     *
+     * @param finishingIterations The number of iterations to finish the
+     * schedules in, or 0 to stop immediately.
+     */
+    public void setFinishingIterations(int finishingIterations) {
+        this.finishingIterations = finishingIterations;
+    }
+
+    /**
+     * Train the map with a vector, unless it has already converged.
+     *
+     * @param data The vector to train with.
+     * @return {@code true} if training should continue, {@code false} once
+     * the map has converged.
+     */
+    public boolean trainWith(double[] data) {
+        if (converged) {
+            return false;
+        }
+
+        if (iterations % sampleInterval == 0) {
+            measuredTrainWith(data);
+        } else {
+            map.trainWith(data);
+        }
+        iterations++;
+
+        if (stopAt >= 0 && iterations >= stopAt) {
+            converged = true;
+        }
+        return !converged;
+    }
+
+    /**
+     * Train the map with a vector, unless it has already converged. Integer
+     * convenience method.
+     *
+     * @param data The vector to train with.
+     * @return {@code true} if training should continue, {@code false} once
+     * the map has converged.
+     */
+    public boolean trainWith(int[] data) {
+        double[] dbls = new double[data.length];
+        for (int i = 0; i < data.length; i++) {
+            dbls[i] = data[i];
+        }
+        return trainWith(dbls);
+    }
+
+    /**
+     * Train the map with the vectors of a data source until the source is
+     * exhausted or the map converges.  The source is not closed.
+     *
+     * @param source The vectors to train with.
+     * @return {@code true} if the map converged before the source was
+     * exhausted.
+     */
+    public boolean train(TrainingDataSource source) {
+        for (double[] data = source.next(); data != null; data = source.next()) {
+            if (!trainWith(data)) {
+                return true;
+            }
+        }
+        return converged;
+    }
+
+    /**
+     * Compress the remainder of the map's learning rate and neighborhood
+     * width schedules into a number of further iterations.
+     *
+     * @param remainingIterations The number of iterations in which to finish
+     * the schedules.
+     * @throws SOMError if the map's schedules cannot be compressed.
+     */
+    public void compressRemainingSchedule(int remainingIterations) {
+        if (!(map instanceof CustomizableSOM)) {
+            throw new SOMError("Only a CustomizableSOM's schedule can be compressed.");
+        }
+        ((CustomizableSOM) map).compressSchedule(remainingIterations);
+    }
+
+    /**
+     * Train the map with a vector, measuring the step's error and how far it
+     * moves the best matching neuron.
+     *
+     * @param data The vector to train with.
+     */
+    private void measuredTrainWith(double[] data) {
+        stepMatch = -1;
+        if (stepListener != null) {
+            CustomizableSOM som = (CustomizableSOM) map;
+            som.addTrainingListener(stepListener);
+            try {
+                som.trainWith(data);
+            } finally {
+                som.removeTrainingListener(stepListener);
+            }
+        } else {
+            int bestMatch = map.getBestMatchingNeuron(data);
+            recordMatch(bestMatch, map.distanceToInput(bestMatch, data));
+            map.trainWith(data);
+        }
+
+        if (stepMatch >= 0) {
+            double sum = 0.0;
+            for (int i = 0; i < stepWeights.length; i++) {
+                double difference = map.getWeight(stepMatch, i) - stepWeights[i];
+                sum += difference * difference;
+            }
+            measure(stepError, Math.sqrt(sum));
+        }
+    }
+
+    /**
+     * Note a measured step's best match, before its weights are adjusted.
+     *
+     * @param bestMatch The best matching neuron.
+     * @param distance The distance from the best match to the input.
+     */
+    private void recordMatch(int bestMatch, double distance) {
+        stepMatch = bestMatch;
+        stepError = distance;
+        for (int i = 0; i < stepWeights.length; i++) {
+            stepWeights[i] = map.getWeight(bestMatch, i);
+        }
+    }
+
+    /**
+     * Fold a measurement into the smoothed error and displacement and update
+     * the stall count.
+     *
+     * @param error The distance from the sample to its best match.
+     * @param displacement The distance the step moved the best match.
+     */
+    private void measure(double error, double displacement) {
+        if (Double.isNaN(smoothedError)) {
+            smoothedError = error;
+            initialError = error;
+            meanDisplacement = displacement;
+        } else {
+            smoothedError += smoothing * (error - smoothedError);
+            meanDisplacement += smoothing * (displacement - meanDisplacement);
+        }
+
+        if (stopAt >= 0) {
+            return;
+        }
+
+        boolean improved = bestError - smoothedError > threshold * initialError;
+        boolean settled = displacementThreshold <= 0.0
+                || meanDisplacement < displacementThreshold;
+        if (improved) {
+            bestError = smoothedError;
+        }
+
+        if (!improved && settled) {
+            stalls++;
+        } else {
+            stalls = 0;
+        }
+
+        if (stalls >= patience) {
+            onConverged();
+        }
+    }
+
+    /**
+     * Either stop training or finish the schedules early.
+     */
+    private void onConverged() {
+        if (finishingIterations > 0 && map instanceof CustomizableSOM) {
+            compressRemainingSchedule(finishingIterations);
+            stopAt = iterations + finishingIterations;
+        } else {
+            converged = true;
+        }
+    }
+
+    /**
+     * Determine whether the map has converged.
+     *
+     * @return {@code true} once training should stop.
+     */
+    public boolean isConverged() {
+        return converged;
+    }
+
+    /**
+     * Get the number of iterations the map has been trained through this
+     * monitor.
+     *
+     * @return The iteration count.
+     */
+    public long getIterations() {
+        return iterations;
+    }
+
+    /**
+     * Get the exponentially smoothed quantization error.
+     *
+     * @return The smoothed error, or NaN before the first measurement.
+     */
+    public double getSmoothedError() {
+        return smoothedError;
+    }
+
+    /**
+     * Get the exponentially smoothed distance the measured steps moved their
+     * best matching neurons.
+     *
+     * @return The smoothed displacement, or NaN before the first measurement.
+     */
+    public double getMeanDisplacement() {
+        return meanDisplacement;
+    }
+
+    @Override
+    public String toString() {
+        return "ConvergenceMonitor{iterations=" + iterations +
+                ", smoothedError=" + smoothedError +
+                ", meanDisplacement=" + meanDisplacement +
+                ", converged=" + converged + '}';
+    }
+}
@@ -0,0 +1,195 @@
+package cs437.som.training;
+
+import cs437.som.Dimension;
+import cs437.som.SOMError;
+import cs437.som.membership.LinearNeighborhoodMembershipFunction;
+import cs437.som.neighborhood.LinearDecayNeighborhoodWidthFunction;
+import cs437.som.network.CustomizableSOM;
+import cs437.som.network.GridUpsampler;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * Trains a large map by training successively larger maps.
+ *
+ * Training a large grid from random weights needs a neighborhood spanning
+ * much of the grid early on, so every training step touches most of the
+ * neurons.  The progressive trainer instead trains a small grid first, with
+ * the usual wide neighborhood, then upsamples its weights onto a grid twice
+ * the size with {@link GridUpsampler} and continues training with a small
+ * neighborhood.  The already organized weights only need refining, so the
+ * large grids are trained with narrow neighborhoods and few iterations.  The
+ * doubling is repeated until the target size is reached.
+ *
+ * The maps for each stage are created by a {@link StageFactory}, which
+ * decides every strategy but the neighborhood width.
+ */
+public class ProgressiveTrainer {
+    private static final Logger logger = Logger.getLogger("ProgressiveTrainer");
+
+    /**
+     * The default smallest side of the first stage's grid.
+     */
+    public static final int DEFAULT_INITIAL_SIDE = 16;
+
+    /**
+     * The default initial neighborhood width of the refining stages.
+     */
+    public static final double DEFAULT_REFINEMENT_WIDTH = 3.0;
+
+    /**
+     * Creates the map for one stage of progressive training.
+     */
+    public interface StageFactory {
+        /**
+         * Create a configured, untrained map.  The trainer replaces its
+         * neighborhood width strategy and its weights.
+         *
+         * @param gridSize The stage's grid dimensions.
+         * @param inputSize The input vector size.
+         * @param expectedIterations The stage's training iterations.
+         * @return A map for the stage.
+         */
+        CustomizableSOM createStage(Dimension gridSize, int inputSize,
+                                    int expectedIterations);
+    }
+
+    private final Dimension targetSize;
+    private final int inputSize;
+    private final StageFactory factory;
+    private int initialSide = DEFAULT_INITIAL_SIDE;
+    private double refinementWidth = DEFAULT_REFINEMENT_WIDTH;
+    private int initialIterations;
+    private int refinementIterations;
+
+    /**
+     * Create a progressive trainer.
+     *
+     * @param targetSize The grid dimensions of the final map.
+     * @param inputSize The input vector size.
+     * @param initialIterations The training iterations of the first, smallest
+     * stage.
+     * @param refinementIterations The training iterations of each later stage.
+     * @param factory Creates the map for each stage.
+     */
+    public ProgressiveTrainer(Dimension targetSize, int inputSize,
+                              int initialIterations, int refinementIterations,
+                              StageFactory factory) {
+        this.targetSize = targetSize;
+        this.inputSize = inputSize;
+        this.initialIterations = initialIterations;
+        this.refinementIterations = refinementIterations;
+        this.factory = factory;
+    }
+
+    /**
+     * Create a progressive trainer whose stages use the default strategies of
+     * CustomizableSOM with linear neighborhood membership.
+     *
+     * @param targetSize The grid dimensions of the final map.
+     * @param inputSize The input vector size.
+     * @param initialIterations The training iterations of the first, smallest
+     * stage.
+     * @param refinementIterations The training iterations of each later stage.
+     */
+    public ProgressiveTrainer(Dimension targetSize, int inputSize,
+                              int initialIterations, int refinementIterations) {
+        this(targetSize, inputSize, initialIterations, refinementIterations,
+                new StageFactory() {
+                    public CustomizableSOM createStage(Dimension gridSize,
+                                                       int inputSize,
+                                                       int expectedIterations) {
+                        CustomizableSOM som = new CustomizableSOM(gridSize,
+                                inputSize, expectedIterations);
+                        som.setNeighborhoodMembershipFunctionStrategy(
+                                new LinearNeighborhoodMembershipFunction());
+                        return som;
+                    }
+                });
+    }
+
+    /**
+     * Set the smallest side of the first stage's grid.  Grids are halved from
+     * the target size until a side would fall below this.
+     *
+     * @param initialSide The smallest side of the first grid.
+     */
+    public void setInitialSide(int initialSide) {
+        if (initialSide < 2) {
+            throw new SOMError("The first stage needs at least 2 neurons per side.");
+        }
+        this.initialSide = initialSide;
+    }
+
+    /**
+     * Set the initial neighborhood width of the refining stages.
+     *
+     * @param refinementWidth The width each refining stage decays from.
+     */
+    public void setRefinementWidth(double refinementWidth) {
+        this.refinementWidth = refinementWidth;
+    }
+
+    /**
+     * Compute the grid dimensions of every stage, smallest first.
+     *
+     * @return The stages' grid dimensions, ending with the target size.
+     */
+    public List<Dimension> stageSizes() {
+        List<Dimension> sizes = new ArrayList<Dimension>();
+        int x = targetSize.x;
+        int y = targetSize.y;
+        sizes.add(targetSize);
+        while (Math.min(x, y) / 2 >= initialSide) {
+            x = (x + 1) / 2;
+            y = (y + 1) / 2;
+            sizes.add(new Dimension(x, y));
+        }
+        Collections.reverse(sizes);
+        return sizes;
+    }
+
+    /**
+     * Train a map of the target size.
+     *
+     * @param samples The training vectors.  One is drawn per iteration, so
+     * the iterator must supply at least as many as all stages' iterations.
+     * @return The trained map.
+     * @throws SOMError if the samples run out.
+     */
+    public CustomizableSOM train(Iterator<double[]> samples) {
+        CustomizableSOM previous = null;
+        for (Dimension size : stageSizes()) {
+            boolean first = previous == null;
+            int iterations = first ? initialIterations : refinementIterations;
+            double width = first ? Math.min(size.x, size.y) / 2.0 : refinementWidth;
+
+            CustomizableSOM stage = factory.createStage(size, inputSize, iterations);
+            stage.setNeighborhoodWidthFunctionStrategy(
+                    new LinearDecayNeighborhoodWidthFunction(width));
+            if (!first) {
+                GridUpsampler.upsample(previous, stage);
+            }
+
+            logger.fine("Training " + size + " for " + iterations + " iterations.");
+            for (int i = 0; i < iterations; i++) {
+                if (!samples.hasNext()) {
+                    throw new SOMError("Ran out of samples during progressive training.");
+                }
+                stage.trainWith(samples.next());
+            }
+            previous = stage;
+        }
+        return previous;
+    }
+
+    @Override
+    public String toString() {
+        return "ProgressiveTrainer{targetSize=" + targetSize +
+                ", stages=" + stageSizes() + '}';
+    }
+}
@@ -0,0 +1,5 @@
+/**
+ * The {@code training} package contains tools for driving and supervising the
+ * training of self-organizing maps.
+ */
+package cs437.som.training;
@@ -100,7 +100,7 @@ public class CustomSOMFileReader extends SOMFileReader {
     private boolean matchMemgership(String line) {
         Matcher membershipMatch = membershipRegEx.matcher(line);
         if (membershipMatch.matches()) {
-            if (membershipMatch.groupCount() == 2) {
+            if (!membershipMatch.group(2).trim().isEmpty()) {
                 membership = (NeighborhoodMembershipFunction)
                         Reflector.instantiateFromDoubleString("cs437.som.membership",
                                 membershipMatch.group(1), membershipMatch.group(2));
@@ -0,0 +1,227 @@
+package cs437.som.util;
+
+import java.math.BigInteger;
+
+/**
+ * Converts decimal numbers in character arrays to doubles without creating
+ * strings, giving exactly the result of {@link Double#parseDouble(String)}.
+ *
+ * Two exact methods are tried before falling back to
+ * {@code Double.parseDouble}.  Clinger's fast path applies when the decimal
+ * significand and the power of ten are both exactly representable as doubles,
+ * so that a single correctly rounded multiplication or division gives the
+ * answer.  Otherwise the Eisel-Lemire algorithm multiplies the significand
+ * by a 128-bit approximation of the power of ten and rounds the product,
+ * which succeeds for every significand of up to 19 digits except a few
+ * ambiguous cases near rounding boundaries.  Numbers with more digits, and
+ * subnormal, infinite or ambiguous results, are left to
+ * {@code Double.parseDouble}.
+ */
+public final class FastDoubleParser {
+    private static final int SMALLEST_POWER_OF_TEN = -342;
+    private static final int LARGEST_POWER_OF_TEN = 308;
+    private static final int MAX_DIGITS = 19;
+
+    // Powers of ten that are exactly representable as doubles.
+    private static final double[] EXACT_POWERS_OF_TEN = new double[23];
+    private static final long MAX_EXACT_SIGNIFICAND = 1L << 53;
+
+    // The 128-bit truncated significands of the powers of five from
+    // 5^SMALLEST_POWER_OF_TEN to 5^LARGEST_POWER_OF_TEN, high word first.
+    private static final long[] POWERS_OF_FIVE =
+            new long[2 * (LARGEST_POWER_OF_TEN - SMALLEST_POWER_OF_TEN + 1)];
+
+    static {
+        EXACT_POWERS_OF_TEN[0] = 1.0;
+        for (int i = 1; i < EXACT_POWERS_OF_TEN.length; i++) {
+            EXACT_POWERS_OF_TEN[i] = EXACT_POWERS_OF_TEN[i - 1] * 10.0;
+        }
+
+        BigInteger five = BigInteger.valueOf(5);
+        for (int q = SMALLEST_POWER_OF_TEN; q <= LARGEST_POWER_OF_TEN; q++) {
+            BigInteger value;
+            if (q < 0) {
+                BigInteger power = five.pow(-q);
+                int z = power.subtract(BigInteger.ONE).bitLength();
+                int b = q >= -27 ? z + 127 : 2 * z + 128;
+                value = BigInteger.ONE.shiftLeft(b).divide(power).add(BigInteger.ONE);
+            } else {
+                value = five.pow(q);
+            }
+            // Move the leading bit to bit 127, truncating any bits below.
+            value = value.bitLength() > 128 ? value.shiftRight(value.bitLength() - 128)
+                    : value.shiftLeft(128 - value.bitLength());
+
+            int index = 2 * (q - SMALLEST_POWER_OF_TEN);
+            POWERS_OF_FIVE[index] = value.shiftRight(64).longValue();
+            POWERS_OF_FIVE[index + 1] = value.longValue();
+        }
+    }
+
+    private FastDoubleParser() {
+    }
+
+    /**
+     * Convert a decimal number.  The characters must form a number of the
+     * form {@code [+-]?[0-9]*\.?[0-9]+([Ee][+-]?[0-9]+)?}.
+     *
+     * @param text The characters holding the number.
+     * @param start The number's first character.
+     * @param end The position after the number's last character.
+     * @return The double nearest to the number.
+     */
+    public static double parse(char[] text, int start, int end) {
+        int i = start;
+        boolean negative = false;
+        if (text[i] == '+' || text[i] == '-') {
+            negative = text[i] == '-';
+            i++;
+        }
+
+        long significand = 0;
+        int digits = 0;
+        int scale = 0;
+        boolean inFraction = false;
+        for (; i < end; i++) {
+            char c = text[i];
+            if (c == '.') {
+                inFraction = true;
+            } else if (c >= '0' && c <= '9') {
+                if (digits > 0 || c != '0') {
+                    digits++;
+                }
+                if (digits > MAX_DIGITS) {
+                    return slowParse(text, start, end);
+                }
+                significand = significand * 10 + (c - '0');
+                if (inFraction) {
+                    scale--;
+                }
+            } else {
+                break;
+            }
+        }
+
+        if (i < end) {
+            // An exponent follows.
+            i++;
+            boolean negativeExponent = false;
+            if (text[i] == '+' || text[i] == '-') {
+                negativeExponent = text[i] == '-';
+                i++;
+            }
+            int exponent = 0;
+            for (; i < end; i++) {
+                if (exponent > 100000) {
+                    return slowParse(text, start, end);
+                }
+                exponent = exponent * 10 + (text[i] - '0');
+            }
+            scale += negativeExponent ? -exponent : exponent;
+        }
+
+        if (significand == 0) {
+            return negative ? -0.0 : 0.0;
+        }
+
+        double value;
+        // A 19-digit significand may exceed Long.MAX_VALUE, in which case it
+        // is negative here and is treated as unsigned by eiselLemire.
+        if (significand > 0 && significand <= MAX_EXACT_SIGNIFICAND
+                && scale >= -(EXACT_POWERS_OF_TEN.length - 1)
+                && scale <= EXACT_POWERS_OF_TEN.length - 1) {
+            value = significand;
+            if (scale < 0) {
+                value /= EXACT_POWERS_OF_TEN[-scale];
+            } else {
+                value *= EXACT_POWERS_OF_TEN[scale];
+            }
+        } else {
+            long bits = eiselLemire(significand, scale);
+            if (bits < 0) {
+                return slowParse(text, start, end);
+            }
+            value = Double.longBitsToDouble(bits);
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Compute the bits of the double nearest to {@code w * 10^q}.
+     *
+     * @param w A nonzero significand of at most 19 digits.
+     * @param q The power of ten.
+     * @return The bits of the positive result, or -1 if the result could not
+     * be determined exactly.
+     */
+    private static long eiselLemire(long w, int q) {
+        if (q < SMALLEST_POWER_OF_TEN || q > LARGEST_POWER_OF_TEN) {
+            return -1;
+        }
+
+        int leadingZeros = Long.numberOfLeadingZeros(w);
+        w <<= leadingZeros;
+
+        int index = 2 * (q - SMALLEST_POWER_OF_TEN);
+        long high = multiplyHigh(w, POWERS_OF_FIVE[index]);
+        long low = w * POWERS_OF_FIVE[index];
+        if ((high & 0x1FF) == 0x1FF) {
+            // The truncated power may be too coarse; bring in its low word.
+            long secondHigh = multiplyHigh(w, POWERS_OF_FIVE[index + 1]);
+            low += secondHigh;
+            if (unsignedLess(low, secondHigh)) {
+                high++;
+            }
+            if (low == -1L && (q < -27 || q > 55)) {
+                return -1;
+            }
+        }
+
+        int upperBit = (int) (high >>> 63);
+        int shift = upperBit + 9;
+        long mantissa = high >>> shift;
+        int power2 = (((152170 + 65536) * q) >> 16) + 63 + upperBit - leadingZeros + 1023;
+        if (power2 <= 0) {
+            // Subnormal.
+            return -1;
+        }
+
+        // Halfway between two doubles: round to even rather than up.
+        if ((low == 0 || low == 1) && q >= -4 && q <= 23 && (mantissa & 3) == 1
+                && (mantissa << shift) == high) {
+            mantissa &= ~1L;
+        }
+
+        mantissa += mantissa & 1;
+        mantissa >>>= 1;
+        if (mantissa >= (2L << 52)) {
+            mantissa = 1L << 52;
+            power2++;
+        }
+        mantissa &= ~(1L << 52);
+        if (power2 >= 0x7FF) {
+            return -1;
+        }
+        return mantissa | ((long) power2 << 52);
+    }
+
+    /**
+     * The high 64 bits of the unsigned 128-bit product of two longs.
+     */
+    private static long multiplyHigh(long x, long y) {
+        long x0 = x & 0xFFFFFFFFL;
+        long x1 = x >>> 32;
+        long y0 = y & 0xFFFFFFFFL;
+        long y1 = y >>> 32;
+        long middle = x1 * y0 + ((x0 * y0) >>> 32) + ((x0 * y1) & 0xFFFFFFFFL);
+        return x1 * y1 + (middle >>> 32) + ((x0 * y1) >>> 32);
+    }
+
+    private static boolean unsignedLess(long a, long b) {
+        return (a + Long.MIN_VALUE) < (b + Long.MIN_VALUE);
+    }
+
+    private static double slowParse(char[] text, int start, int end) {
+        return Double.parseDouble(new String(text, start, end - start));
+    }
+}
@@ -1,7 +1,10 @@
 package cs437.som.util;
 
 import cs437.som.SOMError;
+import cs437.som.SOMExecutionContext;
 import cs437.som.TrainableSelfOrganizingMap;
+import cs437.som.network.BinaryMapFile;
+import cs437.som.network.NetworkBase;
 
 import java.io.*;
 import java.lang.reflect.InvocationTargetException;
@@ -9,26 +12,28 @@ import java.lang.reflect.Method;
 import java.util.regex.Pattern;
 
 /**
- * Reads a self-organizing map from a file.
+ * Reads a self-organizing map from a file.  Both the text format written by
+ * {@link cs437.som.SelfOrganizingMap#write(java.io.OutputStreamWriter)} and
+ * the binary format written by {@link BinaryMapFile} are recognized.
  */
 public class FileReader {
     private static final Pattern COLON_SPLIT = Pattern.compile(":");
     private TrainableSelfOrganizingMap tsom = null;
 
     /**
-     * Begin reading a SOM from a file.
+     * Begin reading a SOM from a stream.
      *
      * This method reads the first line, which must be a map type specifier.
      * That type specifier is used to create an object of that map type
      * through reflection.  The remainder of the input processing is then
      * delegated to that SOM.
      *
-     * @param input The input file.
+     * @param isr The input stream.
+     * @param context The execution context to parse with and give the SOM.
      * @throws IOException if an I/O error occurs.
      */
-    private FileReader(File input) throws IOException {
-        BufferedReader isr = new BufferedReader(
-                new InputStreamReader(new FileInputStream(input)));
+    private FileReader(BufferedReader isr, SOMExecutionContext context)
+            throws IOException {
         String[] kv = COLON_SPLIT.split(isr.readLine());
         if (kv.length != 2) {
             throw new SOMError(
@@ -38,8 +43,10 @@ public class FileReader {
         String className = "cs437.som.network." + kv[1].trim();
         try {
             Class<?> mapType = Class.forName(className);
-            Method readMethod = mapType.getMethod("read", BufferedReader.class);
-            tsom = (TrainableSelfOrganizingMap) readMethod.invoke(mapType, isr);
+            Method readMethod = mapType.getMethod("read", BufferedReader.class,
+                    SOMExecutionContext.class);
+            tsom = (TrainableSelfOrganizingMap) readMethod.invoke(mapType, isr,
+                    context);
         } catch (ClassNotFoundException e) {
             throw new SOMError("Map type " + className + " cannot be found.");
         } catch (NoSuchMethodException e) {
@@ -60,7 +67,61 @@ public class FileReader {
      */
     public static TrainableSelfOrganizingMap read(File file)
             throws IOException {
-        FileReader fileReader = new FileReader(file);
+        return read(file, SOMExecutionContext.getDefault());
+    }
+
+    /**
+     * Read a SOM from a {@code File}, parsing it on the threads of an
+     * execution context, which the SOM then uses.
+     *
+     * @param file The input file.
+     * @param context The execution context to use.
+     * @return A SOM configured as specified in {@code file}.
+     * @throws IOException if an I/O error occurs.
+     */
+    public static TrainableSelfOrganizingMap read(File file,
+                                                  SOMExecutionContext context)
+            throws IOException {
+        if (BinaryMapFile.isBinaryMapFile(file)) {
+            NetworkBase map = BinaryMapFile.read(file);
+            map.setExecutionContext(context);
+            return map;
+        }
+
+        BufferedReader isr = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file)));
+        try {
+            return read(isr, context);
+        } finally {
+            isr.close();
+        }
+    }
+
+    /**
+     * Read a SOM in the text format from a stream.
+     *
+     * @param input The input stream, positioned at the map type line.
+     * @return A SOM configured as specified in {@code input}.
+     * @throws IOException if an I/O error occurs.
+     */
+    public static TrainableSelfOrganizingMap read(BufferedReader input)
+            throws IOException {
+        return read(input, SOMExecutionContext.getDefault());
+    }
+
+    /**
+     * Read a SOM in the text format from a stream, parsing it on the threads
+     * of an execution context, which the SOM then uses.
+     *
+     * @param input The input stream, positioned at the map type line.
+     * @param context The execution context to use.
+     * @return A SOM configured as specified in {@code input}.
+     * @throws IOException if an I/O error occurs.
+     */
+    public static TrainableSelfOrganizingMap read(BufferedReader input,
+                                                  SOMExecutionContext context)
+            throws IOException {
+        FileReader fileReader = new FileReader(input, context);
         return fileReader.tsom;
     }
 
@@ -23,6 +23,7 @@ public class SOMBuilder extends JDialog implements PropertyChangeListener {
 
     private final int inputSize;
     private final int expectedIterations;
+    private final Iterable<double[]> sample;
 
     /**
      * Create a new SOMBuilder that will, if successful, return a trainable
@@ -34,19 +35,37 @@ public class SOMBuilder extends JDialog implements PropertyChangeListener {
      * for the generated map.
      */
     public SOMBuilder(int inputSize, int expectedIterations) {
+        this(inputSize, expectedIterations, null);
+    }
+
+    /**
+     * Create a new SOMBuilder whose maps may also be initialized from a
+     * sample of their training data.
+     *
+     * @param inputSize The input vector length for the generated map.
+     * @param expectedIterations  The expected amount of training iterations
+     * for the generated map.
+     * @param sample Training vectors representative of the data set, or
+     * {@code null} to offer random initialization only.
+     */
+    public SOMBuilder(int inputSize, int expectedIterations,
+                      Iterable<double[]> sample) {
         this.inputSize = inputSize;
         this.expectedIterations = expectedIterations;
+        this.sample = sample;
 
         setContentPane(contentPane);
         setModal(true);
         getRootPane().setDefaultButton(buttonOK);
 
         mapConfigPanel.addPropertyChangeListener(this);
+        mapConfigPanel.setSampleAvailable(sample != null);
 
         buttonOK.addActionListener(new ActionListener() {
             public void actionPerformed(ActionEvent e) {
                 map = mapConfigPanel.createSOM(SOMBuilder.this.inputSize,
-                        SOMBuilder.this.expectedIterations);
+                        SOMBuilder.this.expectedIterations,
+                        SOMBuilder.this.sample);
                 dispose();
             }
         });
@@ -5,6 +5,8 @@ import cs437.som.Dimension;
 import cs437.som.distancemetrics.ChebyshevDistanceMetric;
 import cs437.som.distancemetrics.EuclideanDistanceMetric;
 import cs437.som.distancemetrics.ManhattanDistanceMetric;
+import cs437.som.initialization.LinearWeightInitializer;
+import cs437.som.initialization.RandomWeightInitializer;
 import cs437.som.learningrate.ConstantLearningRateFunction;
 import cs437.som.learningrate.ExponentialDecayLearningRateFunction;
 import cs437.som.learningrate.HyperbolicLearningRateFunction;
@@ -30,6 +32,9 @@ import java.util.regex.Pattern;
  * in a Swing application.
  */
 public class SOMBuilderConfigPanel {
+    private static final String LINEAR_INITIALIZER =
+            "Linear (Principal Component) Weight Initializer";
+
     private JComboBox<String> learningRateCmb;
     private JComboBox<String> distanceCmb;
     private JComboBox<String> neighborhoodCmb;
@@ -38,6 +43,7 @@ public class SOMBuilderConfigPanel {
     private JComboBox<String> topologyCmb;
     private JPanel SOMBuilderConfigPanel;
     private JComboBox<String> membershipCmb;
+    private JComboBox<String> initializationCmb;
 
     private final Pattern positiveInteger = Pattern.compile("[1-9]\\d*");
     private boolean valid = false;
@@ -74,7 +80,10 @@ public class SOMBuilderConfigPanel {
         distanceCmb.addItem("Euclidean Distance Metric");
         distanceCmb.addItem("Chebyshev Distance Metric");
         distanceCmb.addItem("Manhattan Distance Metric");
-        
+
+        initializationCmb.addItem("Random Weight Initializer");
+
+
         CaretListener caretListener = new CaretListener() {
             public void caretUpdate(CaretEvent e) { validate(); }
         };
@@ -105,6 +114,24 @@ public class SOMBuilderConfigPanel {
         propertyChangeSupport.firePropertyChange("valid", oldvalid, valid);
     }
 
+    /**
+     * Offer or withdraw linear initialization, which needs a training sample
+     * for the maps this form creates.  It is not offered until a caller
+     * states that it will supply a sample.
+     *
+     * @param available True if {@link #createSOM(int, int, Iterable)} will be
+     * given a sample.
+     */
+    public void setSampleAvailable(boolean available) {
+        if (available) {
+            if (initializationCmb.getItemCount() == 1) {
+                initializationCmb.addItem(LINEAR_INITIALIZER);
+            }
+        } else {
+            initializationCmb.removeItem(LINEAR_INITIALIZER);
+        }
+    }
+
     /**
      * Create a CustomizableSOM based on the data in this form.
      *
@@ -115,6 +142,24 @@ public class SOMBuilderConfigPanel {
      * form's input.
      */
     public TrainableSelfOrganizingMap createSOM(int inputSize, int expectedIterations) {
+        return createSOM(inputSize, expectedIterations, null);
+    }
+
+    /**
+     * Create a CustomizableSOM based on the data in this form, initialized
+     * from a training sample.
+     *
+     * @param inputSize The input size of the SOM.
+     * @param expectedIterations The expected iterations the SOM will undergo
+     * in training.
+     * @param sample Training vectors for the weight initializer to analyze,
+     * or {@code null} if there are none.
+     * @return A CustomizableSOM based on inputSize, expectedIterations and the
+     * form's input.
+     * @throws SOMError if linear initialization is selected without a sample.
+     */
+    public TrainableSelfOrganizingMap createSOM(int inputSize, int expectedIterations,
+                                                Iterable<double[]> sample) {
         CustomizableSOM som = new CustomizableSOM(dimension(), inputSize, expectedIterations);
 
         gridType(som);
@@ -122,6 +167,7 @@ public class SOMBuilderConfigPanel {
         neighborhoodType(som);
         membershipType(som);
         distanceType(som);
+        initializationType(som, sample);
 
         return som;
     }
@@ -263,6 +309,26 @@ public class SOMBuilderConfigPanel {
         map.setDistanceMetricStrategy(dm);
     }
 
+    /**
+     * Translate the initialization selection in the form to a
+     * WeightInitializer object and initialize a map's weights with it.
+     *
+     * @param map The map whose weights will be initialized.
+     * @param sample Training vectors for the initializer, or {@code null}.
+     */
+    private void initializationType(CustomizableSOM map, Iterable<double[]> sample) {
+        WeightInitializer wi;
+        if (initializationCmb.getSelectedIndex() == 1) {
+            if (sample == null) {
+                throw new SOMError("Linear initialization needs a training sample.");
+            }
+            wi = new LinearWeightInitializer(sample);
+        } else {
+            wi = new RandomWeightInitializer();
+        }
+        map.setWeightInitializerStrategy(wi);
+    }
+
     /**
      * Validate the form's inputs.
      */
@@ -2,6 +2,7 @@ package cs437.som.util;
 
 import cs437.som.Dimension;
 import cs437.som.SOMError;
+import cs437.som.SOMExecutionContext;
 
 import java.io.BufferedReader;
 import java.io.IOException;
@@ -28,6 +29,17 @@ public class SOMFileReader {
 
     private double[][] weights = null;
     protected BufferedReader inputReader = null;
+    private SOMExecutionContext executionContext = SOMExecutionContext.getDefault();
+
+    /**
+     * Set the threads on which large weight matrices are parsed.  Readers
+     * use the default context until given another.
+     *
+     * @param context The execution context to use.
+     */
+    public void setExecutionContext(SOMExecutionContext context) {
+        executionContext = context;
+    }
 
     /**
      * Parse a self-organizing map from an input stream.
@@ -124,26 +136,8 @@ public class SOMFileReader {
      * @throws java.io.IOException if something fails while reading the stream.
      */
     protected void readWeightMatrix(BufferedReader input) throws IOException {
-        Pattern endTagRegEx = Pattern.compile("end\\s*(?:weights)",
-                Pattern.CASE_INSENSITIVE);
-        Pattern weightVectorRegEx = Pattern.compile(
-                "([+-]?[0-9]*\\.?[0-9]+(?:[Ee][+-]?[0-9]+)?)(?:,?\\s*)?");
-
-        weights = new double[dimension.area][inputVectorSize];
-
-        String line = input.readLine();
-        int readLines = 0;
-        while (readLines < dimension.area && input.ready() &&
-                !endTagRegEx.matcher(line).matches()) {
-            Matcher weightMatch = weightVectorRegEx.matcher(line);
-            for (int i = 0; i < inputVectorSize; i++) {
-                weightMatch.find();
-                weights[readLines][i] =
-                        Double.parseDouble(weightMatch.group(1));
-            }
-            line = input.readLine();
-            readLines++;
-        }
+        weights = new WeightMatrixParser(dimension.area, inputVectorSize,
+                executionContext).parse(input);
     }
 
     /**
@@ -0,0 +1,362 @@
+package cs437.som.util;
+
+import cs437.som.SOMError;
+import cs437.som.SOMExecutionContext;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
+
+/**
+ * Parses the weight section of a map in the text format.
+ *
+ * The input is read in large blocks rather than line by line.  The rows of
+ * each block are located in a single pass and then parsed on a pool of worker
+ * threads while the next block is read.  Numbers are tokenized by hand and
+ * converted by {@link FastDoubleParser} without creating strings.
+ *
+ * Numbers are recognized exactly as the earlier regular expression
+ * recognized them, so any separators around them are skipped: every row
+ * yields its first {@code columns} numbers.  Parsing stops after the expected
+ * number of rows, at an {@code end weights} line or at the end of the input.
+ * Every other line is a row, so a blank line among the rows is rejected.
+ */
+class WeightMatrixParser {
+    private static final int BLOCK_SIZE = 1 << 20;
+    private static final int PARALLEL_ROWS = 4096;
+    private static final Pattern endTagRegEx = Pattern.compile("end\\s*(?:weights)",
+            Pattern.CASE_INSENSITIVE);
+
+    private final int rows;
+    private final int columns;
+    private final SOMExecutionContext executionContext;
+    private final int parallelism;
+
+    /**
+     * Create a parser for a weight matrix.
+     *
+     * @param rows The number of neurons.
+     * @param columns The input vector length.
+     * @param context The execution context whose workers parse large
+     * matrices.
+     */
+    WeightMatrixParser(int rows, int columns, SOMExecutionContext context) {
+        this.rows = rows;
+        this.columns = columns;
+        executionContext = context;
+        parallelism = context.getParallelism();
+    }
+
+    /**
+     * Read the weight rows from a stream positioned after the
+     * {@code Weights:} line.
+     *
+     * @param input The stream to read from.
+     * @return The weight matrix.  Rows missing from the input are left 0.
+     * @throws IOException if reading fails.
+     */
+    double[][] parse(BufferedReader input) throws IOException {
+        double[][] weights = new double[rows][columns];
+        ExecutorService pool = null;
+        if ((long) rows * columns >= PARALLEL_ROWS && parallelism > 1) {
+            pool = executionContext.getExecutor();
+        }
+
+        Block current = new Block(BLOCK_SIZE);
+        Block next = new Block(BLOCK_SIZE);
+        current.fill(input, 0);
+        int row = 0;
+        boolean done = false;
+        while (!done) {
+            row = current.findRows(row);
+            done = current.finished || row == rows;
+
+            List<Future<Void>> slices = submit(pool, current, weights);
+            if (!done) {
+                next.carry(current);
+                next.fill(input, current.pending());
+            }
+            await(slices);
+
+            Block swap = current;
+            current = next;
+            next = swap;
+        }
+        return weights;
+    }
+
+    /**
+     * Start parsing the rows found in a block.
+     *
+     * @param pool The worker pool, or {@code null} to parse on this thread.
+     * @param block The block.
+     * @param weights The matrix to parse into.
+     * @return The running slices; empty if the block was parsed already.
+     */
+    private List<Future<Void>> submit(ExecutorService pool, final Block block,
+                                      final double[][] weights) {
+        List<Future<Void>> slices = new ArrayList<Future<Void>>(parallelism);
+        if (pool == null || block.rowCount < parallelism) {
+            parseRows(block, weights, 0, block.rowCount);
+            return slices;
+        }
+
+        for (int i = 0; i < parallelism; i++) {
+            final int from = (int) ((long) block.rowCount * i / parallelism);
+            final int to = (int) ((long) block.rowCount * (i + 1) / parallelism);
+            slices.add(pool.submit(new Callable<Void>() {
+                public Void call() {
+                    parseRows(block, weights, from, to);
+                    return null;
+                }
+            }));
+        }
+        return slices;
+    }
+
+    private void parseRows(Block block, double[][] weights, int from, int to) {
+        for (int i = from; i < to; i++) {
+            parseRow(block.text, block.rowStarts[i], block.rowEnds[i],
+                    weights[block.firstRow + i]);
+        }
+    }
+
+    /**
+     * Wait for all slices of a block to finish.
+     *
+     * @param slices The running slices.
+     */
+    private static void await(List<Future<Void>> slices) {
+        try {
+            for (Future<Void> slice : slices) {
+                slice.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SOMError("Interrupted while reading weights.");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new SOMError("Failed reading weights: " + cause);
+        }
+    }
+
+    /**
+     * Parse the numbers of one row.
+     *
+     * @param text The characters holding the row.
+     * @param start The row's first character.
+     * @param end The position after the row's last character.
+     * @param out Receives the row's weights.
+     */
+    private void parseRow(char[] text, int start, int end, double[] out) {
+        int position = start;
+        for (int column = 0; column < columns; column++) {
+            int numberEnd = scanNumber(text, position, end);
+            while (numberEnd == position && position < end) {
+                position++;
+                numberEnd = scanNumber(text, position, end);
+            }
+            if (numberEnd == position) {
+                throw new SOMError("Weight row has fewer than " + columns
+                        + " values: " + new String(text, start, end - start));
+            }
+            out[column] = FastDoubleParser.parse(text, position, numberEnd);
+            position = numberEnd;
+        }
+    }
+
+    /**
+     * Find the end of a number starting at a position.  Numbers have the
+     * form {@code [+-]?[0-9]*\.?[0-9]+([Ee][+-]?[0-9]+)?}, and as with a
+     * regular expression the longest match is taken.
+     *
+     * @return The position after the number, or {@code start} if no number
+     * starts there.
+     */
+    private static int scanNumber(char[] text, int start, int end) {
+        int i = start;
+        if (i < end && (text[i] == '+' || text[i] == '-')) {
+            i++;
+        }
+
+        int integerStart = i;
+        while (i < end && isDigit(text[i])) {
+            i++;
+        }
+        int integerDigits = i - integerStart;
+
+        int fractionDigits = 0;
+        if (i < end && text[i] == '.') {
+            int fractionStart = i + 1;
+            int j = fractionStart;
+            while (j < end && isDigit(text[j])) {
+                j++;
+            }
+            fractionDigits = j - fractionStart;
+            if (fractionDigits > 0) {
+                i = j;
+            }
+        }
+
+        if (integerDigits == 0 && fractionDigits == 0) {
+            return start;
+        }
+
+        if (i < end && (text[i] == 'e' || text[i] == 'E')) {
+            int j = i + 1;
+            if (j < end && (text[j] == '+' || text[j] == '-')) {
+                j++;
+            }
+            int exponentStart = j;
+            while (j < end && isDigit(text[j])) {
+                j++;
+            }
+            if (j > exponentStart) {
+                i = j;
+            }
+        }
+        return i;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /**
+     * A block of input and the rows located in it.
+     */
+    private class Block {
+        private char[] text;
+        private int length = 0;
+        private int consumed = 0;
+        private boolean finished = false;
+        private boolean exhausted = false;
+
+        private int firstRow = 0;
+        private int rowCount = 0;
+        private int[] rowStarts = new int[1024];
+        private int[] rowEnds = new int[1024];
+
+        Block(int size) {
+            text = new char[size];
+        }
+
+        /**
+         * Move the unconsumed tail of another block to the front of this one.
+         *
+         * @param previous The block that was just scanned.
+         */
+        void carry(Block previous) {
+            int tail = previous.length - previous.consumed;
+            if (tail >= text.length) {
+                // A single line longer than a block.
+                text = new char[Math.max(text.length * 2, tail + BLOCK_SIZE)];
+            }
+            System.arraycopy(previous.text, previous.consumed, text, 0, tail);
+        }
+
+        /**
+         * The number of carried characters at the front of the block.
+         */
+        int pending() {
+            return length - consumed;
+        }
+
+        /**
+         * Read input until the block is full or the input ends.
+         *
+         * @param input The stream.
+         * @param carried The number of characters already at the front.
+         * @throws IOException if reading fails.
+         */
+        void fill(BufferedReader input, int carried) throws IOException {
+            length = carried;
+            consumed = 0;
+            exhausted = false;
+            while (length < text.length) {
+                int read = input.read(text, length, text.length - length);
+                if (read < 0) {
+                    exhausted = true;
+                    break;
+                }
+                length += read;
+            }
+        }
+
+        /**
+         * Locate the complete rows in the block.
+         *
+         * @param row The index of the first row to find.
+         * @return The index of the row after the last one found.
+         */
+        int findRows(int row) {
+            firstRow = row;
+            rowCount = 0;
+            int position = 0;
+            while (row < rows) {
+                int lineEnd = position;
+                while (lineEnd < length && text[lineEnd] != '\n') {
+                    lineEnd++;
+                }
+                if (lineEnd == length && !exhausted) {
+                    // The line continues in the next block.
+                    break;
+                }
+
+                int contentEnd = lineEnd;
+                if (contentEnd > position && text[contentEnd - 1] == '\r') {
+                    contentEnd--;
+                }
+                int next = Math.min(lineEnd + 1, length);
+
+                if (isEndTag(position, contentEnd)) {
+                    finished = true;
+                    position = next;
+                    break;
+                }
+                addRow(position, contentEnd);
+                row++;
+                position = next;
+                if (position >= length && exhausted) {
+                    finished = true;
+                    break;
+                }
+            }
+            consumed = position;
+            if (length == 0 && exhausted) {
+                finished = true;
+            }
+            return row;
+        }
+
+        private void addRow(int start, int end) {
+            if (rowCount == rowStarts.length) {
+                int[] starts = new int[rowCount * 2];
+                int[] ends = new int[rowCount * 2];
+                System.arraycopy(rowStarts, 0, starts, 0, rowCount);
+                System.arraycopy(rowEnds, 0, ends, 0, rowCount);
+                rowStarts = starts;
+                rowEnds = ends;
+            }
+            rowStarts[rowCount] = start;
+            rowEnds[rowCount] = end;
+            rowCount++;
+        }
+
+        private boolean isEndTag(int start, int end) {
+            return end > start && (text[start] == 'e' || text[start] == 'E')
+                    && endTagRegEx.matcher(new String(text, start, end - start)).matches();
+        }
+    }
+}
@@ -56,9 +56,11 @@ public class SOM2dPlotter extends JFrame {
         // find the x- and y-axis spread
         double xmin = Double.MAX_VALUE, xmax = Double.MIN_VALUE;
         double ymin = Double.MAX_VALUE, ymax = Double.MIN_VALUE;
+        double[] xs = som.getWeightComponent(0, null);
+        double[] ys = som.getWeightComponent(1, null);
         for (int i = 0; i < neuronCount; i++) {
-            points[i][0] = som.getWeight(i, 0);
-            points[i][1] = som.getWeight(i, 1);
+            points[i][0] = xs[i];
+            points[i][1] = ys[i];
             xmin = Math.min(xmin, points[i][0]);
             ymin = Math.min(ymin, points[i][1]);
             xmax = Math.max(xmax, points[i][0]);
@@ -34,6 +34,9 @@ public class SOMColorPlotter extends JFrame {
     private Dimension dims;
     private BufferedImage img;
     private int neuronCount = 0;
+    private double[] red = null;
+    private double[] green = null;
+    private double[] blue = null;
 
     /**
      * Create and setup a dot plot for a 3D input SOM.
@@ -64,12 +67,15 @@ public class SOMColorPlotter extends JFrame {
         Graphics g = getBufferStrategy().getDrawGraphics();
 
         int[] pts = new int[neuronCount];
+        red = som.getWeightComponent(0, red);
+        green = som.getWeightComponent(1, green);
+        blue = som.getWeightComponent(2, blue);
 
         for (int i = 0; i < neuronCount; i++) {
             pts[i] = MAX_ALPHA;
-            pts[i] |= (int)(som.getWeight(i, 0) * BYTE_MAX) << (2 * BYTE_WIDTH);
-            pts[i] |= (int)(som.getWeight(i, 1) * BYTE_MAX) << BYTE_WIDTH;
-            pts[i] |= (int)(som.getWeight(i, 2) * BYTE_MAX);
+            pts[i] |= (int)(red[i] * BYTE_MAX) << (2 * BYTE_WIDTH);
+            pts[i] |= (int)(green[i] * BYTE_MAX) << BYTE_WIDTH;
+            pts[i] |= (int)(blue[i] * BYTE_MAX);
         }
 
         img.setRGB(0,0, dims.x, dims.y, pts, 0, dims.x);
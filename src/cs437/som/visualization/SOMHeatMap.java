@@ -36,6 +36,10 @@ public class SOMHeatMap extends JFrame {
     private int neuronCount;
     private double max = 0;
 
+    // Buffers reused across refreshes.
+    private double[] distances;
+    private int[] pts;
+
     /**
      * Create a new SOMHeatMap.
      *
@@ -48,6 +52,8 @@ public class SOMHeatMap extends JFrame {
         dims = som.getGridSize();
         neuronCount = som.getNeuronCount();
         img = new BufferedImage(dims.x, dims.y, BufferedImage.TYPE_INT_ARGB);
+        distances = new double[neuronCount];
+        pts = new int[neuronCount];
 
         setSize(WIDTH, HEIGHT);
         setVisible(true);
@@ -75,27 +81,20 @@ public class SOMHeatMap extends JFrame {
      *               correspondence.
      */
     public void refresh(double[] sample) {
-        double[] distances = new double[neuronCount];
-        int[] pts = new int[neuronCount];
+        distances = som.distancesToInput(sample, distances);
 
-        double dist, diff;
-        max = Math.max(som.distanceToInput(0, sample), max);
         double min = 0;
-
-        for (int i = 1; i < neuronCount; i++) {
-            dist = som.distanceToInput(i, sample);
-            distances[i] = dist;
+        for (int i = 0; i < neuronCount; i++) {
+            double dist = distances[i];
             if (dist > max)
                 max = dist;
             else if (dist < min)
                 min = dist;
         }
 
-        diff = max - min;
-
-        for (int i = 1; i < neuronCount; i++) {
+        for (int i = 0; i < neuronCount; i++) {
             int value = BYTE_MAX - (int)(BYTE_MAX * ((distances[i] - min) / max));
-            pts[i] |= ALPHA;
+            pts[i] = ALPHA;
             pts[i] |= value << (2 * BYTE_WIDTH);
             pts[i] |= value << BYTE_WIDTH;
             pts[i] |= value;
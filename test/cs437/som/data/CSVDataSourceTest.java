@@ -0,0 +1,171 @@
+package cs437.som.data;
+
+import cs437.som.SOMError;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+
+public class CSVDataSourceTest {
+    private File file;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        file = File.createTempFile("som", ".csv");
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        file.delete();
+    }
+
+    private void write(String text) throws IOException {
+        write(text.getBytes("UTF-8"));
+    }
+
+    private void write(byte[] bytes) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(bytes);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static double[][] readAll(CSVDataSource source) {
+        List<double[]> rows = new ArrayList<double[]>();
+        try {
+            for (double[] row = source.next(); row != null; row = source.next()) {
+                rows.add(row.clone());
+            }
+        } finally {
+            source.close();
+        }
+        return rows.toArray(new double[rows.size()][]);
+    }
+
+    private static void assertRows(double[][] actual, double[][] expected) {
+        assertEquals(actual.length, expected.length, "Row count");
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(actual[i], expected[i], "Row " + i);
+        }
+    }
+
+    @Test
+    public void testPlainRows() throws Exception {
+        write("1,2,3\n4.5,-6e2,+.25\n");
+        CSVDataSource source = new CSVDataSource(file);
+        assertEquals(source.getInputLength(), 3);
+        assertRows(readAll(source), new double[][]{{1, 2, 3}, {4.5, -600, 0.25}});
+    }
+
+    @Test
+    public void testQuotedFields() throws Exception {
+        write("\"1.5\", \"2\" ,3\n\" 4 \",5,\"6e1\"\n");
+        assertRows(readAll(new CSVDataSource(file)),
+                new double[][]{{1.5, 2, 3}, {4, 5, 60}});
+    }
+
+    @Test
+    public void testQuotedDelimiterInUnreadColumn() throws Exception {
+        write("\"Smith, J.\",1,2\n\"say \"\"hi\"\", then, go\",3,4\n");
+        CSVDataSource source = new CSVDataSource(file);
+        source.setColumns(1, 2);
+        assertRows(readAll(source), new double[][]{{1, 2}, {3, 4}});
+    }
+
+    @Test
+    public void testCRLF() throws Exception {
+        write("a,b\r\n1,2\r\n\r\n3,4\r\n");
+        CSVDataSource source = new CSVDataSource(file);
+        source.setHeader(true);
+        assertEquals(source.getInputLength(), 2);
+        assertRows(readAll(source), new double[][]{{1, 2}, {3, 4}});
+    }
+
+    @Test
+    public void testNoFinalLineBreak() throws Exception {
+        write("1,2\n3,4");
+        assertRows(readAll(new CSVDataSource(file)), new double[][]{{1, 2}, {3, 4}});
+    }
+
+    @Test
+    public void testByteOrderMark() throws Exception {
+        byte[] text = "x,y\n1,2\n".getBytes("UTF-8");
+        byte[] bytes = new byte[text.length + 3];
+        bytes[0] = (byte) 0xEF;
+        bytes[1] = (byte) 0xBB;
+        bytes[2] = (byte) 0xBF;
+        System.arraycopy(text, 0, bytes, 3, text.length);
+
+        write(bytes);
+        CSVDataSource named = new CSVDataSource(file);
+        // The mark must not become part of the first column's name.
+        named.setColumns("y", "x");
+        assertRows(readAll(named), new double[][]{{2, 1}});
+
+        System.arraycopy("7,8\n1,2\n".getBytes("UTF-8"), 0, bytes, 3, text.length);
+        write(bytes);
+        assertRows(readAll(new CSVDataSource(file)), new double[][]{{7, 8}, {1, 2}});
+    }
+
+    @Test
+    public void testColumnSelection() throws Exception {
+        write("id,name,x,y,z\n1,one,0.1,0.2,0.3\n2,two,1.1,1.2,1.3\n");
+        CSVDataSource byIndex = new CSVDataSource(file);
+        byIndex.setHeader(true);
+        byIndex.setColumns(4, 2);
+        assertEquals(byIndex.getInputLength(), 2);
+        assertRows(readAll(byIndex), new double[][]{{0.3, 0.1}, {1.3, 1.1}});
+
+        CSVDataSource byName = new CSVDataSource(file);
+        byName.setColumns("z", "y", "id");
+        assertRows(readAll(byName), new double[][]{{0.3, 0.2, 1}, {1.3, 1.2, 2}});
+    }
+
+    @Test
+    public void testDelimiterAndEpochs() throws Exception {
+        write("1\t2\n\n  \n3\t4\n");
+        CSVDataSource source = new CSVDataSource(file);
+        source.setDelimiter('\t');
+        source.setEpochs(2);
+        source.setParallelism(3);
+        assertRows(readAll(source),
+                new double[][]{{1, 2}, {3, 4}, {1, 2}, {3, 4}});
+    }
+
+    @Test(expectedExceptions = SOMError.class)
+    public void testMissingColumn() throws Exception {
+        write("1,2,3\n4,5\n");
+        readAll(new CSVDataSource(file));
+    }
+
+    @Test(expectedExceptions = SOMError.class)
+    public void testUnknownColumnName() throws Exception {
+        write("a,b\n1,2\n");
+        CSVDataSource source = new CSVDataSource(file);
+        source.setColumns("c");
+        source.getInputLength();
+    }
+
+    @Test(expectedExceptions = SOMError.class)
+    public void testNotANumber() throws Exception {
+        write("1,2\n3,four\n");
+        readAll(new CSVDataSource(file));
+    }
+
+    @Test(expectedExceptions = SOMError.class)
+    public void testColumnSelectedTwice() throws Exception {
+        write("1,2\n");
+        CSVDataSource source = new CSVDataSource(file);
+        source.setColumns(1, 1);
+        source.getInputLength();
+    }
+}
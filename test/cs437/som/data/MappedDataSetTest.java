@@ -0,0 +1,198 @@
+package cs437.som.data;
+
+import cs437.som.SOMError;
+import cs437.som.TrainingDataSource;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class MappedDataSetTest {
+    private static final double[][] ROWS = {
+            {1.0, -2.5, 3.25}, {0.1, 1e-300, -7e12}, {Math.PI, -0.0, 42.0},
+            {1.5, 2.5, 3.5}, {-1.0, -2.0, -3.0},
+    };
+
+    private File file;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        file = File.createTempFile("som", ".npy");
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        file.delete();
+    }
+
+    /**
+     * Write a .npy file.  The header dictionary is padded so that the data
+     * starts on a 64-byte boundary, as NumPy pads it.
+     */
+    private void writeNpy(int major, String dictionary, ByteOrder order,
+                          boolean singlePrecision, double[][] rows) throws IOException {
+        int prefix = major == 1 ? 10 : 12;
+        StringBuilder header = new StringBuilder(dictionary);
+        while ((prefix + header.length() + 1) % 64 != 0) {
+            header.append(' ');
+        }
+        header.append('\n');
+        byte[] headerBytes = header.toString().getBytes("UTF-8");
+
+        int values = rows.length * rows[0].length;
+        ByteBuffer bytes = ByteBuffer.allocate(prefix + headerBytes.length
+                + values * (singlePrecision ? 4 : 8)).order(ByteOrder.LITTLE_ENDIAN);
+        bytes.put((byte) 0x93).put("NUMPY".getBytes("ISO-8859-1"));
+        bytes.put((byte) major).put((byte) 0);
+        if (major == 1) {
+            bytes.putShort((short) headerBytes.length);
+        } else {
+            bytes.putInt(headerBytes.length);
+        }
+        bytes.put(headerBytes);
+        bytes.order(order);
+        for (double[] row : rows) {
+            for (double value : row) {
+                if (singlePrecision) {
+                    bytes.putFloat((float) value);
+                } else {
+                    bytes.putDouble(value);
+                }
+            }
+        }
+        writeBytes(Arrays.copyOf(bytes.array(), bytes.position()));
+    }
+
+    private void writeBytes(byte[] bytes) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(bytes);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static String dictionary(String descr, int rows, int columns) {
+        return "{'descr': '" + descr + "', 'fortran_order': False, 'shape': ("
+                + rows + ", " + columns + "), }";
+    }
+
+    private static void assertRows(MappedDataSet data, double[][] expected,
+                                   boolean singlePrecision) {
+        assertEquals(data.getRowCount(), expected.length);
+        assertEquals(data.getInputLength(), expected[0].length);
+        double[] row = new double[data.getInputLength()];
+        for (int r = 0; r < expected.length; r++) {
+            data.getRow(r, row);
+            for (int i = 0; i < row.length; i++) {
+                double value = singlePrecision ? (float) expected[r][i] : expected[r][i];
+                assertEquals(Double.doubleToLongBits(row[i]), Double.doubleToLongBits(value),
+                        "Row " + r + " column " + i);
+            }
+        }
+    }
+
+    @Test
+    public void testNpyVersions() throws Exception {
+        for (int major = 1; major <= 3; major++) {
+            writeNpy(major, dictionary("<f8", ROWS.length, 3),
+                    ByteOrder.LITTLE_ENDIAN, false, ROWS);
+            assertRows(new MappedDataSet(file), ROWS, false);
+        }
+    }
+
+    @Test
+    public void testFloat32() throws Exception {
+        writeNpy(1, dictionary("<f4", ROWS.length, 3), ByteOrder.LITTLE_ENDIAN, true, ROWS);
+        MappedDataSet data = new MappedDataSet(file);
+        assertRows(data, ROWS, true);
+        assertEquals(data.getFloatRowView(2).get(0), (float) Math.PI);
+    }
+
+    @Test
+    public void testBigEndian() throws Exception {
+        writeNpy(1, dictionary(">f8", ROWS.length, 3), ByteOrder.BIG_ENDIAN, false, ROWS);
+        assertRows(new MappedDataSet(file), ROWS, false);
+        writeNpy(2, dictionary(">f4", ROWS.length, 3), ByteOrder.BIG_ENDIAN, true, ROWS);
+        assertRows(new MappedDataSet(file), ROWS, true);
+    }
+
+    @Test
+    public void testKeyOrderAndOneDimension() throws Exception {
+        double[][] column = {{1.0}, {2.0}, {3.0}};
+        writeNpy(1, "{'shape': (3,), 'fortran_order': False, 'descr': '<f8'}",
+                ByteOrder.LITTLE_ENDIAN, false, column);
+        assertRows(new MappedDataSet(file), column, false);
+    }
+
+    @Test
+    public void testSegments() throws Exception {
+        writeNpy(1, dictionary("<f8", ROWS.length, 3), ByteOrder.LITTLE_ENDIAN, false, ROWS);
+        // Two rows to a segment, the last holding one.
+        MappedDataSet data = new MappedDataSet(file, 2 * 3 * 8 + 7);
+        assertRows(data, ROWS, false);
+        DoubleBuffer view = data.getRowView(4);
+        assertEquals(view.remaining(), 3);
+        assertEquals(view.get(2), -3.0);
+    }
+
+    @Test
+    public void testPackedRoundTrip() throws Exception {
+        assertEquals(MappedDataSet.write(new ArrayDataSource(ROWS), file), ROWS.length);
+        MappedDataSet data = new MappedDataSet(file);
+        assertRows(data, ROWS, false);
+
+        // A shuffled source visits every row once per epoch.
+        TrainingDataSource source = data.dataSource(2, new Random(1L));
+        int[] seen = new int[ROWS.length];
+        for (double[] row = source.next(); row != null; row = source.next()) {
+            boolean found = false;
+            for (int r = 0; r < ROWS.length && !found; r++) {
+                if (Arrays.equals(row, ROWS[r])) {
+                    seen[r]++;
+                    found = true;
+                }
+            }
+            assertTrue(found, "Every row should be one of the data set's.");
+        }
+        for (int count : seen) {
+            assertEquals(count, 2);
+        }
+    }
+
+    @Test(expectedExceptions = SOMError.class)
+    public void testFortranOrderRejected() throws Exception {
+        writeNpy(1, "{'descr': '<f8', 'fortran_order': True, 'shape': (5, 3), }",
+                ByteOrder.LITTLE_ENDIAN, false, ROWS);
+        new MappedDataSet(file);
+    }
+
+    @Test(expectedExceptions = SOMError.class)
+    public void testIntegersRejected() throws Exception {
+        writeNpy(1, dictionary("<i8", ROWS.length, 3), ByteOrder.LITTLE_ENDIAN, false, ROWS);
+        new MappedDataSet(file);
+    }
+
+    @Test(expectedExceptions = SOMError.class)
+    public void testTruncatedRejected() throws Exception {
+        writeNpy(1, dictionary("<f8", ROWS.length + 1, 3), ByteOrder.LITTLE_ENDIAN, false, ROWS);
+        new MappedDataSet(file);
+    }
+
+    @Test(expectedExceptions = SOMError.class)
+    public void testNotADataSet() throws Exception {
+        writeBytes("1,2,3\n4,5,6\n".getBytes("UTF-8"));
+        new MappedDataSet(file);
+    }
+}
@@ -0,0 +1,179 @@
+package cs437.som.data;
+
+import cs437.som.SOMError;
+import cs437.som.TrainingDataSource;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+public class PrefetchingDataSourceTest {
+    /**
+     * The vectors in each batch of the ring for vectors of length 2.
+     */
+    private static final int BATCH = (1 << 13) / 2;
+
+    /**
+     * Supplies {i, -i} for i counting from 0, optionally failing or stopping
+     * after a given count, and records how it is used.
+     */
+    private static class CountingSource implements TrainingDataSource {
+        private final int length;
+        private final int failAfter;
+        private final double[] vector = new double[2];
+        final AtomicInteger produced = new AtomicInteger();
+        final AtomicInteger closed = new AtomicInteger();
+
+        CountingSource(int length, int failAfter) {
+            this.length = length;
+            this.failAfter = failAfter;
+        }
+
+        public int getInputLength() {
+            return 2;
+        }
+
+        public double[] next() {
+            int i = produced.get();
+            if (i == failAfter) {
+                throw new IllegalStateException("Disk went away");
+            }
+            if (i == length) {
+                return null;
+            }
+            vector[0] = i;
+            vector[1] = -i;
+            produced.incrementAndGet();
+            return vector;
+        }
+
+        public void close() {
+            closed.incrementAndGet();
+        }
+    }
+
+    @Test
+    public void testSuppliesVectorsInOrderThenEnds() {
+        // Enough vectors to cycle through the ring several times, ending
+        // part way through a batch.
+        int count = 5 * BATCH + 123;
+        CountingSource source = new CountingSource(count, -1);
+        PrefetchingDataSource prefetching = new PrefetchingDataSource(source, 2);
+        try {
+            assertEquals(prefetching.getInputLength(), 2);
+            for (int i = 0; i < count; i++) {
+                double[] vector = prefetching.next();
+                assertEquals(vector[0], (double) i, "Vector " + i);
+                assertEquals(vector[1], (double) -i, "Vector " + i);
+            }
+            assertNull(prefetching.next());
+            assertNull(prefetching.next(), "An exhausted source should stay exhausted.");
+        } finally {
+            prefetching.close();
+        }
+        assertEquals(source.closed.get(), 1);
+    }
+
+    @Test
+    public void testEmptySource() {
+        CountingSource source = new CountingSource(0, -1);
+        PrefetchingDataSource prefetching = new PrefetchingDataSource(source);
+        assertNull(prefetching.next());
+        prefetching.close();
+        assertEquals(source.closed.get(), 1);
+    }
+
+    @Test
+    public void testPropagatesFailure() {
+        int good = BATCH + 10;
+        CountingSource source = new CountingSource(Integer.MAX_VALUE, good);
+        PrefetchingDataSource prefetching = new PrefetchingDataSource(source, 2);
+        try {
+            // Vectors read before the failure are still delivered.
+            for (int i = 0; i < good; i++) {
+                assertEquals(prefetching.next()[0], (double) i);
+            }
+            try {
+                prefetching.next();
+                throw new AssertionError("The failure should reach the consumer.");
+            } catch (SOMError e) {
+                assertTrue(e.getMessage().startsWith("Could not read training data: "));
+                assertTrue(e.getMessage().contains("Disk went away"));
+            }
+            assertNull(prefetching.next(), "A failed source should end.");
+        } finally {
+            prefetching.close();
+        }
+        assertEquals(source.closed.get(), 1);
+    }
+
+    @Test(timeOut = 10000)
+    public void testCloseWhileRingIsFull() throws Exception {
+        CountingSource source = new CountingSource(Integer.MAX_VALUE, -1);
+        PrefetchingDataSource prefetching = new PrefetchingDataSource(source, 2);
+
+        // Once both batches are full, the background thread waits for the
+        // consumer to return one.
+        int ring = 2 * BATCH;
+        while (source.produced.get() < ring) {
+            Thread.sleep(1);
+        }
+        Thread.sleep(50);
+        assertEquals(source.produced.get(), ring);
+
+        prefetching.close();
+        assertEquals(source.closed.get(), 1);
+        assertEquals(source.produced.get(), ring);
+        assertNull(prefetching.next(), "A closed source should supply nothing.");
+    }
+
+    @Test(timeOut = 10000)
+    public void testCloseWhileSourceBlocks() throws Exception {
+        final CountDownLatch reading = new CountDownLatch(1);
+        final AtomicInteger active = new AtomicInteger();
+        final AtomicInteger closedWhileActive = new AtomicInteger();
+        TrainingDataSource blocking = new TrainingDataSource() {
+            public int getInputLength() {
+                return 1;
+            }
+
+            public double[] next() {
+                active.incrementAndGet();
+                try {
+                    reading.countDown();
+                    new CountDownLatch(1).await();
+                    return null;
+                } catch (InterruptedException e) {
+                    throw new SOMError("Interrupted");
+                } finally {
+                    active.decrementAndGet();
+                }
+            }
+
+            public void close() {
+                closedWhileActive.set(active.get());
+            }
+        };
+
+        PrefetchingDataSource prefetching = new PrefetchingDataSource(blocking);
+        assertTrue(reading.await(5, TimeUnit.SECONDS));
+        prefetching.close();
+
+        // The wrapped source is closed only once the read it was blocked in
+        // has returned.
+        assertEquals(closedWhileActive.get(), 0);
+        assertFalse(active.get() > 0);
+        assertNull(prefetching.next());
+    }
+
+    @Test(expectedExceptions = SOMError.class)
+    public void testRingNeedsTwoBatches() {
+        new PrefetchingDataSource(new CountingSource(0, -1), 1);
+    }
+}
@@ -0,0 +1,135 @@
+package cs437.som.initialization;
+
+import cs437.som.Dimension;
+import cs437.som.SOMError;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+
+public class LinearWeightInitializerTest {
+    private static final double MAXIMUM_DIFFERENCE = 0.00000001;
+    private static final double[] MEAN = {1.0, 2.0, 3.0, 4.0};
+    private static final double[] FIRST = unit(1.0, 1.0, 0.0, 0.0);
+    private static final double[] SECOND = unit(0.0, 0.0, 1.0, -1.0);
+
+    // A lattice on the plane of FIRST and SECOND, wider along FIRST.  Its
+    // coordinates are uncorrelated, so those are its principal components.
+    private static final double[] FIRST_STEPS = {-3.0, -2.0, -1.0, 0.0, 1.0, 2.0, 3.0};
+    private static final double[] SECOND_STEPS = {-0.5, -0.25, 0.0, 0.25, 0.5};
+
+    private static double[] unit(double... vector) {
+        double norm = Math.sqrt(dot(vector, vector));
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] /= norm;
+        }
+        return vector;
+    }
+
+    private static double dot(double[] v0, double[] v1) {
+        double sum = 0.0;
+        for (int i = 0; i < v0.length; i++) {
+            sum += v0[i] * v1[i];
+        }
+        return sum;
+    }
+
+    private static List<double[]> sample() {
+        List<double[]> sample = new ArrayList<double[]>();
+        for (double a : FIRST_STEPS) {
+            for (double b : SECOND_STEPS) {
+                double[] vector = new double[MEAN.length];
+                for (int i = 0; i < vector.length; i++) {
+                    vector[i] = MEAN[i] + a * FIRST[i] + b * SECOND[i];
+                }
+                sample.add(vector);
+            }
+        }
+        return sample;
+    }
+
+    private static double spread(double[] steps, int otherSteps) {
+        double sum = 0.0;
+        for (double step : steps) {
+            sum += step * step;
+        }
+        int count = steps.length * otherSteps;
+        return Math.sqrt(3.0 * otherSteps * sum / (count - 1));
+    }
+
+    private static double[][] initialize(Dimension gridSize) {
+        LinearWeightInitializer initializer = new LinearWeightInitializer(sample());
+        initializer.setBatchSize(4);
+        initializer.setParallelism(3);
+        double[][] weights = new double[gridSize.area][MEAN.length];
+        initializer.initializeWeights(weights, gridSize);
+        return weights;
+    }
+
+    /**
+     * Check that each neuron lies on the sample's plane, at the center of its
+     * share of the mean plus or minus sqrt(3) standard deviations.
+     */
+    private static void assertOnPlane(double[][] weights, Dimension gridSize,
+                                      double[] columnAxis, double columnSpread,
+                                      double[] rowAxis, double rowSpread) {
+        // The components' signs are arbitrary, so take them from a corner.
+        double[] offset = new double[MEAN.length];
+        for (int i = 0; i < offset.length; i++) {
+            offset[i] = weights[0][i] - MEAN[i];
+        }
+        double columnSign = Math.signum(-dot(offset, columnAxis));
+        double rowSign = Math.signum(-dot(offset, rowAxis));
+
+        for (int neuron = 0; neuron < weights.length; neuron++) {
+            double a = (2.0 * (neuron % gridSize.x) + 1.0) / gridSize.x - 1.0;
+            double b = (2.0 * (neuron / gridSize.x) + 1.0) / gridSize.y - 1.0;
+            double[] expected = new double[MEAN.length];
+            for (int i = 0; i < expected.length; i++) {
+                expected[i] = MEAN[i]
+                        + columnSign * a * columnSpread * columnAxis[i]
+                        + rowSign * b * rowSpread * rowAxis[i];
+            }
+            for (int i = 0; i < expected.length; i++) {
+                assertEquals(weights[neuron][i], expected[i], MAXIMUM_DIFFERENCE,
+                        "Neuron " + neuron + ": " + Arrays.toString(weights[neuron]));
+            }
+        }
+    }
+
+    @Test
+    public void testWideGridFollowsFirstComponent() {
+        Dimension gridSize = new Dimension(6, 3);
+        assertOnPlane(initialize(gridSize), gridSize,
+                FIRST, spread(FIRST_STEPS, SECOND_STEPS.length),
+                SECOND, spread(SECOND_STEPS, FIRST_STEPS.length));
+    }
+
+    @Test
+    public void testTallGridFollowsFirstComponent() {
+        Dimension gridSize = new Dimension(3, 6);
+        assertOnPlane(initialize(gridSize), gridSize,
+                SECOND, spread(SECOND_STEPS, FIRST_STEPS.length),
+                FIRST, spread(FIRST_STEPS, SECOND_STEPS.length));
+    }
+
+    @Test(expectedExceptions = SOMError.class)
+    public void testNeedsTwoSamples() {
+        List<double[]> sample = new ArrayList<double[]>();
+        sample.add(MEAN.clone());
+        new LinearWeightInitializer(sample).initializeWeights(
+                new double[4][MEAN.length], new Dimension(2, 2));
+    }
+
+    @Test(expectedExceptions = SOMError.class)
+    public void testSampleLengthIsChecked() {
+        List<double[]> sample = new ArrayList<double[]>();
+        sample.add(new double[MEAN.length + 1]);
+        sample.add(new double[MEAN.length + 1]);
+        new LinearWeightInitializer(sample).initializeWeights(
+                new double[4][MEAN.length], new Dimension(2, 2));
+    }
+}
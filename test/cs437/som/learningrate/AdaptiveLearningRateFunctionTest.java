@@ -0,0 +1,97 @@
+package cs437.som.learningrate;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class AdaptiveLearningRateFunctionTest {
+    private static final double MAXIMUM_DIFFERENCE = 0.0000000000000001;
+    private static final double START_RATE = 0.8;
+    private static final double END_RATE = 0.01;
+    private static final double[] INPUT = {0.0, 0.0};
+
+    private AdaptiveLearningRateFunction alrf;
+    private int step;
+
+    @BeforeMethod
+    public void setUp() {
+        alrf = new AdaptiveLearningRateFunction(START_RATE, END_RATE);
+        alrf.setExpectedIterations(1000);
+        step = 0;
+    }
+
+    private void train(double distance) {
+        alrf.trainingStep(step, INPUT, 0, distance);
+        step++;
+    }
+
+    @Test
+    public void testStartsAtInitialRate() {
+        assertEquals(alrf.learningRate(0), START_RATE, MAXIMUM_DIFFERENCE);
+        // The first error is both the smoothed and the worst error.
+        train(3.0);
+        assertEquals(alrf.learningRate(1), START_RATE, MAXIMUM_DIFFERENCE);
+    }
+
+    @Test
+    public void testScalesBySmoothedOverWorstError() {
+        train(2.0);
+        train(1.0);
+        // The smoothed error moves a hundredth of the way to each new error.
+        double smoothed = 2.0 + 0.01 * (1.0 - 2.0);
+        assertEquals(alrf.learningRate(2), START_RATE * smoothed / 2.0,
+                MAXIMUM_DIFFERENCE);
+
+        train(0.5);
+        smoothed += 0.01 * (0.5 - smoothed);
+        assertEquals(alrf.learningRate(3), START_RATE * smoothed / 2.0,
+                MAXIMUM_DIFFERENCE);
+    }
+
+    @Test
+    public void testIgnoresIteration() {
+        train(2.0);
+        train(1.0);
+        double rate = alrf.learningRate(2);
+        assertEquals(alrf.learningRate(0), rate, MAXIMUM_DIFFERENCE);
+        assertEquals(alrf.learningRate(1000000), rate, MAXIMUM_DIFFERENCE);
+    }
+
+    @Test
+    public void testFinalRateIsFloor() {
+        train(1.0);
+        for (int i = 0; i < 1000; i++) {
+            train(0.0);
+        }
+        assertEquals(alrf.learningRate(step), END_RATE, MAXIMUM_DIFFERENCE);
+    }
+
+    @Test
+    public void testRisesAgainWithError() {
+        train(1.0);
+        for (int i = 0; i < 1000; i++) {
+            train(0.0);
+        }
+
+        // A rising error raises the rate until the smoothed error passes the
+        // worst seen, and from then on it is the worst, so the rate is the
+        // initial rate again.
+        double last = alrf.learningRate(step);
+        for (int i = 0; i < 1000; i++) {
+            train(2.0);
+            double current = alrf.learningRate(step);
+            assertTrue(current >= last, "Should rise while the error rises.");
+            last = current;
+        }
+        assertEquals(last, START_RATE, MAXIMUM_DIFFERENCE);
+    }
+
+    @Test
+    public void testParse() {
+        AdaptiveLearningRateFunction parsed =
+                new AdaptiveLearningRateFunction("0.8 0.01");
+        assertEquals(parsed.toString(), alrf.toString());
+    }
+}
@@ -0,0 +1,90 @@
+package cs437.som.metrics;
+
+import cs437.som.network.NetworkBase;
+import cs437.som.util.FileReader;
+import org.testng.annotations.Test;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.util.Arrays;
+
+import static org.testng.Assert.assertEquals;
+
+public class MapQualityEvaluatorTest {
+    private static final double MAXIMUM_DIFFERENCE = 1.0e-12;
+
+    // Three neurons in a row, at (0, 0), (0, 4) and (2, 0).
+    private static final String WEIGHTS = String.format(
+            "Grid dimensions: 3, 1%nInput length: 2%nWeights:%n"
+                    + "\t[0.0, 0.0]%n\t[0.0, 4.0]%n\t[2.0, 0.0]%nend weights%n");
+
+    // Squared distances to the neurons, best and second best marked:
+    //   (0, 3):   9   1*  13     best 1, second 0, adjacent
+    //   (2, 4):  20   4*  16     best 1, second 2, adjacent
+    //   (0, -2):  4* 36    8     best 0, second 2, not adjacent
+    //   (3, 0):   9  25    1*    best 2, second 0, not adjacent
+    private static final double[][] SAMPLES = {
+            {0.0, 3.0}, {2.0, 4.0}, {0.0, -2.0}, {3.0, 0.0},
+    };
+
+    private static NetworkBase read(String header) throws Exception {
+        return (NetworkBase) FileReader.read(
+                new BufferedReader(new StringReader(header + WEIGHTS)));
+    }
+
+    private static MapQuality evaluate(NetworkBase map, int parallelism, int batchSize) {
+        MapQualityEvaluator evaluator = new MapQualityEvaluator(map);
+        evaluator.setParallelism(parallelism);
+        evaluator.setBatchSize(batchSize);
+        return evaluator.evaluate(Arrays.asList(SAMPLES));
+    }
+
+    @Test
+    public void testBasicMapMeasuresSquaredDistance() throws Exception {
+        NetworkBase map = read(String.format("Map type: BasicSquareGridSOM%n"));
+        for (int parallelism = 1; parallelism <= 3; parallelism++) {
+            MapQuality quality = evaluate(map, parallelism, 1 + parallelism % 2);
+            assertEquals(quality.getSampleCount(), 4);
+            assertEquals(quality.getQuantizationError(), (1 + 4 + 4 + 1) / 4.0,
+                    MAXIMUM_DIFFERENCE);
+            assertEquals(quality.getTopographicError(), 0.5, MAXIMUM_DIFFERENCE);
+            assertEquals(quality.getHitCounts(), new int[]{1, 2, 1});
+            assertEquals(quality.getMeanError(0), 4.0, MAXIMUM_DIFFERENCE);
+            assertEquals(quality.getMeanError(1), 2.5, MAXIMUM_DIFFERENCE);
+            assertEquals(quality.getMeanError(2), 1.0, MAXIMUM_DIFFERENCE);
+        }
+    }
+
+    @Test
+    public void testEuclideanMetricMeasuresDistance() throws Exception {
+        NetworkBase map = read(String.format("Map type: CustomizableSOM%n"
+                + "Distance metric: EuclideanDistanceMetric%n"));
+        MapQuality quality = evaluate(map, 2, 3);
+        assertEquals(quality.getQuantizationError(), (1 + 2 + 2 + 1) / 4.0,
+                MAXIMUM_DIFFERENCE);
+        assertEquals(quality.getTopographicError(), 0.5, MAXIMUM_DIFFERENCE);
+        assertEquals(quality.getMeanError(1), 1.5, MAXIMUM_DIFFERENCE);
+    }
+
+    @Test
+    public void testDiagonalAdjacency() throws Exception {
+        NetworkBase map = read(String.format("Map type: BasicSquareGridSOM%n"));
+        MapQualityEvaluator evaluator = new MapQualityEvaluator(map);
+        // Neurons 0 and 2 are two cells apart, so they stay non-adjacent.
+        evaluator.setAdjacencyDistance(Math.sqrt(2));
+        assertEquals(evaluator.evaluate(Arrays.asList(SAMPLES)).getTopographicError(),
+                0.5, MAXIMUM_DIFFERENCE);
+        evaluator.setAdjacencyDistance(2.0);
+        assertEquals(evaluator.evaluate(Arrays.asList(SAMPLES)).getTopographicError(),
+                0.0, MAXIMUM_DIFFERENCE);
+    }
+
+    @Test
+    public void testEmptyDataSet() throws Exception {
+        NetworkBase map = read(String.format("Map type: BasicSquareGridSOM%n"));
+        MapQuality quality = new MapQualityEvaluator(map)
+                .evaluate(Arrays.<double[]>asList());
+        assertEquals(quality.getSampleCount(), 0);
+        assertEquals(quality.getQuantizationError(), 0.0);
+    }
+}
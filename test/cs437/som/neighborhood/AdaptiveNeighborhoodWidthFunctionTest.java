@@ -0,0 +1,118 @@
+package cs437.som.neighborhood;
+
+import cs437.som.SOMError;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class AdaptiveNeighborhoodWidthFunctionTest {
+    private static final double MAXIMUM_DIFFERENCE = 0.0000000001;
+    private static final int ITERATIONS = 1000;
+    private static final double START_WIDTH = 10.0;
+    private static final double END_WIDTH = 1.0;
+    private static final double[] INPUT = {0.0, 0.0};
+
+    private AdaptiveNeighborhoodWidthFunction anwf;
+    private int step;
+
+    @BeforeMethod
+    public void setUp() {
+        anwf = new AdaptiveNeighborhoodWidthFunction(START_WIDTH, END_WIDTH);
+        anwf.setExpectedIterations(ITERATIONS);
+        step = 0;
+    }
+
+    private double train(double distance) {
+        anwf.trainingStep(step, INPUT, 0, distance);
+        step++;
+        return anwf.neighborhoodWidth(step);
+    }
+
+    @Test
+    public void testStartsAtInitialWidth() {
+        assertEquals(anwf.neighborhoodWidth(0), START_WIDTH, MAXIMUM_DIFFERENCE);
+    }
+
+    @Test
+    public void testShrinksGeometricallyWhileErrorHolds() {
+        // A steady error keeps both averages equal, so every step shrinks
+        // the width by the same factor, reaching the final width after a
+        // quarter of the expected iterations.
+        double decay = Math.pow(END_WIDTH / START_WIDTH, 4.0 / ITERATIONS);
+        double expected = START_WIDTH;
+        for (int i = 0; i < ITERATIONS / 4 - 1; i++) {
+            expected *= decay;
+            assertEquals(train(0.5), expected, MAXIMUM_DIFFERENCE);
+        }
+        assertTrue(expected > END_WIDTH);
+        assertEquals(train(0.5), END_WIDTH, MAXIMUM_DIFFERENCE);
+
+        for (int i = 0; i < ITERATIONS; i++) {
+            assertTrue(train(0.5) >= END_WIDTH, "Should not shrink past the final width.");
+        }
+    }
+
+    @Test
+    public void testPausesWhileErrorRises() {
+        double held = train(0.1);
+        assertTrue(held < START_WIDTH);
+        for (int i = 1; i < 100; i++) {
+            assertEquals(train(0.1 + i / 100.0), held, MAXIMUM_DIFFERENCE,
+                    "Should not shrink while the error rises.");
+        }
+
+        // Once the fast average falls back under the slow one, shrinking
+        // resumes.
+        double width = held;
+        for (int i = 0; i < 100 && width == held; i++) {
+            width = train(0.0);
+        }
+        assertTrue(width < held, "Should shrink again once the error falls.");
+    }
+
+    @Test
+    public void testShrinkRateFollowsExpectedIterations() {
+        anwf.setExpectedIterations(ITERATIONS / 10);
+        for (int i = 0; i < ITERATIONS / 40; i++) {
+            train(0.5);
+        }
+        assertEquals(anwf.neighborhoodWidth(step), END_WIDTH, MAXIMUM_DIFFERENCE);
+    }
+
+    @Test
+    public void testIgnoresIteration() {
+        double width = train(0.5);
+        assertEquals(anwf.neighborhoodWidth(0), width, MAXIMUM_DIFFERENCE);
+        assertEquals(anwf.neighborhoodWidth(ITERATIONS * 10), width,
+                MAXIMUM_DIFFERENCE);
+    }
+
+    @Test(expectedExceptions = SOMError.class)
+    public void testFinalWidthMustBePositive() {
+        new AdaptiveNeighborhoodWidthFunction(START_WIDTH, 0.0);
+    }
+
+    @Test(expectedExceptions = SOMError.class)
+    public void testFinalWidthCannotExceedInitialWidth() {
+        new AdaptiveNeighborhoodWidthFunction(END_WIDTH, START_WIDTH);
+    }
+
+    @Test
+    public void testParse() {
+        AdaptiveNeighborhoodWidthFunction parsed =
+                new AdaptiveNeighborhoodWidthFunction("10.0 1.0");
+        assertEquals(parsed.toString(), anwf.toString());
+    }
+
+    @Test(expectedExceptions = SOMError.class)
+    public void testParsedWidthsAreChecked() {
+        new AdaptiveNeighborhoodWidthFunction("1.0 10.0");
+    }
+
+    @Test(expectedExceptions = SOMError.class)
+    public void testParseNeedsBothWidths() {
+        new AdaptiveNeighborhoodWidthFunction("10.0");
+    }
+}
@@ -0,0 +1,107 @@
+package cs437.som.network;
+
+import cs437.som.Dimension;
+import cs437.som.distancemetrics.ManhattanDistanceMetric;
+import cs437.som.topology.SkewHexagonalGrid;
+import cs437.som.util.FileReader;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.util.Random;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class BinaryMapFileTest {
+    static final int INPUT_LENGTH = 5;
+
+    private File file;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        file = File.createTempFile("som", ".somb");
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        file.delete();
+    }
+
+    static String text(NetworkBase map) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        map.write(new OutputStreamWriter(bytes, "UTF-8"));
+        return bytes.toString("UTF-8");
+    }
+
+    private static NetworkBase fromText(String text) throws Exception {
+        return (NetworkBase) FileReader.read(new BufferedReader(new StringReader(text)));
+    }
+
+    private static void train(NetworkBase map, long seed) {
+        Random random = new Random(seed);
+        double[] input = new double[INPUT_LENGTH];
+        for (int t = 0; t < 200; t++) {
+            for (int i = 0; i < INPUT_LENGTH; i++) {
+                input[i] = random.nextGaussian();
+            }
+            map.trainWith(input);
+        }
+    }
+
+    /**
+     * Create a trained basic map and a trained CustomizableSOM with a
+     * different metric and grid.  MappedSOMTest maps the same pair.
+     */
+    static NetworkBase[] maps() {
+        BasicSquareGridSOM basic = new BasicSquareGridSOM(new Dimension(9, 7),
+                INPUT_LENGTH, 500);
+        CustomizableSOM custom = new CustomizableSOM(new Dimension(11, 6),
+                INPUT_LENGTH, 500);
+        custom.setDistanceMetricStrategy(new ManhattanDistanceMetric());
+        custom.setGridTypeStrategy(new SkewHexagonalGrid());
+        train(basic, 1L);
+        train(custom, 2L);
+        return new NetworkBase[]{basic, custom};
+    }
+
+    private static void assertSameWeights(NetworkBase actual, NetworkBase expected) {
+        assertEquals(actual.getClass(), expected.getClass());
+        assertEquals(actual.gridSize.x, expected.gridSize.x);
+        assertEquals(actual.gridSize.y, expected.gridSize.y);
+        for (int neuron = 0; neuron < expected.neuronCount; neuron++) {
+            assertEquals(actual.weightMatrix[neuron], expected.weightMatrix[neuron]);
+        }
+    }
+
+    @Test
+    public void testBinaryRoundTrip() throws Exception {
+        for (NetworkBase map : maps()) {
+            BinaryMapFile.write(map, file);
+            assertTrue(BinaryMapFile.isBinaryMapFile(file));
+            NetworkBase read = BinaryMapFile.read(file);
+            assertSameWeights(read, map);
+            assertEquals(read.time, map.time);
+            assertEquals(text(read), text(map));
+        }
+    }
+
+    @Test
+    public void testTextToBinaryToText() throws Exception {
+        for (NetworkBase map : maps()) {
+            String original = text(map);
+            NetworkBase fromText = fromText(original);
+            assertSameWeights(fromText, map);
+
+            BinaryMapFile.write(fromText, file);
+            String again = text(BinaryMapFile.read(file));
+            assertEquals(again, original);
+            assertSameWeights(fromText(again), map);
+        }
+    }
+}
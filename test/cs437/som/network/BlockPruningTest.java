@@ -0,0 +1,189 @@
+package cs437.som.network;
+
+import cs437.som.Dimension;
+import cs437.som.DistanceMetric;
+import cs437.som.distancemetrics.ChebyshevDistanceMetric;
+import cs437.som.distancemetrics.EuclideanDistanceMetric;
+import cs437.som.distancemetrics.ManhattanDistanceMetric;
+import org.testng.annotations.Test;
+
+import java.lang.reflect.Field;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.testng.Assert.assertEquals;
+
+public class BlockPruningTest {
+    private static final int ITERATIONS = 1500;
+    private static final long SEED = 42L;
+
+    /**
+     * Create a pair of maps with the same weights and tie-breaking, one
+     * skipping blocks and one searching every neuron.
+     */
+    private static CustomizableSOM[] pair(Dimension grid, int inputLength,
+                                          DistanceMetric metric, boolean coarse)
+            throws Exception {
+        CustomizableSOM pruned = new CustomizableSOM(grid, inputLength, ITERATIONS);
+        CustomizableSOM plain = new CustomizableSOM(grid, inputLength, ITERATIONS);
+        CustomizableSOM[] maps = {pruned, plain};
+        Field random = NetworkBase.class.getDeclaredField("random");
+        random.setAccessible(true);
+        for (CustomizableSOM map : maps) {
+            map.setDistanceMetricStrategy(metric);
+            map.setComponentMajorLayout(false);
+            random.set(map, new Random(SEED));
+        }
+        pruned.setBlockPruning(true);
+
+        // Coarse weights make many exact and near ties.
+        for (int neuron = 0; neuron < pruned.neuronCount; neuron++) {
+            double[] weights = pruned.weightMatrix[neuron];
+            if (coarse) {
+                for (int i = 0; i < inputLength; i++) {
+                    weights[i] = Math.floor(weights[i] * 3) / 3;
+                }
+            }
+            plain.weightMatrix[neuron] = weights.clone();
+        }
+        pruned.detachWeights();
+        plain.detachWeights();
+        return maps;
+    }
+
+    private static void check(Dimension grid, int inputLength,
+                              DistanceMetric metric, boolean coarse)
+            throws Exception {
+        CustomizableSOM[] maps = pair(grid, inputLength, metric, coarse);
+        CustomizableSOM pruned = maps[0];
+        CustomizableSOM plain = maps[1];
+        Random random = new Random(inputLength);
+        double[] input = new double[inputLength];
+        for (int t = 0; t < ITERATIONS; t++) {
+            for (int i = 0; i < inputLength; i++) {
+                input[i] = coarse ? Math.floor(random.nextDouble() * 3) / 3
+                        : random.nextDouble();
+            }
+            if (t == ITERATIONS / 3) {
+                // Later steps copy the rows they change.
+                pruned.snapshot();
+                plain.snapshot();
+            }
+            if (t % 3 == 0) {
+                double[][] window = {input.clone(), input.clone()};
+                pruned.trainWithWindow(window, 2);
+                plain.trainWithWindow(window, 2);
+            } else {
+                pruned.trainWith(input);
+                plain.trainWith(input);
+            }
+
+            assertEquals(pruned.bestMatchDistance, plain.bestMatchDistance,
+                    "Training should choose the same best match.");
+            assertEquals(pruned.getBestMatchingNeuron(input),
+                    plain.getBestMatchingNeuron(input),
+                    "Queries should find the same best match.");
+        }
+
+        for (int neuron = 0; neuron < pruned.neuronCount; neuron++) {
+            assertEquals(pruned.weightMatrix[neuron], plain.weightMatrix[neuron],
+                    "Trained weights should be identical.");
+        }
+    }
+
+    @Test
+    public void testEuclidean() throws Exception {
+        check(new Dimension(30, 20), 3, new EuclideanDistanceMetric(), false);
+        check(new Dimension(17, 13), 5, new EuclideanDistanceMetric(), true);
+    }
+
+    @Test
+    public void testManhattan() throws Exception {
+        check(new Dimension(30, 20), 2, new ManhattanDistanceMetric(), false);
+        check(new Dimension(17, 13), 4, new ManhattanDistanceMetric(), true);
+    }
+
+    @Test
+    public void testChebyshev() throws Exception {
+        check(new Dimension(30, 20), 3, new ChebyshevDistanceMetric(), false);
+        check(new Dimension(1, 9), 2, new ChebyshevDistanceMetric(), true);
+    }
+
+    @Test
+    public void testParallelTraining() throws Exception {
+        CustomizableSOM[] maps = pair(new Dimension(64, 64), 3,
+                new EuclideanDistanceMetric(), false);
+        // Split every scan and neighborhood update across threads, so that
+        // blocks are marked stale from several threads at once.
+        maps[0].setParallelThreshold(1);
+        maps[1].setParallelThreshold(1);
+        Random random = new Random(SEED);
+        double[] input = new double[3];
+        for (int t = 0; t < 300; t++) {
+            for (int i = 0; i < input.length; i++) {
+                input[i] = random.nextDouble();
+            }
+            maps[0].trainWith(input);
+            maps[1].trainWith(input);
+            assertEquals(maps[0].getBestMatchingNeuron(input),
+                    maps[1].getBestMatchingNeuron(input));
+        }
+        for (int neuron = 0; neuron < maps[0].neuronCount; neuron++) {
+            assertEquals(maps[0].weightMatrix[neuron], maps[1].weightMatrix[neuron]);
+        }
+    }
+
+    @Test
+    public void testConcurrentQueries() throws Exception {
+        CustomizableSOM pruned = pair(new Dimension(40, 30), 3,
+                new EuclideanDistanceMetric(), false)[0];
+        CustomizableSOM components = new CustomizableSOM(new Dimension(40, 30), 3, 10);
+        components.setComponentMajorLayout(true);
+        checkConcurrentQueries(pruned);
+        checkConcurrentQueries(components);
+    }
+
+    /**
+     * Query a map from several threads at once, each query reusing its
+     * thread's scratch space, and compare with answers found one at a time.
+     */
+    private static void checkConcurrentQueries(final CustomizableSOM map)
+            throws Exception {
+        final double[][] inputs = new double[500][3];
+        final int[] expected = new int[inputs.length];
+        Random random = new Random(SEED);
+        for (int q = 0; q < inputs.length; q++) {
+            for (int i = 0; i < 3; i++) {
+                inputs[q][i] = random.nextDouble();
+            }
+            expected[q] = map.getBestMatchingNeuron(inputs[q]);
+        }
+
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final int offset = t;
+            threads[t] = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        for (int round = 0; round < 20; round++) {
+                            for (int q = offset; q < inputs.length; q++) {
+                                assertEquals(map.getBestMatchingNeuron(inputs[q]),
+                                        expected[q]);
+                            }
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+    }
+}
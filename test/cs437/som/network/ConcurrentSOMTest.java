@@ -0,0 +1,193 @@
+package cs437.som.network;
+
+import cs437.som.Dimension;
+import cs437.som.SOMError;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class ConcurrentSOMTest {
+    private static final int STEPS = 400;
+    private static final int INPUT_LENGTH = 3;
+    private static final int STRIPE_ROWS = 4;
+
+    /**
+     * The result of one query made while the map trained, with the range of
+     * training steps it may have seen.
+     */
+    private static class Query {
+        final double[] input;
+        final double[] distances;
+        final int bestMatch;
+        final int firstState;
+        final int lastState;
+
+        Query(double[] input, double[] distances, int bestMatch,
+              int firstState, int lastState) {
+            this.input = input;
+            this.distances = distances;
+            this.bestMatch = bestMatch;
+            this.firstState = firstState;
+            this.lastState = lastState;
+        }
+    }
+
+    private static double[][] copy(double[][] weights) {
+        double[][] copy = new double[weights.length][];
+        for (int neuron = 0; neuron < weights.length; neuron++) {
+            copy[neuron] = weights[neuron].clone();
+        }
+        return copy;
+    }
+
+    @Test
+    public void testQueriesSeeConsistentStripes() throws Exception {
+        final ConcurrentSOM map = new ConcurrentSOM(new Dimension(16, 12),
+                INPUT_LENGTH, STEPS, STRIPE_ROWS);
+        // Every weight state the map passes through between training steps.
+        final double[][][] states = new double[STEPS + 1][][];
+        states[0] = copy(map.weightMatrix);
+        final AtomicInteger recorded = new AtomicInteger(1);
+
+        Thread trainer = new Thread(new Runnable() {
+            public void run() {
+                Random random = new Random(1L);
+                double[] input = new double[INPUT_LENGTH];
+                for (int t = 1; t <= STEPS; t++) {
+                    for (int i = 0; i < INPUT_LENGTH; i++) {
+                        input[i] = random.nextDouble();
+                    }
+                    map.trainWith(input);
+                    // Only this thread writes the weights, so it can read
+                    // them between steps.
+                    states[t] = copy(map.weightMatrix);
+                    recorded.set(t + 1);
+                    Thread.yield();
+                }
+            }
+        });
+
+        List<Query> queries = new ArrayList<Query>();
+        Random random = new Random(2L);
+        trainer.start();
+        while (trainer.isAlive() || queries.isEmpty()) {
+            double[] input = new double[INPUT_LENGTH];
+            for (int i = 0; i < INPUT_LENGTH; i++) {
+                input[i] = random.nextDouble();
+            }
+            // The map is in a state at least this late once the query
+            // starts, and at most one step past the last one recorded when
+            // it ends.
+            int first = recorded.get() - 1;
+            double[] distances = map.distancesToInput(input, null);
+            int bestMatch = map.getBestMatchingNeuron(input);
+            int last = Math.min(STEPS, recorded.get());
+            queries.add(new Query(input, distances, bestMatch, first, last));
+        }
+        trainer.join();
+
+        SOMKernel kernel = map.kernel();
+        int stripeNeurons = STRIPE_ROWS * map.gridSize.x;
+        for (Query query : queries) {
+            for (int from = 0; from < map.neuronCount; from += stripeNeurons) {
+                int to = Math.min(map.neuronCount, from + stripeNeurons);
+                assertTrue(matchesSomeState(kernel, states, query, from, to),
+                        "Stripe at " + from + " should match a state between steps "
+                                + query.firstState + " and " + query.lastState);
+                if (query.bestMatch >= from && query.bestMatch < to) {
+                    assertTrue(bestInSomeState(kernel, states, query, from, to),
+                            "Best match " + query.bestMatch
+                                    + " should be the best of its stripe in some state.");
+                }
+            }
+        }
+    }
+
+    private static boolean matchesSomeState(SOMKernel kernel, double[][][] states,
+                                            Query query, int from, int to) {
+        for (int state = query.firstState; state <= query.lastState; state++) {
+            boolean matches = true;
+            for (int neuron = from; neuron < to && matches; neuron++) {
+                matches = kernel.distance(states[state][neuron], query.input)
+                        == query.distances[neuron];
+            }
+            if (matches) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean bestInSomeState(SOMKernel kernel, double[][][] states,
+                                           Query query, int from, int to) {
+        for (int state = query.firstState; state <= query.lastState; state++) {
+            int best = from;
+            double lowest = kernel.distance(states[state][from], query.input);
+            for (int neuron = from + 1; neuron < to; neuron++) {
+                double distance = kernel.distance(states[state][neuron], query.input);
+                if (distance < lowest) {
+                    lowest = distance;
+                    best = neuron;
+                }
+            }
+            if (best == query.bestMatch) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Test
+    public void testComponentMajorLayoutOff() {
+        // Short inputs would choose the component-major layout by default.
+        ConcurrentSOM map = new ConcurrentSOM(new Dimension(8, 8), 2, 100);
+        assertFalse(map.isComponentMajorLayout());
+        map.setComponentMajorLayout(false);
+        assertFalse(map.isComponentMajorLayout());
+    }
+
+    @Test(expectedExceptions = SOMError.class)
+    public void testComponentMajorLayoutRejected() {
+        ConcurrentSOM map = new ConcurrentSOM(new Dimension(8, 8), 2, 100);
+        map.setComponentMajorLayout(true);
+    }
+
+    @Test
+    public void testTrainsLikeCustomizableSOM() throws Exception {
+        ConcurrentSOM concurrent = new ConcurrentSOM(new Dimension(10, 10),
+                INPUT_LENGTH, STEPS, 3);
+        CustomizableSOM plain = new CustomizableSOM(new Dimension(10, 10),
+                INPUT_LENGTH, STEPS);
+        plain.setComponentMajorLayout(false);
+        for (int neuron = 0; neuron < plain.neuronCount; neuron++) {
+            plain.weightMatrix[neuron] = concurrent.weightMatrix[neuron].clone();
+        }
+        plain.detachWeights();
+        java.lang.reflect.Field field = NetworkBase.class.getDeclaredField("random");
+        field.setAccessible(true);
+        field.set(concurrent, new Random(5L));
+        field.set(plain, new Random(5L));
+
+        Random random = new Random(3L);
+        double[] input = new double[INPUT_LENGTH];
+        for (int t = 0; t < STEPS; t++) {
+            for (int i = 0; i < INPUT_LENGTH; i++) {
+                input[i] = random.nextDouble();
+            }
+            concurrent.trainWith(input);
+            plain.trainWith(input);
+            assertEquals(concurrent.getBestMatchingNeuron(input),
+                    plain.getBestMatchingNeuron(input));
+        }
+        for (int neuron = 0; neuron < plain.neuronCount; neuron++) {
+            assertEquals(concurrent.weightMatrix[neuron], plain.weightMatrix[neuron]);
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package cs437.som.network;
+
+import cs437.som.Dimension;
+import cs437.som.GridType;
+import cs437.som.SOMError;
+import cs437.som.topology.OffsetHexagonalGrid;
+import cs437.som.topology.SkewHexagonalGrid;
+import cs437.som.topology.ToroidalEuclideanSquare;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+
+public class GridUpsamplerTest {
+    private static final double MAXIMUM_DIFFERENCE = 0.0000000001;
+
+    private static CustomizableSOM createMap(Dimension size, GridType grid) {
+        CustomizableSOM map = new CustomizableSOM(size, 2, 100);
+        map.setGridTypeStrategy(grid);
+        return map;
+    }
+
+    /**
+     * Give every neuron its own column and physical row as weights.  On an
+     * offset hexagonal grid, odd columns sit half a row lower.
+     */
+    private static void setPositions(NetworkBase map, boolean offset) {
+        Dimension size = map.gridSize;
+        for (int row = 0; row < size.y; row++) {
+            for (int col = 0; col < size.x; col++) {
+                double shift = offset ? 0.5 * (col & 1) : 0.0;
+                map.weightMatrix[row * size.x + col] = new double[] {col, row + shift};
+            }
+        }
+    }
+
+    /**
+     * The position of a cell center of the larger grid in the smaller one.
+     */
+    private static double center(double position, int toCells, int fromCells) {
+        return (position + 0.5) * fromCells / toCells - 0.5;
+    }
+
+    private static double clamp(double value, int max) {
+        return Math.max(0.0, Math.min(value, max));
+    }
+
+    private static void assertWeights(NetworkBase map, int col, int row,
+                                      double x, double y) {
+        double[] weights = map.weightMatrix[row * map.gridSize.x + col];
+        assertEquals(weights[0], x, MAXIMUM_DIFFERENCE, "x of " + col + ", " + row);
+        assertEquals(weights[1], y, MAXIMUM_DIFFERENCE, "y of " + col + ", " + row);
+    }
+
+    @Test
+    public void testSquareGridAlignsCellCenters() {
+        Dimension from = new Dimension(3, 4);
+        Dimension to = new Dimension(6, 8);
+        CustomizableSOM source = new CustomizableSOM(from, 2, 100);
+        CustomizableSOM destination = new CustomizableSOM(to, 2, 100);
+        setPositions(source, false);
+
+        GridUpsampler.upsample(source, destination);
+        for (int row = 0; row < to.y; row++) {
+            for (int col = 0; col < to.x; col++) {
+                assertWeights(destination, col, row,
+                        clamp(center(col, to.x, from.x), from.x - 1),
+                        clamp(center(row, to.y, from.y), from.y - 1));
+            }
+        }
+    }
+
+    @Test
+    public void testSameSizeIsIdentity() {
+        Dimension size = new Dimension(4, 4);
+        CustomizableSOM square = new CustomizableSOM(size, 2, 100);
+        CustomizableSOM toroidal = createMap(size, new ToroidalEuclideanSquare());
+        CustomizableSOM hexagonal = createMap(size, new OffsetHexagonalGrid());
+        CustomizableSOM[] maps = {square, toroidal, hexagonal};
+
+        for (CustomizableSOM map : maps) {
+            boolean offset = map == hexagonal;
+            setPositions(map, offset);
+            CustomizableSOM copy = createMap(size, map.getGridType());
+            GridUpsampler.upsample(map, copy);
+            for (int row = 0; row < size.y; row++) {
+                for (int col = 0; col < size.x; col++) {
+                    assertWeights(copy, col, row, col, row + (offset ? 0.5 * (col & 1) : 0.0));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testToroidalGridWraps() {
+        CustomizableSOM source = createMap(new Dimension(4, 4), new ToroidalEuclideanSquare());
+        CustomizableSOM destination = createMap(new Dimension(8, 8), new ToroidalEuclideanSquare());
+        setPositions(source, false);
+
+        // The first cell's center lies a quarter of a source cell before the
+        // first column, so it takes a quarter of the last column, and the
+        // last cell's center takes a quarter of the first column.
+        GridUpsampler.upsample(source, destination);
+        assertWeights(destination, 0, 0, 0.25 * 3.0, 0.25 * 3.0);
+        assertWeights(destination, 1, 2, 0.25, 0.75);
+        assertWeights(destination, 7, 7, 0.75 * 3.0, 0.75 * 3.0);
+    }
+
+    @Test
+    public void testOffsetHexagonalGridFollowsPhysicalRows() {
+        Dimension from = new Dimension(4, 4);
+        Dimension to = new Dimension(8, 8);
+        CustomizableSOM source = createMap(from, new OffsetHexagonalGrid());
+        CustomizableSOM destination = createMap(to, new OffsetHexagonalGrid());
+        setPositions(source, true);
+
+        // Away from the edges, a field linear in physical space is
+        // reproduced at each neuron's physical position.
+        GridUpsampler.upsample(source, destination);
+        for (int row = 2; row < to.y - 2; row++) {
+            for (int col = 1; col < to.x - 1; col++) {
+                assertWeights(destination, col, row, center(col, to.x, from.x),
+                        center(row + 0.5 * (col & 1), to.y, from.y));
+            }
+        }
+    }
+
+    @Test
+    public void testSkewHexagonalGridsInterpolateAsSquareGrids() {
+        Dimension from = new Dimension(3, 3);
+        Dimension to = new Dimension(5, 7);
+        CustomizableSOM square = new CustomizableSOM(from, 2, 100);
+        CustomizableSOM skew = createMap(from, new SkewHexagonalGrid());
+        BasicHexGridSOM basic = new BasicHexGridSOM(from, 2, 100);
+        setPositions(square, false);
+        setPositions(skew, false);
+        setPositions(basic, false);
+
+        CustomizableSOM expected = new CustomizableSOM(to, 2, 100);
+        CustomizableSOM skewed = createMap(to, new SkewHexagonalGrid());
+        BasicHexGridSOM basicLarge = new BasicHexGridSOM(to, 2, 100);
+        GridUpsampler.upsample(square, expected);
+        GridUpsampler.upsample(skew, skewed);
+        GridUpsampler.upsample(basic, basicLarge);
+        for (int neuron = 0; neuron < expected.neuronCount; neuron++) {
+            assertEquals(skewed.weightMatrix[neuron], expected.weightMatrix[neuron]);
+            assertEquals(basicLarge.weightMatrix[neuron], expected.weightMatrix[neuron]);
+        }
+    }
+
+    @Test(expectedExceptions = SOMError.class,
+            expectedExceptionsMessageRegExp = "Cannot upsample a map on grid.*")
+    public void testRejectsUnsupportedGrid() {
+        GridUpsampler.upsample(new BasicPlanarSOM(9, 2, 100),
+                new CustomizableSOM(new Dimension(6, 6), 2, 100));
+    }
+
+    @Test(expectedExceptions = SOMError.class,
+            expectedExceptionsMessageRegExp = "Cannot upsample between different kinds of grid.")
+    public void testRejectsDifferentGrids() {
+        GridUpsampler.upsample(new CustomizableSOM(new Dimension(3, 3), 2, 100),
+                createMap(new Dimension(6, 6), new ToroidalEuclideanSquare()));
+    }
+
+    @Test(expectedExceptions = SOMError.class,
+            expectedExceptionsMessageRegExp = "Cannot upsample between maps with different input lengths.")
+    public void testRejectsDifferentInputLengths() {
+        GridUpsampler.upsample(new CustomizableSOM(new Dimension(3, 3), 2, 100),
+                new CustomizableSOM(new Dimension(6, 6), 3, 100));
+    }
+}
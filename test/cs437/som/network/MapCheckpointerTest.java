@@ -0,0 +1,107 @@
+package cs437.som.network;
+
+import cs437.som.Dimension;
+import cs437.som.learningrate.AdaptiveLearningRateFunction;
+import cs437.som.neighborhood.AdaptiveNeighborhoodWidthFunction;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.util.Random;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class MapCheckpointerTest {
+    private static final int ITERATIONS = 600;
+    private static final int CHECKPOINT_AT = 250;
+    private static final int INPUT_LENGTH = 3;
+
+    private File file;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        file = File.createTempFile("som", ".ckpt");
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        file.delete();
+    }
+
+    private static double[][] data(long seed) {
+        Random random = new Random(seed);
+        double[][] data = new double[ITERATIONS][INPUT_LENGTH];
+        for (double[] vector : data) {
+            for (int i = 0; i < INPUT_LENGTH; i++) {
+                // Coarse values make ties, which are broken at random.
+                vector[i] = Math.floor(random.nextDouble() * 4) / 4;
+            }
+        }
+        return data;
+    }
+
+    private static CustomizableSOM createMap() {
+        CustomizableSOM map = new CustomizableSOM(new Dimension(12, 9),
+                INPUT_LENGTH, ITERATIONS);
+        // Strategies whose state depends on the errors seen so far.
+        map.setLearningRateFunctionStrategy(
+                new AdaptiveLearningRateFunction(0.5, 0.01));
+        map.setNeighborhoodWidthFunctionStrategy(
+                new AdaptiveNeighborhoodWidthFunction(6.0, 0.5));
+        return map;
+    }
+
+    private static void assertSameWeights(NetworkBase actual, NetworkBase expected) {
+        assertEquals(actual.neuronCount, expected.neuronCount);
+        for (int neuron = 0; neuron < expected.neuronCount; neuron++) {
+            assertEquals(actual.weightMatrix[neuron], expected.weightMatrix[neuron],
+                    "Neuron " + neuron + " should have the same weights.");
+        }
+    }
+
+    @Test
+    public void testResumeContinuesIdentically() throws Exception {
+        double[][] data = data(7L);
+        CustomizableSOM map = createMap();
+        map.setBlockPruning(true);
+        MapCheckpointer checkpointer = new MapCheckpointer(map, file, 100);
+        for (int t = 0; t < CHECKPOINT_AT; t++) {
+            checkpointer.trainWith(data[t]);
+        }
+        checkpointer.checkpoint();
+        checkpointer.close();
+        assertTrue(checkpointer.getCheckpointsWritten() >= 1);
+
+        NetworkBase resumed = MapCheckpointer.resume(file);
+        assertEquals(resumed.getClass(), CustomizableSOM.class);
+        assertEquals(resumed.time, CHECKPOINT_AT);
+        assertTrue(resumed.isBlockPruning());
+        assertSameWeights(resumed, map);
+
+        for (int t = CHECKPOINT_AT; t < ITERATIONS; t++) {
+            map.trainWith(data[t]);
+            resumed.trainWith(data[t]);
+        }
+        assertEquals(resumed.time, map.time);
+        assertSameWeights(resumed, map);
+    }
+
+    @Test
+    public void testLatestCheckpointWins() throws Exception {
+        double[][] data = data(11L);
+        CustomizableSOM map = createMap();
+        MapCheckpointer checkpointer = new MapCheckpointer(map, file, 10);
+        for (int t = 0; t < CHECKPOINT_AT; t++) {
+            checkpointer.trainWith(data[t]);
+        }
+        checkpointer.close();
+
+        // Checkpoints may be dropped while the writer is busy, but the last
+        // one taken is always written.
+        NetworkBase resumed = MapCheckpointer.resume(file);
+        assertEquals(resumed.time, CHECKPOINT_AT);
+        assertSameWeights(resumed, map);
+    }
+}
@@ -0,0 +1,56 @@
+package cs437.som.network;
+
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.OutputStreamWriter;
+import java.util.Random;
+
+import static cs437.som.network.BinaryMapFileTest.INPUT_LENGTH;
+import static org.testng.Assert.assertEquals;
+
+public class MappedSOMTest {
+
+    @Test
+    public void testBinaryToMapped() throws Exception {
+        File file = File.createTempFile("som", ".somb");
+        try {
+            Random random = new Random(3L);
+            for (NetworkBase map : BinaryMapFileTest.maps()) {
+                BinaryMapFile.write(map, file);
+                // Small segments put neurons of one search in several mappings.
+                check(new MappedSOM(file), map, random);
+                check(new MappedSOM(file, INPUT_LENGTH * 8 * 4), map, random);
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    private static void check(MappedSOM view, NetworkBase map, Random random)
+            throws Exception {
+        assertEquals(view.getNeuronCount(), map.neuronCount);
+        assertEquals(view.getInputLength(), map.inputVectorSize);
+        for (int neuron = 0; neuron < map.neuronCount; neuron++) {
+            for (int i = 0; i < INPUT_LENGTH; i++) {
+                assertEquals(view.getWeight(neuron, i), map.getWeight(neuron, i));
+            }
+        }
+
+        double[] input = new double[INPUT_LENGTH];
+        for (int t = 0; t < 100; t++) {
+            for (int i = 0; i < INPUT_LENGTH; i++) {
+                input[i] = random.nextGaussian();
+            }
+            assertEquals(view.getBestMatchingNeuron(input),
+                    map.getBestMatchingNeuron(input));
+            assertEquals(view.distancesToInput(input, null),
+                    map.distancesToInput(input, null));
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        view.write(new OutputStreamWriter(bytes, "UTF-8"));
+        assertEquals(bytes.toString("UTF-8"), BinaryMapFileTest.text(map));
+    }
+}
@@ -0,0 +1,170 @@
+package cs437.som.network;
+
+import cs437.som.Dimension;
+import cs437.som.SOMExecutionContext;
+import cs437.som.SelfOrganizingMap;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.OutputStreamWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class PagedSOMTest {
+    private static final Dimension GRID = new Dimension(23, 17);
+    private static final int INPUT_LENGTH = 4;
+    private static final int ITERATIONS = 1200;
+    private static final int TILE_SIDE = 4;
+    private static final long TILE_BYTES = TILE_SIDE * TILE_SIDE * INPUT_LENGTH * 8;
+
+    private File file;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        file = File.createTempFile("som", ".somp");
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        file.delete();
+        new File(file.getPath() + ".snapshot").delete();
+    }
+
+    /**
+     * A basic map that, like a PagedSOM, gives ties to the lowest index
+     * during training instead of choosing among them at random.
+     */
+    private static BasicSquareGridSOM inMemoryCopy(PagedSOM paged) {
+        BasicSquareGridSOM map = new BasicSquareGridSOM(GRID, INPUT_LENGTH, ITERATIONS) {
+            @Override
+            protected int getBMUDuringTraining(double[] input) {
+                return getBestMatchingNeuron(input);
+            }
+        };
+        for (int neuron = 0; neuron < map.neuronCount; neuron++) {
+            paged.copyWeights(neuron, map.weightMatrix[neuron]);
+        }
+        map.detachWeights();
+        return map;
+    }
+
+    private static String text(SelfOrganizingMap map) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        map.write(new OutputStreamWriter(bytes, "UTF-8"));
+        return bytes.toString("UTF-8");
+    }
+
+    private void trainAlongside(long cacheBytes, boolean evicts) throws Exception {
+        PagedSOM paged = new PagedSOM(GRID, INPUT_LENGTH, ITERATIONS, file,
+                cacheBytes, TILE_SIDE);
+        BasicSquareGridSOM memory = inMemoryCopy(paged);
+        Random random = new Random(cacheBytes);
+        double[] input = new double[INPUT_LENGTH];
+        int[] pagedBest = new int[5];
+        int[] memoryBest = new int[5];
+        double[] pagedDistances = new double[5];
+        double[] memoryDistances = new double[5];
+        try {
+            for (int t = 0; t < ITERATIONS; t++) {
+                for (int i = 0; i < INPUT_LENGTH; i++) {
+                    input[i] = random.nextDouble();
+                }
+                if (t == ITERATIONS / 2) {
+                    // Every tile must survive being closed and reopened.
+                    paged.close();
+                    paged = PagedSOM.open(file, cacheBytes);
+                    assertEquals(paged.getTime(), t);
+                }
+
+                assertEquals(paged.getBestMatchingNeuron(input),
+                        memory.getBestMatchingNeuron(input), "Iteration " + t);
+                paged.trainWith(input);
+                memory.trainWith(input);
+
+                if (t % 100 == 0) {
+                    paged.getBestMatchingNeurons(input, 5, pagedBest, pagedDistances);
+                    memory.getBestMatchingNeurons(input, 5, memoryBest, memoryDistances);
+                    assertEquals(pagedBest, memoryBest);
+                    assertEquals(pagedDistances, memoryDistances);
+                    assertEquals(paged.distancesToInput(input, null),
+                            memory.distancesToInput(input, null));
+                    assertEquals(paged.getWeightComponent(1, null),
+                            memory.getWeightComponent(1, null));
+                }
+            }
+
+            double[] row = new double[INPUT_LENGTH];
+            for (int neuron = 0; neuron < memory.neuronCount; neuron++) {
+                paged.copyWeights(neuron, row);
+                assertEquals(row, memory.weightMatrix[neuron], "Neuron " + neuron);
+            }
+            assertEquals(text(paged), text(memory));
+            assertEquals(text(paged.snapshot()), text(memory));
+            assertEquals(paged.getTileWrites() > 0, evicts);
+        } finally {
+            paged.close();
+        }
+    }
+
+    @Test
+    public void testTrainsLikeInMemoryMapWithEviction() throws Exception {
+        // Two tiles resident out of 30, so nearly every step evicts.
+        trainAlongside(2 * TILE_BYTES, true);
+    }
+
+    @Test
+    public void testTrainsLikeInMemoryMapWithoutEviction() throws Exception {
+        trainAlongside(1 << 24, false);
+    }
+
+    @Test
+    public void testEvictedTilesAreWrittenBack() throws Exception {
+        int tiles = 12;
+        int tileDoubles = 8;
+        long dataOffset = 64;
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        channel.write(ByteBuffer.allocate((int) dataOffset + tiles * tileDoubles * 8), 0);
+        PagedWeightStore store = new PagedWeightStore(channel, dataOffset, tileDoubles,
+                3 * tileDoubles * 8, SOMExecutionContext.getDefault());
+        assertEquals(store.getCapacity(), 3);
+
+        // Change random tiles, checking every fetch against a copy kept in
+        // memory, so tiles come back from the write queue and from the file.
+        double[][] expected = new double[tiles][tileDoubles];
+        Random random = new Random(1L);
+        for (int operation = 0; operation < 20000; operation++) {
+            int index = random.nextInt(tiles);
+            PagedWeightStore.Tile tile = store.tile(index);
+            assertEquals(tile.weights, expected[index], "Operation " + operation);
+            if (random.nextBoolean()) {
+                int i = random.nextInt(tileDoubles);
+                tile.weights[i] += 1.0;
+                expected[index][i] += 1.0;
+                tile.dirty = true;
+            }
+        }
+        assertTrue(store.getWrites() > 0);
+        assertTrue(store.getReads() > 0);
+        store.close();
+
+        // A fresh store reads every tile from the file.
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        store = new PagedWeightStore(channel, dataOffset, tileDoubles,
+                tiles * tileDoubles * 8, SOMExecutionContext.getDefault());
+        for (int index = 0; index < tiles; index++) {
+            assertEquals(store.tile(index).weights, expected[index], "Tile " + index);
+        }
+        assertEquals(store.getReads(), tiles);
+        store.close();
+    }
+}
@@ -0,0 +1,92 @@
+package cs437.som.network;
+
+import cs437.som.Dimension;
+import cs437.som.SOMExecutionContext;
+import org.testng.annotations.Test;
+
+import java.lang.reflect.Field;
+import java.util.Random;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class ParallelUpdateTest {
+    private static final Dimension GRID = new Dimension(32, 24);
+    private static final int INPUT_LENGTH = 3;
+    private static final int ITERATIONS = 400;
+    private static final long SEED = 42L;
+
+    /**
+     * Create maps with the same weights and tie-breaking.
+     */
+    private static CustomizableSOM[] create(int count) throws Exception {
+        Field random = NetworkBase.class.getDeclaredField("random");
+        random.setAccessible(true);
+        CustomizableSOM[] maps = new CustomizableSOM[count];
+        for (int m = 0; m < count; m++) {
+            maps[m] = new CustomizableSOM(GRID, INPUT_LENGTH, ITERATIONS);
+            maps[m].setComponentMajorLayout(false);
+            random.set(maps[m], new Random(SEED));
+            if (m > 0) {
+                for (int neuron = 0; neuron < maps[0].neuronCount; neuron++) {
+                    maps[m].weightMatrix[neuron] = maps[0].weightMatrix[neuron].clone();
+                }
+            }
+        }
+        return maps;
+    }
+
+    @Test
+    public void testParallelUpdatesMatchSerialUpdates() throws Exception {
+        CustomizableSOM[] maps = create(4);
+        CustomizableSOM serial = maps[0];
+        serial.setExecutionContext(SOMExecutionContext.sequential());
+        serial.setParallelUpdateWidth(Double.POSITIVE_INFINITY);
+
+        // The other maps split every scan and every neighborhood update, so
+        // the stale flags of the component-major copy and the block bounds
+        // are set from several threads at once.
+        maps[2].setComponentMajorLayout(true);
+        maps[3].setBlockPruning(true);
+        SOMExecutionContext context = new SOMExecutionContext(4);
+        try {
+            for (int m = 1; m < maps.length; m++) {
+                maps[m].setExecutionContext(context);
+                maps[m].setParallelThreshold(1);
+                maps[m].setParallelUpdateWidth(0.0);
+                assertTrue(maps[m].isParallelScan());
+            }
+
+            Random random = new Random(SEED);
+            double[] input = new double[INPUT_LENGTH];
+            double[] query = new double[INPUT_LENGTH];
+            for (int t = 0; t < ITERATIONS; t++) {
+                for (int i = 0; i < INPUT_LENGTH; i++) {
+                    input[i] = random.nextDouble();
+                    query[i] = random.nextDouble();
+                }
+                for (CustomizableSOM map : maps) {
+                    map.trainWith(input);
+                }
+
+                // Queries read the component-major copy and the block
+                // bounds, which must have been refreshed for every neuron
+                // the parallel update changed.
+                int expected = serial.getBestMatchingNeuron(query);
+                for (int m = 1; m < maps.length; m++) {
+                    assertEquals(maps[m].getBestMatchingNeuron(query), expected,
+                            "Map " + m + " at step " + t);
+                }
+            }
+
+            for (int m = 1; m < maps.length; m++) {
+                for (int neuron = 0; neuron < serial.neuronCount; neuron++) {
+                    assertEquals(maps[m].weightMatrix[neuron], serial.weightMatrix[neuron],
+                            "Neuron " + neuron + " of map " + m);
+                }
+            }
+        } finally {
+            context.shutdown();
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package cs437.som.network;
+
+import cs437.som.Dimension;
+import cs437.som.DistanceMetric;
+import cs437.som.NeighborhoodMembershipFunction;
+import cs437.som.distancemetrics.EuclideanDistanceMetric;
+import cs437.som.distancemetrics.ManhattanDistanceMetric;
+import cs437.som.membership.LinearNeighborhoodMembershipFunction;
+import cs437.som.topology.SkewHexagonalGrid;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.WeakReference;
+
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+
+public class SOMKernelTest {
+
+    /**
+     * A metric loaded by a throwaway class loader.
+     */
+    public static class LoadedMetric implements DistanceMetric {
+        private static final long serialVersionUID = 1L;
+
+        public double distance(double[] v0, double[] v1) {
+            double sum = 0.0;
+            for (int i = 0; i < v0.length; i++) {
+                sum += Math.abs(v0[i] - v1[i]);
+            }
+            return sum;
+        }
+    }
+
+    /**
+     * A membership function loaded by a throwaway class loader.
+     */
+    public static class LoadedMembership implements NeighborhoodMembershipFunction {
+        private static final long serialVersionUID = 1L;
+
+        public double neighborhoodMembership(double distance, double width) {
+            return distance <= width ? 1.0 : 0.0;
+        }
+    }
+
+    /**
+     * Loads the classes above itself rather than asking its parent, so that
+     * the classes it defines belong to it alone.
+     */
+    private static class StrategyLoader extends ClassLoader {
+        StrategyLoader() {
+            super(SOMKernelTest.class.getClassLoader());
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve)
+                throws ClassNotFoundException {
+            if (!name.equals(LoadedMetric.class.getName())
+                    && !name.equals(LoadedMembership.class.getName())) {
+                return super.loadClass(name, resolve);
+            }
+            synchronized (this) {
+                Class<?> loaded = findLoadedClass(name);
+                if (loaded == null) {
+                    byte[] bytes = read(name.replace('.', '/') + ".class");
+                    loaded = defineClass(name, bytes, 0, bytes.length);
+                }
+                return loaded;
+            }
+        }
+
+        private byte[] read(String resource) throws ClassNotFoundException {
+            InputStream in = getParent().getResourceAsStream(resource);
+            if (in == null) {
+                throw new ClassNotFoundException(resource);
+            }
+            try {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                byte[] buffer = new byte[4096];
+                int count;
+                while ((count = in.read(buffer)) > 0) {
+                    out.write(buffer, 0, count);
+                }
+                in.close();
+                return out.toByteArray();
+            } catch (IOException e) {
+                throw new ClassNotFoundException(resource, e);
+            }
+        }
+    }
+
+    private static CustomizableSOM createMap(int inputLength, DistanceMetric metric) {
+        CustomizableSOM map = new CustomizableSOM(new Dimension(4, 3),
+                inputLength, 100);
+        map.setDistanceMetricStrategy(metric);
+        return map;
+    }
+
+    @Test
+    public void testKernelClassPerConfiguration() {
+        Class<?> first = createMap(3, new EuclideanDistanceMetric()).kernel().getClass();
+        assertSame(createMap(3, new EuclideanDistanceMetric()).kernel().getClass(),
+                first);
+
+        assertNotSame(createMap(4, new EuclideanDistanceMetric()).kernel().getClass(),
+                first);
+        assertNotSame(createMap(3, new ManhattanDistanceMetric()).kernel().getClass(),
+                first);
+
+        CustomizableSOM hexagonal = createMap(3, new EuclideanDistanceMetric());
+        hexagonal.setGridTypeStrategy(new SkewHexagonalGrid());
+        SOMKernel kernel = hexagonal.kernel();
+        assertNotSame(kernel.getClass(), first);
+        assertSame(kernel.gridType, hexagonal.gridType);
+
+        CustomizableSOM linear = createMap(3, new EuclideanDistanceMetric());
+        linear.setNeighborhoodMembershipFunctionStrategy(
+                new LinearNeighborhoodMembershipFunction());
+        kernel = linear.kernel();
+        assertNotSame(kernel.getClass(), first);
+        assertNotSame(kernel.getClass(), hexagonal.kernel().getClass());
+        assertSame(kernel.neighborhoodMembership, linear.neighborhoodMembership);
+    }
+
+    @Test
+    public void testMetricLoaderIsNotRetained() throws Exception {
+        assertCollected(trainWithLoaded(LoadedMetric.class));
+    }
+
+    @Test
+    public void testMembershipLoaderIsNotRetained() throws Exception {
+        assertCollected(trainWithLoaded(LoadedMembership.class));
+    }
+
+    private static void assertCollected(WeakReference<ClassLoader> loader)
+            throws InterruptedException {
+        for (int i = 0; i < 50 && loader.get() != null; i++) {
+            System.gc();
+            Thread.sleep(20);
+        }
+        assertNull(loader.get(), "The strategy's class loader should be collected.");
+    }
+
+    private static WeakReference<ClassLoader> trainWithLoaded(Class<?> strategy)
+            throws Exception {
+        ClassLoader loader = new StrategyLoader();
+        Class<?> loaded = loader.loadClass(strategy.getName());
+        assertNotSame(loaded, strategy);
+
+        CustomizableSOM map = createMap(3, new EuclideanDistanceMetric());
+        Object instance = loaded.getDeclaredConstructor().newInstance();
+        if (instance instanceof DistanceMetric) {
+            map.setDistanceMetricStrategy((DistanceMetric) instance);
+        } else {
+            map.setNeighborhoodMembershipFunctionStrategy(
+                    (NeighborhoodMembershipFunction) instance);
+        }
+        map.trainWith(new double[] {0.5, 0.25, 0.75});
+        map.getBestMatchingNeuron(new double[] {0.5, 0.25, 0.75});
+        return new WeakReference<ClassLoader>(loader);
+    }
+}
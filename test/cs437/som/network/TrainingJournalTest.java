@@ -0,0 +1,212 @@
+package cs437.som.network;
+
+import cs437.som.Dimension;
+import cs437.som.SOMError;
+import cs437.som.TrainingListener;
+import cs437.som.learningrate.AdaptiveLearningRateFunction;
+import cs437.som.neighborhood.AdaptiveNeighborhoodWidthFunction;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.testng.Assert.assertEquals;
+
+public class TrainingJournalTest {
+    private static final int ITERATIONS = 400;
+    private static final int CHECKPOINT_AT = 150;
+    private static final int INPUT_LENGTH = 3;
+    private static final int HEADER_SIZE = 16;
+    private static final int RECORD_SIZE = 16 + INPUT_LENGTH * 8;
+
+    private File journalFile;
+    private File checkpointFile;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        journalFile = File.createTempFile("som", ".somj");
+        journalFile.delete();
+        checkpointFile = File.createTempFile("som", ".ckpt");
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        journalFile.delete();
+        checkpointFile.delete();
+    }
+
+    private static double[][] data(long seed) {
+        Random random = new Random(seed);
+        double[][] data = new double[ITERATIONS][INPUT_LENGTH];
+        for (double[] vector : data) {
+            for (int i = 0; i < INPUT_LENGTH; i++) {
+                // Coarse values make ties, which are broken at random.
+                vector[i] = Math.floor(random.nextDouble() * 4) / 4;
+            }
+        }
+        return data;
+    }
+
+    private static CustomizableSOM createMap() {
+        CustomizableSOM map = new CustomizableSOM(new Dimension(10, 8),
+                INPUT_LENGTH, ITERATIONS);
+        map.setLearningRateFunctionStrategy(
+                new AdaptiveLearningRateFunction(0.5, 0.01));
+        map.setNeighborhoodWidthFunctionStrategy(
+                new AdaptiveNeighborhoodWidthFunction(5.0, 0.5));
+        return map;
+    }
+
+    /**
+     * Collects the iterations of the steps in a journal.
+     */
+    private static List<Integer> iterations(File file) throws Exception {
+        final List<Integer> iterations = new ArrayList<Integer>();
+        TrainingJournal.read(file, new TrainingListener() {
+            public void trainingStep(int iteration, double[] input, int bestMatch,
+                                     double distance) {
+                iterations.add(iteration);
+            }
+        });
+        return iterations;
+    }
+
+    @Test
+    public void testReplayAfterResume() throws Exception {
+        double[][] data = data(3L);
+        CustomizableSOM map = createMap();
+        TrainingJournal journal = new TrainingJournal(map, journalFile);
+        MapCheckpointer checkpointer = new MapCheckpointer(map, checkpointFile, 100);
+        for (int t = 0; t < CHECKPOINT_AT; t++) {
+            checkpointer.trainWith(data[t]);
+        }
+        checkpointer.checkpoint();
+        checkpointer.close();
+        for (int t = CHECKPOINT_AT; t < ITERATIONS; t++) {
+            map.trainWith(data[t]);
+        }
+        journal.close();
+        assertEquals(journal.getStepsRecorded(), ITERATIONS);
+
+        CustomizableSOM resumed = (CustomizableSOM) MapCheckpointer.resume(checkpointFile);
+        assertEquals(resumed.time, CHECKPOINT_AT);
+        assertEquals(TrainingJournal.replay(journalFile, resumed),
+                ITERATIONS - CHECKPOINT_AT);
+        assertEquals(resumed.time, ITERATIONS);
+        for (int neuron = 0; neuron < map.neuronCount; neuron++) {
+            assertEquals(resumed.weightMatrix[neuron], map.weightMatrix[neuron],
+                    "Neuron " + neuron + " should have the same weights.");
+        }
+
+        // Every recorded step has been taken.
+        assertEquals(TrainingJournal.replay(journalFile, resumed), 0);
+    }
+
+    @Test(expectedExceptions = SOMError.class,
+            expectedExceptionsMessageRegExp = "Replay diverged.*")
+    public void testReplayDetectsDivergence() throws Exception {
+        double[][] data = data(5L);
+        CustomizableSOM map = createMap();
+        CustomizableSOM other = createMap();
+        for (int neuron = 0; neuron < map.neuronCount; neuron++) {
+            other.weightMatrix[neuron] = map.weightMatrix[neuron].clone();
+        }
+        TrainingJournal journal = new TrainingJournal(map, journalFile);
+        for (double[] vector : data) {
+            map.trainWith(vector);
+        }
+        journal.close();
+
+        // Moving the first recorded best match away makes the other map
+        // pick another.
+        final int[] first = {-1};
+        TrainingJournal.read(journalFile, new TrainingListener() {
+            public void trainingStep(int iteration, double[] input, int bestMatch,
+                                     double distance) {
+                if (iteration == 0) {
+                    first[0] = bestMatch;
+                }
+            }
+        });
+        Arrays.fill(other.weightMatrix[first[0]], 100.0);
+        TrainingJournal.replay(journalFile, other);
+    }
+
+    @Test(expectedExceptions = SOMError.class,
+            expectedExceptionsMessageRegExp = ".*has no record of iteration 0")
+    public void testReplayNeedsEveryStep() throws Exception {
+        double[][] data = data(5L);
+        CustomizableSOM map = createMap();
+        map.trainWith(data[0]);
+        TrainingJournal journal = new TrainingJournal(map, journalFile);
+        map.trainWith(data[1]);
+        journal.close();
+
+        TrainingJournal.replay(journalFile, createMap());
+    }
+
+    @Test
+    public void testHitCounts() throws Exception {
+        double[][] data = data(9L);
+        CustomizableSOM map = createMap();
+        final int[] expected = new int[map.neuronCount];
+        map.addTrainingListener(new TrainingListener() {
+            public void trainingStep(int iteration, double[] input, int bestMatch,
+                                     double distance) {
+                expected[bestMatch]++;
+            }
+        });
+        TrainingJournal journal = new TrainingJournal(map, journalFile);
+        for (double[] vector : data) {
+            map.trainWith(vector);
+        }
+        journal.close();
+
+        assertEquals(TrainingJournal.hitCounts(journalFile), expected);
+    }
+
+    @Test
+    public void testTornRecordIsTruncated() throws Exception {
+        double[][] data = data(13L);
+        CustomizableSOM map = createMap();
+        TrainingJournal journal = new TrainingJournal(map, journalFile);
+        for (int t = 0; t < CHECKPOINT_AT; t++) {
+            map.trainWith(data[t]);
+        }
+        journal.close();
+
+        // Half a record, as a crash in the middle of a write would leave.
+        OutputStream out = new FileOutputStream(journalFile, true);
+        out.write(new byte[RECORD_SIZE / 2]);
+        out.close();
+        assertEquals(iterations(journalFile).size(), CHECKPOINT_AT);
+
+        journal = new TrainingJournal(map, journalFile);
+        assertEquals(journalFile.length(), HEADER_SIZE + CHECKPOINT_AT * RECORD_SIZE);
+        for (int t = CHECKPOINT_AT; t < ITERATIONS; t++) {
+            map.trainWith(data[t]);
+        }
+        journal.close();
+
+        assertEquals(journalFile.length(), HEADER_SIZE + ITERATIONS * RECORD_SIZE);
+        List<Integer> iterations = iterations(journalFile);
+        assertEquals(iterations.size(), ITERATIONS);
+        for (int t = 0; t < ITERATIONS; t++) {
+            assertEquals(iterations.get(t).intValue(), t);
+        }
+    }
+
+    @Test(expectedExceptions = SOMError.class)
+    public void testAppendNeedsSameSize() throws Exception {
+        new TrainingJournal(createMap(), journalFile).close();
+        new TrainingJournal(new CustomizableSOM(new Dimension(4, 4), INPUT_LENGTH,
+                ITERATIONS), journalFile);
+    }
+}
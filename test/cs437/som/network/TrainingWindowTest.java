@@ -0,0 +1,85 @@
+package cs437.som.network;
+
+import cs437.som.Dimension;
+import cs437.som.SOMExecutionContext;
+import cs437.som.WeightInitializer;
+import cs437.som.learningrate.ConstantLearningRateFunction;
+import cs437.som.neighborhood.ConstantNeighborhoodWidthFunction;
+import org.testng.annotations.Test;
+
+import java.util.Random;
+
+import static org.testng.Assert.assertEquals;
+
+public class TrainingWindowTest {
+    private static final Dimension GRID = new Dimension(16, 16);
+    private static final double[][] CENTERS = {
+            {3.0, 3.0}, {12.0, 3.0}, {3.0, 12.0}, {12.0, 12.0}
+    };
+    private static final int WINDOWS = 50;
+
+    /**
+     * Create a map whose neurons start at their grid coordinates, so that
+     * samples near different corners match neurons far apart on the grid.
+     */
+    private static CustomizableSOM createMap() {
+        CustomizableSOM map = new CustomizableSOM(GRID, 2, WINDOWS * CENTERS.length);
+        map.setWeightInitializerStrategy(new WeightInitializer() {
+            public void initializeWeights(double[][] weights, Dimension gridSize) {
+                for (int neuron = 0; neuron < weights.length; neuron++) {
+                    weights[neuron][0] = neuron % gridSize.x;
+                    weights[neuron][1] = neuron / gridSize.x;
+                }
+            }
+        });
+        map.setLearningRateFunctionStrategy(new ConstantLearningRateFunction(0.3));
+        map.setNeighborhoodWidthFunctionStrategy(
+                new ConstantNeighborhoodWidthFunction(2.0));
+        return map;
+    }
+
+    private static void check(SOMExecutionContext context) {
+        CustomizableSOM windowed = createMap();
+        windowed.setExecutionContext(context);
+        windowed.setParallelThreshold(1);
+        windowed.setParallelUpdateWidth(4.0);
+        CustomizableSOM sequential = createMap();
+
+        // One sample near each corner per window, so no two footprints in a
+        // window overlap.
+        Random random = new Random(7L);
+        double[][] window = new double[CENTERS.length][2];
+        for (int w = 0; w < WINDOWS; w++) {
+            for (int k = 0; k < CENTERS.length; k++) {
+                for (int i = 0; i < 2; i++) {
+                    window[k][i] = CENTERS[k][i] + random.nextDouble() - 0.5;
+                }
+            }
+            windowed.trainWithWindow(window, CENTERS.length);
+            for (int k = 0; k < CENTERS.length; k++) {
+                sequential.trainWith(window[k]);
+            }
+        }
+
+        assertEquals(windowed.time, sequential.time);
+        for (int neuron = 0; neuron < windowed.neuronCount; neuron++) {
+            assertEquals(windowed.weightMatrix[neuron], sequential.weightMatrix[neuron],
+                    "Neuron " + neuron + " should be trained identically.");
+        }
+    }
+
+    @Test
+    public void testMatchesSequentialTraining() {
+        check(SOMExecutionContext.sequential());
+    }
+
+    @Test
+    public void testParallelMatchesSequentialTraining() {
+        SOMExecutionContext context = new SOMExecutionContext(4);
+        try {
+            check(context);
+        } finally {
+            context.shutdown();
+        }
+    }
+}
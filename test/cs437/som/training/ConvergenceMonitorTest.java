@@ -0,0 +1,158 @@
+package cs437.som.training;
+
+import cs437.som.Dimension;
+import cs437.som.WeightInitializer;
+import cs437.som.learningrate.ConstantLearningRateFunction;
+import cs437.som.network.BasicSquareGridSOM;
+import cs437.som.network.CustomizableSOM;
+import cs437.som.network.NetworkBase;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class ConvergenceMonitorTest {
+    private static final double MAXIMUM_DIFFERENCE = 0.0000000001;
+    private static final double[] ZERO = {0.0};
+    private static final double[] ONE = {1.0};
+
+    private static CustomizableSOM createMap(Dimension gridSize) {
+        return new CustomizableSOM(gridSize, 1, 1000);
+    }
+
+    private static ConvergenceMonitor createMonitor(CustomizableSOM map) {
+        ConvergenceMonitor monitor = new ConvergenceMonitor(map, 1);
+        monitor.setSmoothing(1.0);
+        monitor.setPatience(3);
+        return monitor;
+    }
+
+    @Test
+    public void testStopsAfterPatienceStalls() {
+        // A sample already on the only neuron leaves the error at 0, so the
+        // first measurement sets the best error and every later one stalls.
+        CustomizableSOM map = createMap(new Dimension(1, 1));
+        ConvergenceMonitor monitor = createMonitor(map);
+        double[] input = {map.getWeight(0, 0)};
+
+        for (int i = 0; i < 3; i++) {
+            assertTrue(monitor.trainWith(input), "Stopped after " + i + " steps.");
+        }
+        assertFalse(monitor.trainWith(input));
+        assertTrue(monitor.isConverged());
+        assertEquals(monitor.getIterations(), 4);
+        assertEquals(monitor.getSmoothedError(), 0.0);
+
+        // A converged map is no longer trained.
+        assertFalse(monitor.trainWith(ONE));
+        assertEquals(monitor.getIterations(), 4);
+        assertEquals(map.getWeight(0, 0), input[0]);
+    }
+
+    @Test
+    public void testImprovementResetsStalls() {
+        CustomizableSOM map = createMap(new Dimension(1, 1));
+        map.setWeightInitializerStrategy(new WeightInitializer() {
+            public void initializeWeights(double[][] weights, Dimension gridSize) {
+                weights[0][0] = 0.5;
+            }
+        });
+        ConvergenceMonitor monitor = createMonitor(map);
+        monitor.setThreshold(0.1);
+
+        // Errors of 0.5, then 0.55 and 0.495, which are not improvements of
+        // at least a tenth of 0.5.
+        assertTrue(monitor.trainWith(ZERO));
+        assertTrue(monitor.trainWith(ONE));
+        assertTrue(monitor.trainWith(ONE));
+
+        // An error of 0 improves, and the stalls start over.
+        double[] input = {map.getWeight(0, 0)};
+        for (int i = 0; i < 3; i++) {
+            assertTrue(monitor.trainWith(input), "Stopped after " + i + " steps.");
+        }
+        assertFalse(monitor.trainWith(input));
+    }
+
+    @Test
+    public void testMeasuresTheStepsBestMatch() {
+        CustomizableSOM map = createMap(new Dimension(4, 3));
+        ConvergenceMonitor monitor = createMonitor(map);
+
+        double[] input = {0.25};
+        int best = map.getBestMatchingNeuron(input);
+        double error = map.distanceToInput(best, input);
+        double before = map.getWeight(best, 0);
+        monitor.trainWith(input);
+
+        assertEquals(monitor.getSmoothedError(), error, MAXIMUM_DIFFERENCE);
+        assertEquals(monitor.getMeanDisplacement(),
+                Math.abs(map.getWeight(best, 0) - before), MAXIMUM_DIFFERENCE);
+        assertTrue(monitor.getMeanDisplacement() > 0.0);
+    }
+
+    @Test
+    public void testMovingWeightsDelayStop() {
+        // A single neuron trained alternately towards 0 and 1 at a rate of
+        // 0.1 settles into a cycle between 9/19 and 10/19.  The error no
+        // longer improves, but every step still moves the neuron by 1/19.
+        CustomizableSOM map = createMap(new Dimension(1, 1));
+        ConvergenceMonitor monitor = createMonitor(map);
+        monitor.setDisplacementThreshold(0.05);
+        for (int i = 0; i < 500; i++) {
+            assertTrue(monitor.trainWith(i % 2 == 0 ? ZERO : ONE),
+                    "Stopped while the weights moved.");
+        }
+        assertEquals(monitor.getMeanDisplacement(), 1.0 / 19.0, MAXIMUM_DIFFERENCE);
+
+        monitor.setDisplacementThreshold(0.06);
+        for (int i = 0; i < 2; i++) {
+            assertTrue(monitor.trainWith(i % 2 == 0 ? ZERO : ONE));
+        }
+        assertFalse(monitor.trainWith(ZERO));
+    }
+
+    @Test
+    public void testFinishesScheduleBeforeStopping() {
+        CustomizableSOM map = createMap(new Dimension(1, 1));
+        ConvergenceMonitor monitor = createMonitor(map);
+        monitor.setFinishingIterations(4);
+        double[] input = {map.getWeight(0, 0)};
+
+        // Convergence is detected on the fourth step, which is the first of
+        // the four finishing steps.
+        for (int i = 0; i < 6; i++) {
+            assertTrue(monitor.trainWith(input), "Stopped after " + i + " steps.");
+        }
+        assertFalse(monitor.isConverged());
+        assertFalse(monitor.trainWith(input));
+        assertTrue(monitor.isConverged());
+        assertEquals(monitor.getIterations(), 7);
+    }
+
+    @Test
+    public void testMonitorsMapsWithoutListeners() {
+        BasicSquareGridSOM map = new BasicSquareGridSOM(new Dimension(3, 3), 1, 1000);
+        ConvergenceMonitor monitor = new ConvergenceMonitor(map, 1);
+        monitor.setSmoothing(1.0);
+        monitor.setPatience(3);
+
+        int best = map.getBestMatchingNeuron(ONE);
+        double error = map.distanceToInput(best, ONE);
+        double before = map.getWeight(best, 0);
+        monitor.trainWith(ONE);
+        assertEquals(monitor.getSmoothedError(), error, MAXIMUM_DIFFERENCE);
+        assertEquals(monitor.getMeanDisplacement(),
+                NetworkBase.DEFAULT_LEARNING_RATE * (1.0 - before), MAXIMUM_DIFFERENCE);
+
+        // The error shrinks geometrically, so its improvements soon fall
+        // under a hundredth of the first error.
+        int steps = 1;
+        while (monitor.trainWith(ONE)) {
+            steps++;
+            assertTrue(steps < 100, "Never converged.");
+        }
+        assertTrue(steps > 3, "Stopped too early, after " + steps + " steps.");
+    }
+}
@@ -0,0 +1,122 @@
+package cs437.som.training;
+
+import cs437.som.Dimension;
+import cs437.som.SOMError;
+import cs437.som.network.CustomizableSOM;
+import cs437.som.network.GridUpsampler;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+
+public class ProgressiveTrainerTest {
+    private static final int INPUT_SIZE = 2;
+
+    /**
+     * Creates default maps, remembering each one and its iterations.
+     */
+    private static class RecordingFactory implements ProgressiveTrainer.StageFactory {
+        final List<CustomizableSOM> stages = new ArrayList<CustomizableSOM>();
+        final List<Integer> iterations = new ArrayList<Integer>();
+
+        public CustomizableSOM createStage(Dimension gridSize, int inputSize,
+                                           int expectedIterations) {
+            CustomizableSOM som = new CustomizableSOM(gridSize, inputSize,
+                    expectedIterations);
+            stages.add(som);
+            iterations.add(expectedIterations);
+            return som;
+        }
+    }
+
+    private static Iterator<double[]> samples(int count) {
+        Random random = new Random(7);
+        List<double[]> samples = new ArrayList<double[]>();
+        for (int i = 0; i < count; i++) {
+            samples.add(new double[] {random.nextDouble(), random.nextDouble()});
+        }
+        return samples.iterator();
+    }
+
+    private static void assertSizes(List<Dimension> sizes, int... sides) {
+        assertEquals(sizes.size(), sides.length / 2);
+        for (int i = 0; i < sizes.size(); i++) {
+            assertEquals(sizes.get(i).x, sides[2 * i], "Width of stage " + i);
+            assertEquals(sizes.get(i).y, sides[2 * i + 1], "Height of stage " + i);
+        }
+    }
+
+    @Test
+    public void testStageSizesHalveToInitialSide() {
+        ProgressiveTrainer trainer = new ProgressiveTrainer(new Dimension(64, 40),
+                INPUT_SIZE, 10, 5);
+        trainer.setInitialSide(8);
+        assertSizes(trainer.stageSizes(), 16, 10, 32, 20, 64, 40);
+
+        // Odd sides round up, so no stage loses the target's coverage.
+        trainer = new ProgressiveTrainer(new Dimension(33, 17), INPUT_SIZE, 10, 5);
+        trainer.setInitialSide(4);
+        assertSizes(trainer.stageSizes(), 9, 5, 17, 9, 33, 17);
+
+        // A target already at the initial side is a single stage.
+        trainer = new ProgressiveTrainer(new Dimension(10, 10), INPUT_SIZE, 10, 5);
+        trainer.setInitialSide(8);
+        assertSizes(trainer.stageSizes(), 10, 10);
+    }
+
+    @Test
+    public void testTrainsEveryStage() {
+        RecordingFactory factory = new RecordingFactory();
+        ProgressiveTrainer trainer = new ProgressiveTrainer(new Dimension(8, 8),
+                INPUT_SIZE, 10, 5, factory);
+        trainer.setInitialSide(2);
+
+        CustomizableSOM map = trainer.train(samples(20));
+        assertEquals(factory.stages.size(), 3);
+        assertSame(map, factory.stages.get(2));
+        assertEquals(map.getGridSize().x, 8);
+        assertEquals(map.getGridSize().y, 8);
+        assertEquals(factory.iterations.get(0).intValue(), 10);
+        assertEquals(factory.iterations.get(1).intValue(), 5);
+        assertEquals(factory.iterations.get(2).intValue(), 5);
+    }
+
+    @Test
+    public void testLaterStagesStartFromUpsampledWeights() {
+        // Without refining iterations, the final map holds exactly the
+        // upsampled weights of the stage before it.
+        RecordingFactory factory = new RecordingFactory();
+        ProgressiveTrainer trainer = new ProgressiveTrainer(new Dimension(8, 8),
+                INPUT_SIZE, 10, 0, factory);
+        trainer.setInitialSide(4);
+
+        CustomizableSOM map = trainer.train(samples(10));
+        CustomizableSOM expected = new CustomizableSOM(new Dimension(8, 8),
+                INPUT_SIZE, 1);
+        GridUpsampler.upsample(factory.stages.get(0), expected);
+        for (int neuron = 0; neuron < map.getNeuronCount(); neuron++) {
+            for (int i = 0; i < INPUT_SIZE; i++) {
+                assertEquals(map.getWeight(neuron, i), expected.getWeight(neuron, i));
+            }
+        }
+    }
+
+    @Test(expectedExceptions = SOMError.class,
+            expectedExceptionsMessageRegExp = "Ran out of samples during progressive training.")
+    public void testRunningOutOfSamples() {
+        ProgressiveTrainer trainer = new ProgressiveTrainer(new Dimension(8, 8),
+                INPUT_SIZE, 10, 5);
+        trainer.setInitialSide(2);
+        trainer.train(samples(19));
+    }
+
+    @Test(expectedExceptions = SOMError.class)
+    public void testInitialSideMustBeAtLeastTwo() {
+        new ProgressiveTrainer(new Dimension(8, 8), INPUT_SIZE, 10, 5).setInitialSide(1);
+    }
+}
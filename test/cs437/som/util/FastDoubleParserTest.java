@@ -0,0 +1,120 @@
+package cs437.som.util;
+
+import org.testng.annotations.Test;
+
+import java.math.BigDecimal;
+import java.util.Random;
+
+import static org.testng.Assert.assertEquals;
+
+public class FastDoubleParserTest {
+    private static final int SAMPLES = 200000;
+
+    private static void check(String text) {
+        // Surround the number with other characters, as in a weight row.
+        char[] chars = ("[ " + text + ", ").toCharArray();
+        double expected = Double.parseDouble(text);
+        double actual = FastDoubleParser.parse(chars, 2, 2 + text.length());
+        assertEquals(Double.doubleToRawLongBits(actual),
+                Double.doubleToRawLongBits(expected),
+                "Parsing " + text + " gave " + actual + " instead of " + expected);
+    }
+
+    @Test
+    public void testRandomDoubles() {
+        Random random = new Random(1L);
+        for (int i = 0; i < SAMPLES; i++) {
+            double value = Double.longBitsToDouble(random.nextLong());
+            if (Double.isNaN(value) || Double.isInfinite(value)) {
+                continue;
+            }
+            check(Double.toString(value));
+            check(Double.toString(random.nextDouble()));
+            check(Double.toString(random.nextGaussian() * 1000.0));
+        }
+    }
+
+    @Test
+    public void testRandomDigitStrings() {
+        Random random = new Random(2L);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < SAMPLES; i++) {
+            text.setLength(0);
+            if (random.nextBoolean()) {
+                text.append(random.nextBoolean() ? '-' : '+');
+            }
+            // Up to 22 digits, past the 19 the fast paths handle.
+            int digits = 1 + random.nextInt(22);
+            int point = random.nextInt(digits + 1);
+            for (int d = 0; d < digits; d++) {
+                if (d == point && d > 0) {
+                    text.append('.');
+                }
+                text.append((char) ('0' + random.nextInt(10)));
+            }
+            text.append(random.nextBoolean() ? 'e' : 'E');
+            text.append(random.nextInt(700) - 350);
+            check(text.toString());
+        }
+    }
+
+    @Test
+    public void testHalfwayCases() {
+        Random random = new Random(3L);
+        for (int i = 0; i < SAMPLES / 10; i++) {
+            double value = Math.abs(Double.longBitsToDouble(random.nextLong()));
+            if (Double.isNaN(value) || Double.isInfinite(value)
+                    || value == Double.MAX_VALUE) {
+                continue;
+            }
+            // Exactly halfway between two doubles, and a hair either side.
+            BigDecimal low = new BigDecimal(value);
+            BigDecimal high = new BigDecimal(Math.nextUp(value));
+            BigDecimal halfway = low.add(high).divide(BigDecimal.valueOf(2));
+            BigDecimal hair = high.subtract(low).movePointLeft(20);
+            check(halfway.toString());
+            check(halfway.add(hair).toString());
+            check(halfway.subtract(hair).toString());
+        }
+
+        // Halfway cases short enough for the fast paths: odd integers just
+        // above 2^53 and their multiples by powers of ten.
+        long twoTo53 = 1L << 53;
+        for (int i = 0; i < SAMPLES / 10; i++) {
+            long odd = twoTo53 + 2 * random.nextInt(1 << 20) + 1;
+            check(Long.toString(odd));
+            check(odd + "e" + (random.nextInt(60) - 30));
+            check("0." + odd);
+        }
+        check("9007199254740993");
+        check("9007199254740995");
+        check("1.00000000000000011102230246251565404236316680908203125");
+        check("1.00000000000000011102230246251565404236316680908203124");
+        check("1.00000000000000011102230246251565404236316680908203126");
+    }
+
+    @Test
+    public void testExtremeExponents() {
+        String[] inputs = {
+                "1e308", "1.7976931348623157e308", "1.7976931348623158e308",
+                "1.7976931348623159e308", "1e309", "-1e400", "1e100000000",
+                "2.2250738585072014e-308", "2.2250738585072011e-308",
+                "4.9e-324", "2.4703282292062327e-324", "2.4703282292062328e-324",
+                "1e-342", "1e-343", "1e-400", "1e-100000000",
+                "9999999999999999999e-360", "9999999999999999999e290",
+                "0.000000000000000000000000000001e-300",
+                "100000000000000000000000000000e280",
+                "0e999", "-0.0", "+0", "0.0e-999",
+                "1e22", "1e23", "9007199254740992e22", "9007199254740993e-22",
+        };
+        for (String input : inputs) {
+            check(input);
+        }
+        for (int exponent = -350; exponent <= 310; exponent++) {
+            check("1e" + exponent);
+            check("5e" + exponent);
+            check("9.999999999999999e" + exponent);
+            check("123456789012345678e" + exponent);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package cs437.som.util;
+
+import cs437.som.SOMError;
+import cs437.som.SOMExecutionContext;
+import org.testng.annotations.Test;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.testng.Assert.assertEquals;
+
+public class WeightMatrixParserTest {
+    private static double[][] parse(int rows, int columns, String text)
+            throws Exception {
+        return parse(rows, columns, text, SOMExecutionContext.sequential());
+    }
+
+    private static double[][] parse(int rows, int columns, String text,
+                                    SOMExecutionContext context)
+            throws Exception {
+        return new WeightMatrixParser(rows, columns, context)
+                .parse(new BufferedReader(new StringReader(text)));
+    }
+
+    private static String largeMatrix(int rows, int columns) {
+        StringBuilder text = new StringBuilder();
+        for (int row = 0; row < rows; row++) {
+            text.append('[');
+            for (int column = 0; column < columns; column++) {
+                text.append(column == 0 ? "" : ", ").append(row * columns + column);
+            }
+            text.append("]\n");
+        }
+        return text.toString();
+    }
+
+    @Test
+    public void testRows() throws Exception {
+        double[][] weights = parse(3, 2,
+                "\t[0.5, -1.25]\n\t[1e-3, 2E2]\r\n\t[+.5, 7]\nEnd Weights\n");
+        assertEquals(weights[0], new double[]{0.5, -1.25});
+        assertEquals(weights[1], new double[]{1e-3, 2e2});
+        assertEquals(weights[2], new double[]{0.5, 7.0});
+    }
+
+    @Test
+    public void testEndTagStopsEarly() throws Exception {
+        double[][] weights = parse(3, 2, "[1, 2]\nend weights\n[3, 4]\n");
+        assertEquals(weights[0], new double[]{1.0, 2.0});
+        assertEquals(weights[1], new double[]{0.0, 0.0});
+    }
+
+    @Test
+    public void testTrailingLinesIgnored() throws Exception {
+        double[][] weights = parse(2, 1, "[1]\n[2]\n\nnot a row\n");
+        assertEquals(weights[1], new double[]{2.0});
+    }
+
+    @Test(expectedExceptions = SOMError.class)
+    public void testBlankLineRejected() throws Exception {
+        parse(3, 2, "[1, 2]\n\n[3, 4]\n[5, 6]\n");
+    }
+
+    @Test(expectedExceptions = SOMError.class)
+    public void testShortRowRejected() throws Exception {
+        parse(2, 3, "[1, 2, 3]\n[4, 5]\n");
+    }
+
+    @Test
+    public void testParallelContext() throws Exception {
+        SOMExecutionContext context = new SOMExecutionContext(3);
+        try {
+            double[][] weights = parse(3000, 4, largeMatrix(3000, 4), context);
+            for (int row = 0; row < 3000; row++) {
+                for (int column = 0; column < 4; column++) {
+                    assertEquals(weights[row][column], (double) (row * 4 + column));
+                }
+            }
+        } finally {
+            context.shutdown();
+        }
+    }
+
+    @Test(expectedExceptions = RejectedExecutionException.class)
+    public void testGivenContextIsUsed() throws Exception {
+        SOMExecutionContext context = new SOMExecutionContext(2);
+        context.shutdown();
+        parse(3000, 4, largeMatrix(3000, 4), context);
+    }
+}